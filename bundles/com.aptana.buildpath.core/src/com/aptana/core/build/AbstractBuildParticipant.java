@@ -71,9 +71,11 @@ public abstract class AbstractBuildParticipant implements IBuildParticipant, IEx
 	private static final String NAME = "name"; //$NON-NLS-1$
 	private static final String ID = "id"; //$NON-NLS-1$
 	private static final String ATTR_PRIORITY = "priority"; //$NON-NLS-1$
+	private static final String ATTR_THREAD_SAFE = "threadSafe"; //$NON-NLS-1$
 	public static final int DEFAULT_PRIORITY = 50;
 
 	private int fPriority = DEFAULT_PRIORITY;
+	private boolean fThreadSafe;
 	private Set<IContentType> contentTypes = Collections.emptySet();
 	private String fId;
 	private String fName;
@@ -106,6 +108,14 @@ public abstract class AbstractBuildParticipant implements IBuildParticipant, IEx
 		return fId;
 	}
 
+	/**
+	 * Participants declare themselves thread-safe through the extension point.
+	 */
+	public boolean isThreadSafe()
+	{
+		return fThreadSafe;
+	}
+
 	/**
 	 * By default participants are not 'required'. We override this for many of our own builtin ones that perform
 	 * indexing/task detection, etc.
@@ -376,6 +386,7 @@ public abstract class AbstractBuildParticipant implements IBuildParticipant, IEx
 						"Unable to parse priority value ({0}) as an integer, defaulting to 50.", rawPriority), e); //$NON-NLS-1$
 			}
 		}
+		this.fThreadSafe = Boolean.parseBoolean(config.getAttribute(ATTR_THREAD_SAFE));
 		this.fId = config.getAttribute(ID);
 		this.fName = config.getAttribute(NAME);
 		this.contributor = config.getContributor().getName();
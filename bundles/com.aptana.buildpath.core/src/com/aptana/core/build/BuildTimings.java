@@ -0,0 +1,144 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license-epl.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.core.build;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Time spent in each stage of a build: reading and parsing the files, then running each build participant on them.
+ * Safe to update from several threads at once.
+ */
+public final class BuildTimings
+{
+	private static final class Timing
+	{
+		private long nanos;
+		private int count;
+	}
+
+	private final Timing parse = new Timing();
+	private final Map<IBuildParticipant, Timing> participants = new HashMap<IBuildParticipant, Timing>();
+
+	/**
+	 * Records that a file was read and parsed in the given time.
+	 * 
+	 * @param nanos
+	 */
+	public synchronized void addParse(long nanos)
+	{
+		parse.nanos += nanos;
+		parse.count++;
+	}
+
+	/**
+	 * Records that the participant built one file in the given time.
+	 * 
+	 * @param participant
+	 * @param nanos
+	 */
+	public synchronized void add(IBuildParticipant participant, long nanos)
+	{
+		Timing timing = participants.get(participant);
+		if (timing == null)
+		{
+			timing = new Timing();
+			participants.put(participant, timing);
+		}
+		timing.nanos += nanos;
+		timing.count++;
+	}
+
+	/**
+	 * Returns the total time spent reading and parsing files, in nanoseconds.
+	 * 
+	 * @return
+	 */
+	public synchronized long getParseTime()
+	{
+		return parse.nanos;
+	}
+
+	/**
+	 * Returns the number of files that were parsed.
+	 * 
+	 * @return
+	 */
+	public synchronized int getParseCount()
+	{
+		return parse.count;
+	}
+
+	/**
+	 * Returns the total time the participant spent building files, in nanoseconds.
+	 * 
+	 * @param participant
+	 * @return
+	 */
+	public synchronized long getTotalTime(IBuildParticipant participant)
+	{
+		Timing timing = participants.get(participant);
+		return (timing == null) ? 0 : timing.nanos;
+	}
+
+	/**
+	 * Returns the number of files the participant built.
+	 * 
+	 * @param participant
+	 * @return
+	 */
+	public synchronized int getCount(IBuildParticipant participant)
+	{
+		Timing timing = participants.get(participant);
+		return (timing == null) ? 0 : timing.count;
+	}
+
+	/**
+	 * Returns the participants that built files, the most time consuming first.
+	 * 
+	 * @return
+	 */
+	public synchronized List<IBuildParticipant> getParticipants()
+	{
+		List<IBuildParticipant> result = new ArrayList<IBuildParticipant>(participants.keySet());
+		Collections.sort(result, new Comparator<IBuildParticipant>()
+		{
+			public int compare(IBuildParticipant o1, IBuildParticipant o2)
+			{
+				long t1 = participants.get(o1).nanos;
+				long t2 = participants.get(o2).nanos;
+				return (t1 < t2) ? 1 : ((t1 == t2) ? 0 : -1);
+			}
+		});
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString()
+	{
+		StringBuilder builder = new StringBuilder();
+		builder.append(MessageFormat.format("Parsing: {0} ms ({1} files)", parse.nanos / 1000000, parse.count)); //$NON-NLS-1$
+		for (IBuildParticipant participant : getParticipants())
+		{
+			Timing timing = participants.get(participant);
+			builder.append('\n').append(
+					MessageFormat.format("{0}: {1} ms ({2} files)", participant.getName(), timing.nanos / 1000000, //$NON-NLS-1$
+							timing.count));
+		}
+		return builder.toString();
+	}
+}
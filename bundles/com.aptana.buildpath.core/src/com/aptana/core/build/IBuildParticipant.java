@@ -111,6 +111,14 @@ public interface IBuildParticipant
 	 */
 	public void restoreDefaults();
 
+	/**
+	 * Can {@link #buildFile(BuildContext, IProgressMonitor)} be called for different files from several threads at the
+	 * same time? If not, the builder never makes concurrent calls to this participant.
+	 * 
+	 * @return
+	 */
+	public boolean isThreadSafe();
+
 	/**
 	 * Some participants are required - meaning they cannot be disabled.
 	 * 
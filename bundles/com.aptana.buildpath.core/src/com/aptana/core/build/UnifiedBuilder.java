@@ -15,6 +15,16 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileStore;
@@ -33,6 +43,8 @@ import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.jobs.ISchedulingRule;
 
@@ -63,8 +75,37 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 {
 
 	public static final String ID = "com.aptana.ide.core.unifiedBuilder"; //$NON-NLS-1$
+
+	/**
+	 * Preference key (in the instance scope of {@link BuildPathCorePlugin#PLUGIN_ID}) for turning off the parallel
+	 * processing of files. On by default.
+	 */
+	public static final String PARALLEL_BUILD_PREF_KEY = "parallel_build"; //$NON-NLS-1$
+
+	/**
+	 * Upper bound on the number of threads building files at the same time
+	 */
+	private static final int MAX_BUILD_THREADS = 8;
+
+	/**
+	 * Below this number of files, handing them to other threads isn't worth it
+	 */
+	private static final int PARALLEL_BUILD_THRESHOLD = 10;
+
+	/**
+	 * Number of built files whose markers are updated in a single workspace operation
+	 */
+	private static final int MARKER_BATCH_SIZE = 50;
+
+	private static final long POLL_INTERVAL = 100;
+
 	private boolean traceParticipantsEnabled = false;
 
+	/**
+	 * Time spent parsing and in each participant during the current (or last) build.
+	 */
+	private volatile BuildTimings fTimings = new BuildTimings();
+
 	public UnifiedBuilder()
 	{
 	}
@@ -149,6 +190,7 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 	{
 		traceParticipantsEnabled = IdeLog.isTraceEnabled(BuildPathCorePlugin.getDefault(),
 				IDebugScopes.BUILDER_PARTICIPANTS);
+		fTimings = new BuildTimings();
 
 		boolean logTraceEnabled = traceLoggingEnabled();
 
@@ -205,9 +247,26 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 			double endTime = ((double) System.nanoTime() - startTime) / 1000000;
 			logTrace(MessageFormat.format(Messages.UnifiedBuilder_FinishedBuild, projectName, endTime));
 		}
+		if (traceParticipantsEnabled)
+		{
+			IdeLog.logTrace(BuildPathCorePlugin.getDefault(),
+					MessageFormat.format("Build participant times for ''{0}'':\n{1}", projectName, fTimings), //$NON-NLS-1$
+					IDebugScopes.BUILDER_PARTICIPANTS);
+		}
 		return null;
 	}
 
+	/**
+	 * Returns the time spent parsing files and in each participant during the last build of this builder (or the
+	 * current one, if it's building).
+	 * 
+	 * @return
+	 */
+	public BuildTimings getLastBuildTimings()
+	{
+		return fTimings;
+	}
+
 	protected boolean traceLoggingEnabled()
 	{
 		return IdeLog.isTraceEnabled(CorePlugin.getDefault(), IDebugScopes.BUILDER);
@@ -507,6 +566,12 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 			return;
 		}
 
+		if (files.size() >= PARALLEL_BUILD_THRESHOLD && isParallelBuildEnabled())
+		{
+			doBuildFilesInParallel(participants, files, monitor);
+			return;
+		}
+
 		SubMonitor sub = SubMonitor.convert(monitor, 15 * files.size());
 		for (IFile file : files)
 		{
@@ -533,6 +598,172 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 		sub.done();
 	}
 
+	/**
+	 * Builds the files on a pool of threads. Each file is built start to finish by one thread, calling the thread-safe
+	 * participants directly while the calls to the other ones are serialized. The markers of the built files are
+	 * updated from this thread, in batches of {@link #MARKER_BATCH_SIZE} files per workspace operation.
+	 * 
+	 * @param participants
+	 * @param files
+	 * @param monitor
+	 */
+	private void doBuildFilesInParallel(final List<IBuildParticipant> participants, Collection<IFile> files,
+			IProgressMonitor monitor)
+	{
+		final IBuildParticipantManager manager = getBuildParticipantManager();
+		if (manager == null)
+		{
+			return;
+		}
+
+		// ask once, the answer can't change during the build
+		final Set<IBuildParticipant> threadSafeParticipants = new HashSet<IBuildParticipant>();
+		for (IBuildParticipant participant : participants)
+		{
+			if (participant.isThreadSafe())
+			{
+				threadSafeParticipants.add(participant);
+			}
+		}
+
+		int remaining = files.size();
+		SubMonitor sub = SubMonitor.convert(monitor, 15 * remaining);
+		// Participants run on other threads, so we can't hand them our monitor. This one only tracks cancellation.
+		final IProgressMonitor workerMonitor = new NullProgressMonitor();
+		int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_BUILD_THREADS));
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+		{
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "Builder-" + count.incrementAndGet()); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		CompletionService<BuildContext> completionService = new ExecutorCompletionService<BuildContext>(executor);
+		List<Future<BuildContext>> futures = new ArrayList<Future<BuildContext>>(remaining);
+		List<BuildContext> built = new ArrayList<BuildContext>(MARKER_BATCH_SIZE);
+
+		try
+		{
+			for (final IFile file : files)
+			{
+				futures.add(completionService.submit(new Callable<BuildContext>()
+				{
+					public BuildContext call() throws Exception
+					{
+						if (workerMonitor.isCanceled())
+						{
+							return null;
+						}
+
+						BuildContext context = new BuildContext(file);
+						List<IBuildParticipant> filteredParticipants = manager.filterParticipants(participants,
+								context.getContentType());
+						runParticipants(context, filteredParticipants, threadSafeParticipants, workerMonitor);
+						return context;
+					}
+				}));
+			}
+
+			while (remaining > 0)
+			{
+				// stop building if canceled
+				if (sub.isCanceled())
+				{
+					break;
+				}
+
+				Future<BuildContext> future = completionService.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				if (future == null)
+				{
+					continue;
+				}
+
+				try
+				{
+					BuildContext context = future.get();
+					if (context != null && !CollectionsUtil.isEmpty(context.getProblems()))
+					{
+						built.add(context);
+					}
+				}
+				catch (ExecutionException e)
+				{
+					IdeLog.logError(BuildPathCorePlugin.getDefault(), e.getCause());
+				}
+
+				remaining--;
+				sub.worked(12);
+
+				if (built.size() >= MARKER_BATCH_SIZE)
+				{
+					updateMarkers(built, sub.newChild(3 * built.size()));
+					built.clear();
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			// stop any files still queued if we're leaving early
+			workerMonitor.setCanceled(true);
+			for (Future<BuildContext> future : futures)
+			{
+				future.cancel(false);
+			}
+			executor.shutdown();
+			// files already started must be done before the participants are told the build ended
+			awaitTermination(executor);
+
+			// record the problems of the files we did build
+			updateMarkers(built, sub.newChild(3 * built.size()));
+			sub.done();
+		}
+	}
+
+	/**
+	 * Waits for the tasks running in a shut down executor to finish. An interrupt doesn't stop the wait, it is
+	 * restored once the tasks are done.
+	 * 
+	 * @param executor
+	 */
+	private void awaitTermination(ExecutorService executor)
+	{
+		boolean interrupted = false;
+		while (!executor.isTerminated())
+		{
+			try
+			{
+				executor.awaitTermination(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		if (interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Determines if files may be built in parallel
+	 * 
+	 * @return
+	 */
+	protected boolean isParallelBuildEnabled()
+	{
+		return Platform.getPreferencesService().getBoolean(BuildPathCorePlugin.PLUGIN_ID, PARALLEL_BUILD_PREF_KEY,
+				true, null);
+	}
+
 	/**
 	 * FIXME This is a holy hell of a mess! We map from IFiles to IFileStores, then filter on that, then map back! Can't
 	 * we make the IIndexFilterParticipants also operate on IFiles? It seems like the only impl does anyways.
@@ -608,17 +839,45 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 		}
 
 		SubMonitor sub = SubMonitor.convert(monitor, 2 * participants.size());
+		runParticipants(context, participants, null, sub.newChild(participants.size()));
+		updateMarkers(context, sub.newChild(participants.size()));
+		sub.done();
+	}
+
+	/**
+	 * Calls the participants on the given file
+	 * 
+	 * @param context
+	 * @param participants
+	 * @param threadSafeParticipants
+	 *            when building files in parallel, the participants that may be called concurrently. Calls to the other
+	 *            ones are serialized. Null if this is the only thread building files.
+	 * @param monitor
+	 */
+	private void runParticipants(BuildContext context, List<IBuildParticipant> participants,
+			Set<IBuildParticipant> threadSafeParticipants, IProgressMonitor monitor)
+	{
+		if (CollectionsUtil.isEmpty(participants))
+		{
+			return;
+		}
+
+		// Read and parse the file once, up front: the participants share the result through the context
+		parse(context);
+
+		SubMonitor sub = SubMonitor.convert(monitor, participants.size());
 		for (IBuildParticipant participant : participants)
 		{
-			long startTime = System.nanoTime();
-			participant.buildFile(context, sub.newChild(1));
-			if (traceParticipantsEnabled)
+			if (threadSafeParticipants == null || threadSafeParticipants.contains(participant))
 			{
-				double endTime = ((double) System.nanoTime() - startTime) / 1000000;
-				IdeLog.logTrace(
-						BuildPathCorePlugin.getDefault(),
-						MessageFormat
-								.format("Executed build participant ''{0}'' on ''{1}'' in {2} ms.", participant.getName(), context.getURI(), endTime), IDebugScopes.BUILDER_PARTICIPANTS); //$NON-NLS-1$
+				runParticipant(context, participant, sub.newChild(1));
+			}
+			else
+			{
+				synchronized (participant)
+				{
+					runParticipant(context, participant, sub.newChild(1));
+				}
 			}
 
 			// stop building if it has been canceled
@@ -627,10 +886,50 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 				break;
 			}
 		}
-		updateMarkers(context, sub.newChild(participants.size()));
 		sub.done();
 	}
 
+	/**
+	 * Parses the file if there's a parser for its content type. Parse errors are left for the participants to report,
+	 * the context hands them the same exception.
+	 * 
+	 * @param context
+	 */
+	private void parse(BuildContext context)
+	{
+		long startTime = System.nanoTime();
+		try
+		{
+			String contentType = context.getContentType();
+			if (contentType == null || ParserPoolFactory.getInstance().getParserPool(contentType) == null)
+			{
+				return;
+			}
+			context.getAST();
+			fTimings.addParse(System.nanoTime() - startTime);
+		}
+		catch (CoreException e)
+		{
+			fTimings.addParse(System.nanoTime() - startTime);
+		}
+	}
+
+	private void runParticipant(BuildContext context, IBuildParticipant participant, IProgressMonitor monitor)
+	{
+		long startTime = System.nanoTime();
+		participant.buildFile(context, monitor);
+		long elapsed = System.nanoTime() - startTime;
+		fTimings.add(participant, elapsed);
+		if (traceParticipantsEnabled)
+		{
+			double endTime = ((double) elapsed) / 1000000;
+			IdeLog.logTrace(
+					BuildPathCorePlugin.getDefault(),
+					MessageFormat
+							.format("Executed build participant ''{0}'' on ''{1}'' in {2} ms.", participant.getName(), context.getURI(), endTime), IDebugScopes.BUILDER_PARTICIPANTS); //$NON-NLS-1$
+		}
+	}
+
 	private void updateMarkers(BuildContext context, IProgressMonitor monitor)
 	{
 		final IFile file = context.getFile();
@@ -659,6 +958,43 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 		}
 	}
 
+	/**
+	 * Updates the markers of several built files in a single workspace operation
+	 * 
+	 * @param contexts
+	 * @param monitor
+	 */
+	private void updateMarkers(final List<BuildContext> contexts, IProgressMonitor monitor)
+	{
+		if (CollectionsUtil.isEmpty(contexts))
+		{
+			return;
+		}
+
+		IWorkspaceRunnable runnable = new IWorkspaceRunnable()
+		{
+			public void run(IProgressMonitor monitor)
+			{
+				SubMonitor sub = SubMonitor.convert(monitor, contexts.size());
+				for (BuildContext context : contexts)
+				{
+					updateMarkers(context.getFile(), context.getProblems(), sub.newChild(1));
+				}
+				sub.done();
+			}
+		};
+
+		try
+		{
+			ResourcesPlugin.getWorkspace().run(runnable, getMarkerRule(getProjectHandle()), IWorkspace.AVOID_UPDATE,
+					monitor);
+		}
+		catch (CoreException e)
+		{
+			IdeLog.logError(BuildPathCorePlugin.getDefault(), "Error updating markers", e); //$NON-NLS-1$
+		}
+	}
+
 	/**
 	 * @param resource
 	 * @return
@@ -153,6 +153,11 @@ public class BuildParticipantWorkingCopy implements IBuildParticipantWorkingCopy
 		return wrapped.isRequired();
 	}
 
+	public boolean isThreadSafe()
+	{
+		return wrapped.isThreadSafe();
+	}
+
 	public List<String> getFilters()
 	{
 		if (filters != null)
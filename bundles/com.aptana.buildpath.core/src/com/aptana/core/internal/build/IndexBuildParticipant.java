@@ -35,7 +35,7 @@ import com.aptana.index.core.build.BuildContext;
 public class IndexBuildParticipant extends RequiredBuildParticipant
 {
 
-	private Index fIndex;
+	private volatile Index fIndex;
 	private boolean index_trace_enabled = false;
 	private boolean advanced_trace_enabled = false;
 
@@ -20,7 +20,6 @@ import org.eclipse.core.filesystem.IFileStore;
 import org.eclipse.core.filesystem.provider.FileInfo;
 
 import org.eclipse.core.resources.IContainer;
-import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
@@ -28,9 +27,8 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.SubMonitor;
 
-import com.aptana.core.io.vfs.Policy;
+import com.aptana.core.io.vfs.FileTreeCrawler;
 import com.aptana.ide.core.io.IConnectionPoint;
-import com.aptana.ide.core.io.preferences.CloakingUtils;
 
 /**
  * @author Max Stepanov
@@ -203,9 +201,7 @@ public final class EFSUtils
 			((IResource) resource).refreshLocal(IResource.DEPTH_INFINITE, progress.newChild(10));
 		}
 
-		List<IFileStore> list = new ArrayList<IFileStore>();
-		getFiles(file, recurse, list, includeCloakedFiles, progress.newChild(90));
-		return list.toArray(new IFileStore[list.size()]);
+		return new FileTreeCrawler(recurse, includeCloakedFiles).getFiles(file, progress.newChild(90));
 	}
 
 	/**
@@ -243,83 +239,6 @@ public final class EFSUtils
 		return fileList.toArray(new IFileStore[fileList.size()]);
 	}
 
-	/**
-	 * getFiles
-	 * 
-	 * @param file
-	 * @param recurse
-	 * @param list
-	 * @param includeCloakedFiles
-	 * @param monitor
-	 *            the progress monitor to use for reporting progress to the user. It is the caller's responsibility to
-	 *            call done() on the given monitor. Accepts null, indicating that no progress should be reported and
-	 *            that the operation cannot be cancelled.
-	 * @throws CoreException
-	 */
-	private static void getFiles(IFileStore file, boolean recurse, List<IFileStore> list, boolean includeCloakedFiles,
-			IProgressMonitor monitor) throws CoreException
-	{
-		if (file == null)
-		{
-			return;
-		}
-
-		if (monitor != null)
-		{
-			Policy.checkCanceled(monitor);
-		}
-
-		if (isFolder(file, monitor))
-		{
-			IFileStore[] children = file.childStores(EFS.NONE, monitor);
-			if (children != null)
-			{
-				SubMonitor progress = SubMonitor.convert(monitor, children.length);
-				boolean addingFile;
-				for (IFileStore child : children)
-				{
-					Policy.checkCanceled(progress);
-					addingFile = false;
-					if (includeCloakedFiles || !CloakingUtils.isFileCloaked(child))
-					{
-						list.add(child);
-						addingFile = true;
-					}
-
-					if (recurse && addingFile && isFolder(child, progress))
-					{
-						getFiles(child, recurse, list, includeCloakedFiles, progress.newChild(1));
-					}
-				}
-			}
-		}
-	}
-
-	/**
-	 * Determines if the listed item is a file or a folder.
-	 * 
-	 * @param file
-	 * @param monitor
-	 * @return
-	 * @throws CoreException
-	 */
-	private static boolean isFolder(IFileStore file, IProgressMonitor monitor) throws CoreException
-	{
-		// if we are an IContainer, folder == true;
-		// if we are an IFile, folder == false
-		// if neither, then check info for isDirectory()
-		IResource resource = (IResource) file.getAdapter(IResource.class);
-		if (resource instanceof IContainer)
-		{
-			return true;
-		}
-		if (!(resource instanceof IFile) && file.fetchInfo(EFS.NONE, monitor).isDirectory())
-		{
-			return true;
-		}
-		return false;
-	}
-
 	/*
 	 * TODO: cleanup everything above
 	 */
@@ -15,6 +15,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.text.MessageFormat;
+import java.util.zip.Checksum;
 
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileInfo;
@@ -64,6 +65,25 @@ public final class SyncUtils
 	 */
 	public static void copy(IFileStore source, IFileInfo sourceInfo, IFileStore destination, int options,
 			IProgressMonitor monitor) throws CoreException
+	{
+		copy(source, sourceInfo, destination, options, null, monitor);
+	}
+
+	/**
+	 * Same as {@link #copy(IFileStore, IFileInfo, IFileStore, int, IProgressMonitor)}, also updating a checksum with
+	 * the contents copied, so they don't need to be read again to checksum them.
+	 * 
+	 * @param source
+	 * @param sourceInfo
+	 * @param destination
+	 * @param options
+	 * @param checksum
+	 *            updated with the bytes of a file copied, may be null
+	 * @param monitor
+	 * @throws CoreException
+	 */
+	public static void copy(IFileStore source, IFileInfo sourceInfo, IFileStore destination, int options,
+			Checksum checksum, IProgressMonitor monitor) throws CoreException
 	{
 		try
 		{
@@ -122,6 +142,10 @@ public final class SyncUtils
 							checkCanceled(monitor);
 							error(MessageFormat.format(Messages.SyncUtils_ERR_Writing, destination.toString()), e);
 						}
+						if (checksum != null)
+						{
+							checksum.update(buffer, 0, bytesRead);
+						}
 						subMonitor.worked(1);
 					}
 					subMonitor.done();
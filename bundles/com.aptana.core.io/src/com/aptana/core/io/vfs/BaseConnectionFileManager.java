@@ -22,7 +22,6 @@ import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.core.filesystem.EFS;
@@ -37,11 +36,11 @@ import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
 
 import com.aptana.core.logging.IdeLog;
-import com.aptana.core.util.ExpiringMap;
 import com.aptana.core.util.ProgressMonitorInterrupter;
 import com.aptana.core.util.ProgressMonitorInterrupter.InterruptDelegate;
 import com.aptana.core.util.StringUtil;
 import com.aptana.ide.core.io.CoreIOPlugin;
+import com.aptana.ide.core.io.IDebugScopes;
 import com.aptana.ide.core.io.InfiniteProgressMonitor;
 import com.aptana.ide.core.io.PermissionDeniedException;
 import com.aptana.ide.core.io.preferences.PermissionDirection;
@@ -54,6 +53,8 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 {
 
 	protected static final int CACHE_TTL = 60000; /* 1min */
+	protected static final int CACHE_MAX_FILES = 20000;
+	private static final int CACHE_MAX_DIRECTORIES = 2000;
 
 	private static final int RETRIES_AFTER_FAILURE = 2;
 	protected static final char[] EMPTY_PASSWORD = StringUtil.EMPTY.toCharArray();
@@ -66,8 +67,8 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 	protected IPath basePath;
 	protected String authId;
 
-	private Map<IPath, ExtendedFileInfo> fileInfoCache;
-	private Map<IPath, ExtendedFileInfo[]> fileInfosCache;
+	private volatile PathCache<ExtendedFileInfo> fileInfoCache;
+	private volatile PathCache<ExtendedFileInfo[]> fileInfosCache;
 
 	private final InterruptDelegate interruptDelegate = new InterruptDelegate()
 	{
@@ -105,11 +106,12 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 		}
 		if (enabled)
 		{
-			fileInfoCache = new ExpiringMap<IPath, ExtendedFileInfo>(CACHE_TTL);
-			fileInfosCache = new ExpiringMap<IPath, ExtendedFileInfo[]>(CACHE_TTL);
+			fileInfoCache = new PathCache<ExtendedFileInfo>(CACHE_TTL, CACHE_MAX_FILES);
+			fileInfosCache = new PathCache<ExtendedFileInfo[]>(CACHE_TTL, CACHE_MAX_DIRECTORIES);
 		}
 		else
 		{
+			cleanup();
 			fileInfoCache = null;
 			fileInfosCache = null;
 		}
@@ -241,7 +243,20 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 	 * @see com.aptana.core.io.vfs.IConnectionFileManager#openInputStream(org.eclipse.core.runtime.IPath, int,
 	 * org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public final synchronized InputStream openInputStream(IPath path, int options, IProgressMonitor monitor)
+	public final InputStream openInputStream(IPath path, int options, IProgressMonitor monitor)
+			throws CoreException
+	{
+		if (getMaxConcurrentTransfers() > 1)
+		{
+			return openInputStreamInternal(path, options, monitor);
+		}
+		synchronized (this)
+		{
+			return openInputStreamInternal(path, options, monitor);
+		}
+	}
+
+	private InputStream openInputStreamInternal(IPath path, int options, IProgressMonitor monitor)
 			throws CoreException
 	{
 		monitor = Policy.monitorFor(monitor);
@@ -250,22 +265,26 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 		try
 		{
 			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(interruptDelegate);
-			testOrConnect(monitor);
-			ExtendedFileInfo fileInfo = fetchAndCacheFileInfo(path, Policy.subMonitorFor(monitor, 1));
-			setLastOperationTime();
-			if (!fileInfo.exists())
+			synchronized (this)
 			{
-				throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
-						Messages.BaseConnectionFileManager_no_such_file, initFileNotFoundException(path, null)));
-			}
-			if (fileInfo.isDirectory())
-			{
-				throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
-						Messages.BaseConnectionFileManager_file_is_directory, initFileNotFoundException(path, null)));
-			}
-			if (fileInfo.getLength() == 0)
-			{
-				return new ByteArrayInputStream(EMPTY_BYTES);
+				testOrConnect(monitor);
+				ExtendedFileInfo fileInfo = fetchAndCacheFileInfo(path, Policy.subMonitorFor(monitor, 1));
+				setLastOperationTime();
+				if (!fileInfo.exists())
+				{
+					throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
+							Messages.BaseConnectionFileManager_no_such_file, initFileNotFoundException(path, null)));
+				}
+				if (fileInfo.isDirectory())
+				{
+					throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
+							Messages.BaseConnectionFileManager_file_is_directory, initFileNotFoundException(path,
+									null)));
+				}
+				if (fileInfo.getLength() == 0)
+				{
+					return new ByteArrayInputStream(EMPTY_BYTES);
+				}
 			}
 			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
 			return readFile(basePath.append(path), Policy.subMonitorFor(monitor, 1));
@@ -293,7 +312,20 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 	 * @see com.aptana.core.io.vfs.IConnectionFileManager#openOutputStream(org.eclipse.core.runtime.IPath, int,
 	 * org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	public final synchronized OutputStream openOutputStream(IPath path, int options, IProgressMonitor monitor)
+	public final OutputStream openOutputStream(IPath path, int options, IProgressMonitor monitor)
+			throws CoreException
+	{
+		if (getMaxConcurrentTransfers() > 1)
+		{
+			return openOutputStreamInternal(path, options, monitor);
+		}
+		synchronized (this)
+		{
+			return openOutputStreamInternal(path, options, monitor);
+		}
+	}
+
+	private OutputStream openOutputStreamInternal(IPath path, int options, IProgressMonitor monitor)
 			throws CoreException
 	{
 		monitor = Policy.monitorFor(monitor);
@@ -302,33 +334,38 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 		try
 		{
 			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(interruptDelegate);
-			testOrConnect(monitor);
-			ExtendedFileInfo fileInfo = fetchAndCacheFileInfo(path, Policy.subMonitorFor(monitor, 1));
-			setLastOperationTime();
-			if (fileInfo.exists() && fileInfo.isDirectory())
-			{
-				throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
-						Messages.BaseConnectionFileManager_file_is_directory, initFileNotFoundException(path, null)));
-			}
 			long permissions = -1;
-			boolean useTemporary = canUseTemporaryFile(path, fileInfo, Policy.subMonitorFor(monitor, 1));
-			if (fileInfo.exists())
+			boolean useTemporary;
+			synchronized (this)
 			{
-				if (useTemporary)
+				testOrConnect(monitor);
+				ExtendedFileInfo fileInfo = fetchAndCacheFileInfo(path, Policy.subMonitorFor(monitor, 1));
+				setLastOperationTime();
+				if (fileInfo.exists() && fileInfo.isDirectory())
 				{
-					permissions = fileInfo.getPermissions();
+					throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID,
+							Messages.BaseConnectionFileManager_file_is_directory, initFileNotFoundException(path,
+									null)));
 				}
-			}
-			else
-			{
-				// new file; check if to use the user-defined default permissions
-				if (PreferenceUtils.getUpdatePermissions(PermissionDirection.UPLOAD)
-						&& PreferenceUtils.getSpecificPermissions(PermissionDirection.UPLOAD))
+				useTemporary = canUseTemporaryFile(path, fileInfo, Policy.subMonitorFor(monitor, 1));
+				if (fileInfo.exists())
+				{
+					if (useTemporary)
+					{
+						permissions = fileInfo.getPermissions();
+					}
+				}
+				else
 				{
-					permissions = PreferenceUtils.getFilePermissions(PermissionDirection.UPLOAD);
+					// new file; check if to use the user-defined default permissions
+					if (PreferenceUtils.getUpdatePermissions(PermissionDirection.UPLOAD)
+							&& PreferenceUtils.getSpecificPermissions(PermissionDirection.UPLOAD))
+					{
+						permissions = PreferenceUtils.getFilePermissions(PermissionDirection.UPLOAD);
+					}
 				}
+				clearCache(path);
 			}
-			clearCache(path);
 			ProgressMonitorInterrupter.setCurrentThreadInterruptDelegate(null);
 			return writeFile(basePath.append(path), useTemporary, permissions, Policy.subMonitorFor(monitor, 1));
 		}
@@ -645,6 +682,18 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 		}
 	}
 
+	/**
+	 * Returns how many files may be read or written at once. With more than one, {@link #readFile} and
+	 * {@link #writeFile} are called without holding the lock on the manager and must each use a connection of their
+	 * own; with one (the default), a file is opened while no other operation runs.
+	 * 
+	 * @return
+	 */
+	public int getMaxConcurrentTransfers()
+	{
+		return 1;
+	}
+
 	protected abstract void testConnection(boolean force);
 
 	protected abstract boolean canUseTemporaryFile(IPath path, ExtendedFileInfo fileInfo, IProgressMonitor monitor);
@@ -885,66 +934,77 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 
 	private final ExtendedFileInfo getCachedFileInfo(IPath path)
 	{
-		return (fileInfoCache != null) ? fileInfoCache.get(path) : null;
+		PathCache<ExtendedFileInfo> cache = fileInfoCache;
+		return (cache != null) ? cache.get(path) : null;
 	}
 
 	private final ExtendedFileInfo[] getCachedFileInfos(IPath path)
 	{
-		return (fileInfosCache != null) ? fileInfosCache.get(path) : null;
+		PathCache<ExtendedFileInfo[]> cache = fileInfosCache;
+		return (cache != null) ? cache.get(path) : null;
 	}
 
 	private final ExtendedFileInfo cache(IPath path, ExtendedFileInfo fileInfo)
 	{
-		if (fileInfoCache != null && fileInfo.exists())
+		PathCache<ExtendedFileInfo> cache = fileInfoCache;
+		if (cache != null && fileInfo.exists())
 		{
-			fileInfoCache.put(path, fileInfo);
+			cache.put(path, fileInfo);
 		}
 		return fileInfo;
 	}
 
 	private final ExtendedFileInfo[] cache(IPath path, ExtendedFileInfo[] fileInfos)
 	{
-		if (fileInfosCache != null)
+		PathCache<ExtendedFileInfo[]> cache = fileInfosCache;
+		if (cache != null)
 		{
-			fileInfosCache.put(path, fileInfos);
+			cache.put(path, fileInfos);
 		}
 		return fileInfos;
 	}
 
+	/**
+	 * Evicts the cached info of the path and of everything under it.
+	 * 
+	 * @param path
+	 */
 	protected void clearCache(IPath path)
 	{
-		int segments = path.segmentCount();
-		if (fileInfoCache != null)
+		PathCache<ExtendedFileInfo> infoCache = fileInfoCache;
+		if (infoCache != null)
 		{
-			for (IPath p : new ArrayList<IPath>(fileInfoCache.keySet()))
-			{
-				if (p.segmentCount() >= segments && path.matchingFirstSegments(p) == segments)
-				{
-					fileInfoCache.remove(p);
-				}
-			}
+			infoCache.removeAll(path);
 		}
-		if (fileInfosCache != null)
+		PathCache<ExtendedFileInfo[]> infosCache = fileInfosCache;
+		if (infosCache != null)
 		{
-			for (IPath p : new ArrayList<IPath>(fileInfosCache.keySet()))
-			{
-				if (p.segmentCount() >= segments && path.matchingFirstSegments(p) == segments)
-				{
-					fileInfosCache.remove(p);
-				}
-			}
+			infosCache.removeAll(path);
 		}
 	}
 
 	protected final void cleanup()
 	{
-		if (fileInfoCache != null)
+		PathCache<ExtendedFileInfo> infoCache = fileInfoCache;
+		if (infoCache != null)
 		{
-			fileInfoCache.clear();
+			logCacheStatistics("file info", infoCache); //$NON-NLS-1$
+			infoCache.clear();
 		}
-		if (fileInfosCache != null)
+		PathCache<ExtendedFileInfo[]> infosCache = fileInfosCache;
+		if (infosCache != null)
+		{
+			logCacheStatistics("directory listing", infosCache); //$NON-NLS-1$
+			infosCache.clear();
+		}
+	}
+
+	private void logCacheStatistics(String name, PathCache<?> cache)
+	{
+		if (IdeLog.isInfoEnabled(CoreIOPlugin.getDefault(), IDebugScopes.CONNECTIONS))
 		{
-			fileInfosCache.clear();
+			String message = MessageFormat.format("{0} {1} cache: {2}", basePath, name, cache); //$NON-NLS-1$
+			IdeLog.logInfo(CoreIOPlugin.getDefault(), message, IDebugScopes.CONNECTIONS);
 		}
 	}
 
@@ -0,0 +1,430 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.aptana.core.io.vfs;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileInfo;
+import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+
+import com.aptana.ide.core.io.CoreIOPlugin;
+import com.aptana.ide.core.io.InfiniteProgressMonitor;
+import com.aptana.ide.core.io.preferences.CloakingUtils;
+
+/**
+ * Lists the files under one or more roots, breadth-first. Each directory is listed once with
+ * {@link IFileStore#childInfos(int, IProgressMonitor)}, which for connection file managers fills the file info cache
+ * with all of the children in one round-trip, instead of fetching the info of each child on its own.
+ * <p>
+ * Each root is crawled on a thread of its own, so a local tree and a remote one are listed at the same time. Files are
+ * handed to the visitor as they're found, on the thread running the crawl, so it doesn't need to be thread-safe and
+ * can start on them before the listing completes.
+ */
+public final class FileTreeCrawler
+{
+
+	/**
+	 * Told about the files found, on the thread running the crawl.
+	 */
+	public interface IVisitor
+	{
+		/**
+		 * @param root
+		 *            the index of the root the file is under
+		 * @param file
+		 * @param info
+		 *            the info the file was listed with
+		 * @return false to stop the crawl
+		 * @throws CoreException
+		 *             stops the crawl, and is thrown back by it
+		 */
+		public boolean visit(int root, IFileStore file, IFileInfo info) throws CoreException;
+
+		/**
+		 * Called once all the files under a root were visited.
+		 * 
+		 * @param root
+		 *            the index of the root
+		 */
+		public void rootDone(int root);
+	}
+
+	private static final long POLL_INTERVAL = 100; // ms
+
+	/**
+	 * How many files may be waiting for the visitor before the crawlers pause.
+	 */
+	private static final int QUEUE_CAPACITY = 1024;
+
+	private final boolean recurse;
+	private final boolean includeCloakedFiles;
+
+	/**
+	 * Set once the crawl should stop, read by the crawlers.
+	 */
+	private volatile boolean aborted;
+
+	/**
+	 * @param recurse
+	 *            whether to list the sub-directories, or only the children of the roots
+	 * @param includeCloakedFiles
+	 *            whether to list the cloaked files (see {@link CloakingUtils}). Cloaked directories aren't descended
+	 *            into either way.
+	 */
+	public FileTreeCrawler(boolean recurse, boolean includeCloakedFiles)
+	{
+		this.recurse = recurse;
+		this.includeCloakedFiles = includeCloakedFiles;
+	}
+
+	/**
+	 * Lists the files under the given roots, not including the roots themselves. Roots that aren't directories have no
+	 * files.
+	 * 
+	 * @param roots
+	 * @param visitor
+	 * @param monitor
+	 * @throws CoreException
+	 *             if listing a directory failed, or the visitor threw it
+	 * @throws OperationCanceledException
+	 *             if the monitor was canceled
+	 */
+	public void crawl(IFileStore[] roots, IVisitor visitor, IProgressMonitor monitor) throws CoreException
+	{
+		monitor = Policy.monitorFor(monitor);
+		IProgressMonitor progress = new InfiniteProgressMonitor(monitor);
+		progress.beginTask(Messages.FileTreeCrawler_Listing, 100);
+		aborted = false;
+		try
+		{
+			if (roots.length == 1)
+			{
+				crawlSerially(roots[0], visitor, progress);
+			}
+			else if (roots.length > 1)
+			{
+				crawlConcurrently(roots, visitor, progress);
+			}
+		}
+		finally
+		{
+			aborted = true;
+			progress.done();
+		}
+	}
+
+	/**
+	 * Returns the files under the given root.
+	 * 
+	 * @param root
+	 * @param monitor
+	 * @return
+	 * @throws CoreException
+	 * @see #crawl(IFileStore[], IVisitor, IProgressMonitor)
+	 */
+	public IFileStore[] getFiles(IFileStore root, IProgressMonitor monitor) throws CoreException
+	{
+		final List<IFileStore> files = new ArrayList<IFileStore>();
+		crawl(new IFileStore[] { root }, new IVisitor()
+		{
+			public boolean visit(int index, IFileStore file, IFileInfo info)
+			{
+				files.add(file);
+				return true;
+			}
+
+			public void rootDone(int index)
+			{
+			}
+		}, monitor);
+		return files.toArray(new IFileStore[files.size()]);
+	}
+
+	private void crawlSerially(IFileStore root, final IVisitor visitor, final IProgressMonitor progress)
+			throws CoreException
+	{
+		IProgressMonitor crawlMonitor = new NullProgressMonitor()
+		{
+			@Override
+			public boolean isCanceled()
+			{
+				return aborted || progress.isCanceled();
+			}
+		};
+		boolean completed = crawl(0, root, new ISink()
+		{
+			public boolean accept(int index, IFileStore file, IFileInfo info) throws CoreException
+			{
+				progress.worked(1);
+				return visitor.visit(index, file, info);
+			}
+		}, crawlMonitor);
+		if (completed)
+		{
+			visitor.rootDone(0);
+		}
+	}
+
+	private void crawlConcurrently(IFileStore[] roots, IVisitor visitor, IProgressMonitor progress)
+			throws CoreException
+	{
+		final BlockingQueue<Entry> queue = new LinkedBlockingQueue<Entry>(QUEUE_CAPACITY);
+		// Crawlers only get to check for cancellation: monitors aren't meant to be shared across threads
+		final IProgressMonitor crawlMonitor = new NullProgressMonitor()
+		{
+			@Override
+			public boolean isCanceled()
+			{
+				return aborted;
+			}
+		};
+		final ISink sink = new ISink()
+		{
+			public boolean accept(int index, IFileStore file, IFileInfo info)
+			{
+				return put(queue, new Entry(index, file, info, null));
+			}
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool(roots.length, new CrawlerThreadFactory());
+		try
+		{
+			for (int i = 0; i < roots.length; ++i)
+			{
+				final int index = i;
+				final IFileStore root = roots[i];
+				executor.execute(new Runnable()
+				{
+					public void run()
+					{
+						CoreException error = null;
+						try
+						{
+							crawl(index, root, sink, crawlMonitor);
+						}
+						catch (CoreException e)
+						{
+							error = e;
+						}
+						catch (OperationCanceledException e)
+						{
+							// aborted, nobody's waiting for it
+						}
+						catch (RuntimeException e)
+						{
+							error = new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID, e.getMessage(),
+									e));
+						}
+						// then the end of the root, unless the crawl was aborted
+						put(queue, new Entry(index, null, null, error));
+					}
+				});
+			}
+
+			CoreException error = null;
+			int running = roots.length;
+			// once aborted, the crawlers stop queueing and we stop waiting for them
+			while (running > 0 && !aborted)
+			{
+				if (progress.isCanceled())
+				{
+					aborted = true;
+					break;
+				}
+				Entry entry;
+				try
+				{
+					entry = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				}
+				catch (InterruptedException e)
+				{
+					aborted = true;
+					Thread.currentThread().interrupt();
+					break;
+				}
+				if (entry == null)
+				{
+					continue;
+				}
+				if (entry.file == null)
+				{
+					--running;
+					if (entry.error != null)
+					{
+						error = entry.error;
+						aborted = true;
+					}
+					else
+					{
+						visitor.rootDone(entry.root);
+					}
+					continue;
+				}
+				progress.worked(1);
+				if (!visitor.visit(entry.root, entry.file, entry.info))
+				{
+					aborted = true;
+				}
+			}
+			if (error != null)
+			{
+				throw error;
+			}
+			if (progress.isCanceled())
+			{
+				throw new OperationCanceledException();
+			}
+		}
+		finally
+		{
+			aborted = true;
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Lists the tree under a root breadth-first.
+	 * 
+	 * @return false if the sink stopped it
+	 */
+	private boolean crawl(int index, IFileStore root, ISink sink, IProgressMonitor monitor) throws CoreException
+	{
+		if (root == null || !isFolder(root, monitor))
+		{
+			return true;
+		}
+		int options = (root instanceof IExtendedFileStore) ? IExtendedFileStore.DETAILED : EFS.NONE;
+		LinkedList<IFileStore> dirs = new LinkedList<IFileStore>();
+		dirs.add(root);
+		while (!dirs.isEmpty())
+		{
+			Policy.checkCanceled(monitor);
+			IFileStore dir = dirs.removeFirst();
+			IFileInfo[] infos = dir.childInfos(options, monitor);
+			if (infos == null)
+			{
+				continue;
+			}
+			for (IFileInfo info : infos)
+			{
+				IFileStore child = dir.getChild(info.getName());
+				if (!includeCloakedFiles && CloakingUtils.isFileCloaked(child))
+				{
+					continue;
+				}
+				if (!sink.accept(index, child, info))
+				{
+					return false;
+				}
+				if (recurse && info.isDirectory())
+				{
+					dirs.add(child);
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Queues an entry, waiting for room unless the crawl was aborted.
+	 * 
+	 * @return false if it was aborted
+	 */
+	private boolean put(BlockingQueue<Entry> queue, Entry entry)
+	{
+		try
+		{
+			while (!queue.offer(entry, POLL_INTERVAL, TimeUnit.MILLISECONDS))
+			{
+				if (aborted)
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Determines if the root is a folder: containers of the workspace always are, files never are, anything else is
+	 * asked for its info.
+	 */
+	private static boolean isFolder(IFileStore file, IProgressMonitor monitor) throws CoreException
+	{
+		IResource resource = (IResource) file.getAdapter(IResource.class);
+		if (resource instanceof IContainer)
+		{
+			return true;
+		}
+		return !(resource instanceof IFile) && file.fetchInfo(EFS.NONE, monitor).isDirectory();
+	}
+
+	/**
+	 * Where the crawl of a root puts the files it finds.
+	 */
+	private interface ISink
+	{
+		public boolean accept(int root, IFileStore file, IFileInfo info) throws CoreException;
+	}
+
+	/**
+	 * A file found, or the end of a root when there's no file.
+	 */
+	private static final class Entry
+	{
+		private final int root;
+		private final IFileStore file;
+		private final IFileInfo info;
+		private final CoreException error;
+
+		private Entry(int root, IFileStore file, IFileInfo info, CoreException error)
+		{
+			this.root = root;
+			this.file = file;
+			this.info = info;
+			this.error = error;
+		}
+	}
+
+	private static final class CrawlerThreadFactory implements ThreadFactory
+	{
+		private static final AtomicInteger COUNT = new AtomicInteger();
+
+		public Thread newThread(Runnable r)
+		{
+			Thread thread = new Thread(r, "File Tree Crawler " + COUNT.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
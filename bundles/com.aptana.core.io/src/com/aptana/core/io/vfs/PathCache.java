@@ -0,0 +1,388 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.aptana.core.io.vfs;
+
+import java.lang.ref.WeakReference;
+import java.text.MessageFormat;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * A cache of values by path, stored in a tree of the path segments so that everything under a path can be evicted
+ * without looking at the rest of the cache.
+ * <p>
+ * Values expire once they're older than the time to live. Expired values are never returned, and are evicted by a
+ * background sweep. When the cache is full, the oldest values are evicted first. Counts of the hits and misses are kept
+ * for tuning.
+ * <p>
+ * This is thread-safe.
+ * 
+ * @param <V>
+ *            the type of the values
+ */
+public class PathCache<V>
+{
+
+	/**
+	 * The timer sweeping all the caches, its thread doesn't keep the VM alive.
+	 */
+	private static Timer sweeper;
+
+	private final long ttl;
+	private final int maxSize;
+
+	private final Node<V> root = new Node<V>(null, null);
+
+	/**
+	 * The nodes that have a value, oldest first.
+	 */
+	private final Node<V> head = new Node<V>(null, null);
+
+	private int size;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	private TimerTask sweepTask;
+
+	/**
+	 * @param ttl
+	 *            how long values are kept, in milliseconds
+	 * @param maxSize
+	 *            how many values are kept at most
+	 */
+	public PathCache(long ttl, int maxSize)
+	{
+		if (ttl <= 0 || maxSize <= 0)
+		{
+			throw new IllegalArgumentException();
+		}
+		this.ttl = ttl;
+		this.maxSize = maxSize;
+		head.previous = head;
+		head.next = head;
+	}
+
+	/**
+	 * Returns the value cached for a path, or null if there's none or it expired.
+	 * 
+	 * @param path
+	 * @return
+	 */
+	public synchronized V get(IPath path)
+	{
+		Node<V> node = find(path);
+		if (node != null && node.value != null)
+		{
+			if (node.time + ttl >= now())
+			{
+				++hits;
+				return node.value;
+			}
+			evict(node);
+		}
+		++misses;
+		return null;
+	}
+
+	/**
+	 * Caches a value for a path, replacing the previous one.
+	 * 
+	 * @param path
+	 * @param value
+	 *            not null
+	 */
+	public synchronized void put(IPath path, V value)
+	{
+		if (value == null)
+		{
+			throw new IllegalArgumentException();
+		}
+		Node<V> node = root;
+		for (int i = 0, n = path.segmentCount(); i < n; ++i)
+		{
+			node = node.getOrCreateChild(path.segment(i));
+		}
+		if (node.value != null)
+		{
+			unlink(node);
+		}
+		else
+		{
+			++size;
+		}
+		node.value = value;
+		node.time = now();
+		link(node);
+
+		while (size > maxSize)
+		{
+			evict(head.next);
+		}
+		if (sweepTask == null)
+		{
+			scheduleSweep();
+		}
+	}
+
+	/**
+	 * Evicts the value of a path, and those of all the paths under it.
+	 * 
+	 * @param path
+	 */
+	public synchronized void removeAll(IPath path)
+	{
+		Node<V> node = find(path);
+		if (node == null)
+		{
+			return;
+		}
+		LinkedList<Node<V>> nodes = new LinkedList<Node<V>>();
+		nodes.add(node);
+		while (!nodes.isEmpty())
+		{
+			Node<V> next = nodes.removeFirst();
+			if (next.value != null)
+			{
+				unlink(next);
+				next.value = null;
+				--size;
+			}
+			if (next.children != null)
+			{
+				nodes.addAll(next.children.values());
+			}
+		}
+		node.children = null;
+		prune(node);
+	}
+
+	/**
+	 * Evicts all the values.
+	 */
+	public synchronized void clear()
+	{
+		root.children = null;
+		root.value = null;
+		head.previous = head;
+		head.next = head;
+		size = 0;
+		cancelSweep();
+	}
+
+	/**
+	 * Returns the number of values cached, some of which may have expired.
+	 * 
+	 * @return
+	 */
+	public synchronized int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the number of lookups that found a value.
+	 * 
+	 * @return
+	 */
+	public synchronized long getHitCount()
+	{
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that didn't find a value.
+	 * 
+	 * @return
+	 */
+	public synchronized long getMissCount()
+	{
+		return misses;
+	}
+
+	/**
+	 * Evicts the values that expired.
+	 */
+	public synchronized void sweep()
+	{
+		long expired = now() - ttl;
+		// values are linked in the order they were put, so the expired ones come first
+		while (head.next != head && head.next.time < expired)
+		{
+			evict(head.next);
+		}
+		if (size == 0)
+		{
+			cancelSweep();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString()
+	{
+		long lookups = hits + misses;
+		return MessageFormat.format("{0} entries, {1} hits, {2} misses ({3}% hits), {4} evicted", //$NON-NLS-1$
+				size, hits, misses, (lookups > 0) ? hits * 100 / lookups : 0, evictions);
+	}
+
+	/**
+	 * The clock the values are timed with, in milliseconds.
+	 */
+	long now()
+	{
+		return System.currentTimeMillis();
+	}
+
+	private Node<V> find(IPath path)
+	{
+		Node<V> node = root;
+		for (int i = 0, n = path.segmentCount(); i < n && node != null; ++i)
+		{
+			node = (node.children != null) ? node.children.get(path.segment(i)) : null;
+		}
+		return node;
+	}
+
+	private void evict(Node<V> node)
+	{
+		unlink(node);
+		node.value = null;
+		--size;
+		++evictions;
+		prune(node);
+	}
+
+	/**
+	 * Removes the node and its parents from the tree, as long as they hold nothing.
+	 */
+	private void prune(Node<V> node)
+	{
+		while (node != root && node.value == null && (node.children == null || node.children.isEmpty()))
+		{
+			Node<V> parent = node.parent;
+			parent.children.remove(node.segment);
+			node = parent;
+		}
+	}
+
+	private void link(Node<V> node)
+	{
+		node.previous = head.previous;
+		node.next = head;
+		head.previous.next = node;
+		head.previous = node;
+	}
+
+	private void unlink(Node<V> node)
+	{
+		node.previous.next = node.next;
+		node.next.previous = node.previous;
+		node.previous = null;
+		node.next = null;
+	}
+
+	private void scheduleSweep()
+	{
+		sweepTask = new SweepTask(this);
+		getSweeper().schedule(sweepTask, ttl, ttl);
+	}
+
+	private void cancelSweep()
+	{
+		if (sweepTask != null)
+		{
+			sweepTask.cancel();
+			sweepTask = null;
+		}
+	}
+
+	private static synchronized Timer getSweeper()
+	{
+		if (sweeper == null)
+		{
+			sweeper = new Timer("Path Cache Sweeper", true); //$NON-NLS-1$
+		}
+		return sweeper;
+	}
+
+	/**
+	 * A path segment, holding the value of its path if there's one. The nodes with a value are also linked in the
+	 * order the values were put.
+	 */
+	private static final class Node<V>
+	{
+		private final Node<V> parent;
+		private final String segment;
+		private Map<String, Node<V>> children;
+
+		private V value;
+		private long time;
+		private Node<V> previous;
+		private Node<V> next;
+
+		private Node(Node<V> parent, String segment)
+		{
+			this.parent = parent;
+			this.segment = segment;
+		}
+
+		private Node<V> getOrCreateChild(String segment)
+		{
+			if (children == null)
+			{
+				children = new HashMap<String, Node<V>>();
+			}
+			Node<V> child = children.get(segment);
+			if (child == null)
+			{
+				child = new Node<V>(this, segment);
+				children.put(segment, child);
+			}
+			return child;
+		}
+	}
+
+	/**
+	 * Sweeps a cache, until it's no longer used: the timer doesn't keep caches from being collected.
+	 */
+	private static final class SweepTask extends TimerTask
+	{
+		private final WeakReference<PathCache<?>> cache;
+
+		private SweepTask(PathCache<?> cache)
+		{
+			this.cache = new WeakReference<PathCache<?>>(cache);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.util.TimerTask#run()
+		 */
+		@Override
+		public void run()
+		{
+			PathCache<?> pathCache = cache.get();
+			if (pathCache == null)
+			{
+				cancel();
+				return;
+			}
+			pathCache.sweep();
+		}
+	}
+}
@@ -0,0 +1,436 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.aptana.core.io.vfs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubMonitor;
+
+import com.aptana.ide.core.io.CoreIOPlugin;
+
+/**
+ * Runs file transfers several at a time, each over a connection of its own (see
+ * {@link BaseConnectionFileManager#getMaxConcurrentTransfers()}), so that transferring many small files is bounded by
+ * bandwidth rather than by round-trips.
+ * <p>
+ * Transfers run smallest first, so most files are done early and the large ones share the bandwidth at the end. A
+ * failed transfer is retried a few times before it's reported. Listeners are called on the thread that runs the
+ * scheduler, one transfer at a time, so they don't need to be thread-safe.
+ */
+public final class TransferScheduler
+{
+
+	/**
+	 * A single file transfer.
+	 */
+	public interface ITransfer
+	{
+		/**
+		 * The number of bytes to transfer, used to order the transfers and to compute the throughput.
+		 * 
+		 * @return
+		 */
+		public long getSize();
+
+		/**
+		 * Transfers the file. May be called again after a failure.
+		 * 
+		 * @param monitor
+		 *            only good for checking whether to cancel: it may be called from any thread
+		 * @throws CoreException
+		 */
+		public void run(IProgressMonitor monitor) throws CoreException;
+	}
+
+	/**
+	 * Told about the outcome of each transfer, on the thread running the scheduler.
+	 */
+	public interface IListener
+	{
+		/**
+		 * @param transfer
+		 * @return false to stop, the transfers that haven't started yet are skipped
+		 */
+		public boolean transferDone(ITransfer transfer);
+
+		/**
+		 * @param transfer
+		 * @param e
+		 *            the error of the last attempt
+		 * @return false to stop, the transfers that haven't started yet are skipped
+		 */
+		public boolean transferFailed(ITransfer transfer, CoreException e);
+	}
+
+	/**
+	 * How many transfers to run at once when the connections don't say otherwise.
+	 */
+	public static final int DEFAULT_CONCURRENCY = 4;
+
+	/**
+	 * How many times a failed transfer is tried again.
+	 */
+	public static final int DEFAULT_RETRIES = 2;
+
+	private static final long POLL_INTERVAL = 100; // ms
+
+	private static final Comparator<ITransfer> SMALLEST_FIRST = new Comparator<ITransfer>()
+	{
+		public int compare(ITransfer t1, ITransfer t2)
+		{
+			long s1 = t1.getSize();
+			long s2 = t2.getSize();
+			return (s1 < s2) ? -1 : ((s1 == s2) ? 0 : 1);
+		}
+	};
+
+	private final int concurrency;
+	private final int retries;
+	private final List<ITransfer> transfers = new ArrayList<ITransfer>();
+
+	/**
+	 * Set once the transfers should stop, read by the workers.
+	 */
+	private volatile boolean aborted;
+
+	private long bytesTransferred;
+	private int filesTransferred;
+	private long elapsedTime;
+
+	/**
+	 * @param concurrency
+	 *            the maximum number of transfers to run at once. With 1, they run on the calling thread.
+	 * @param retries
+	 *            how many times a failed transfer is tried again
+	 */
+	public TransferScheduler(int concurrency, int retries)
+	{
+		this.concurrency = Math.max(1, concurrency);
+		this.retries = Math.max(0, retries);
+	}
+
+	/**
+	 * Adds a transfer to run.
+	 * 
+	 * @param transfer
+	 */
+	public void add(ITransfer transfer)
+	{
+		transfers.add(transfer);
+	}
+
+	/**
+	 * Returns the number of transfers added.
+	 * 
+	 * @return
+	 */
+	public int size()
+	{
+		return transfers.size();
+	}
+
+	/**
+	 * Runs the transfers added so far, and returns once they're all done (or skipped).
+	 * 
+	 * @param listener
+	 * @param monitor
+	 * @return {@link Status#CANCEL_STATUS} if the monitor was canceled, OK otherwise (even if transfers failed or the
+	 *         listener stopped them, it knows)
+	 */
+	public IStatus run(IListener listener, IProgressMonitor monitor)
+	{
+		SubMonitor subMonitor = SubMonitor.convert(monitor, transfers.size());
+		List<ITransfer> sorted = new ArrayList<ITransfer>(transfers);
+		// a stable sort, transfers of the same size keep their order
+		Collections.sort(sorted, SMALLEST_FIRST);
+		transfers.clear();
+		aborted = false;
+
+		final SubMonitor cancelMonitor = subMonitor;
+		final boolean serial = (concurrency == 1 || sorted.size() <= 1);
+		// Transfers only get to check for cancellation: monitors aren't meant to be shared across threads, so the
+		// workers only see it through us
+		IProgressMonitor transferMonitor = new NullProgressMonitor()
+		{
+			@Override
+			public boolean isCanceled()
+			{
+				return aborted || (serial && cancelMonitor.isCanceled());
+			}
+		};
+
+		long start = System.currentTimeMillis();
+		try
+		{
+			if (serial)
+			{
+				runSerially(sorted, listener, transferMonitor, subMonitor);
+			}
+			else
+			{
+				runConcurrently(sorted, listener, transferMonitor, subMonitor);
+			}
+		}
+		finally
+		{
+			elapsedTime += System.currentTimeMillis() - start;
+			subMonitor.done();
+		}
+		return subMonitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+	}
+
+	/**
+	 * Returns the number of bytes of the files transferred successfully.
+	 * 
+	 * @return
+	 */
+	public long getBytesTransferred()
+	{
+		return bytesTransferred;
+	}
+
+	/**
+	 * Returns the number of files transferred successfully.
+	 * 
+	 * @return
+	 */
+	public int getFilesTransferred()
+	{
+		return filesTransferred;
+	}
+
+	/**
+	 * Returns the time spent running transfers, in milliseconds.
+	 * 
+	 * @return
+	 */
+	public long getElapsedTime()
+	{
+		return elapsedTime;
+	}
+
+	/**
+	 * Returns the aggregate throughput of the transfers so far, in bytes per second.
+	 * 
+	 * @return
+	 */
+	public long getThroughput()
+	{
+		return (elapsedTime == 0) ? 0 : bytesTransferred * 1000 / elapsedTime;
+	}
+
+	private void runSerially(List<ITransfer> sorted, IListener listener, IProgressMonitor transferMonitor,
+			SubMonitor monitor)
+	{
+		for (ITransfer transfer : sorted)
+		{
+			if (monitor.isCanceled())
+			{
+				aborted = true;
+				return;
+			}
+			if (!notify(listener, execute(transfer, transferMonitor)))
+			{
+				aborted = true;
+				return;
+			}
+			monitor.worked(1);
+		}
+	}
+
+	private void runConcurrently(List<ITransfer> sorted, IListener listener, final IProgressMonitor transferMonitor,
+			SubMonitor monitor)
+	{
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, sorted.size()),
+				new TransferThreadFactory());
+		CompletionService<Result> completion = new ExecutorCompletionService<Result>(executor);
+		try
+		{
+			// the executor's queue is FIFO, so they start smallest first
+			for (final ITransfer transfer : sorted)
+			{
+				completion.submit(new Callable<Result>()
+				{
+					public Result call()
+					{
+						if (aborted)
+						{
+							return new Result(transfer, null, true);
+						}
+						return execute(transfer, transferMonitor);
+					}
+				});
+			}
+
+			int remaining = sorted.size();
+			while (remaining > 0)
+			{
+				if (!aborted && monitor.isCanceled())
+				{
+					aborted = true;
+				}
+				Future<Result> future;
+				try
+				{
+					future = completion.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				}
+				catch (InterruptedException e)
+				{
+					aborted = true;
+					Thread.currentThread().interrupt();
+					break;
+				}
+				if (future == null)
+				{
+					continue;
+				}
+				--remaining;
+				Result result = getResult(future);
+				if (result == null)
+				{
+					continue;
+				}
+				// what's done is reported even once stopped, only what didn't run goes unreported
+				if (!notify(listener, result))
+				{
+					aborted = true;
+				}
+				monitor.worked(1);
+			}
+		}
+		finally
+		{
+			// lets the running transfers finish (they check for the abort), then the threads go away
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Runs a transfer, retrying it on failure.
+	 */
+	private Result execute(ITransfer transfer, IProgressMonitor monitor)
+	{
+		CoreException error = null;
+		for (int attempt = 0; attempt <= retries; ++attempt)
+		{
+			if (monitor.isCanceled())
+			{
+				return new Result(transfer, null, true);
+			}
+			try
+			{
+				transfer.run(monitor);
+				return new Result(transfer, null, false);
+			}
+			catch (OperationCanceledException e)
+			{
+				return new Result(transfer, null, true);
+			}
+			catch (CoreException e)
+			{
+				error = e;
+			}
+			catch (RuntimeException e)
+			{
+				error = new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID, e.getMessage(), e));
+			}
+		}
+		return new Result(transfer, error, false);
+	}
+
+	private boolean notify(IListener listener, Result result)
+	{
+		if (result.skipped)
+		{
+			return true;
+		}
+		if (result.error != null)
+		{
+			return listener.transferFailed(result.transfer, result.error);
+		}
+		bytesTransferred += Math.max(0, result.transfer.getSize());
+		filesTransferred++;
+		return listener.transferDone(result.transfer);
+	}
+
+	private static Result getResult(Future<Result> future)
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch (ExecutionException e)
+		{
+			// execute() catches everything but errors
+			Throwable cause = e.getCause();
+			if (cause instanceof Error)
+			{
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * The outcome of a transfer.
+	 */
+	private static final class Result
+	{
+		private final ITransfer transfer;
+		private final CoreException error;
+
+		/**
+		 * Whether it didn't run (or didn't finish) because of a cancellation.
+		 */
+		private final boolean skipped;
+
+		private Result(ITransfer transfer, CoreException error, boolean skipped)
+		{
+			this.transfer = transfer;
+			this.error = error;
+			this.skipped = skipped;
+		}
+	}
+
+	private static final class TransferThreadFactory implements ThreadFactory
+	{
+		private static final AtomicInteger COUNT = new AtomicInteger();
+
+		public Thread newThread(Runnable r)
+		{
+			Thread thread = new Thread(r, "File Transfer " + COUNT.incrementAndGet()); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -9,6 +9,7 @@ package com.aptana.core.util;
 
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -72,15 +73,18 @@ public abstract class KeepAliveObjectPool<T> implements IObjectPool<T> {
 
 	protected synchronized void reap() {
 		long now = System.currentTimeMillis();
-		for (T c : unlocked.keySet()) {
-			if ((now - unlocked.get(c)) > timeToRelease()) {
+		// removes through the iterator, there may be several idle connections
+		for (Iterator<Map.Entry<T, Long>> i = unlocked.entrySet().iterator(); i.hasNext();) {
+			Map.Entry<T, Long> entry = i.next();
+			T c = entry.getKey();
+			if ((now - entry.getValue()) > timeToRelease()) {
 				// time to release the connection
-				unlocked.remove(c);
+				i.remove();
 				expire(c);
 			} else {
 				// keeps the connection alive unless it no longer validates
 				if (!validate(c)) {
-					unlocked.remove(c);
+					i.remove();
 					expire(c);
 				}
 			}
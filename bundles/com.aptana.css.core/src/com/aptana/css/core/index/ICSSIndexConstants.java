@@ -14,7 +14,8 @@ public interface ICSSIndexConstants
 	// 0.11 - Using JSON for element and property content assist model elements
 	// 0.12 - Updated browser support for css3 properties
 	// 0.13 - Added properties for webkit
-	public static final double INDEX_VERSION = 0.13;
+	// 0.14 - Using the binary value encoding instead of JSON for elements, properties and pseudo classes/elements
+	public static final double INDEX_VERSION = 0.14;
 
 	// for debugging, comment the line above, and uncomment the following
 	// public static final double INDEX_VERSION = new Random().nextDouble() * 1e6;
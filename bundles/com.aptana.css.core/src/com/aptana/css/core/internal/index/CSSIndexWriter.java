@@ -20,6 +20,14 @@ import com.aptana.index.core.IndexWriter;
 
 public class CSSIndexWriter extends IndexWriter
 {
+	/**
+	 * CSSIndexWriter
+	 */
+	public CSSIndexWriter()
+	{
+		super(true);
+	}
+
 	/**
 	 * getDocumentPath
 	 * 
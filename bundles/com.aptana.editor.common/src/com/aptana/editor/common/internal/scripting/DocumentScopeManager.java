@@ -8,6 +8,7 @@
 
 package com.aptana.editor.common.internal.scripting;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.WeakHashMap;
 
@@ -17,12 +18,14 @@ import org.eclipse.core.runtime.IAdaptable;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.ITextViewer;
+import org.eclipse.jface.text.ITypedRegion;
 import org.eclipse.jface.text.Position;
 import org.eclipse.jface.text.TypedPosition;
 import org.eclipse.jface.text.source.ISourceViewer;
 
 import com.aptana.core.logging.IdeLog;
 import com.aptana.core.util.ArrayUtil;
+import com.aptana.core.util.ObjectUtil;
 import com.aptana.core.util.StringUtil;
 import com.aptana.editor.common.AbstractThemeableEditor;
 import com.aptana.editor.common.CommonEditorPlugin;
@@ -149,6 +152,102 @@ public class DocumentScopeManager implements IDocumentScopeManager
 		partitionFragment = prependNaturesToScope(viewer) + partitionFragment;
 
 		String tokenPortion = getTokenScopeFragments(viewer, document, offset);
+		return appendTokenScope(partitionFragment, tokenPortion);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * com.aptana.editor.common.scripting.IDocumentScopeManager#getScopesAtOffsets(org.eclipse.jface.text.ITextViewer,
+	 * int[])
+	 */
+	public String[] getScopesAtOffsets(ITextViewer viewer, int[] offsets) throws BadLocationException
+	{
+		String[] result = new String[offsets.length];
+		if (viewer == null)
+		{
+			Arrays.fill(result, StringUtil.EMPTY);
+			return result;
+		}
+
+		IDocument document = viewer.getDocument();
+		String[] partitionFragments = getScopesAtOffsets(document, offsets);
+		String natures = prependNaturesToScope(viewer);
+		Position[] scopes = getScopePositions(viewer, document);
+
+		int index = 0;
+		String lastPartitionFragment = null;
+		String lastTokenPortion = null;
+		String scope = null;
+		for (int i = 0; i < offsets.length; i++)
+		{
+			int offset = offsets[i];
+			String tokenPortion = null;
+			if (scopes != null && scopes.length > 0)
+			{
+				// Both are in ascending order, so we only ever move forward to the first position not before the offset
+				while (index < scopes.length && scopes[index].getOffset() < offset)
+				{
+					index++;
+				}
+				tokenPortion = getTokenScopeFragment(scopes, index, offset);
+			}
+			// neighbouring offsets mostly have the same scope, don't build it again
+			if (scope == null || partitionFragments[i] != lastPartitionFragment
+					|| !ObjectUtil.areEqual(tokenPortion, lastTokenPortion))
+			{
+				lastPartitionFragment = partitionFragments[i];
+				lastTokenPortion = tokenPortion;
+				scope = appendTokenScope(natures + lastPartitionFragment, tokenPortion);
+			}
+			result[i] = scope;
+		}
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * com.aptana.editor.common.scripting.IDocumentScopeManager#getScopesAtOffsets(org.eclipse.jface.text.IDocument,
+	 * int[])
+	 */
+	public String[] getScopesAtOffsets(IDocument document, int[] offsets) throws BadLocationException
+	{
+		String[] result = new String[offsets.length];
+		int length = (document == null) ? 0 : document.getLength();
+		int partitionStart = 0;
+		int partitionEnd = 0;
+		String fragment = null;
+		for (int i = 0; i < offsets.length; i++)
+		{
+			int offset = offsets[i];
+			if (fragment == null || offset < partitionStart || offset >= partitionEnd)
+			{
+				fragment = getPartitionScopeFragmentsAtOffset(document, offset);
+				partitionStart = offset;
+				partitionEnd = offset;
+				// The scope only depends on the partition, except at the end of the document
+				if (offset < length)
+				{
+					try
+					{
+						ITypedRegion partition = document.getPartition(offset);
+						partitionStart = partition.getOffset();
+						partitionEnd = partition.getOffset() + partition.getLength();
+					}
+					catch (BadLocationException e)
+					{
+						// look up the next offset on its own
+					}
+				}
+			}
+			result[i] = fragment;
+		}
+		return result;
+	}
+
+	private String appendTokenScope(String partitionFragment, String tokenPortion)
+	{
 		if (tokenPortion != null)
 		{
 			if (tokenPortion.length() == 0)
@@ -208,55 +307,82 @@ public class DocumentScopeManager implements IDocumentScopeManager
 
 	private String getTokenScopeFragments(ITextViewer viewer, IDocument document, int offset)
 	{
-		if (!(viewer instanceof ISourceViewer))
+		Position[] scopes = getScopePositions(viewer, document);
+		if (scopes == null)
 		{
 			return null;
 		}
 
 		try
 		{
-			// Force adding the category in case it doesn't exist yet...
-			document.addPositionCategory(ICommonConstants.SCOPE_CATEGORY);
-			Position[] scopes = document.getPositions(ICommonConstants.SCOPE_CATEGORY);
 			int index = document.computeIndexInCategory(ICommonConstants.SCOPE_CATEGORY, offset);
-
-			if (scopes == null || scopes.length == 0)
-			{
-				return null;
-			}
-			if (index >= scopes.length)
-			{
-				index = scopes.length - 1;
-			}
-			Position scope = scopes[index];
-			if (scope == null)
+			if (scopes.length == 0)
 			{
 				return null;
 			}
-			if (!scope.includes(offset))
+			return getTokenScopeFragment(scopes, index, offset);
+		}
+		catch (Exception e)
+		{
+			IdeLog.logError(CommonEditorPlugin.getDefault(), e);
+		}
+		return null;
+	}
+
+	private Position[] getScopePositions(ITextViewer viewer, IDocument document)
+	{
+		if (!(viewer instanceof ISourceViewer))
+		{
+			return null;
+		}
+
+		try
+		{
+			// Force adding the category in case it doesn't exist yet...
+			document.addPositionCategory(ICommonConstants.SCOPE_CATEGORY);
+			return document.getPositions(ICommonConstants.SCOPE_CATEGORY);
+		}
+		catch (Exception e)
+		{
+			IdeLog.logError(CommonEditorPlugin.getDefault(), e);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the scope of the token position including an offset, given the index of the first position that doesn't
+	 * start before the offset.
+	 */
+	private String getTokenScopeFragment(Position[] scopes, int index, int offset)
+	{
+		if (index >= scopes.length)
+		{
+			index = scopes.length - 1;
+		}
+		Position scope = scopes[index];
+		if (scope == null)
+		{
+			return null;
+		}
+		if (!scope.includes(offset))
+		{
+			if (index > 0)
 			{
-				if (index > 0)
-				{
-					scope = scopes[--index];
-					if (scope == null || !scope.includes(offset))
-					{
-						return null;
-					}
-				}
-				else
+				scope = scopes[--index];
+				if (scope == null || !scope.includes(offset))
 				{
 					return null;
 				}
 			}
-			if (scope instanceof TypedPosition)
+			else
 			{
-				TypedPosition pos = (TypedPosition) scope;
-				return pos.getType();
+				return null;
 			}
 		}
-		catch (Exception e)
+		if (scope instanceof TypedPosition)
 		{
-			IdeLog.logError(CommonEditorPlugin.getDefault(), e);
+			TypedPosition pos = (TypedPosition) scope;
+			return pos.getType();
 		}
 		return null;
 	}
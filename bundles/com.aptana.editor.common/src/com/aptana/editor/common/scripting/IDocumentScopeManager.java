@@ -47,6 +47,31 @@ public interface IDocumentScopeManager
 	 */
 	public String getScopeAtOffset(IDocument document, int offset) throws BadLocationException;
 
+	/**
+	 * Performs the full scope lookup of {@link #getScopeAtOffset(ITextViewer, int)} at many offsets. This is much
+	 * cheaper than looking up each offset on its own, since what the offsets share (the project natures, the partition
+	 * they're in, the token positions) is only computed once.
+	 * 
+	 * @param viewer
+	 * @param offsets
+	 *            in ascending order
+	 * @return the scopes at the offsets, in the same order
+	 * @throws BadLocationException
+	 */
+	public String[] getScopesAtOffsets(ITextViewer viewer, int[] offsets) throws BadLocationException;
+
+	/**
+	 * Performs the partition-level scope lookup of {@link #getScopeAtOffset(IDocument, int)} at many offsets, computing
+	 * the scope only once for all the offsets in a partition.
+	 * 
+	 * @param document
+	 * @param offsets
+	 *            in ascending order
+	 * @return the scopes at the offsets, in the same order
+	 * @throws BadLocationException
+	 */
+	public String[] getScopesAtOffsets(IDocument document, int[] offsets) throws BadLocationException;
+
 	/**
 	 * Associated an IDocument with a default top level scope to use and the filename the document represents. Scope is
 	 * determined on demand by using the partitions (a.k.a. content types), translation, and possible top-level scope
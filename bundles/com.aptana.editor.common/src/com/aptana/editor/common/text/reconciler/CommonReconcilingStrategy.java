@@ -67,7 +67,7 @@ public class CommonReconcilingStrategy implements IReconcilingStrategy, IReconci
 	/**
 	 * The folder that calculates folding positions for this editor.
 	 */
-	private IFoldingComputer folder;
+	private volatile IFoldingComputer folder;
 
 	/**
 	 * Any access to fPositions should obtain this lock.
@@ -103,6 +103,7 @@ public class CommonReconcilingStrategy implements IReconcilingStrategy, IReconci
 			fEditor.removePropertyListener(propertyListener);
 			fEditor = null;
 		}
+		disposeFolder();
 		synchronized (fPositionsLock)
 		{
 			fPositions.clear();
@@ -131,10 +132,23 @@ public class CommonReconcilingStrategy implements IReconcilingStrategy, IReconci
 
 	public void setDocument(IDocument document)
 	{
+		disposeFolder();
 		folder = createFoldingComputer(document);
 		fDocument = document;
 	}
 
+	/**
+	 * Lets go of the folder, which may listen to the document.
+	 */
+	private void disposeFolder()
+	{
+		if (folder instanceof RubyRegexpFolder)
+		{
+			((RubyRegexpFolder) folder).dispose();
+		}
+		folder = null;
+	}
+
 	protected IFoldingComputer createFoldingComputer(IDocument document)
 	{
 		return fEditor.createFoldingComputer(document);
@@ -158,7 +172,9 @@ public class CommonReconcilingStrategy implements IReconcilingStrategy, IReconci
 	// FIXME Can folding be made into a build participant?
 	protected void calculatePositions(boolean initialReconcile, IProgressMonitor monitor, IParseRootNode ast)
 	{
-		if (monitor != null && monitor.isCanceled())
+		// the folder goes away when the strategy is disposed
+		IFoldingComputer folder = this.folder;
+		if (folder == null || monitor != null && monitor.isCanceled())
 		{
 			return;
 		}
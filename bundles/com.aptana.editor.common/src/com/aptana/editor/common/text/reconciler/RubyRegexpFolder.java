@@ -1,27 +1,35 @@
 /**
  * Aptana Studio
- * Copyright (c) 2005-2011 by Appcelerator, Inc. All Rights Reserved.
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
  * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
  * Please see the license.html included with this distribution for details.
  * Any modifications to this file must keep this entire header intact.
  */
 package com.aptana.editor.common.text.reconciler;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.jface.text.IDocumentListener;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.Position;
 import org.eclipse.jface.text.source.ISourceViewer;
 import org.eclipse.jface.text.source.projection.ProjectionAnnotation;
+import org.jruby.Ruby;
 import org.jruby.RubyRegexp;
-import org.jruby.RubyString;
-import org.jruby.runtime.builtin.IRubyObject;
 
+import com.aptana.core.util.ObjectUtil;
 import com.aptana.editor.common.AbstractThemeableEditor;
 import com.aptana.editor.common.CommonEditorPlugin;
 import com.aptana.editor.common.scripting.IDocumentScopeManager;
@@ -29,16 +37,59 @@ import com.aptana.parsing.ast.IParseRootNode;
 import com.aptana.scripting.model.BundleManager;
 
 // FIXME Move this to an internal package!
+/**
+ * Folds the lines between those matching the start and stop fold markers of the bundles, at the same indent.
+ * <p>
+ * The markers are translated to {@link Pattern}s (see {@link RubyRegexpTranslator}) and matched on the lines in place;
+ * only those that can't be translated are matched by JRuby. The scopes of the lines are looked up together. After an
+ * edit, the lines before the damaged ones keep their folds, and the lines after them are only scanned until the open
+ * folds and the scopes are the same as in the last folding; the rest of the folds are then those of the last folding.
+ */
 public class RubyRegexpFolder implements IFoldingComputer
 {
 
+	private static final long UNKNOWN_STAMP = IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+
+	/**
+	 * How many lines past the damaged ones have their scopes looked up with them. The folds usually stop changing
+	 * right after the damaged lines.
+	 */
+	private static final int LINES_PAST_DAMAGE = 32;
+
 	private IDocument fDocument;
 	private AbstractThemeableEditor fEditor;
 
+	/**
+	 * The changes made to the document since the last folding.
+	 */
+	private final DamageTracker fDamage;
+
+	/**
+	 * What the last folding found, if it wasn't cancelled and the document didn't change while folding.
+	 */
+	private FoldingRun fLastRun;
+
 	public RubyRegexpFolder(AbstractThemeableEditor editor, IDocument document)
 	{
 		this.fDocument = document;
 		this.fEditor = editor;
+		this.fDamage = new DamageTracker(getModificationStamp());
+		if (document instanceof IDocumentExtension4)
+		{
+			document.addDocumentListener(fDamage);
+		}
+	}
+
+	/**
+	 * Stops tracking the changes made to the document. The folder isn't used once disposed.
+	 */
+	public void dispose()
+	{
+		if (fDocument != null)
+		{
+			fDocument.removeDocumentListener(fDamage);
+		}
+		fLastRun = null;
 	}
 
 	/*
@@ -49,86 +100,120 @@ public class RubyRegexpFolder implements IFoldingComputer
 	public Map<ProjectionAnnotation, Position> emitFoldingRegions(boolean initialReconcile, IProgressMonitor monitor,
 			IParseRootNode ast) throws BadLocationException
 	{
+		FoldingRun lastRun = fLastRun;
+		fLastRun = null;
+		long stamp = getModificationStamp();
+		Damage damage = fDamage.take((lastRun == null) ? UNKNOWN_STAMP : lastRun.stamp, stamp);
+
 		int lineCount = fDocument.getNumberOfLines();
 		if (lineCount <= 1) // Quick hack fix for minified files. We need at least two lines to have folding!
 		{
 			return Collections.emptyMap();
 		}
-		Map<ProjectionAnnotation, Position> newPositions = new HashMap<ProjectionAnnotation, Position>(lineCount >> 2);
-		Map<Integer, Integer> starts = new HashMap<Integer, Integer>(3);
 		if (monitor != null)
 		{
 			monitor.beginTask(Messages.CommonReconcilingStrategy_FoldingTaskName, lineCount);
 		}
-		for (int currentLine = 0; currentLine < lineCount; currentLine++)
+
+		String text = fDocument.get();
+		FoldingRun run = new FoldingRun(stamp, text.length(), lineCount);
+		Markers markers = new Markers(text, run);
+
+		// Start from the last folding when we know what changed since
+		int firstLine = 0;
+		int firstDamagedLine = 0;
+		int lastDamagedLine = lineCount - 1;
+		int lineDelta = 0;
+		if (initialReconcile || lastRun == null || damage == null || damage.start < 0
+				|| lastRun.length + damage.delta != run.length || !markers.sameAs(lastRun))
+		{
+			lastRun = null;
+		}
+		else
+		{
+			firstDamagedLine = fDocument.getLineOfOffset(Math.min(damage.start, run.length));
+			lastDamagedLine = fDocument.getLineOfOffset(Math.min(damage.end, run.length));
+			lineDelta = lineCount - lastRun.lineCount;
+			// the line before the damaged ones may end in a changed scope
+			firstLine = Math.max(0, firstDamagedLine - 1);
+			run.keepStart(lastRun, firstLine);
+			if (monitor != null)
+			{
+				monitor.worked(firstLine);
+			}
+		}
+
+		Map<Integer, Integer> starts = new HashMap<Integer, Integer>(run.getStartsBefore(firstLine));
+		int batchSize = (lastRun == null) ? lineCount : lastDamagedLine - firstLine + 1 + LINES_PAST_DAMAGE;
+		LineScopes scopes = new LineScopes(run, batchSize);
+		for (int currentLine = firstLine; currentLine < lineCount; currentLine++)
 		{
 			// Check for cancellation
 			if (monitor != null && monitor.isCanceled())
-				return newPositions;
+			{
+				return run.toPositions(fDocument);
+			}
 
-			IRegion lineRegion = fDocument.getLineInformation(currentLine);
-			int offset = lineRegion.getOffset();
-			String line = fDocument.get(offset, lineRegion.getLength());
+			scopes.lookUp(currentLine);
+			if (lastRun != null && currentLine > lastDamagedLine
+					&& run.isSameAs(lastRun, currentLine, starts, firstDamagedLine, lastDamagedLine, lineDelta))
+			{
+				// nothing changes past here
+				run.keepEnd(lastRun, currentLine, firstDamagedLine, lastDamagedLine, lineDelta);
+				break;
+			}
+
+			int offset = scopes.getLineOffset(currentLine);
+			int end = scopes.getLineEndOffset(currentLine);
 
 			// Use scope at beginning of line for start regexp
-			RubyRegexp startRegexp = getStartFoldRegexp(getScopeAtOffset(offset));
-			if (startRegexp == null)
+			LineMatcher startMatcher = markers.getStartMatcher(run.startScopes[currentLine]);
+			if (startMatcher == null)
 			{
 				if (monitor != null)
 					monitor.worked(1);
 				continue;
 			}
 			// Use scope at end of line for end regexp
-			RubyRegexp endRegexp = getEndFoldRegexp(getScopeAtOffset(offset + lineRegion.getLength()));
-			if (endRegexp == null)
+			LineMatcher endMatcher = markers.getEndMatcher(run.endScopes[currentLine]);
+			if (endMatcher == null)
 			{
 				if (monitor != null)
 					monitor.worked(1);
 				continue;
 			}
+			boolean changed = false;
 			// Look for an open...
-			RubyString rLine = startRegexp.getRuntime().newString(line);
-			IRubyObject startMatcher = startRegexp.match_m(startRegexp.getRuntime().getCurrentContext(), rLine);
-			if (!startMatcher.isNil())
+			if (startMatcher.matches(text, offset, end))
 			{
-				starts.put(findIndent(line), offset); // cheat and just give offset of line since line resolution is all
-														// that matters
+				// cheat and just remember the line since line resolution is all that matters
+				starts.put(findIndent(text, offset, end), currentLine);
+				changed = true;
 			}
 			// Don't look for an end if there's no open yet!
 			if (starts.size() > 0)
 			{
 				// check to see if we have an open folding region at this indent level...
-				int indent = findIndent(line);
+				int indent = findIndent(text, offset, end);
 				// Subtract one if we're handling /* */ folding!
-				if (line.trim().startsWith("*")) //$NON-NLS-1$
+				if (startsWith(text, offset, end, '*'))
 				{
 					indent--;
 				}
-				if (starts.containsKey(indent))
+				if (starts.containsKey(indent) && endMatcher.matches(text, offset, end))
 				{
-					IRubyObject endMatcher = endRegexp.match_m(endRegexp.getRuntime().getCurrentContext(), rLine);
-					if (!endMatcher.isNil())
+					int startLine = starts.remove(indent);
+					changed = true;
+					if (startLine != currentLine)
 					{
-						int startingOffset = starts.remove(indent);
-						int startLine = fDocument.getLineOfOffset(startingOffset);
-						if (startLine != currentLine)
-						{
-							int end = lineRegion.getOffset() + lineRegion.getLength() + 1; // cheat and just use end of
-																							// line
-							if (end > fDocument.getLength())
-							{
-								end = fDocument.getLength();
-							}
-							int posLength = end - startingOffset;
-							if (posLength > 0)
-							{
-								Position position = new Position(startingOffset, posLength);
-								newPositions.put(new ProjectionAnnotation(), position);
-							}
-						}
+						run.addFold(startLine, currentLine);
 					}
 				}
 			}
+			if (changed)
+			{
+				run.addStarts(currentLine, starts);
+			}
 			if (monitor != null)
 				monitor.worked(1);
 		}
@@ -137,20 +222,32 @@ public class RubyRegexpFolder implements IFoldingComputer
 		{
 			monitor.done();
 		}
-		return newPositions;
+		if (stamp != UNKNOWN_STAMP && getModificationStamp() == stamp)
+		{
+			fLastRun = run;
+		}
+		return run.toPositions(fDocument);
 	}
 
-	protected String getScopeAtOffset(int offset) throws BadLocationException
+	/**
+	 * Returns the scopes at offsets of the document.
+	 * 
+	 * @param offsets
+	 *            in ascending order
+	 * @return
+	 * @throws BadLocationException
+	 */
+	protected String[] getScopesAtOffsets(int[] offsets) throws BadLocationException
 	{
 		if (fEditor != null)
 		{
 			ISourceViewer sv = fEditor.getISourceViewer();
 			if (sv != null)
 			{
-				return getDocumentScopeManager().getScopeAtOffset(sv, offset);
+				return getDocumentScopeManager().getScopesAtOffsets(sv, offsets);
 			}
 		}
-		return getDocumentScopeManager().getScopeAtOffset(fDocument, offset);
+		return getDocumentScopeManager().getScopesAtOffsets(fDocument, offsets);
 	}
 
 	protected IDocumentScopeManager getDocumentScopeManager()
@@ -158,13 +255,22 @@ public class RubyRegexpFolder implements IFoldingComputer
 		return CommonEditorPlugin.getDefault().getDocumentScopeManager();
 	}
 
-	private int findIndent(String text)
+	private long getModificationStamp()
+	{
+		if (fDocument instanceof IDocumentExtension4)
+		{
+			return ((IDocumentExtension4) fDocument).getModificationStamp();
+		}
+		return UNKNOWN_STAMP;
+	}
+
+	private static int findIndent(String text, int offset, int end)
 	{
 		// TODO Handle tab characters and expanding them out to their tab width?
 		int indent = 0;
-		while (indent < text.length())
+		while (offset + indent < end)
 		{
-			if (!Character.isWhitespace(text.charAt(indent)))
+			if (!Character.isWhitespace(text.charAt(offset + indent)))
 				break;
 			indent++;
 		}
@@ -172,6 +278,18 @@ public class RubyRegexpFolder implements IFoldingComputer
 		return indent;
 	}
 
+	/**
+	 * Whether a line starts with a character once trimmed, the way {@link String#trim()} does.
+	 */
+	private static boolean startsWith(String text, int offset, int end, char c)
+	{
+		while (offset < end && text.charAt(offset) <= ' ')
+		{
+			offset++;
+		}
+		return offset < end && text.charAt(offset) == c;
+	}
+
 	protected RubyRegexp getEndFoldRegexp(String scope)
 	{
 		return BundleManager.getInstance().getFoldingStopRegexp(scope);
@@ -182,4 +300,479 @@ public class RubyRegexpFolder implements IFoldingComputer
 		return BundleManager.getInstance().getFoldingStartRegexp(scope);
 	}
 
+	/**
+	 * The scopes at the start and end of the lines, looked up together for as many lines as can be expected to be
+	 * scanned, then for twice as many each time more are scanned.
+	 */
+	private final class LineScopes
+	{
+		private final FoldingRun run;
+		private int batchSize;
+		private int firstLine;
+		private int[] offsets = new int[0];
+
+		private LineScopes(FoldingRun run, int batchSize)
+		{
+			this.run = run;
+			this.batchSize = Math.max(batchSize, LINES_PAST_DAMAGE);
+		}
+
+		private void lookUp(int line) throws BadLocationException
+		{
+			if (line >= firstLine && line < firstLine + offsets.length / 2)
+			{
+				return;
+			}
+			int count = Math.min(batchSize, run.lineCount - line);
+			batchSize *= 2;
+			firstLine = line;
+			offsets = new int[count * 2];
+			for (int i = 0; i < count; i++)
+			{
+				IRegion lineRegion = fDocument.getLineInformation(line + i);
+				offsets[i * 2] = lineRegion.getOffset();
+				offsets[i * 2 + 1] = lineRegion.getOffset() + lineRegion.getLength();
+			}
+			String[] scopes = getScopesAtOffsets(offsets);
+			for (int i = 0; i < count; i++)
+			{
+				run.startScopes[line + i] = scopes[i * 2];
+				run.endScopes[line + i] = scopes[i * 2 + 1];
+			}
+		}
+
+		private int getLineOffset(int line)
+		{
+			return offsets[(line - firstLine) * 2];
+		}
+
+		private int getLineEndOffset(int line)
+		{
+			return offsets[(line - firstLine) * 2 + 1];
+		}
+	}
+
+	/**
+	 * The matchers of the fold markers for the scopes met while folding, the markers being looked up once per scope.
+	 */
+	private final class Markers
+	{
+		private final String text;
+		private final FoldingRun run;
+		private final Map<String, LineMatcher> startMatchers = new HashMap<String, LineMatcher>();
+		private final Map<String, LineMatcher> endMatchers = new HashMap<String, LineMatcher>();
+		private final Map<RubyRegexp, LineMatcher> matchers = new IdentityHashMap<RubyRegexp, LineMatcher>();
+
+		private Markers(String text, FoldingRun run)
+		{
+			this.text = text;
+			this.run = run;
+		}
+
+		private LineMatcher getStartMatcher(String scope)
+		{
+			if (!startMatchers.containsKey(scope))
+			{
+				RubyRegexp regexp = getStartFoldRegexp(scope);
+				run.startMarkers.put(scope, regexp);
+				startMatchers.put(scope, getMatcher(regexp));
+			}
+			return startMatchers.get(scope);
+		}
+
+		private LineMatcher getEndMatcher(String scope)
+		{
+			if (!endMatchers.containsKey(scope))
+			{
+				RubyRegexp regexp = getEndFoldRegexp(scope);
+				run.endMarkers.put(scope, regexp);
+				endMatchers.put(scope, getMatcher(regexp));
+			}
+			return endMatchers.get(scope);
+		}
+
+		private LineMatcher getMatcher(RubyRegexp regexp)
+		{
+			if (regexp == null)
+			{
+				return null;
+			}
+			LineMatcher matcher = matchers.get(regexp);
+			if (matcher == null)
+			{
+				Pattern pattern = RubyRegexpTranslator.translate(regexp);
+				matcher = (pattern == null) ? new RubyLineMatcher(regexp) : new PatternLineMatcher(pattern, text);
+				matchers.put(regexp, matcher);
+			}
+			return matcher;
+		}
+
+		/**
+		 * Whether the scopes met in a folding still have the same markers.
+		 */
+		private boolean sameAs(FoldingRun lastRun)
+		{
+			for (Map.Entry<String, RubyRegexp> entry : lastRun.startMarkers.entrySet())
+			{
+				getStartMatcher(entry.getKey());
+				if (!isSameMarker(entry.getValue(), run.startMarkers.get(entry.getKey())))
+				{
+					return false;
+				}
+			}
+			for (Map.Entry<String, RubyRegexp> entry : lastRun.endMarkers.entrySet())
+			{
+				getEndMatcher(entry.getKey());
+				if (!isSameMarker(entry.getValue(), run.endMarkers.get(entry.getKey())))
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean isSameMarker(RubyRegexp a, RubyRegexp b)
+		{
+			if (a == b)
+			{
+				return true;
+			}
+			return a != null && b != null && a.source().toString().equals(b.source().toString())
+					&& a.getOptions().toEmbeddedOptions() == b.getOptions().toEmbeddedOptions();
+		}
+	}
+
+	/**
+	 * Matches a fold marker against lines of a text.
+	 */
+	private static abstract class LineMatcher
+	{
+		abstract boolean matches(String text, int offset, int end);
+	}
+
+	private static final class PatternLineMatcher extends LineMatcher
+	{
+		private final Matcher matcher;
+
+		private PatternLineMatcher(Pattern pattern, String text)
+		{
+			this.matcher = pattern.matcher(text);
+		}
+
+		@Override
+		boolean matches(String text, int offset, int end)
+		{
+			// The region's bounds are anchoring and opaque, so this is the same as matching the line on its own
+			matcher.region(offset, end);
+			return matcher.find();
+		}
+	}
+
+	/**
+	 * Matches the markers that couldn't be translated.
+	 */
+	private static final class RubyLineMatcher extends LineMatcher
+	{
+		private final RubyRegexp regexp;
+
+		private RubyLineMatcher(RubyRegexp regexp)
+		{
+			this.regexp = regexp;
+		}
+
+		@Override
+		boolean matches(String text, int offset, int end)
+		{
+			Ruby runtime = regexp.getRuntime();
+			return !regexp.match_m(runtime.getCurrentContext(), runtime.newString(text.substring(offset, end))).isNil();
+		}
+	}
+
+	/**
+	 * What a folding found: the folds, the open folds after each line where they changed, the scopes of the lines and
+	 * the markers of the scopes. The open folds map indents to the line the fold starts on.
+	 */
+	private static final class FoldingRun
+	{
+		private final long stamp;
+		private final int length;
+		private final int lineCount;
+		private final String[] startScopes;
+		private final String[] endScopes;
+		private final Map<String, RubyRegexp> startMarkers = new HashMap<String, RubyRegexp>();
+		private final Map<String, RubyRegexp> endMarkers = new HashMap<String, RubyRegexp>();
+
+		/**
+		 * The start and end lines of the folds.
+		 */
+		private int[] folds = new int[32];
+		private int foldCount;
+
+		private final List<Integer> startsLines = new ArrayList<Integer>();
+		private final List<Map<Integer, Integer>> startsAfterLines = new ArrayList<Map<Integer, Integer>>();
+
+		private FoldingRun(long stamp, int length, int lineCount)
+		{
+			this.stamp = stamp;
+			this.length = length;
+			this.lineCount = lineCount;
+			this.startScopes = new String[lineCount];
+			this.endScopes = new String[lineCount];
+		}
+
+		private void addFold(int startLine, int endLine)
+		{
+			if (foldCount * 2 == folds.length)
+			{
+				int[] grown = new int[folds.length * 2];
+				System.arraycopy(folds, 0, grown, 0, folds.length);
+				folds = grown;
+			}
+			folds[foldCount * 2] = startLine;
+			folds[foldCount * 2 + 1] = endLine;
+			foldCount++;
+		}
+
+		private void addStarts(int line, Map<Integer, Integer> starts)
+		{
+			startsLines.add(line);
+			startsAfterLines.add(new HashMap<Integer, Integer>(starts));
+		}
+
+		/**
+		 * Returns the folds open at the start of a line, which mustn't be modified.
+		 */
+		private Map<Integer, Integer> getStartsBefore(int line)
+		{
+			int index = Collections.binarySearch(startsLines, line);
+			if (index < 0)
+			{
+				index = -index - 1;
+			}
+			return (index == 0) ? Collections.<Integer, Integer> emptyMap() : startsAfterLines.get(index - 1);
+		}
+
+		/**
+		 * Takes what the last folding found before a line.
+		 */
+		private void keepStart(FoldingRun lastRun, int line)
+		{
+			System.arraycopy(lastRun.startScopes, 0, startScopes, 0, line);
+			System.arraycopy(lastRun.endScopes, 0, endScopes, 0, line);
+			for (int i = 0; i < lastRun.foldCount; i++)
+			{
+				if (lastRun.folds[i * 2 + 1] < line)
+				{
+					addFold(lastRun.folds[i * 2], lastRun.folds[i * 2 + 1]);
+				}
+			}
+			for (int i = 0; i < lastRun.startsLines.size() && lastRun.startsLines.get(i) < line; i++)
+			{
+				startsLines.add(lastRun.startsLines.get(i));
+				startsAfterLines.add(lastRun.startsAfterLines.get(i));
+			}
+		}
+
+		/**
+		 * Whether a line past the damaged ones has the same scopes and open folds as in the last folding, in which
+		 * case the folding goes on the same from there.
+		 */
+		private boolean isSameAs(FoldingRun lastRun, int line, Map<Integer, Integer> starts, int firstDamagedLine,
+				int lastDamagedLine, int lineDelta)
+		{
+			int lastLine = line - lineDelta;
+			if (lastLine < 0 || lastLine >= lastRun.lineCount
+					|| !ObjectUtil.areEqual(startScopes[line], lastRun.startScopes[lastLine])
+					|| !ObjectUtil.areEqual(endScopes[line], lastRun.endScopes[lastLine]))
+			{
+				return false;
+			}
+			Map<Integer, Integer> lastStarts = lastRun.getStartsBefore(lastLine);
+			if (lastStarts.size() != starts.size())
+			{
+				return false;
+			}
+			for (Map.Entry<Integer, Integer> entry : lastStarts.entrySet())
+			{
+				int startLine = moveLine(entry.getValue(), firstDamagedLine, lastDamagedLine, lineDelta);
+				Integer currentStartLine = starts.get(entry.getKey());
+				if (startLine == -1 || currentStartLine == null || currentStartLine != startLine)
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Takes what the last folding found from a line on, once it's known nothing changes from there.
+		 */
+		private void keepEnd(FoldingRun lastRun, int line, int firstDamagedLine, int lastDamagedLine, int lineDelta)
+		{
+			int lastLine = line - lineDelta;
+			System.arraycopy(lastRun.startScopes, lastLine, startScopes, line, lineCount - line);
+			System.arraycopy(lastRun.endScopes, lastLine, endScopes, line, lineCount - line);
+			for (int i = 0; i < lastRun.foldCount; i++)
+			{
+				if (lastRun.folds[i * 2 + 1] >= lastLine)
+				{
+					// the folds open at the line are the same, so their start is outside the damaged lines
+					addFold(moveLine(lastRun.folds[i * 2], firstDamagedLine, lastDamagedLine, lineDelta),
+							lastRun.folds[i * 2 + 1] + lineDelta);
+				}
+			}
+			for (int i = 0; i < lastRun.startsLines.size(); i++)
+			{
+				int startsLine = lastRun.startsLines.get(i);
+				if (startsLine < lastLine)
+				{
+					continue;
+				}
+				Map<Integer, Integer> starts = new HashMap<Integer, Integer>();
+				for (Map.Entry<Integer, Integer> entry : lastRun.startsAfterLines.get(i).entrySet())
+				{
+					int startLine = moveLine(entry.getValue(), firstDamagedLine, lastDamagedLine, lineDelta);
+					starts.put(entry.getKey(), startLine);
+				}
+				startsLines.add(startsLine + lineDelta);
+				startsAfterLines.add(starts);
+			}
+		}
+
+		/**
+		 * Returns where a line of the last folding is now, or -1 if it was damaged.
+		 */
+		private static int moveLine(int lastLine, int firstDamagedLine, int lastDamagedLine, int lineDelta)
+		{
+			if (lastLine < firstDamagedLine)
+			{
+				return lastLine;
+			}
+			if (lastLine > lastDamagedLine - lineDelta)
+			{
+				return lastLine + lineDelta;
+			}
+			return -1;
+		}
+
+		private Map<ProjectionAnnotation, Position> toPositions(IDocument document) throws BadLocationException
+		{
+			Map<ProjectionAnnotation, Position> newPositions = new HashMap<ProjectionAnnotation, Position>(
+					foldCount * 4 / 3 + 1);
+			for (int i = 0; i < foldCount; i++)
+			{
+				int startingOffset = document.getLineOffset(folds[i * 2]);
+				IRegion lineRegion = document.getLineInformation(folds[i * 2 + 1]);
+				int end = lineRegion.getOffset() + lineRegion.getLength() + 1; // cheat and just use end of line
+				if (end > document.getLength())
+				{
+					end = document.getLength();
+				}
+				int posLength = end - startingOffset;
+				if (posLength > 0)
+				{
+					Position position = new Position(startingOffset, posLength);
+					newPositions.put(new ProjectionAnnotation(), position);
+				}
+			}
+			return newPositions;
+		}
+	}
+
+	/**
+	 * The region of the document changed since some modification stamp, as the offsets it starts at and ends at now,
+	 * and how much longer it is now.
+	 */
+	private static final class Damage
+	{
+		private final int start;
+		private final int end;
+		private final int delta;
+
+		private Damage(int start, int end, int delta)
+		{
+			this.start = start;
+			this.end = end;
+			this.delta = delta;
+		}
+	}
+
+	/**
+	 * Accumulates the changes made to the document, between foldings.
+	 */
+	private static final class DamageTracker implements IDocumentListener
+	{
+		private long stamp;
+		private long baseStamp = UNKNOWN_STAMP;
+		private int start = -1;
+		private int end;
+		private int delta;
+
+		private DamageTracker(long stamp)
+		{
+			this.stamp = stamp;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.jface.text.IDocumentListener#documentAboutToBeChanged(org.eclipse.jface.text.DocumentEvent)
+		 */
+		public void documentAboutToBeChanged(DocumentEvent event)
+		{
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.eclipse.jface.text.IDocumentListener#documentChanged(org.eclipse.jface.text.DocumentEvent)
+		 */
+		public synchronized void documentChanged(DocumentEvent event)
+		{
+			int offset = event.getOffset();
+			int replaced = event.getLength();
+			int inserted = (event.getText() == null) ? 0 : event.getText().length();
+			if (start < 0)
+			{
+				start = offset;
+				end = offset + inserted;
+				delta = inserted - replaced;
+			}
+			else
+			{
+				end = (end >= offset + replaced) ? end + inserted - replaced : offset + inserted;
+				start = Math.min(start, offset);
+				delta += inserted - replaced;
+			}
+			stamp = event.getModificationStamp();
+		}
+
+		/**
+		 * Returns what changed since the document had a stamp, or null if that isn't known, and starts over from the
+		 * stamp the document has now.
+		 * 
+		 * @param since
+		 * @param now
+		 * @return
+		 */
+		private synchronized Damage take(long since, long now)
+		{
+			Damage damage = null;
+			if (now != UNKNOWN_STAMP && stamp == now)
+			{
+				if (since != UNKNOWN_STAMP && since == baseStamp)
+				{
+					damage = new Damage(start, end, delta);
+				}
+				baseStamp = now;
+			}
+			else
+			{
+				// we haven't been told about a change yet, we can't tell what changes from now on
+				baseStamp = UNKNOWN_STAMP;
+			}
+			start = -1;
+			end = 0;
+			delta = 0;
+			return damage;
+		}
+	}
 }
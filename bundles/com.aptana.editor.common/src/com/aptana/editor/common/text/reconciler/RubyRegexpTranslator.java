@@ -0,0 +1,470 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.editor.common.text.reconciler;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.jruby.RubyRegexp;
+import org.jruby.util.RegexpOptions;
+
+/**
+ * Translates the Ruby regexps bundles give as fold markers into {@link Pattern}s that match the same lines, so that
+ * lines can be matched in place instead of being copied into Ruby strings. Only the syntax that has the same meaning
+ * in both flavors once rewritten is translated (the POSIX bracket expressions, <code>\h</code>, the extended mode and
+ * the inline <code>m</code> option are rewritten); for anything else the regexp isn't translated and has to be matched
+ * by JRuby.
+ */
+/* package */final class RubyRegexpTranslator
+{
+
+	private static final Map<String, String> POSIX_CLASSES = new HashMap<String, String>();
+	static
+	{
+		POSIX_CLASSES.put("alnum", "Alnum"); //$NON-NLS-1$ //$NON-NLS-2$
+		POSIX_CLASSES.put("alpha", "Alpha"); //$NON-NLS-1$ //$NON-NLS-2$
+		POSIX_CLASSES.put("ascii", "ASCII"); //$NON-NLS-1$ //$NON-NLS-2$
+		POSIX_CLASSES.put("blank", "Blank"); //$NON-NLS-1$ //$NON-NLS-2$
+		POSIX_CLASSES.put("cntrl", "Cntrl"); //$NON-NLS-1$ //$NON-NLS-2$
+		POSIX_CLASSES.put("digit", "Digit"); //$NON-NLS-1$ //$NON-NLS-2$
+		POSIX_CLASSES.put("graph", "Graph"); //$NON-NLS-1$ //$NON-NLS-2$
+		POSIX_CLASSES.put("lower", "Lower"); //$NON-NLS-1$ //$NON-NLS-2$
+		POSIX_CLASSES.put("print", "Print"); //$NON-NLS-1$ //$NON-NLS-2$
+		POSIX_CLASSES.put("punct", "Punct"); //$NON-NLS-1$ //$NON-NLS-2$
+		POSIX_CLASSES.put("space", "Space"); //$NON-NLS-1$ //$NON-NLS-2$
+		POSIX_CLASSES.put("upper", "Upper"); //$NON-NLS-1$ //$NON-NLS-2$
+		POSIX_CLASSES.put("xdigit", "XDigit"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/**
+	 * The letters that are escapes with the same meaning in both flavors.
+	 */
+	private static final String SAME_ESCAPES = "AzZbBdDsSwWGntrfea"; //$NON-NLS-1$
+
+	private RubyRegexpTranslator()
+	{
+	}
+
+	/**
+	 * Returns the pattern matching what a Ruby regexp matches, or null if the regexp can't be translated.
+	 * 
+	 * @param regexp
+	 * @return
+	 */
+	static Pattern translate(RubyRegexp regexp)
+	{
+		if (regexp == null)
+		{
+			return null;
+		}
+		RegexpOptions options = regexp.getOptions();
+		return translate(regexp.source().toString(), options.isIgnorecase(), options.isExtended(),
+				options.isMultiline());
+	}
+
+	/**
+	 * Returns the pattern matching what a Ruby regexp matches, or null if the regexp can't be translated.
+	 * 
+	 * @param source
+	 *            the source of the Ruby regexp
+	 * @param ignoreCase
+	 * @param extended
+	 * @param multiline
+	 *            in the Ruby sense, where dots match newlines
+	 * @return
+	 */
+	static Pattern translate(String source, boolean ignoreCase, boolean extended, boolean multiline)
+	{
+		String translated = new Translation(source, extended).translate();
+		if (translated == null)
+		{
+			return null;
+		}
+		// Ruby's anchors always match at the line boundaries, and only \n ends lines
+		int flags = Pattern.MULTILINE | Pattern.UNIX_LINES;
+		if (ignoreCase)
+		{
+			flags |= Pattern.CASE_INSENSITIVE;
+		}
+		if (multiline)
+		{
+			flags |= Pattern.DOTALL;
+		}
+		try
+		{
+			return Pattern.compile(translated, flags);
+		}
+		catch (PatternSyntaxException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * The rewriting of one regexp source.
+	 */
+	private static final class Translation
+	{
+		private final String source;
+		private final StringBuilder result;
+		private int index;
+
+		/**
+		 * Whether whitespace and comments are ignored, for each group we're in.
+		 */
+		private final LinkedList<Boolean> extendedByGroup = new LinkedList<Boolean>();
+		private boolean extended;
+		private int classDepth;
+
+		private Translation(String source, boolean extended)
+		{
+			this.source = source;
+			this.result = new StringBuilder(source.length() + 16);
+			this.extended = extended;
+		}
+
+		/**
+		 * Returns the source of the Java pattern, or null if the regexp uses syntax that isn't translated.
+		 */
+		private String translate()
+		{
+			while (index < source.length())
+			{
+				char c = source.charAt(index);
+				boolean translated;
+				if (c == '\\')
+				{
+					translated = escape();
+				}
+				else if (classDepth > 0)
+				{
+					translated = classCharacter(c);
+				}
+				else if (c == '[')
+				{
+					translated = openClass();
+				}
+				else if (c == '(')
+				{
+					translated = openGroup();
+				}
+				else if (c == ')')
+				{
+					translated = closeGroup();
+				}
+				else if (c == '{')
+				{
+					translated = brace();
+				}
+				else if (extended && Character.isWhitespace(c))
+				{
+					index++;
+					translated = true;
+				}
+				else if (extended && c == '#')
+				{
+					int end = source.indexOf('\n', index);
+					index = (end == -1) ? source.length() : end + 1;
+					translated = true;
+				}
+				else
+				{
+					result.append(c);
+					index++;
+					translated = true;
+				}
+				if (!translated)
+				{
+					return null;
+				}
+			}
+			return (classDepth == 0) ? result.toString() : null;
+		}
+
+		private boolean escape()
+		{
+			if (index + 1 >= source.length())
+			{
+				return false;
+			}
+			char next = source.charAt(index + 1);
+			if (next == 'h' || next == 'H')
+			{
+				result.append((next == 'h') ? "\\p{XDigit}" : "\\P{XDigit}"); //$NON-NLS-1$ //$NON-NLS-2$
+				index += 2;
+				return true;
+			}
+			if (next == 'b' && classDepth > 0)
+			{
+				// a backspace in Ruby classes
+				return false;
+			}
+			if (next == 'x')
+			{
+				// Java wants exactly two hex digits
+				if (index + 3 >= source.length() || Character.digit(source.charAt(index + 2), 16) == -1
+						|| Character.digit(source.charAt(index + 3), 16) == -1)
+				{
+					return false;
+				}
+				result.append(source, index, index + 4);
+				index += 4;
+				return true;
+			}
+			if ((next >= '1' && next <= '9') || SAME_ESCAPES.indexOf(next) != -1 || !Character.isLetterOrDigit(next))
+			{
+				result.append('\\').append(next);
+				index += 2;
+				return true;
+			}
+			return false;
+		}
+
+		private boolean openClass()
+		{
+			classDepth++;
+			result.append('[');
+			index++;
+			if (index < source.length() && source.charAt(index) == '^')
+			{
+				result.append('^');
+				index++;
+			}
+			// a leading ']' is a literal in Ruby only
+			return index < source.length() && source.charAt(index) != ']';
+		}
+
+		private boolean classCharacter(char c)
+		{
+			if (c == '[')
+			{
+				if (source.startsWith("[:", index)) //$NON-NLS-1$
+				{
+					return posixClass();
+				}
+				return openClass();
+			}
+			if (c == ']')
+			{
+				classDepth--;
+			}
+			result.append(c);
+			index++;
+			return true;
+		}
+
+		private boolean posixClass()
+		{
+			int end = source.indexOf(":]", index + 2); //$NON-NLS-1$
+			if (end == -1)
+			{
+				return false;
+			}
+			String name = source.substring(index + 2, end);
+			boolean negated = name.startsWith("^"); //$NON-NLS-1$
+			if (negated)
+			{
+				name = name.substring(1);
+			}
+			if ("word".equals(name)) //$NON-NLS-1$
+			{
+				result.append(negated ? "\\W" : "\\w"); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			else
+			{
+				String javaName = POSIX_CLASSES.get(name);
+				if (javaName == null)
+				{
+					return false;
+				}
+				result.append(negated ? "\\P{" : "\\p{").append(javaName).append('}'); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+			index = end + 2;
+			return true;
+		}
+
+		private boolean openGroup()
+		{
+			extendedByGroup.addLast(extended);
+			if (!source.startsWith("(?", index)) //$NON-NLS-1$
+			{
+				result.append('(');
+				index++;
+				return true;
+			}
+			if (index + 2 >= source.length())
+			{
+				return false;
+			}
+			char kind = source.charAt(index + 2);
+			switch (kind)
+			{
+				case ':':
+				case '=':
+				case '!':
+				case '>':
+					result.append(source, index, index + 3);
+					index += 3;
+					return true;
+
+				case '<':
+					// lookbehinds only, named groups aren't translated
+					if (index + 3 < source.length()
+							&& (source.charAt(index + 3) == '=' || source.charAt(index + 3) == '!'))
+					{
+						result.append(source, index, index + 4);
+						index += 4;
+						return true;
+					}
+					return false;
+
+				case '#':
+					int end = source.indexOf(')', index);
+					if (end == -1)
+					{
+						return false;
+					}
+					extendedByGroup.removeLast();
+					index = end + 1;
+					return true;
+
+				default:
+					return options();
+			}
+		}
+
+		/**
+		 * Translates an option group like <code>(?mi-x)</code> or <code>(?x:...)</code>. Ruby's m is Java's s, and the
+		 * extended mode is dropped since whitespace and comments are left out of the translation.
+		 */
+		private boolean options()
+		{
+			boolean on = true;
+			boolean groupExtended = extended;
+			StringBuilder enabled = new StringBuilder();
+			StringBuilder disabled = new StringBuilder();
+			for (int i = index + 2; i < source.length(); i++)
+			{
+				char c = source.charAt(i);
+				switch (c)
+				{
+					case '-':
+						if (!on)
+						{
+							return false;
+						}
+						on = false;
+						break;
+
+					case 'm':
+						(on ? enabled : disabled).append('s');
+						break;
+
+					case 'i':
+						(on ? enabled : disabled).append('i');
+						break;
+
+					case 'x':
+						groupExtended = on;
+						break;
+
+					case ')':
+					case ':':
+						result.append("(?").append(enabled); //$NON-NLS-1$
+						if (disabled.length() > 0)
+						{
+							result.append('-').append(disabled);
+						}
+						if (c == ')')
+						{
+							// applies to the rest of the enclosing group
+							extendedByGroup.removeLast();
+							if (enabled.length() == 0 && disabled.length() == 0)
+							{
+								result.setLength(result.length() - 2);
+							}
+							else
+							{
+								result.append(')');
+							}
+						}
+						else
+						{
+							result.append(':');
+						}
+						extended = groupExtended;
+						index = i + 1;
+						return true;
+
+					default:
+						return false;
+				}
+			}
+			return false;
+		}
+
+		private boolean closeGroup()
+		{
+			if (extendedByGroup.isEmpty())
+			{
+				return false;
+			}
+			extended = extendedByGroup.removeLast();
+			result.append(')');
+			index++;
+			return true;
+		}
+
+		/**
+		 * A brace is a quantifier only when it's well formed, otherwise it's a literal in Ruby.
+		 */
+		private boolean brace()
+		{
+			int i = index + 1;
+			int minStart = i;
+			while (i < source.length() && Character.isDigit(source.charAt(i)))
+			{
+				i++;
+			}
+			boolean hasMin = i > minStart;
+			boolean hasComma = i < source.length() && source.charAt(i) == ',';
+			if (hasComma)
+			{
+				i++;
+			}
+			int maxStart = i;
+			while (i < source.length() && Character.isDigit(source.charAt(i)))
+			{
+				i++;
+			}
+			boolean hasMax = i > maxStart;
+			boolean closed = i < source.length() && source.charAt(i) == '}';
+
+			if (closed && hasMin)
+			{
+				result.append(source, index, i + 1);
+			}
+			else if (closed && hasComma && hasMax)
+			{
+				// {,n} is {0,n}
+				result.append("{0").append(source, maxStart - 1, i + 1); //$NON-NLS-1$
+			}
+			else
+			{
+				result.append("\\{"); //$NON-NLS-1$
+				index++;
+				return true;
+			}
+			index = i + 1;
+			return true;
+		}
+	}
+}
@@ -46,6 +46,9 @@ import com.aptana.editor.js.outline.JSOutlineLabelProvider;
 import com.aptana.js.core.IJSConstants;
 import com.aptana.js.core.model.PropertyElement;
 import com.aptana.js.core.model.SinceElement;
+import com.aptana.parsing.ParseResult;
+import com.aptana.parsing.ParseState;
+import com.aptana.parsing.ParserPoolFactory;
 import com.aptana.parsing.ast.INameNode;
 import com.aptana.parsing.ast.IParseNode;
 import com.aptana.parsing.ast.IParseRootNode;
@@ -271,6 +274,13 @@ public class JSSourceEditor extends AbstractThemeableEditor
 		}
 	}
 
+	/**
+	 * The source and result of the last parse, used to only re-parse the modified statements on the next one
+	 */
+	private final Object lastParseLock = new Object();
+	private String lastParsedSource;
+	private ParseResult lastParseResult;
+
 	@Override
 	protected void initializeEditor()
 	{
@@ -358,6 +368,32 @@ public class JSSourceEditor extends AbstractThemeableEditor
 		return new JSFoldingComputer(this, document);
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.editor.common.AbstractThemeableEditor#doGetAST(org.eclipse.jface.text.IDocument)
+	 */
+	@Override
+	protected ParseResult doGetAST(IDocument document) throws Exception
+	{
+		String source = document.get();
+		ParseState parseState = new ParseState(source);
+
+		synchronized (lastParseLock)
+		{
+			parseState.setPreviousParse(lastParsedSource, lastParseResult);
+		}
+
+		ParseResult result = ParserPoolFactory.parse(getContentType(), parseState);
+
+		synchronized (lastParseLock)
+		{
+			lastParsedSource = source;
+			lastParseResult = result;
+		}
+
+		return result;
+	}
+
 	@Override
 	public String getContentType()
 	{
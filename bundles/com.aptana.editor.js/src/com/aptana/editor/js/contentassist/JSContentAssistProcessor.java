@@ -420,6 +420,8 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 			if (property.getOwningType().startsWith("$module")) //$NON-NLS-1$
 			{
 				IPath path = getQueryHelper().getModulePath(property.getOwningType());
+				// don't modify the property, it's shared with the index element cache
+				property = JSIndexQueryHelper.copyMember(property);
 				property.setOwningType(path.toOSString());
 			}
 			PropertyElementProposal proposal = new PropertyElementProposal(property, offset, replaceLength, projectURI);
@@ -29,7 +29,6 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
-import java.util.Map;
 import java.util.TimeZone;
 import java.util.regex.Matcher;
 
@@ -47,7 +46,7 @@ import org.eclipse.core.runtime.Status;
 
 import com.aptana.core.io.vfs.ExtendedFileInfo;
 import com.aptana.core.io.vfs.IExtendedFileStore;
-import com.aptana.core.util.ExpiringMap;
+import com.aptana.core.io.vfs.PathCache;
 import com.aptana.filesystem.ftp.FTPPlugin;
 import com.aptana.filesystem.ftp.IFTPConnectionFileManager;
 import com.aptana.filesystem.ftp.IFTPConstants;
@@ -83,6 +82,11 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 
 	private final static String WINDOWS_STR = "WINDOWS"; //$NON-NLS-1$
 
+	/**
+	 * Files are read and written over connections of the pool, several at a time.
+	 */
+	private static final int MAX_CONCURRENT_TRANSFERS = 4;
+
 	private final static SimpleDateFormat[] UTIME_FORMATS = new SimpleDateFormat[] {
 			new SimpleDateFormat("'UTIME' yyyyMMddHHmmss '{0}'"), //$NON-NLS-1$
 			new SimpleDateFormat("'UTIME {0}' yyyyMMddHHmmss yyyyMMddHHmmss yyyyMMddHHmmss 'UTC'"), //$NON-NLS-1$
@@ -97,7 +101,7 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 	private Boolean statSupported = null;
 	private Boolean listASupported = null;
 	private int utimeFormat = -1;
-	private Map<IPath, FTPFile> ftpFileCache = new ExpiringMap<IPath, FTPFile>(CACHE_TTL);
+	private PathCache<FTPFile> ftpFileCache = new PathCache<FTPFile>(CACHE_TTL, CACHE_MAX_FILES);
 	private long serverToLocalTimeZoneShift = Integer.MIN_VALUE;
 	protected boolean hasServerInfo;
 	protected PrintWriter messageLogWriter;
@@ -561,6 +565,16 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.core.io.vfs.BaseConnectionFileManager#getMaxConcurrentTransfers()
+	 */
+	@Override
+	public int getMaxConcurrentTransfers()
+	{
+		return MAX_CONCURRENT_TRANSFERS;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.core.io.vfs.IConnectionFileManager#isConnected()
@@ -686,14 +700,7 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 
 	private void clearCacheAbsolute(IPath path)
 	{
-		int segments = path.segmentCount();
-		for (IPath p : new ArrayList<IPath>(ftpFileCache.keySet()))
-		{
-			if (p.segmentCount() >= segments && path.matchingFirstSegments(p) == segments)
-			{
-				ftpFileCache.remove(p);
-			}
-		}
+		ftpFileCache.removeAll(path);
 	}
 
 	/*
@@ -1102,7 +1109,11 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 					{
 						public void run()
 						{
-							clearCacheAbsolute(path);
+							// closed outside of the manager's lock
+							synchronized (FTPConnectionFileManager.this)
+							{
+								clearCacheAbsolute(path);
+							}
 						}
 					});
 		}
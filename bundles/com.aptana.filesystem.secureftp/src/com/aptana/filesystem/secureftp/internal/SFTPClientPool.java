@@ -0,0 +1,65 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.aptana.filesystem.secureftp.internal;
+
+import org.eclipse.core.runtime.Platform;
+
+import com.aptana.core.util.KeepAliveObjectPool;
+import com.aptana.filesystem.ftp.FTPPlugin;
+import com.aptana.filesystem.ftp.preferences.FTPPreferenceInitializer;
+import com.aptana.filesystem.ftp.preferences.IFTPPreferenceConstants;
+import com.enterprisedt.net.ftp.ssh.SSHFTPClient;
+
+/**
+ * The SFTP connections files are transferred over, besides the one of the connection file manager. They are created
+ * unconnected, the manager connects them on first use.
+ */
+public final class SFTPClientPool extends KeepAliveObjectPool<SSHFTPClient> {
+
+	private SFTPConnectionFileManager manager;
+
+	public SFTPClientPool(SFTPConnectionFileManager manager) {
+		super(Platform.getPreferencesService().getInt(FTPPlugin.PLUGIN_ID, IFTPPreferenceConstants.KEEP_ALIVE_TIME,
+				FTPPreferenceInitializer.DEFAULT_KEEP_ALIVE_MINUTES, null) * 60 * 1000);
+		this.manager = manager;
+		start();
+	}
+
+	public SSHFTPClient create() {
+		return manager.newClient();
+	}
+
+	public void expire(SSHFTPClient ftpClient) {
+		if (ftpClient == null) {
+			return;
+		}
+		try {
+			ftpClient.quit();
+		} catch (Exception e) {
+			try {
+				ftpClient.quitImmediately();
+			} catch (Exception ignore) {
+				ignore.getCause();
+			}
+		}
+	}
+
+	public boolean validate(SSHFTPClient o) {
+		if (!o.connected()) {
+			return false;
+		}
+		try {
+			o.keepAlive();
+		} catch (Exception e) {
+			// ignore
+			return false;
+		}
+		return true;
+	}
+}
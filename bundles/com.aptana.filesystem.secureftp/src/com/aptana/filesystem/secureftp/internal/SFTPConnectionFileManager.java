@@ -30,7 +30,6 @@ import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.Map;
 
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.runtime.Assert;
@@ -45,7 +44,7 @@ import org.eclipse.core.runtime.Status;
 
 import com.aptana.core.io.vfs.ExtendedFileInfo;
 import com.aptana.core.io.vfs.IExtendedFileStore;
-import com.aptana.core.util.ExpiringMap;
+import com.aptana.core.io.vfs.PathCache;
 import com.aptana.filesystem.ftp.Policy;
 import com.aptana.filesystem.ftp.internal.BaseFTPConnectionFileManager;
 import com.aptana.filesystem.secureftp.ISFTPConnectionFileManager;
@@ -74,11 +73,19 @@ import com.enterprisedt.net.j2ssh.transport.publickey.SshPrivateKeyFile;
 public class SFTPConnectionFileManager extends BaseFTPConnectionFileManager implements ISFTPConnectionFileManager
 {
 
+	/**
+	 * Files are read and written over connections of the pool, several at a time.
+	 */
+	private static final int MAX_CONCURRENT_TRANSFERS = 4;
+
 	private SSHFTPClient ftpClient;
 	private IPath keyFilePath;
 	private String transferType;
+	private String encoding;
+	private String compression;
+	private SFTPClientPool pool;
 	private IPath cwd;
-	private Map<IPath, FTPFile> ftpFileCache = new ExpiringMap<IPath, FTPFile>(CACHE_TTL);
+	private PathCache<FTPFile> ftpFileCache = new PathCache<FTPFile>(CACHE_TTL, CACHE_MAX_FILES);
 
 	private Thread keepaliveThread;
 
@@ -110,7 +117,10 @@ public class SFTPConnectionFileManager extends BaseFTPConnectionFileManager impl
 				this.authId = Policy.generateAuthId("SFTP", login, host, port); //$NON-NLS-1$
 			}
 			this.transferType = transferType;
+			this.encoding = encoding;
+			this.compression = compression;
 			initFTPClient(ftpClient, encoding, compression);
+			this.pool = new SFTPClientPool(this);
 		}
 		catch (Exception e)
 		{
@@ -443,6 +453,7 @@ public class SFTPConnectionFileManager extends BaseFTPConnectionFileManager impl
 		finally
 		{
 			cwd = null;
+			pool.dispose();
 			cleanup();
 			monitor.done();
 		}
@@ -457,6 +468,67 @@ public class SFTPConnectionFileManager extends BaseFTPConnectionFileManager impl
 		return ftpClient != null && ftpClient.connected();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.core.io.vfs.BaseConnectionFileManager#getMaxConcurrentTransfers()
+	 */
+	@Override
+	public int getMaxConcurrentTransfers()
+	{
+		return MAX_CONCURRENT_TRANSFERS;
+	}
+
+	SSHFTPClient newClient()
+	{
+		return new SSHFTPClient();
+	}
+
+	/**
+	 * Connects a client of the pool the way the main one is, with the credentials it was connected with (so without
+	 * prompting).
+	 */
+	private void initAndAuthFTPClient(SSHFTPClient client, IProgressMonitor monitor) throws Exception
+	{
+		if (client.connected())
+		{
+			return;
+		}
+		initFTPClient(client, encoding, compression);
+		client.setRemoteHost(host);
+		client.setRemotePort(port);
+		if (keyFilePath != null)
+		{
+			client.setAuthentication(keyFilePath.toOSString(), login, String.copyValueOf(password));
+		}
+		else
+		{
+			client.setAuthentication(login, String.copyValueOf(password));
+		}
+		Policy.checkCanceled(monitor);
+		client.connect();
+		client.setType(ISFTPConstants.TRANSFER_TYPE_ASCII.equals(transferType) ? FTPTransferType.ASCII
+				: FTPTransferType.BINARY);
+		monitor.worked(1);
+	}
+
+	/**
+	 * Checks the parent directory of a file exists, the way {@link #changeCurrentDir(IPath)} does it for the main
+	 * client.
+	 */
+	private static void checkParentDir(SSHFTPClient client, IPath path) throws FTPException, IOException,
+			PermissionDeniedException
+	{
+		IPath dirPath = path.removeLastSegments(1);
+		try
+		{
+			client.chdir(dirPath.toPortableString());
+		}
+		catch (FTPException e)
+		{
+			throwWrappedException(e, dirPath, SshFxpStatus.STATUS_FX_FAILURE);
+		}
+	}
+
 	protected void changeCurrentDir(IPath path) throws FTPException, IOException, PermissionDeniedException
 	{
 		try
@@ -545,14 +617,7 @@ public class SFTPConnectionFileManager extends BaseFTPConnectionFileManager impl
 
 	private void clearCacheAbsolute(IPath path)
 	{
-		int segments = path.segmentCount();
-		for (IPath p : new ArrayList<IPath>(ftpFileCache.keySet()))
-		{
-			if (p.segmentCount() >= segments && path.matchingFirstSegments(p) == segments)
-			{
-				ftpFileCache.remove(p);
-			}
-		}
+		ftpFileCache.removeAll(path);
 	}
 
 	/*
@@ -1081,15 +1146,18 @@ public class SFTPConnectionFileManager extends BaseFTPConnectionFileManager impl
 	protected InputStream readFile(IPath path, IProgressMonitor monitor) throws CoreException, FileNotFoundException
 	{
 		monitor.beginTask(Messages.SFTPConnectionFileManager_InitiatingFileDownload, 4);
+		SSHFTPClient downloadFtpClient = pool.checkOut();
 		try
 		{
+			initAndAuthFTPClient(downloadFtpClient, monitor);
 			Policy.checkCanceled(monitor);
-			changeCurrentDir(path.removeLastSegments(1));
+			checkParentDir(downloadFtpClient, path);
 			monitor.worked(1);
 			Policy.checkCanceled(monitor);
 			try
 			{
-				return new SFTPFileDownloadInputStream(new SSHFTPInputStream(ftpClient, path.toPortableString()));
+				return new SFTPFileDownloadInputStream(pool, downloadFtpClient, new SSHFTPInputStream(
+						downloadFtpClient, path.toPortableString()));
 			}
 			catch (FTPException e)
 			{
@@ -1099,6 +1167,7 @@ public class SFTPConnectionFileManager extends BaseFTPConnectionFileManager impl
 		}
 		catch (Exception e)
 		{
+			pool.checkIn(downloadFtpClient);
 			if (e instanceof OperationCanceledException)
 			{
 				throw (OperationCanceledException) e;
@@ -1126,25 +1195,33 @@ public class SFTPConnectionFileManager extends BaseFTPConnectionFileManager impl
 			throws CoreException, FileNotFoundException
 	{
 		monitor.beginTask(Messages.SFTPConnectionFileManager_FailedInitiatingFile, 4);
+		SSHFTPClient uploadFtpClient = pool.checkOut();
 		try
 		{
+			initAndAuthFTPClient(uploadFtpClient, monitor);
 			Policy.checkCanceled(monitor);
-			changeCurrentDir(path.removeLastSegments(1));
+			checkParentDir(uploadFtpClient, path);
 			monitor.worked(1);
 			Policy.checkCanceled(monitor);
-			return new SFTPFileUploadOutputStream(ftpClient, new SSHFTPOutputStream(ftpClient, useTemporary ? path
-					.removeLastSegments(1).append(generateTempFileName(path.lastSegment())).toPortableString()
-					: path.toPortableString()), useTemporary ? path.toPortableString() : null, new Date(), permissions,
+			String remoteFile = useTemporary ? path.removeLastSegments(1)
+					.append(generateTempFileName(path.lastSegment())).toPortableString() : path.toPortableString();
+			return new SFTPFileUploadOutputStream(pool, uploadFtpClient, new SSHFTPOutputStream(uploadFtpClient,
+					remoteFile), useTemporary ? path.toPortableString() : null, new Date(), permissions,
 					new Runnable()
 					{
 						public void run()
 						{
-							clearCacheAbsolute(path);
+							// closed outside of the manager's lock
+							synchronized (SFTPConnectionFileManager.this)
+							{
+								clearCacheAbsolute(path);
+							}
 						}
 					});
 		}
 		catch (Exception e)
 		{
+			pool.checkIn(uploadFtpClient);
 			if (e instanceof OperationCanceledException)
 			{
 				throw (OperationCanceledException) e;
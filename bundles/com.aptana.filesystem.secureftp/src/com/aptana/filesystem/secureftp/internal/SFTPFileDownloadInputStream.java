@@ -15,6 +15,7 @@ import java.io.InputStream;
 import org.eclipse.core.runtime.Status;
 
 import com.enterprisedt.net.ftp.FileTransferInputStream;
+import com.enterprisedt.net.ftp.ssh.SSHFTPClient;
 
 /**
  * @author Max Stepanov
@@ -22,12 +23,17 @@ import com.enterprisedt.net.ftp.FileTransferInputStream;
  */
 public class SFTPFileDownloadInputStream extends InputStream {
 
+	private SFTPClientPool pool;
+	private SSHFTPClient ftpClient;
 	private FileTransferInputStream ftpInputStream;
 	
 	/**
-	 * 
+	 * @param pool
+	 *            the pool to give the client back to once done
 	 */
-	public SFTPFileDownloadInputStream(FileTransferInputStream ftpInputStream) {
+	public SFTPFileDownloadInputStream(SFTPClientPool pool, SSHFTPClient ftpClient, FileTransferInputStream ftpInputStream) {
+		this.pool = pool;
+		this.ftpClient = ftpClient;
 		this.ftpInputStream = ftpInputStream;
 	}
 	
@@ -36,6 +42,8 @@ public class SFTPFileDownloadInputStream extends InputStream {
 			ftpInputStream.close();
 		} catch (IOException e) {
 			SecureFTPPlugin.log(new Status(Status.ERROR, SecureFTPPlugin.PLUGIN_ID, Messages.SFTPFileDownloadInputStream_ErrorDownload, e));
+		} finally {
+			pool.checkIn(ftpClient);
 		}
 	}
 
@@ -27,6 +27,7 @@ import com.enterprisedt.net.j2ssh.sftp.SshFxpStatus;
  */
 public class SFTPFileUploadOutputStream extends OutputStream {
 
+	private SFTPClientPool pool;
 	private SSHFTPClient ftpClient;
 	private FileTransferOutputStream ftpOutputStream;
 	private String filename;
@@ -35,9 +36,11 @@ public class SFTPFileUploadOutputStream extends OutputStream {
 	private Runnable completeRunnable;
 	
 	/**
-	 * 
+	 * @param pool
+	 *            the pool to give the client back to once done
 	 */
-	public SFTPFileUploadOutputStream(SSHFTPClient ftpClient, FileTransferOutputStream ftpOutputStream, String filename, Date modificationTime, long permissions, Runnable completeRunnable) {
+	public SFTPFileUploadOutputStream(SFTPClientPool pool, SSHFTPClient ftpClient, FileTransferOutputStream ftpOutputStream, String filename, Date modificationTime, long permissions, Runnable completeRunnable) {
+		this.pool = pool;
 		this.ftpClient = ftpClient;
 		this.ftpOutputStream = ftpOutputStream;
 		this.filename = filename;
@@ -61,6 +64,7 @@ public class SFTPFileUploadOutputStream extends OutputStream {
 			} catch (IOException e) {
 				SecureFTPPlugin.log(new Status(Status.ERROR, SecureFTPPlugin.PLUGIN_ID, Messages.SFTPFileUploadOutputStream_ErrorCloseStream, e));
 			}
+			pool.checkIn(ftpClient);
 			if (completeRunnable != null) {
 				completeRunnable.run();
 				completeRunnable = null;
@@ -0,0 +1,320 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.filewatcher;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import net.contentobjects.jnotify.IJNotify;
+import net.contentobjects.jnotify.JNotifyListener;
+
+/**
+ * Receives the raw notifications of a watch and holds them until the watched files have been quiet for the coalescing
+ * window, collapsing the successive changes to each file, then delivers them as one batch on the dispatch thread.
+ * <p>
+ * A steady stream of changes (a file being written to continuously, say) doesn't hold the batch forever: it's delivered
+ * anyway once its first change waited {@value #MAX_DELAY_FACTOR} windows.
+ */
+/* package */class FileEventCoalescer implements JNotifyListener
+{
+
+	private static final int MAX_DELAY_FACTOR = 10;
+
+	/**
+	 * The thread delivering the batches of all the watches, it doesn't keep the VM alive.
+	 */
+	private static ScheduledExecutorService dispatcher;
+
+	private final IFileWatcherBatchListener listener;
+	private final int mask;
+	private final long window;
+
+	/**
+	 * The changes not delivered yet, in the order they first happened.
+	 */
+	private List<PendingEvent> pending = new ArrayList<PendingEvent>();
+
+	/**
+	 * The pending changes by file, for those that later changes to the same file can still be collapsed into.
+	 */
+	private final Map<String, PendingEvent> open = new HashMap<String, PendingEvent>();
+
+	private final Runnable flushTask = new Runnable()
+	{
+		public void run()
+		{
+			flush();
+		}
+	};
+
+	private long firstEventTime;
+	private long lastEventTime;
+	private ScheduledFuture<?> flush;
+	private boolean disposed;
+
+	/**
+	 * @param listener
+	 * @param mask
+	 *            the changes the watch was added for
+	 * @param window
+	 *            how long the files have to be quiet before the changes are delivered, in milliseconds
+	 */
+	FileEventCoalescer(IFileWatcherBatchListener listener, int mask, long window)
+	{
+		this.listener = listener;
+		this.mask = mask;
+		this.window = Math.max(0, window);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.contentobjects.jnotify.JNotifyListener#fileCreated(int, java.lang.String, java.lang.String)
+	 */
+	public void fileCreated(int wd, String rootPath, String name)
+	{
+		add(wd, IJNotify.FILE_CREATED, rootPath, name);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.contentobjects.jnotify.JNotifyListener#fileDeleted(int, java.lang.String, java.lang.String)
+	 */
+	public void fileDeleted(int wd, String rootPath, String name)
+	{
+		add(wd, IJNotify.FILE_DELETED, rootPath, name);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.contentobjects.jnotify.JNotifyListener#fileModified(int, java.lang.String, java.lang.String)
+	 */
+	public void fileModified(int wd, String rootPath, String name)
+	{
+		add(wd, IJNotify.FILE_MODIFIED, rootPath, name);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.contentobjects.jnotify.JNotifyListener#fileRenamed(int, java.lang.String, java.lang.String,
+	 * java.lang.String)
+	 */
+	public synchronized void fileRenamed(int wd, String rootPath, String oldName, String newName)
+	{
+		if (disposed)
+		{
+			return;
+		}
+		// renames are kept as they are, and changes to either file after it are no longer collapsed into those before
+		open.remove(key(rootPath, oldName));
+		open.remove(key(rootPath, newName));
+		pending.add(new PendingEvent(wd, IJNotify.FILE_RENAMED, rootPath, newName, oldName));
+		changed();
+	}
+
+	/**
+	 * Drops the changes not delivered yet, the watch was removed.
+	 */
+	synchronized void dispose()
+	{
+		disposed = true;
+		pending.clear();
+		open.clear();
+		if (flush != null)
+		{
+			flush.cancel(false);
+			flush = null;
+		}
+	}
+
+	private synchronized void add(int wd, int type, String rootPath, String name)
+	{
+		if (disposed)
+		{
+			return;
+		}
+		String key = key(rootPath, name);
+		PendingEvent previous = open.get(key);
+		if (previous != null)
+		{
+			int merged = merge(previous.type, type);
+			if (merged == 0)
+			{
+				// created then deleted, nothing happened as far as the listener is concerned
+				previous.cancelled = true;
+				open.remove(key);
+			}
+			else if (merged > 0)
+			{
+				previous.type = merged;
+			}
+			else
+			{
+				previous = null;
+			}
+		}
+		if (previous == null)
+		{
+			PendingEvent event = new PendingEvent(wd, type, rootPath, name, null);
+			pending.add(event);
+			open.put(key, event);
+		}
+		changed();
+	}
+
+	/**
+	 * Collapses a change into the previous one to the same file.
+	 * 
+	 * @return the change they amount to, 0 if they cancel out, or -1 if they can't be collapsed
+	 */
+	private int merge(int previous, int type)
+	{
+		switch (type)
+		{
+			case IJNotify.FILE_CREATED:
+				if (previous == IJNotify.FILE_DELETED)
+				{
+					// replaced, unless the watch doesn't want modifications: then it gets both
+					return ((mask & IJNotify.FILE_MODIFIED) != 0) ? IJNotify.FILE_MODIFIED : -1;
+				}
+				return previous;
+			case IJNotify.FILE_MODIFIED:
+				return previous;
+			case IJNotify.FILE_DELETED:
+				return (previous == IJNotify.FILE_CREATED) ? 0 : IJNotify.FILE_DELETED;
+			default:
+				return -1;
+		}
+	}
+
+	private void changed()
+	{
+		long now = now();
+		if (flush == null)
+		{
+			firstEventTime = now;
+			flush = getDispatcher().schedule(flushTask, window, TimeUnit.MILLISECONDS);
+		}
+		lastEventTime = now;
+	}
+
+	/**
+	 * Delivers the pending changes if they're due, or reschedules their delivery for when they are.
+	 */
+	void flush()
+	{
+		List<PendingEvent> batch;
+		synchronized (this)
+		{
+			if (disposed)
+			{
+				return;
+			}
+			long now = now();
+			long due = Math.min(lastEventTime + window, firstEventTime + window * MAX_DELAY_FACTOR);
+			if (now < due)
+			{
+				flush = getDispatcher().schedule(flushTask, due - now, TimeUnit.MILLISECONDS);
+				return;
+			}
+			batch = pending;
+			pending = new ArrayList<PendingEvent>();
+			open.clear();
+			flush = null;
+		}
+
+		List<FileWatcherEvent> events = new ArrayList<FileWatcherEvent>(batch.size());
+		for (PendingEvent event : batch)
+		{
+			if (!event.cancelled)
+			{
+				events.add(new FileWatcherEvent(event.wd, event.type, event.rootPath, event.name, event.oldName));
+			}
+		}
+		if (events.isEmpty())
+		{
+			return;
+		}
+		try
+		{
+			listener.filesChanged(events);
+		}
+		catch (Throwable e)
+		{
+			FileWatcherPlugin.log(e);
+		}
+	}
+
+	/**
+	 * The clock the window is measured with, in milliseconds.
+	 */
+	long now()
+	{
+		return System.currentTimeMillis();
+	}
+
+	private static String key(String rootPath, String name)
+	{
+		return rootPath + File.separatorChar + name;
+	}
+
+	private static synchronized ScheduledExecutorService getDispatcher()
+	{
+		if (dispatcher == null)
+		{
+			dispatcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+			{
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "File Watcher Event Dispatcher"); //$NON-NLS-1$
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return dispatcher;
+	}
+
+	/**
+	 * Stops the dispatch thread, the changes not delivered yet are dropped.
+	 */
+	static synchronized void shutdown()
+	{
+		if (dispatcher != null)
+		{
+			dispatcher.shutdownNow();
+			dispatcher = null;
+		}
+	}
+
+	private static final class PendingEvent
+	{
+		private final int wd;
+		private final String rootPath;
+		private final String name;
+		private final String oldName;
+		private int type;
+		private boolean cancelled;
+
+		private PendingEvent(int wd, int type, String rootPath, String name, String oldName)
+		{
+			this.wd = wd;
+			this.type = type;
+			this.rootPath = rootPath;
+			this.name = name;
+			this.oldName = oldName;
+		}
+	}
+}
@@ -7,6 +7,9 @@
  */
 package com.aptana.filewatcher;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import net.contentobjects.jnotify.IJNotify;
 import net.contentobjects.jnotify.JNotifyException;
 import net.contentobjects.jnotify.JNotifyListener;
@@ -19,8 +22,20 @@ import com.aptana.filewatcher.poller.PollingNotifier;
 public class FileWatcher
 {
 
+	/**
+	 * The system property setting the default coalescing window, in milliseconds.
+	 */
+	public static final String COALESCING_WINDOW_PROPERTY = "com.aptana.filewatcher.coalescingWindow"; //$NON-NLS-1$
+
+	/**
+	 * How long the watched files have to be quiet before their changes are delivered, by default, in milliseconds.
+	 */
+	public static final long DEFAULT_COALESCING_WINDOW = 100;
+
 	private static IJNotify _instance;
 	private static boolean fgNotify = true;
+	private static long coalescingWindow = Long.getLong(COALESCING_WINDOW_PROPERTY, DEFAULT_COALESCING_WINDOW);
+	private static final Map<Integer, FileEventCoalescer> coalescers = new HashMap<Integer, FileEventCoalescer>();
 
 	private synchronized static IJNotify instance()
 	{
@@ -65,17 +80,90 @@ public class FileWatcher
 		return addWatch(path, mask, watchSubtree, true, listener);
 	}
 
+	/**
+	 * Watches a path, handing the changes to the listener one at a time. The changes are coalesced like for an
+	 * {@link IFileWatcherBatchListener}, and each batch is replayed to the listener.
+	 * 
+	 * @return the id of the watch
+	 * @throws JNotifyException
+	 */
 	public static int addWatch(String path, int mask, boolean watchSubtree, boolean recursive,
 			final JNotifyListener listener) throws JNotifyException
 	{
-		return instance().addWatch(path, mask, watchSubtree, recursive, listener);
+		return addWatch(path, mask, watchSubtree, recursive, new JNotifyListenerBatchAdapter(listener));
+	}
+
+	/**
+	 * Watches a path, handing the changes to the listener in batches once the files have been quiet for the
+	 * coalescing window.
+	 * 
+	 * @return the id of the watch
+	 * @throws JNotifyException
+	 * @see #getCoalescingWindow()
+	 */
+	public static int addWatch(String path, int mask, boolean watchSubtree, boolean recursive,
+			IFileWatcherBatchListener listener) throws JNotifyException
+	{
+		return addWatch(path, mask, watchSubtree, recursive, listener, getCoalescingWindow());
+	}
+
+	/**
+	 * Watches a path, handing the changes to the listener in batches once the files have been quiet for the given
+	 * window.
+	 * 
+	 * @param window
+	 *            in milliseconds
+	 * @return the id of the watch
+	 * @throws JNotifyException
+	 */
+	public static int addWatch(String path, int mask, boolean watchSubtree, boolean recursive,
+			IFileWatcherBatchListener listener, long window) throws JNotifyException
+	{
+		FileEventCoalescer coalescer = new FileEventCoalescer(listener, mask, window);
+		int watchId = instance().addWatch(path, mask, watchSubtree, recursive, coalescer);
+		synchronized (coalescers)
+		{
+			coalescers.put(watchId, coalescer);
+		}
+		return watchId;
 	}
 
 	public static boolean removeWatch(int watchId) throws JNotifyException
 	{
+		FileEventCoalescer coalescer;
+		synchronized (coalescers)
+		{
+			coalescer = coalescers.remove(watchId);
+		}
+		if (coalescer != null)
+		{
+			coalescer.dispose();
+		}
 		return instance().removeWatch(watchId);
 	}
 
+	/**
+	 * Returns how long the watched files have to be quiet before their changes are delivered, in milliseconds.
+	 * 
+	 * @return
+	 */
+	public static synchronized long getCoalescingWindow()
+	{
+		return coalescingWindow;
+	}
+
+	/**
+	 * Sets how long the watched files have to be quiet before their changes are delivered, for the watches added
+	 * afterwards.
+	 * 
+	 * @param window
+	 *            in milliseconds, 0 to deliver the changes as soon as possible
+	 */
+	public static synchronized void setCoalescingWindow(long window)
+	{
+		coalescingWindow = Math.max(0, window);
+	}
+
 	public static synchronized void avoidNotify()
 	{
 		fgNotify = false;
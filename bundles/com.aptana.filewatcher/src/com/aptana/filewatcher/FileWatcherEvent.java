@@ -0,0 +1,123 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.filewatcher;
+
+import net.contentobjects.jnotify.IJNotify;
+
+/**
+ * A change to a file under a watched path, once the successive changes to the same file have been coalesced.
+ * 
+ * @see IFileWatcherBatchListener
+ */
+public final class FileWatcherEvent
+{
+
+	private final int watchId;
+	private final int type;
+	private final String rootPath;
+	private final String name;
+	private final String oldName;
+
+	/**
+	 * @param watchId
+	 * @param type
+	 *            one of {@link IJNotify#FILE_CREATED}, {@link IJNotify#FILE_DELETED}, {@link IJNotify#FILE_MODIFIED}
+	 *            or {@link IJNotify#FILE_RENAMED}
+	 * @param rootPath
+	 * @param name
+	 * @param oldName
+	 *            the name before a rename, null otherwise
+	 */
+	public FileWatcherEvent(int watchId, int type, String rootPath, String name, String oldName)
+	{
+		this.watchId = watchId;
+		this.type = type;
+		this.rootPath = rootPath;
+		this.name = name;
+		this.oldName = oldName;
+	}
+
+	/**
+	 * Returns the id of the watch the file is under.
+	 * 
+	 * @return
+	 */
+	public int getWatchId()
+	{
+		return watchId;
+	}
+
+	/**
+	 * Returns the kind of change: one of {@link IJNotify#FILE_CREATED}, {@link IJNotify#FILE_DELETED},
+	 * {@link IJNotify#FILE_MODIFIED} or {@link IJNotify#FILE_RENAMED}.
+	 * 
+	 * @return
+	 */
+	public int getType()
+	{
+		return type;
+	}
+
+	/**
+	 * Returns the watched path.
+	 * 
+	 * @return
+	 */
+	public String getRootPath()
+	{
+		return rootPath;
+	}
+
+	/**
+	 * Returns the name of the file, relative to the watched path. For a rename, this is the new name.
+	 * 
+	 * @return
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Returns the name of the file before it was renamed, or null if this isn't a rename.
+	 * 
+	 * @return
+	 */
+	public String getOldName()
+	{
+		return oldName;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		StringBuilder builder = new StringBuilder();
+		switch (type)
+		{
+			case IJNotify.FILE_CREATED:
+				builder.append("created "); //$NON-NLS-1$
+				break;
+			case IJNotify.FILE_DELETED:
+				builder.append("deleted "); //$NON-NLS-1$
+				break;
+			case IJNotify.FILE_MODIFIED:
+				builder.append("modified "); //$NON-NLS-1$
+				break;
+			case IJNotify.FILE_RENAMED:
+				builder.append("renamed ").append(oldName).append(" to "); //$NON-NLS-1$ //$NON-NLS-2$
+				break;
+			default:
+				break;
+		}
+		return builder.append(name).append(" in ").append(rootPath).toString(); //$NON-NLS-1$
+	}
+}
@@ -0,0 +1,32 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.filewatcher;
+
+import java.util.List;
+
+/**
+ * Listens to the changes under a watched path in batches: the changes are held until the files have been quiet for the
+ * coalescing window, and the successive changes to a file are collapsed into one (a file created then modified is
+ * created, a file created then deleted didn't change).
+ * <p>
+ * Batches are delivered on the file watcher's dispatch thread, one at a time, so listeners should hand long work off
+ * to a job.
+ * 
+ * @see FileWatcher#addWatch(String, int, boolean, boolean, IFileWatcherBatchListener)
+ */
+public interface IFileWatcherBatchListener
+{
+
+	/**
+	 * Called with the changes that happened under a watched path, in the order they first happened.
+	 * 
+	 * @param events
+	 *            never empty
+	 */
+	public void filesChanged(List<FileWatcherEvent> events);
+}
@@ -0,0 +1,65 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.filewatcher;
+
+import java.util.List;
+
+import net.contentobjects.jnotify.IJNotify;
+import net.contentobjects.jnotify.JNotifyListener;
+
+/**
+ * Hands the coalesced changes of a batch to a {@link JNotifyListener} one at a time, for the listeners written against
+ * the per-change API.
+ */
+/* package */class JNotifyListenerBatchAdapter implements IFileWatcherBatchListener
+{
+
+	private final JNotifyListener listener;
+
+	JNotifyListenerBatchAdapter(JNotifyListener listener)
+	{
+		this.listener = listener;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.filewatcher.IFileWatcherBatchListener#filesChanged(java.util.List)
+	 */
+	public void filesChanged(List<FileWatcherEvent> events)
+	{
+		for (FileWatcherEvent event : events)
+		{
+			try
+			{
+				switch (event.getType())
+				{
+					case IJNotify.FILE_CREATED:
+						listener.fileCreated(event.getWatchId(), event.getRootPath(), event.getName());
+						break;
+					case IJNotify.FILE_DELETED:
+						listener.fileDeleted(event.getWatchId(), event.getRootPath(), event.getName());
+						break;
+					case IJNotify.FILE_MODIFIED:
+						listener.fileModified(event.getWatchId(), event.getRootPath(), event.getName());
+						break;
+					case IJNotify.FILE_RENAMED:
+						listener.fileRenamed(event.getWatchId(), event.getRootPath(), event.getOldName(),
+								event.getName());
+						break;
+					default:
+						break;
+				}
+			}
+			catch (Throwable e)
+			{
+				// one failing change shouldn't lose the rest of the batch
+				FileWatcherPlugin.log(e);
+			}
+		}
+	}
+}
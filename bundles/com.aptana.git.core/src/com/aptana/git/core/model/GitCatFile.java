@@ -0,0 +1,309 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+import com.aptana.core.util.IOUtil;
+import com.aptana.core.util.IProcessRunner;
+
+/**
+ * A long-lived <code>git cat-file --batch</code> (or <code>--batch-check</code>) process for one repository. Callers
+ * from any thread send object names and get back the object (or its header) without forking a new git process per
+ * lookup: the requests are multiplexed over the single process, one at a time.
+ * <p>
+ * git resolves the names in the process, so this is meant for names that don't depend on the index
+ * (<code>&lt;sha&gt;</code>, <code>&lt;commit&gt;:&lt;path&gt;</code>, <code>&lt;branch&gt;:&lt;path&gt;</code>), not
+ * <code>:&lt;stage&gt;:&lt;path&gt;</code> ones, since the process only reads the index once.
+ */
+class GitCatFile
+{
+
+	/**
+	 * Type, size and SHA of an object, as reported by cat-file.
+	 */
+	static final class ObjectInfo
+	{
+		final String sha;
+		final String type;
+		final long size;
+
+		private ObjectInfo(String sha, String type, long size)
+		{
+			this.sha = sha;
+			this.type = type;
+			this.size = size;
+		}
+	}
+
+	private final IProcessRunner runner;
+	private final IPath gitPath;
+	private final IPath workingDirectory;
+	private final boolean checkOnly;
+
+	private Process process;
+	private OutputStream toGit;
+	private InputStream fromGit;
+	private volatile long lastUsed;
+
+	/**
+	 * @param runner
+	 *            used to launch the process
+	 * @param gitPath
+	 *            the git executable
+	 * @param workingDirectory
+	 *            the working directory of the repository
+	 * @param checkOnly
+	 *            whether to run <code>--batch-check</code> (headers only) rather than <code>--batch</code>
+	 */
+	GitCatFile(IProcessRunner runner, IPath gitPath, IPath workingDirectory, boolean checkOnly)
+	{
+		this.runner = runner;
+		this.gitPath = gitPath;
+		this.workingDirectory = workingDirectory;
+		this.checkOnly = checkOnly;
+		this.lastUsed = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns the contents of the given object, or null if it doesn't exist. Only valid in <code>--batch</code> mode.
+	 * 
+	 * @param objectName
+	 * @return
+	 * @throws IOException
+	 */
+	synchronized byte[] read(String objectName) throws IOException
+	{
+		if (checkOnly)
+		{
+			throw new IllegalStateException("Can't read objects in --batch-check mode"); //$NON-NLS-1$
+		}
+		ObjectInfo info = request(objectName);
+		if (info == null)
+		{
+			return null;
+		}
+		if (info.size > Integer.MAX_VALUE)
+		{
+			close();
+			throw new IOException("Object too large: " + objectName); //$NON-NLS-1$
+		}
+		try
+		{
+			byte[] contents = new byte[(int) info.size];
+			readFully(contents);
+			// every object is followed by a LF
+			if (fromGit.read() != '\n')
+			{
+				throw new IOException("Unexpected output from git cat-file after " + objectName); //$NON-NLS-1$
+			}
+			return contents;
+		}
+		catch (IOException e)
+		{
+			// we're out of sync with the process, start over with a new one next time
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the type, size and SHA of the given object, or null if it doesn't exist. Only valid in
+	 * <code>--batch-check</code> mode.
+	 * 
+	 * @param objectName
+	 * @return
+	 * @throws IOException
+	 */
+	synchronized ObjectInfo check(String objectName) throws IOException
+	{
+		if (!checkOnly)
+		{
+			throw new IllegalStateException("Objects are checked by --batch-check processes"); //$NON-NLS-1$
+		}
+		return request(objectName);
+	}
+
+	/**
+	 * Returns how long ago this was last used, in milliseconds.
+	 * 
+	 * @return
+	 */
+	long idleTime()
+	{
+		return System.currentTimeMillis() - lastUsed;
+	}
+
+	/**
+	 * Stops the git process if it hasn't been used for the given time.
+	 * 
+	 * @param timeout
+	 *            in milliseconds
+	 */
+	synchronized void closeIfIdle(long timeout)
+	{
+		if (idleTime() >= timeout)
+		{
+			close();
+		}
+	}
+
+	/**
+	 * Stops the git process, if it's running. The next request launches a new one.
+	 */
+	synchronized void close()
+	{
+		if (process == null)
+		{
+			return;
+		}
+		try
+		{
+			// cat-file exits when its input is closed
+			toGit.close();
+		}
+		catch (IOException e) // $codepro.audit.disable emptyCatchClause
+		{
+			// ignore
+		}
+		process.destroy();
+		process = null;
+		toGit = null;
+		fromGit = null;
+	}
+
+	private ObjectInfo request(String objectName) throws IOException
+	{
+		if (objectName.indexOf('\n') != -1)
+		{
+			throw new IllegalArgumentException("Invalid object name: " + objectName); //$NON-NLS-1$
+		}
+		lastUsed = System.currentTimeMillis();
+
+		String header;
+		try
+		{
+			header = send(objectName);
+		}
+		catch (IOException e)
+		{
+			// The process may have died on its own (i.e. after a gc). Give it one more chance with a new one.
+			close();
+			header = send(objectName);
+		}
+
+		// "<object> missing" (or "ambiguous" on newer gits)
+		if (header.endsWith(" missing") || header.endsWith(" ambiguous")) //$NON-NLS-1$ //$NON-NLS-2$
+		{
+			return null;
+		}
+		String[] parts = header.split(" "); //$NON-NLS-1$
+		if (parts.length != 3)
+		{
+			close();
+			throw new IOException("Unexpected output from git cat-file: " + header); //$NON-NLS-1$
+		}
+		try
+		{
+			return new ObjectInfo(parts[0], parts[1], Long.parseLong(parts[2]));
+		}
+		catch (NumberFormatException e)
+		{
+			close();
+			throw new IOException("Unexpected output from git cat-file: " + header); //$NON-NLS-1$
+		}
+	}
+
+	private String send(String objectName) throws IOException
+	{
+		ensureStarted();
+		try
+		{
+			toGit.write((objectName + '\n').getBytes(IOUtil.UTF_8));
+			toGit.flush();
+			return readLine();
+		}
+		catch (IOException e)
+		{
+			close();
+			throw e;
+		}
+	}
+
+	private void ensureStarted() throws IOException
+	{
+		if (process != null)
+		{
+			return;
+		}
+		try
+		{
+			process = runner.run(workingDirectory, (Map<String, String>) null, gitPath.toOSString(), "cat-file", //$NON-NLS-1$
+					checkOnly ? "--batch-check" : "--batch"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		catch (CoreException e)
+		{
+			IOException ioe = new IOException(e.getMessage());
+			ioe.initCause(e);
+			throw ioe;
+		}
+		if (process == null)
+		{
+			throw new IOException("Unable to launch git cat-file"); //$NON-NLS-1$
+		}
+		try
+		{
+			// cat-file only writes to stderr when it dies, don't leave a pipe around that no one reads
+			process.getErrorStream().close();
+		}
+		catch (IOException e) // $codepro.audit.disable emptyCatchClause
+		{
+			// ignore
+		}
+		toGit = process.getOutputStream();
+		fromGit = new BufferedInputStream(process.getInputStream());
+	}
+
+	private String readLine() throws IOException
+	{
+		ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+		int b;
+		while ((b = fromGit.read()) != '\n')
+		{
+			if (b == -1)
+			{
+				throw new EOFException("git cat-file exited"); //$NON-NLS-1$
+			}
+			line.write(b);
+		}
+		return line.toString(IOUtil.UTF_8);
+	}
+
+	private void readFully(byte[] buffer) throws IOException
+	{
+		int offset = 0;
+		while (offset < buffer.length)
+		{
+			int read = fromGit.read(buffer, offset, buffer.length - offset);
+			if (read == -1)
+			{
+				throw new EOFException("git cat-file exited"); //$NON-NLS-1$
+			}
+			offset += read;
+		}
+	}
+}
@@ -7,6 +7,7 @@
  */
 package com.aptana.git.core.model;
 
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -26,6 +27,7 @@ import org.eclipse.core.runtime.Path;
 
 import com.aptana.core.IMap;
 import com.aptana.core.util.CollectionsUtil;
+import com.aptana.core.util.IOUtil;
 import com.aptana.core.util.StringUtil;
 import com.aptana.git.core.model.GitRepository.ReadWrite;
 
@@ -36,6 +38,7 @@ import com.aptana.git.core.model.GitRepository.ReadWrite;
  */
 public class GitCommit
 {
+	private static final String ENCODING_HEADER = "encoding "; //$NON-NLS-1$
 
 	private GitRepository repository;
 	private String sha;
@@ -45,6 +48,11 @@ public class GitCommit
 	private String authorEmail;
 	private List<String> parentShas;
 	private String comment;
+
+	/**
+	 * Whether the message still has to be read from the commit object, see {@link #getComment()}.
+	 */
+	private boolean commentNotLoaded;
 	private List<Diff> diffs;
 
 	public GitCommit(GitRepository repository, String sha)
@@ -108,11 +116,74 @@ public class GitCommit
 		return author;
 	}
 
-	public String getComment()
+	/**
+	 * Returns the full commit message. Commits from paged history walks don't carry it, it's read from the commit
+	 * object the first time it's asked for.
+	 * 
+	 * @return
+	 */
+	public synchronized String getComment()
 	{
+		if (commentNotLoaded)
+		{
+			comment = readComment();
+			commentNotLoaded = false;
+		}
 		return comment;
 	}
 
+	/**
+	 * Reads the message from the raw commit object: it follows the headers, after the first empty line. The optional
+	 * "encoding" header tells us how it's encoded, UTF-8 otherwise.
+	 */
+	private String readComment()
+	{
+		byte[] raw = repository.readObject(sha);
+		if (raw == null)
+		{
+			return subject;
+		}
+		String encoding = IOUtil.UTF_8;
+		int start = 0;
+		try
+		{
+			while (start < raw.length)
+			{
+				int end = start;
+				while (end < raw.length && raw[end] != '\n')
+				{
+					end++;
+				}
+				if (end == start)
+				{
+					// the empty line separating the headers from the message
+					start++;
+					break;
+				}
+				String header = new String(raw, start, end - start, IOUtil.UTF_8);
+				if (header.startsWith(ENCODING_HEADER))
+				{
+					encoding = header.substring(ENCODING_HEADER.length()).trim();
+				}
+				start = end + 1;
+			}
+			start = Math.min(start, raw.length);
+			try
+			{
+				return new String(raw, start, raw.length - start, encoding);
+			}
+			catch (UnsupportedEncodingException e)
+			{
+				return new String(raw, start, raw.length - start, IOUtil.UTF_8);
+			}
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			// UTF-8 is always supported
+			return subject;
+		}
+	}
+
 	@Override
 	public String toString()
 	{
@@ -122,9 +193,19 @@ public class GitCommit
 		return builder.toString();
 	}
 
-	void setComment(String comment)
+	synchronized void setComment(String comment)
 	{
 		this.comment = comment;
+		this.commentNotLoaded = false;
+	}
+
+	/**
+	 * Marks the message as not loaded yet, {@link #getComment()} reads it from the commit object when needed.
+	 */
+	synchronized void setCommentNotLoaded()
+	{
+		this.comment = null;
+		this.commentNotLoaded = true;
 	}
 
 	public synchronized List<Diff> getDiff()
@@ -17,6 +17,8 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -83,11 +85,22 @@ public class GitExecutable
 	 */
 	private static List<IPath> fgLocations;
 
+	/**
+	 * Long-lived cat-file processes that have been idle for this long are stopped.
+	 */
+	private static final long CAT_FILE_IDLE_TIMEOUT = 60 * 1000;
+
 	/**
 	 * Where we found git.
 	 */
 	private IPath gitPath;
 
+	/**
+	 * The long-lived cat-file processes, by working directory ("--batch" and "--batch-check" ones, in that order).
+	 */
+	private final Map<IPath, GitCatFile[]> catFiles = new HashMap<IPath, GitCatFile[]>();
+	private Timer catFileReaper;
+
 	/**
 	 * The singleton.
 	 */
@@ -115,7 +128,7 @@ public class GitExecutable
 							{
 								if (!event.getKey().equals(IPreferenceConstants.GIT_EXECUTABLE_PATH))
 									return;
-								fgExecutable = null;
+								reset();
 								// reset shell path preferences on Win32
 								if (Platform.OS_WIN32.equals(Platform.getOS()))
 								{
@@ -141,6 +154,19 @@ public class GitExecutable
 		return fgExecutable;
 	}
 
+	/**
+	 * Drops the singleton (so that the next call to {@link #instance()} looks for git again), stopping the processes it
+	 * keeps running.
+	 */
+	private synchronized static void reset()
+	{
+		if (fgExecutable != null)
+		{
+			fgExecutable.closeCatFiles(null);
+		}
+		fgExecutable = null;
+	}
+
 	private static IPath getPreferenceGitPath()
 	{
 		String pref = InstanceScope.INSTANCE.getNode(GitPlugin.PLUGIN_ID).get(IPreferenceConstants.GIT_EXECUTABLE_PATH,
@@ -185,7 +211,7 @@ public class GitExecutable
 		{
 			IdeLog.logError(GitPlugin.getDefault(), "Saving preferences failed.", e, IDebugScopes.DEBUG); //$NON-NLS-1$
 		}
-		fgExecutable = null;
+		reset();
 		if (Platform.OS_WIN32.equals(Platform.getOS()))
 		{
 			if (path != null && path.toFile().isFile())
@@ -396,6 +422,135 @@ public class GitExecutable
 		return new ProcessRunner().run(directory, args.toArray(new String[args.size()]));
 	}
 
+	/**
+	 * Returns the raw contents of an object of the repository, or null if there's no such object. This goes through a
+	 * <code>git cat-file --batch</code> process that's kept running for the repository, rather than launching git for
+	 * each object. Names are resolved by that process, so they must not refer to the index (<code>:0:path</code>).
+	 * 
+	 * @param workingDirectory
+	 * @param objectName
+	 * @return
+	 * @throws IOException
+	 */
+	byte[] readObject(IPath workingDirectory, String objectName) throws IOException
+	{
+		return getCatFile(workingDirectory, false).read(objectName);
+	}
+
+	/**
+	 * Returns the type ("commit", "tree", "blob" or "tag") of the given object, or null if it doesn't exist, using a
+	 * long-lived <code>git cat-file --batch-check</code> process. See {@link #readObject(IPath, String)}.
+	 * 
+	 * @param workingDirectory
+	 * @param objectName
+	 * @return
+	 * @throws IOException
+	 */
+	String objectType(IPath workingDirectory, String objectName) throws IOException
+	{
+		GitCatFile.ObjectInfo info = getCatFile(workingDirectory, true).check(objectName);
+		return (info == null) ? null : info.type;
+	}
+
+	/**
+	 * Stops the cat-file processes of the given repository, or of all repositories if null. Stopping all of them also
+	 * stops the thread closing the idle ones, until a process is started again.
+	 * 
+	 * @param workingDirectory
+	 */
+	void closeCatFiles(IPath workingDirectory)
+	{
+		List<GitCatFile[]> toClose = new ArrayList<GitCatFile[]>();
+		synchronized (catFiles)
+		{
+			if (workingDirectory == null)
+			{
+				toClose.addAll(catFiles.values());
+				catFiles.clear();
+				if (catFileReaper != null)
+				{
+					catFileReaper.cancel();
+					catFileReaper = null;
+				}
+			}
+			else
+			{
+				GitCatFile[] pair = catFiles.remove(workingDirectory);
+				if (pair != null)
+				{
+					toClose.add(pair);
+				}
+			}
+		}
+		for (GitCatFile[] pair : toClose)
+		{
+			for (GitCatFile catFile : pair)
+			{
+				if (catFile != null)
+				{
+					catFile.close();
+				}
+			}
+		}
+	}
+
+	private GitCatFile getCatFile(IPath workingDirectory, boolean checkOnly)
+	{
+		synchronized (catFiles)
+		{
+			GitCatFile[] pair = catFiles.get(workingDirectory);
+			if (pair == null)
+			{
+				pair = new GitCatFile[2];
+				catFiles.put(workingDirectory, pair);
+			}
+			int index = checkOnly ? 1 : 0;
+			if (pair[index] == null)
+			{
+				pair[index] = new GitCatFile(createProcessRunner(), gitPath, workingDirectory, checkOnly);
+			}
+			if (catFileReaper == null)
+			{
+				catFileReaper = new Timer("Git cat-file reaper", true); //$NON-NLS-1$
+				catFileReaper.schedule(new TimerTask()
+				{
+					public void run()
+					{
+						closeIdleCatFiles();
+					}
+				}, CAT_FILE_IDLE_TIMEOUT, CAT_FILE_IDLE_TIMEOUT);
+			}
+			return pair[index];
+		}
+	}
+
+	/**
+	 * Stops the processes that haven't been used for a while, so we don't hold on to the pack files (which can't be
+	 * deleted by a gc on Windows while they're open) or to the memory of idle processes.
+	 */
+	private void closeIdleCatFiles()
+	{
+		List<GitCatFile> all = new ArrayList<GitCatFile>();
+		synchronized (catFiles)
+		{
+			for (GitCatFile[] pair : catFiles.values())
+			{
+				for (GitCatFile catFile : pair)
+				{
+					if (catFile != null)
+					{
+						all.add(catFile);
+					}
+				}
+			}
+		}
+		// The next request on them restarts the process
+		for (GitCatFile catFile : all)
+		{
+			catFile.closeIfIdle(CAT_FILE_IDLE_TIMEOUT);
+		}
+	}
+
 	/**
 	 * Sets up the environment map in a way that our special GIT_SSH/GIT_ASKPASS env variables are set so that the SSH
 	 * passphrase/HTTPS prompt stuff is hooked up. Use this for clones/pushes/pulls.
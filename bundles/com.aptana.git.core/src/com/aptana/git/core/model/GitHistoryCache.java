@@ -0,0 +1,313 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.aptana.core.util.IOUtil;
+import com.aptana.core.util.StringUtil;
+
+/**
+ * An on-disk cache of parsed commit history, one file per repository and revision specifier. Each file records the SHA
+ * the revision resolved to when it was written (i.e. HEAD's), and is only used as long as it still resolves to it: a
+ * new commit, a checkout or a reset all invalidate it.
+ * <p>
+ * Only what the history needs up front is stored: SHA, parents, author, email, date and subject. Author names and
+ * emails are written once in a string table, so they are also shared in memory once read back. Messages are left out,
+ * {@link GitCommit#getComment()} loads them on demand.
+ */
+class GitHistoryCache
+{
+	private static final int MAGIC = 0x47484331; // "GHC1"
+	private static final int VERSION = 1;
+	private static final int SHA_BYTES = 20;
+	private static final String EXTENSION = ".history"; //$NON-NLS-1$
+
+	/**
+	 * How many histories we keep around, the least recently written ones are deleted first.
+	 */
+	private static final int MAX_FILES = 20;
+
+	private final File dir;
+
+	GitHistoryCache(File dir)
+	{
+		this.dir = dir;
+	}
+
+	/**
+	 * Returns the cached commits for the given key, or null if there's none for that tip.
+	 *
+	 * @param repository
+	 * @param key
+	 *            identifies the walk, i.e. the working directory and the revision parameters
+	 * @param tip
+	 *            the SHA the revision currently resolves to
+	 * @return
+	 */
+	List<GitCommit> read(GitRepository repository, String key, String tip)
+	{
+		File file = file(key);
+		if (!file.isFile())
+		{
+			return null;
+		}
+		DataInputStream in = null;
+		try
+		{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || !key.equals(readString(in))
+					|| !tip.equals(readSHA(in)))
+			{
+				return null;
+			}
+			String[] strings = new String[in.readInt()];
+			for (int i = 0; i < strings.length; i++)
+			{
+				strings[i] = readString(in);
+			}
+			int count = in.readInt();
+			List<GitCommit> commits = new ArrayList<GitCommit>(count);
+			for (int i = 0; i < count; i++)
+			{
+				GitCommit commit = new GitCommit(repository, readSHA(in));
+				commit.setAuthor(strings[in.readInt()]);
+				commit.setAuthorEmail(strings[in.readInt()]);
+				commit.setSubject(readString(in));
+				commit.setTimestamp(in.readLong());
+				int parentCount = in.readUnsignedByte();
+				if (parentCount > 0)
+				{
+					List<String> parents = new ArrayList<String>(parentCount);
+					for (int j = 0; j < parentCount; j++)
+					{
+						parents.add(readSHA(in));
+					}
+					commit.setParents(parents);
+				}
+				commit.setCommentNotLoaded();
+				commits.add(commit);
+			}
+			return commits;
+		}
+		catch (IOException e)
+		{
+			// corrupt or truncated, it'll be rewritten
+			file.delete();
+			return null;
+		}
+		catch (ArrayIndexOutOfBoundsException e)
+		{
+			file.delete();
+			return null;
+		}
+		finally
+		{
+			close(in);
+		}
+	}
+
+	/**
+	 * Stores the commits of a walk that ran to completion.
+	 *
+	 * @param key
+	 * @param tip
+	 * @param commits
+	 * @throws IOException
+	 */
+	void write(String key, String tip, List<GitCommit> commits) throws IOException
+	{
+		if (!dir.isDirectory() && !dir.mkdirs())
+		{
+			throw new IOException("Unable to create " + dir); //$NON-NLS-1$
+		}
+
+		Map<String, Integer> indices = new HashMap<String, Integer>();
+		List<String> strings = new ArrayList<String>();
+		for (GitCommit commit : commits)
+		{
+			index(commit.getAuthor(), indices, strings);
+			index(commit.getAuthorEmail(), indices, strings);
+		}
+
+		// write to a temporary file first so readers never see half of it
+		File file = file(key);
+		File tmp = new File(dir, file.getName() + ".tmp"); //$NON-NLS-1$
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writeString(out, key);
+			writeSHA(out, tip);
+			out.writeInt(strings.size());
+			for (String string : strings)
+			{
+				writeString(out, string);
+			}
+			out.writeInt(commits.size());
+			for (GitCommit commit : commits)
+			{
+				writeSHA(out, commit.sha());
+				out.writeInt(indices.get(nonNull(commit.getAuthor())));
+				out.writeInt(indices.get(nonNull(commit.getAuthorEmail())));
+				writeString(out, commit.getSubject());
+				out.writeLong(commit.getTimestamp());
+				List<String> parents = commit.parents();
+				int parentCount = (parents == null) ? 0 : Math.min(parents.size(), 255);
+				out.writeByte(parentCount);
+				for (int i = 0; i < parentCount; i++)
+				{
+					writeSHA(out, parents.get(i));
+				}
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+		if (file.exists() && !file.delete() || !tmp.renameTo(file))
+		{
+			tmp.delete();
+			throw new IOException("Unable to write " + file); //$NON-NLS-1$
+		}
+		prune();
+	}
+
+	private File file(String key)
+	{
+		return new File(dir, StringUtil.md5(key) + EXTENSION);
+	}
+
+	/**
+	 * Deletes the oldest histories past {@link #MAX_FILES}.
+	 */
+	private void prune()
+	{
+		File[] files = dir.listFiles();
+		if (files == null)
+		{
+			return;
+		}
+		List<File> histories = new ArrayList<File>(files.length);
+		for (File file : files)
+		{
+			if (file.getName().endsWith(EXTENSION))
+			{
+				histories.add(file);
+			}
+		}
+		if (histories.size() <= MAX_FILES)
+		{
+			return;
+		}
+		File[] sorted = histories.toArray(new File[histories.size()]);
+		Arrays.sort(sorted, new Comparator<File>()
+		{
+			public int compare(File f1, File f2)
+			{
+				long m1 = f1.lastModified();
+				long m2 = f2.lastModified();
+				return (m1 < m2) ? 1 : ((m1 == m2) ? 0 : -1);
+			}
+		});
+		for (int i = MAX_FILES; i < sorted.length; i++)
+		{
+			sorted[i].delete();
+		}
+	}
+
+	private static void index(String string, Map<String, Integer> indices, List<String> strings)
+	{
+		string = nonNull(string);
+		if (!indices.containsKey(string))
+		{
+			indices.put(string, strings.size());
+			strings.add(string);
+		}
+	}
+
+	private static String nonNull(String string)
+	{
+		return (string == null) ? StringUtil.EMPTY : string;
+	}
+
+	private static void writeString(DataOutputStream out, String string) throws IOException
+	{
+		// not writeUTF, which is limited to 64k
+		byte[] bytes = nonNull(string).getBytes(IOUtil.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException
+	{
+		int length = in.readInt();
+		if (length < 0)
+		{
+			throw new IOException("Invalid string length: " + length); //$NON-NLS-1$
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, IOUtil.UTF_8);
+	}
+
+	private static void writeSHA(DataOutputStream out, String sha) throws IOException
+	{
+		if (sha == null || sha.length() != SHA_BYTES * 2)
+		{
+			throw new IOException("Invalid SHA: " + sha); //$NON-NLS-1$
+		}
+		for (int i = 0; i < SHA_BYTES; i++)
+		{
+			int high = Character.digit(sha.charAt(2 * i), 16);
+			int low = Character.digit(sha.charAt(2 * i + 1), 16);
+			if (high == -1 || low == -1)
+			{
+				throw new IOException("Invalid SHA: " + sha); //$NON-NLS-1$
+			}
+			out.writeByte((high << 4) | low);
+		}
+	}
+
+	private static String readSHA(DataInputStream in) throws IOException
+	{
+		byte[] sha = new byte[SHA_BYTES];
+		in.readFully(sha);
+		return GitIndexFile.toHex(sha);
+	}
+
+	private static void close(DataInputStream in)
+	{
+		if (in == null)
+		{
+			return;
+		}
+		try
+		{
+			in.close();
+		}
+		catch (IOException e) // $codepro.audit.disable emptyCatchClause
+		{
+			// ignore
+		}
+	}
+}
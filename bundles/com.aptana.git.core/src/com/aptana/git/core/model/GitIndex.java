@@ -7,8 +7,10 @@
  */
 package com.aptana.git.core.model;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -53,6 +55,7 @@ import com.aptana.core.logging.IdeLog;
 import com.aptana.core.util.ArrayUtil;
 import com.aptana.core.util.CollectionsUtil;
 import com.aptana.core.util.IOUtil;
+import com.aptana.core.util.ObjectUtil;
 import com.aptana.core.util.StringUtil;
 import com.aptana.git.core.GitPlugin;
 import com.aptana.git.core.IDebugScopes;
@@ -69,6 +72,12 @@ public class GitIndex
 
 	private static final String NULL_DELIMITER = "\0"; //$NON-NLS-1$
 
+	/**
+	 * The most paths we pass to git on the command line when asking about the changes we couldn't figure out from the
+	 * index. Past that, we ask about everything that's being refreshed.
+	 */
+	private static final int MAX_UNCERTAIN_PATHS = 100;
+
 	/**
 	 * File extensions we check against and use to assume if a file may be binary (to not show a diff/content in various
 	 * UI views)
@@ -86,8 +95,20 @@ public class GitIndex
 	List<ChangedFile> changedFiles;
 	private Object changedFilesLock = new Object();
 
+	/**
+	 * The index and HEAD the last full refresh was computed from (guarded by changedFilesLock). Later changes to the
+	 * index are compared to this to figure out which paths need a refresh.
+	 */
+	private GitIndexFile lastIndexFile;
+	private String lastHead;
+
 	private boolean notify;
 
+	/**
+	 * Whether changes to the executable bit count (git's core.filemode), lazily read from the config.
+	 */
+	private Boolean trustFileMode;
+
 	/**
 	 * Service which launches the refresh commands in threads.
 	 */
@@ -118,6 +139,72 @@ public class GitIndex
 		}
 	}
 
+	/**
+	 * Called when the index file changed on disk. Rather than refreshing everything, this schedules a refresh of the
+	 * paths whose index entries changed, unless HEAD moved too.
+	 */
+	synchronized void indexFileChanged()
+	{
+		if (refreshJob != null)
+		{
+			refreshJob.indexChanged();
+		}
+	}
+
+	/**
+	 * Returns the paths whose status may have changed since the last full refresh judging by how the index changed
+	 * since (i.e. git add or reset run from the command line), or null if that can't tell and everything needs to be
+	 * refreshed (HEAD moved, the index can't be read).
+	 * 
+	 * @return
+	 */
+	Collection<IPath> pathsChangedInIndex()
+	{
+		GitIndexFile previous;
+		String previousHead;
+		synchronized (changedFilesLock)
+		{
+			previous = lastIndexFile;
+			previousHead = lastHead;
+		}
+		if (previous == null)
+		{
+			return null;
+		}
+		GitIndexFile current = readIndexFile();
+		if (current == null)
+		{
+			return null;
+		}
+		try
+		{
+			if (!ObjectUtil.areEqual(previousHead, repository.refFiles().resolve(GitRepository.HEAD)))
+			{
+				return null;
+			}
+		}
+		catch (IOException e)
+		{
+			return null;
+		}
+
+		Set<String> changed = current.changedPaths(previous);
+		synchronized (changedFilesLock)
+		{
+			// the caller refreshes those paths, so from then on we're up to date with this index
+			if (lastIndexFile == previous)
+			{
+				lastIndexFile = current;
+			}
+		}
+		List<IPath> paths = new ArrayList<IPath>(changed.size());
+		for (String path : changed)
+		{
+			paths.add(Path.fromPortableString(path));
+		}
+		return paths;
+	}
+
 	/**
 	 * Run a refresh synchronously. FIXME Should this even be visible to callers? We should pick up file events via
 	 * watcher to refresh whenever we really need to. This should become default visibility.
@@ -155,23 +242,29 @@ public class GitIndex
 		}
 		this.notify = notify;
 
-		// If we don't run this, we end up showing files as unstaged when they're no longer modified!
-		IStatus result;
-		synchronized (this)
+		// When we can read the index ourselves, we compare the stat data to the working tree and only have git refresh
+		// it for the files where that isn't enough.
+		GitIndexFile indexFile = readIndexFile();
+		if (indexFile == null)
 		{
-			repository.forceWrite(); // Do we only want to try the lock if we're in UI thread?
-			result = GitExecutable.instance().runInBackground(repository.workingDirectory(), "update-index", "-q", //$NON-NLS-1$ //$NON-NLS-2$
-					"--unmerged", "--ignore-missing", "--refresh"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-			repository.exitWriteProcess();
-		}
-		if (result == null) // couldn't even execute!
-		{
-			return new Status(IStatus.ERROR, GitPlugin.getPluginId(), "Failed to execute git update-index"); //$NON-NLS-1$
+			IStatus result = updateIndexStatData();
+			if (!result.isOK())
+			{
+				return result;
+			}
 		}
-		if (!result.isOK())
+		String head = null;
+		if (indexFile != null)
 		{
-			IdeLog.logWarning(GitPlugin.getDefault(), "Unable to run update-index: " + result.getMessage()); //$NON-NLS-1$
-			return result;
+			try
+			{
+				head = repository.refFiles().resolve(GitRepository.HEAD);
+			}
+			catch (IOException e)
+			{
+				// don't use this index as a base for incremental refreshes
+				indexFile = null;
+			}
 		}
 
 		final Set<String> portablePathStrings = new HashSet<String>(CollectionsUtil.map(filePaths,
@@ -185,8 +278,8 @@ public class GitIndex
 
 		Set<Callable<Map<IPath, ChangedFile>>> jobs = new HashSet<Callable<Map<IPath, ChangedFile>>>(3);
 		jobs.add(new UntrackedFilesRefreshJob(this, portablePathStrings));
-		jobs.add(new UnstagedFilesRefreshJob(this, portablePathStrings));
-		jobs.add(new StagedFilesRefreshJob(this, portablePathStrings));
+		jobs.add(new UnstagedFilesRefreshJob(this, portablePathStrings, indexFile));
+		jobs.add(new StagedFilesRefreshJob(this, portablePathStrings, indexFile));
 
 		// Last chance to cancel...
 		if (monitor != null && monitor.isCanceled())
@@ -292,11 +385,16 @@ public class GitIndex
 				preRefresh = new ArrayList<ChangedFile>(0);
 			}
 
-			// Now wipe any existing ChangedFile entries for any of the filePaths and add the ones we generated in
-			// dictionary
+			// Now wipe any existing ChangedFile entries for any of the filePaths (or under them) and add the ones we
+			// generated in dictionary
 			if (CollectionsUtil.isEmpty(filePaths))
 			{
 				this.changedFiles = new ArrayList<ChangedFile>();
+				if (errors.isOK())
+				{
+					lastIndexFile = indexFile;
+					lastHead = head;
+				}
 			}
 			else
 			{
@@ -304,7 +402,15 @@ public class GitIndex
 				{
 					public boolean include(ChangedFile item)
 					{
-						return !portablePathStrings.contains(item.getRelativePath().toPortableString());
+						for (IPath path = item.getRelativePath(); path.segmentCount() > 0; path = path
+								.removeLastSegments(1))
+						{
+							if (portablePathStrings.contains(path.toPortableString()))
+							{
+								return false;
+							}
+						}
+						return true;
 					}
 				});
 			}
@@ -326,6 +432,107 @@ public class GitIndex
 		return Status.OK_STATUS;
 	}
 
+	/**
+	 * Has git refresh the stat data of the index. If we don't run this, we end up showing files as unstaged when
+	 * they're no longer modified!
+	 * 
+	 * @return
+	 */
+	private IStatus updateIndexStatData()
+	{
+		IStatus result = runIndexWrite("update-index", "-q", //$NON-NLS-1$ //$NON-NLS-2$
+				"--unmerged", "--ignore-missing", "--refresh"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		if (result == null) // couldn't even execute!
+		{
+			return new Status(IStatus.ERROR, GitPlugin.getPluginId(), "Failed to execute git update-index"); //$NON-NLS-1$
+		}
+		if (!result.isOK())
+		{
+			IdeLog.logWarning(GitPlugin.getDefault(), "Unable to run update-index: " + result.getMessage()); //$NON-NLS-1$
+		}
+		return result;
+	}
+
+	/**
+	 * Has git refresh the stat data of some files of the index only, or of all of them if there are none. This is
+	 * <code>git add --refresh</code> rather than <code>update-index --refresh</code>, which always refreshes the whole
+	 * index and would stage the files it's given.
+	 * 
+	 * @param paths
+	 *            relative to the working directory
+	 * @return
+	 */
+	private IStatus updateIndexStatData(Collection<String> paths)
+	{
+		if (CollectionsUtil.isEmpty(paths))
+		{
+			return updateIndexStatData();
+		}
+		List<String> args = CollectionsUtil.newList("add", "--refresh", "--"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		args.addAll(paths);
+		IStatus result = runIndexWrite(args.toArray(new String[args.size()]));
+		if (result == null || !result.isOK())
+		{
+			// i.e. a file left the index meanwhile and git rejects its path
+			return updateIndexStatData();
+		}
+		return result;
+	}
+
+	private IStatus runIndexWrite(String... args)
+	{
+		synchronized (this)
+		{
+			repository.forceWrite(); // Do we only want to try the lock if we're in UI thread?
+			try
+			{
+				return GitExecutable.instance().runInBackground(repository.workingDirectory(), args);
+			}
+			finally
+			{
+				repository.exitWriteProcess();
+			}
+		}
+	}
+
+	/**
+	 * Reads the index file of the repository, or returns null if we can't (in which case we have to ask git).
+	 * 
+	 * @return
+	 */
+	private GitIndexFile readIndexFile()
+	{
+		File file = repository.gitFile(GitRepository.INDEX);
+		if (!file.isFile())
+		{
+			// a brand new repository
+			return null;
+		}
+		try
+		{
+			// Windows won't let git replace the index file while we have it mapped
+			return GitIndexFile.read(file, !Platform.OS_WIN32.equals(Platform.getOS()));
+		}
+		catch (IOException e)
+		{
+			IdeLog.logWarning(GitPlugin.getDefault(),
+					MessageFormat.format("Unable to read {0}, asking git for the status", file), e, IDebugScopes.DEBUG); //$NON-NLS-1$
+			return null;
+		}
+	}
+
+	private synchronized boolean trustFileMode()
+	{
+		if (trustFileMode == null)
+		{
+			IStatus result = repository.execute(GitRepository.ReadWrite.READ, "config", "--bool", "core.filemode"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			// defaults to true when unset
+			trustFileMode = !(result != null && result.isOK() && Boolean.FALSE.toString().equals(
+					result.getMessage().trim()));
+		}
+		return trustFileMode;
+	}
+
 	private void postIndexChange(Collection<ChangedFile> preChangeFiles, Collection<ChangedFile> postChangeFiles)
 	{
 		if (this.notify)
@@ -856,6 +1063,16 @@ public class GitIndex
 			return StringUtil.tokenize(string, NULL_DELIMITER);
 		}
 
+		protected Map<IPath, List<String>> dictionaryForStatus(Map<String, List<String>> status)
+		{
+			Map<IPath, List<String>> dictionary = new HashMap<IPath, List<String>>(status.size());
+			for (Map.Entry<String, List<String>> entry : status.entrySet())
+			{
+				dictionary.put(Path.fromPortableString(entry.getKey()), entry.getValue());
+			}
+			return dictionary;
+		}
+
 		protected Map<IPath, List<String>> dictionaryForLines(List<String> lines)
 		{
 			Map<IPath, List<String>> dictionary = new HashMap<IPath, List<String>>(lines.size() / 2);
@@ -935,13 +1152,29 @@ public class GitIndex
 
 	private final class StagedFilesRefreshJob extends FilesRefreshJob
 	{
-		private StagedFilesRefreshJob(GitIndex index, Set<String> filePaths)
+		private GitIndexFile indexFile;
+
+		private StagedFilesRefreshJob(GitIndex index, Set<String> filePaths, GitIndexFile indexFile)
 		{
 			super(index, filePaths);
+			this.indexFile = indexFile;
 		}
 
 		public Map<IPath, ChangedFile> call() throws Exception
 		{
+			if (indexFile != null)
+			{
+				try
+				{
+					return readStagedFiles();
+				}
+				catch (IOException e)
+				{
+					IdeLog.logWarning(GitPlugin.getDefault(), "Unable to compare the index to HEAD, asking git", e, //$NON-NLS-1$
+							IDebugScopes.DEBUG);
+				}
+			}
+
 			// HEAD vs filesystem
 			List<String> args = CollectionsUtil.newList("diff-index", "--cached", //$NON-NLS-1$ //$NON-NLS-2$
 					"-z", GitRepository.HEAD); //$NON-NLS-1$
@@ -973,39 +1206,82 @@ public class GitIndex
 			Map<IPath, List<String>> dic = dictionaryForLines(lines);
 			return addFilesFromDictionary(dic, true, true);
 		}
+
+		/**
+		 * HEAD vs index, walking the HEAD tree through the repository's cat-file process.
+		 */
+		private Map<IPath, ChangedFile> readStagedFiles() throws IOException
+		{
+			String head = repo.refFiles().resolve(GitRepository.HEAD);
+			if (head == null)
+			{
+				// brand new repo with no commits, like git diff-index failing on HEAD
+				return Collections.emptyMap();
+			}
+			GitStatusScanner scanner = new GitStatusScanner(workingDirectory().toFile(), indexFile, filePaths, false);
+			Map<String, List<String>> status = scanner.staged(head, new GitStatusScanner.ObjectReader()
+			{
+				public byte[] read(String sha) throws IOException
+				{
+					return repo.readRawObject(sha);
+				}
+			});
+			return addFilesFromDictionary(dictionaryForStatus(status), true, true);
+		}
 	}
 
 	private final class UnstagedFilesRefreshJob extends FilesRefreshJob
 	{
-		private UnstagedFilesRefreshJob(GitIndex index, Set<String> filePaths)
+		private GitIndexFile indexFile;
+
+		private UnstagedFilesRefreshJob(GitIndex index, Set<String> filePaths, GitIndexFile indexFile)
 		{
 			super(index, filePaths);
+			this.indexFile = indexFile;
 		}
 
 		public Map<IPath, ChangedFile> call() throws Exception
 		{
-			// index vs filesystem
+			if (indexFile == null)
+			{
+				// index vs filesystem
+				return addFilesFromDictionary(diffFiles(filePaths), false, true);
+			}
+
+			// Compare the stat data ourselves, then have git refresh and compare the contents of what that can't tell
+			GitStatusScanner scanner = new GitStatusScanner(workingDirectory().toFile(), indexFile, filePaths,
+					trustFileMode());
+			Map<IPath, List<String>> dic = dictionaryForStatus(scanner.unstaged());
+			Set<String> uncertain = scanner.getUncertainPaths();
+			if (!uncertain.isEmpty())
+			{
+				Set<String> paths = (uncertain.size() > MAX_UNCERTAIN_PATHS) ? filePaths : uncertain;
+				IStatus result = updateIndexStatData(paths);
+				if (!result.isOK())
+				{
+					throw new CoreException(result);
+				}
+				dic.putAll(diffFiles(paths));
+			}
+			return addFilesFromDictionary(dic, false, true);
+		}
+
+		private Map<IPath, List<String>> diffFiles(Set<String> paths) throws CoreException
+		{
 			List<String> args = CollectionsUtil.newList("diff-files", "-z"); //$NON-NLS-1$ //$NON-NLS-2$
-			if (!CollectionsUtil.isEmpty(filePaths))
+			if (!CollectionsUtil.isEmpty(paths))
 			{
 				args.add("--"); //$NON-NLS-1$
-				args.addAll(filePaths);
+				args.addAll(paths);
 			}
 
 			IStatus result = repo.execute(GitRepository.ReadWrite.READ, args.toArray(new String[args.size()]));
 			if (result != null && result.isOK())
 			{
-				return readUnstagedFiles(result.getMessage());
+				return dictionaryForLines(linesFromNotification(result.getMessage()));
 			}
 			throw new CoreException(result);
 		}
-
-		private Map<IPath, ChangedFile> readUnstagedFiles(String string)
-		{
-			List<String> lines = linesFromNotification(string);
-			Map<IPath, List<String>> dic = dictionaryForLines(lines);
-			return addFilesFromDictionary(dic, false, true);
-		}
 	}
 
 	private final class UntrackedFilesRefreshJob extends FilesRefreshJob
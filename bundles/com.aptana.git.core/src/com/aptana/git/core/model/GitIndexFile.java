@@ -0,0 +1,459 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A snapshot of a git index file (<code>.git/index</code>, "DIRC" format versions 2 to 4), read without launching git.
+ * Besides the entries, the cache-tree ("TREE") extension is kept, as it tells which directories of the index are
+ * known to match a given tree object.
+ * <p>
+ * Indices using extensions that leave out entries (split or sparse indices) are rejected with an IOException, callers
+ * are expected to fall back to the git command line in that case.
+ */
+class GitIndexFile
+{
+	private static final int SIGNATURE = 0x44495243; // "DIRC"
+	private static final int EXTENSION_TREE = 0x54524545; // "TREE"
+	private static final int EXTENSION_LINK = 0x6c696e6b; // "link" (split index)
+	private static final int EXTENSION_SDIR = 0x73646972; // "sdir" (sparse index)
+
+	private static final int HASH_LENGTH = 20;
+	private static final int FLAG_ASSUME_VALID = 0x8000;
+	private static final int FLAG_EXTENDED = 0x4000;
+	private static final int FLAG_STAGE_MASK = 0x3000;
+	private static final int FLAG_NAME_MASK = 0x0fff;
+	private static final int EXTENDED_FLAG_SKIP_WORKTREE = 0x4000;
+	private static final int EXTENDED_FLAG_INTENT_TO_ADD = 0x2000;
+
+	static final int MODE_TYPE_MASK = 0170000;
+	static final int MODE_FILE = 0100000;
+	static final int MODE_SYMLINK = 0120000;
+	static final int MODE_GITLINK = 0160000;
+	static final int MODE_TREE = 0040000;
+
+	/**
+	 * One entry (file, at one merge stage) of the index.
+	 */
+	static final class Entry
+	{
+		final String path;
+		final int mode;
+		final String sha;
+		final int stage;
+		final int mtimeSeconds;
+		final int mtimeNanos;
+		final int size;
+		final boolean assumeValid;
+		final boolean skipWorktree;
+		final boolean intentToAdd;
+
+		private Entry(String path, int mode, String sha, int stage, int mtimeSeconds, int mtimeNanos, int size,
+				boolean assumeValid, boolean skipWorktree, boolean intentToAdd)
+		{
+			this.path = path;
+			this.mode = mode;
+			this.sha = sha;
+			this.stage = stage;
+			this.mtimeSeconds = mtimeSeconds;
+			this.mtimeNanos = mtimeNanos;
+			this.size = size;
+			this.assumeValid = assumeValid;
+			this.skipWorktree = skipWorktree;
+			this.intentToAdd = intentToAdd;
+		}
+
+		/**
+		 * Whether the entry has the same contents and flags as the given one (so the same status), regardless of the
+		 * stat data.
+		 */
+		private boolean sameAs(Entry other)
+		{
+			return mode == other.mode && stage == other.stage && sha.equals(other.sha)
+					&& assumeValid == other.assumeValid && skipWorktree == other.skipWorktree
+					&& intentToAdd == other.intentToAdd;
+		}
+	}
+
+	private final List<Entry> entries;
+	private final Map<String, String> validTrees;
+	private final long lastModified;
+
+	private GitIndexFile(List<Entry> entries, Map<String, String> validTrees, long lastModified)
+	{
+		this.entries = entries;
+		this.validTrees = validTrees;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * Returns the entries, sorted by path then stage (the order git keeps them in).
+	 * 
+	 * @return
+	 */
+	List<Entry> getEntries()
+	{
+		return entries;
+	}
+
+	/**
+	 * Returns the SHA of the tree object matching the directory at the given path ("" for the root) according to the
+	 * cache-tree extension, or null if the extension doesn't know (or no longer knows) that directory.
+	 * 
+	 * @param directory
+	 * @return
+	 */
+	String getTreeSHA(String directory)
+	{
+		return validTrees.get(directory);
+	}
+
+	/**
+	 * Returns the time the index file was last modified, in milliseconds. Entries modified at the same time (or later)
+	 * can't be trusted to be unchanged based on their stat data ("racy git").
+	 * 
+	 * @return
+	 */
+	long lastModified()
+	{
+		return lastModified;
+	}
+
+	/**
+	 * Returns the paths whose entries differ between this and the given index, other than in their stat data. Those
+	 * are the only ones whose status can differ, if HEAD and the working tree didn't change in between: git rewrites
+	 * the index when refreshing the stat data, which doesn't change anything.
+	 * 
+	 * @param other
+	 * @return
+	 */
+	Set<String> changedPaths(GitIndexFile other)
+	{
+		Set<String> result = new HashSet<String>();
+		// both are sorted by path then stage
+		List<Entry> otherEntries = other.getEntries();
+		int i = 0;
+		int j = 0;
+		while (i < entries.size() || j < otherEntries.size())
+		{
+			if (i == entries.size())
+			{
+				result.add(otherEntries.get(j++).path);
+				continue;
+			}
+			if (j == otherEntries.size())
+			{
+				result.add(entries.get(i++).path);
+				continue;
+			}
+			Entry entry = entries.get(i);
+			Entry otherEntry = otherEntries.get(j);
+			int compare = compare(entry, otherEntry);
+			if (compare < 0)
+			{
+				result.add(entry.path);
+				i++;
+			}
+			else if (compare > 0)
+			{
+				result.add(otherEntry.path);
+				j++;
+			}
+			else
+			{
+				if (!entry.sameAs(otherEntry))
+				{
+					result.add(entry.path);
+				}
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * git's order: by path bytes, then stage. Comparing the UTF-16 strings gives the same order for paths made of BMP
+	 * characters. Outside of it, entries may not be matched up, which only makes us report a few more paths.
+	 */
+	private static int compare(Entry a, Entry b)
+	{
+		int result = a.path.compareTo(b.path);
+		return (result != 0) ? result : a.stage - b.stage;
+	}
+
+	/**
+	 * Reads the given index file.
+	 * 
+	 * @param file
+	 * @param map
+	 *            whether to memory map the file rather than copy it on the heap. Mapping isn't a good idea on
+	 *            platforms where a mapped file can't be replaced until the mapping is garbage collected (Windows), as
+	 *            git replaces the index on every write.
+	 * @return
+	 * @throws IOException
+	 */
+	static GitIndexFile read(File file, boolean map) throws IOException
+	{
+		long lastModified = file.lastModified();
+		RandomAccessFile raf = new RandomAccessFile(file, "r"); //$NON-NLS-1$
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			long length = channel.size();
+			if (length > Integer.MAX_VALUE)
+			{
+				throw new IOException("Index file too large: " + file); //$NON-NLS-1$
+			}
+			ByteBuffer buffer;
+			if (map)
+			{
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			}
+			else
+			{
+				buffer = ByteBuffer.allocate((int) length);
+				while (buffer.hasRemaining())
+				{
+					if (channel.read(buffer) == -1)
+					{
+						throw new IOException("Unexpected end of index file: " + file); //$NON-NLS-1$
+					}
+				}
+				buffer.flip();
+			}
+			return parse(buffer, lastModified);
+		}
+		catch (RuntimeException e)
+		{
+			// BufferUnderflowException, IndexOutOfBoundsException from a truncated/corrupt file
+			IOException ioe = new IOException("Unable to read index file " + file); //$NON-NLS-1$
+			ioe.initCause(e);
+			throw ioe;
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	private static GitIndexFile parse(ByteBuffer buffer, long lastModified) throws IOException
+	{
+		if (buffer.getInt() != SIGNATURE)
+		{
+			throw new IOException("Not a git index file"); //$NON-NLS-1$
+		}
+		int version = buffer.getInt();
+		if (version < 2 || version > 4)
+		{
+			throw new IOException("Unsupported index version " + version); //$NON-NLS-1$
+		}
+		int count = buffer.getInt();
+		// the last 20 bytes are the checksum of everything before
+		int end = buffer.limit() - HASH_LENGTH;
+
+		List<Entry> entries = new ArrayList<Entry>(count);
+		byte[] previousName = new byte[0];
+		for (int i = 0; i < count; i++)
+		{
+			int entryStart = buffer.position();
+			buffer.getInt(); // ctime seconds
+			buffer.getInt(); // ctime nanoseconds
+			int mtimeSeconds = buffer.getInt();
+			int mtimeNanos = buffer.getInt();
+			buffer.getInt(); // dev
+			buffer.getInt(); // ino
+			int mode = buffer.getInt();
+			buffer.getInt(); // uid
+			buffer.getInt(); // gid
+			int size = buffer.getInt();
+			String sha = readSHA(buffer);
+			int flags = buffer.getShort() & 0xffff;
+			int extendedFlags = 0;
+			if ((flags & FLAG_EXTENDED) != 0)
+			{
+				if (version < 3)
+				{
+					throw new IOException("Extended flags in a version 2 index"); //$NON-NLS-1$
+				}
+				extendedFlags = buffer.getShort() & 0xffff;
+			}
+
+			byte[] name;
+			if (version == 4)
+			{
+				// the name is the previous one, minus some trailing bytes, plus a NUL terminated suffix
+				int strip = readVarInt(buffer);
+				if (strip > previousName.length)
+				{
+					throw new IOException("Corrupt path in index entry " + i); //$NON-NLS-1$
+				}
+				byte[] suffix = readNulTerminated(buffer);
+				int keep = previousName.length - strip;
+				name = new byte[keep + suffix.length];
+				System.arraycopy(previousName, 0, name, 0, keep);
+				System.arraycopy(suffix, 0, name, keep, suffix.length);
+			}
+			else
+			{
+				int nameLength = flags & FLAG_NAME_MASK;
+				if (nameLength < FLAG_NAME_MASK)
+				{
+					name = new byte[nameLength];
+					buffer.get(name);
+					if (buffer.get() != 0)
+					{
+						throw new IOException("Corrupt path in index entry " + i); //$NON-NLS-1$
+					}
+				}
+				else
+				{
+					// names longer than 0xffe are only NUL terminated
+					name = readNulTerminated(buffer);
+				}
+				// entries are padded with NULs to a multiple of 8 bytes
+				int entryLength = buffer.position() - entryStart;
+				int padded = (entryLength + 7) & ~7;
+				buffer.position(entryStart + padded);
+			}
+			previousName = name;
+
+			if ((mode & MODE_TYPE_MASK) == MODE_TREE)
+			{
+				// sparse directory entry
+				throw new IOException("Sparse indices aren't supported"); //$NON-NLS-1$
+			}
+
+			entries.add(new Entry(decode(name), mode, sha, (flags & FLAG_STAGE_MASK) >> 12, mtimeSeconds,
+					mtimeNanos, size, (flags & FLAG_ASSUME_VALID) != 0,
+					(extendedFlags & EXTENDED_FLAG_SKIP_WORKTREE) != 0,
+					(extendedFlags & EXTENDED_FLAG_INTENT_TO_ADD) != 0));
+		}
+
+		Map<String, String> validTrees = Collections.emptyMap();
+		while (buffer.position() + 8 <= end)
+		{
+			int signature = buffer.getInt();
+			int size = buffer.getInt();
+			int extensionEnd = buffer.position() + size;
+			if (size < 0 || extensionEnd > end)
+			{
+				throw new IOException("Corrupt index extension"); //$NON-NLS-1$
+			}
+			if (signature == EXTENSION_LINK || signature == EXTENSION_SDIR)
+			{
+				throw new IOException("Split and sparse indices aren't supported"); //$NON-NLS-1$
+			}
+			if (signature == EXTENSION_TREE)
+			{
+				validTrees = new HashMap<String, String>();
+				readTree(buffer, null, validTrees);
+			}
+			// the others (resolve undo, untracked cache, fsmonitor, ...) are optional ones we don't need
+			buffer.position(extensionEnd);
+		}
+
+		return new GitIndexFile(entries, validTrees, lastModified);
+	}
+
+	/**
+	 * Reads one node of the cache-tree, and its children: "path NUL entry_count SP subtree_count LF [sha]".
+	 */
+	private static void readTree(ByteBuffer buffer, String parent, Map<String, String> validTrees)
+			throws IOException
+	{
+		String name = decode(readNulTerminated(buffer));
+		String path = (parent == null) ? name : ((parent.length() == 0) ? name : parent + '/' + name);
+		int entryCount = Integer.parseInt(readAsciiUntil(buffer, (byte) ' '));
+		int subtreeCount = Integer.parseInt(readAsciiUntil(buffer, (byte) '\n'));
+		// an invalidated node has a negative count and no SHA
+		if (entryCount >= 0)
+		{
+			validTrees.put(path, readSHA(buffer));
+		}
+		for (int i = 0; i < subtreeCount; i++)
+		{
+			readTree(buffer, path, validTrees);
+		}
+	}
+
+	private static String readSHA(ByteBuffer buffer)
+	{
+		byte[] hash = new byte[HASH_LENGTH];
+		buffer.get(hash);
+		return toHex(hash);
+	}
+
+	static String toHex(byte[] hash)
+	{
+		char[] hex = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++)
+		{
+			hex[2 * i] = Character.forDigit((hash[i] >> 4) & 0xf, 16);
+			hex[2 * i + 1] = Character.forDigit(hash[i] & 0xf, 16);
+		}
+		return new String(hex);
+	}
+
+	private static int readVarInt(ByteBuffer buffer)
+	{
+		// git's offset encoding: 7 bits per byte, high bit set on all but the last, each continuation adding one
+		int b = buffer.get() & 0xff;
+		int value = b & 0x7f;
+		while ((b & 0x80) != 0)
+		{
+			b = buffer.get() & 0xff;
+			value = ((value + 1) << 7) | (b & 0x7f);
+		}
+		return value;
+	}
+
+	private static byte[] readNulTerminated(ByteBuffer buffer)
+	{
+		int start = buffer.position();
+		int end = start;
+		while (buffer.get(end) != 0)
+		{
+			end++;
+		}
+		byte[] bytes = new byte[end - start];
+		buffer.get(bytes);
+		buffer.get(); // NUL
+		return bytes;
+	}
+
+	private static String readAsciiUntil(ByteBuffer buffer, byte terminator)
+	{
+		StringBuilder builder = new StringBuilder();
+		byte b;
+		while ((b = buffer.get()) != terminator)
+		{
+			builder.append((char) b);
+		}
+		return builder.toString();
+	}
+
+	private static String decode(byte[] bytes) throws UnsupportedEncodingException
+	{
+		// git stores paths as the raw bytes it got from the file system, UTF-8 is the sane assumption
+		return new String(bytes, "UTF-8"); //$NON-NLS-1$
+	}
+}
@@ -34,6 +34,12 @@ class GitIndexRefreshJob extends Job
 	 */
 	private static final long UPDATE_DELAY = 200;
 
+	/**
+	 * Refreshes are incremental (only the paths reported as changed are refreshed). Every so often, we do a full one
+	 * anyway, to pick up anything we didn't hear about (i.e. files changed outside the workspace).
+	 */
+	private static final long RECONCILE_INTERVAL = 5 * 60 * 1000;
+
 	/**
 	 * List of refresh requests. This basically just serves to queue up all requests.
 	 */
@@ -49,6 +55,16 @@ class GitIndexRefreshJob extends Job
 	 */
 	private AtomicBoolean refreshAll;
 
+	/**
+	 * Whether we've been told the index file changed since we last looked at it.
+	 */
+	private AtomicBoolean indexChanged;
+
+	/**
+	 * When we last refreshed everything.
+	 */
+	private volatile long lastFullRefresh;
+
 	public GitIndexRefreshJob(GitIndex index)
 	{
 		super(Messages.GitIndexRefreshJob_Name);
@@ -56,6 +72,9 @@ class GitIndexRefreshJob extends Job
 		this.index = index;
 		fRequests = new HashSet<IPath>(3);
 		refreshAll = new AtomicBoolean(false);
+		indexChanged = new AtomicBoolean(false);
+		// the index gets fully refreshed when the repository is opened
+		lastFullRefresh = System.currentTimeMillis();
 	}
 
 	@Override
@@ -74,18 +93,36 @@ class GitIndexRefreshJob extends Job
 
 				// FIXME What if the refresh fails? Should we retry? Can we?
 				IStatus status;
-				if (refreshAll.compareAndSet(true, false))
+				if (refreshAll.compareAndSet(true, false)
+						|| System.currentTimeMillis() - lastFullRefresh > RECONCILE_INTERVAL)
 				{
 					// Clear all the requests out, because we'll refresh everything anyways
 					synchronized (fRequests)
 					{
 						fRequests = new HashSet<IPath>(3);
 					}
+					indexChanged.set(false);
 					// refresh everything
+					lastFullRefresh = System.currentTimeMillis();
 					status = index.refresh(monitor);
 				}
 				else
 				{
+					if (indexChanged.compareAndSet(true, false))
+					{
+						// Add the paths whose index entries changed to the ones to refresh
+						Collection<IPath> changed = index.pathsChangedInIndex();
+						if (changed == null)
+						{
+							refreshAll.set(true);
+							continue;
+						}
+						synchronized (fRequests)
+						{
+							fRequests.addAll(changed);
+						}
+					}
+
 					// We were asked to refresh only some files.
 					// Take all the requests off the queue
 					List<IPath> copy;
@@ -126,7 +163,7 @@ class GitIndexRefreshJob extends Job
 	{
 		synchronized (fRequests)
 		{
-			return refreshAll.get() || !fRequests.isEmpty();
+			return refreshAll.get() || indexChanged.get() || !fRequests.isEmpty();
 		}
 	}
 
@@ -154,4 +191,13 @@ class GitIndexRefreshJob extends Job
 		refreshAll.set(true);
 		schedule(UPDATE_DELAY);
 	}
+
+	/**
+	 * Schedules a refresh of the paths whose entries changed in the index file.
+	 */
+	public void indexChanged()
+	{
+		indexChanged.set(true);
+		schedule(UPDATE_DELAY);
+	}
 }
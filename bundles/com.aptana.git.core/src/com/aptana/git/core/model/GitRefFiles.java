@@ -0,0 +1,281 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Reads the refs of a repository straight from its git directory: <code>HEAD</code>, the loose refs under
+ * <code>refs/</code> and the <code>packed-refs</code> file. A loose ref takes precedence over a packed one of the same
+ * name, as in git.
+ * <p>
+ * This is a snapshot reader, it doesn't cache anything. Repositories using other ref storage (reftable) don't have
+ * these files, callers should fall back to git for anything this can't resolve.
+ */
+class GitRefFiles
+{
+	/**
+	 * A ref and what it points to.
+	 */
+	static final class Ref
+	{
+		final String name;
+		final String sha;
+
+		/**
+		 * What an annotated tag ultimately points to, when packed-refs recorded it. null otherwise.
+		 */
+		final String peeled;
+
+		/**
+		 * Whether we know for sure that this doesn't point to an annotated tag, without looking at the object.
+		 */
+		final boolean knownNotTag;
+
+		private Ref(String name, String sha, String peeled, boolean knownNotTag)
+		{
+			this.name = name;
+			this.sha = sha;
+			this.peeled = peeled;
+			this.knownNotTag = knownNotTag;
+		}
+	}
+
+	private static final String SYMREF_PREFIX = "ref: "; //$NON-NLS-1$
+	private static final String PACKED_REFS = "packed-refs"; //$NON-NLS-1$
+	private static final String PACKED_REFS_HEADER = "# pack-refs with:"; //$NON-NLS-1$
+	private static final String FULLY_PEELED = "fully-peeled"; //$NON-NLS-1$
+	private static final int MAX_SYMREF_DEPTH = 5;
+	private static final int SHA_LENGTH = 40;
+
+	private final File gitDir;
+
+	GitRefFiles(File gitDir)
+	{
+		this.gitDir = gitDir;
+	}
+
+	/**
+	 * Returns the ref a symbolic ref (i.e. "HEAD") points to (i.e. "refs/heads/master"), or null if it isn't a
+	 * symbolic ref (a detached HEAD) or doesn't exist.
+	 * 
+	 * @param name
+	 * @return
+	 * @throws IOException
+	 */
+	String readSymbolicRef(String name) throws IOException
+	{
+		String contents = readLooseRef(name);
+		if (contents != null && contents.startsWith(SYMREF_PREFIX))
+		{
+			return contents.substring(SYMREF_PREFIX.length()).trim();
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the SHA the named ref points to, following symbolic refs, or null if it doesn't exist (an unborn
+	 * branch).
+	 * 
+	 * @param name
+	 * @return
+	 * @throws IOException
+	 */
+	String resolve(String name) throws IOException
+	{
+		Map<String, Ref> packed = null;
+		for (int depth = 0; depth < MAX_SYMREF_DEPTH; depth++)
+		{
+			String contents = readLooseRef(name);
+			if (contents == null)
+			{
+				if (packed == null)
+				{
+					packed = readPackedRefs();
+				}
+				Ref ref = packed.get(name);
+				return (ref == null) ? null : ref.sha;
+			}
+			if (!contents.startsWith(SYMREF_PREFIX))
+			{
+				return checkSHA(name, contents);
+			}
+			name = contents.substring(SYMREF_PREFIX.length()).trim();
+		}
+		throw new IOException("Too many levels of symbolic refs at " + name); //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns all the refs under <code>refs/</code>, sorted by name. Symbolic refs in there (i.e.
+	 * refs/remotes/origin/HEAD) are resolved, dangling ones left out.
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	Map<String, Ref> readAll() throws IOException
+	{
+		Map<String, Ref> result = readPackedRefs();
+		Map<String, String> symbolic = new TreeMap<String, String>();
+		readLooseRefs(new File(gitDir, GitRef.REFS), GitRef.REFS, result, symbolic);
+		for (Map.Entry<String, String> entry : symbolic.entrySet())
+		{
+			String sha = resolve(entry.getValue());
+			if (sha != null)
+			{
+				Ref target = result.get(entry.getValue());
+				result.put(entry.getKey(), new Ref(entry.getKey(), sha, (target == null) ? null : target.peeled,
+						target != null && target.knownNotTag));
+			}
+		}
+		return result;
+	}
+
+	private void readLooseRefs(File dir, String prefix, Map<String, Ref> result, Map<String, String> symbolic)
+			throws IOException
+	{
+		File[] children = dir.listFiles();
+		if (children == null)
+		{
+			return;
+		}
+		for (File child : children)
+		{
+			String name = prefix + child.getName();
+			if (child.isDirectory())
+			{
+				readLooseRefs(child, name + '/', result, symbolic);
+				continue;
+			}
+			// skip the lock files of updates in progress
+			if (name.endsWith(".lock")) //$NON-NLS-1$
+			{
+				continue;
+			}
+			String contents = readLooseRef(name);
+			if (contents == null)
+			{
+				continue;
+			}
+			if (contents.startsWith(SYMREF_PREFIX))
+			{
+				symbolic.put(name, contents.substring(SYMREF_PREFIX.length()).trim());
+			}
+			else
+			{
+				// the loose ref wins over the packed one, as does its (unknown) type
+				result.put(name, new Ref(name, checkSHA(name, contents), null, false));
+			}
+		}
+	}
+
+	/**
+	 * Reads packed-refs: an optional "# pack-refs with: traits" header, then "sha SP refname" lines, each optionally
+	 * followed by "^peeled-sha" when the ref is an annotated tag.
+	 */
+	private Map<String, Ref> readPackedRefs() throws IOException
+	{
+		Map<String, Ref> result = new TreeMap<String, Ref>();
+		File file = new File(gitDir, PACKED_REFS);
+		if (!file.isFile())
+		{
+			return result;
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8")); //$NON-NLS-1$
+		try
+		{
+			boolean fullyPeeled = false;
+			String lastName = null;
+			String lastSHA = null;
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				if (line.length() == 0)
+				{
+					continue;
+				}
+				if (line.charAt(0) == '#')
+				{
+					if (line.startsWith(PACKED_REFS_HEADER))
+					{
+						fullyPeeled = (' ' + line.substring(PACKED_REFS_HEADER.length()) + ' ').indexOf(' '
+								+ FULLY_PEELED + ' ') != -1;
+					}
+					continue;
+				}
+				if (line.charAt(0) == '^')
+				{
+					if (lastName == null)
+					{
+						throw new IOException("Peeled line without a ref in " + file); //$NON-NLS-1$
+					}
+					result.put(lastName, new Ref(lastName, lastSHA, checkSHA(lastName, line.substring(1)), false));
+					continue;
+				}
+				int space = line.indexOf(' ');
+				if (space != SHA_LENGTH)
+				{
+					throw new IOException("Unexpected line in " + file + ": " + line); //$NON-NLS-1$ //$NON-NLS-2$
+				}
+				lastName = line.substring(space + 1);
+				lastSHA = checkSHA(lastName, line.substring(0, space));
+				// with "fully-peeled", refs that aren't followed by a peeled line aren't annotated tags
+				result.put(lastName, new Ref(lastName, lastSHA, null, fullyPeeled));
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the trimmed contents of a loose ref file, or null if there's none.
+	 */
+	private String readLooseRef(String name) throws IOException
+	{
+		File file = new File(gitDir, name);
+		if (!file.isFile())
+		{
+			return null;
+		}
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8")); //$NON-NLS-1$
+		try
+		{
+			String line = reader.readLine();
+			return (line == null) ? null : line.trim();
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	private static String checkSHA(String name, String sha) throws IOException
+	{
+		sha = sha.trim();
+		if (sha.length() != SHA_LENGTH)
+		{
+			throw new IOException("Invalid SHA for " + name + ": " + sha); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		for (int i = 0; i < SHA_LENGTH; i++)
+		{
+			if (Character.digit(sha.charAt(i), 16) == -1)
+			{
+				throw new IOException("Invalid SHA for " + name + ": " + sha); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+		return sha;
+	}
+}
@@ -15,6 +15,7 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.text.MessageFormat;
 import java.util.ArrayList;
@@ -156,9 +157,10 @@ public class GitRepository
 	public static final String GITIGNORE = ".gitignore"; //$NON-NLS-1$
 
 	/**
-	 * File used to associate SHAs and refs when git pack-refs has been used.
+	 * Object types, as reported by git.
 	 */
-	private static final String PACKED_REFS = "packed-refs"; //$NON-NLS-1$
+	private static final String COMMIT_TYPE = "commit"; //$NON-NLS-1$
+	private static final String TAG_TYPE = "tag"; //$NON-NLS-1$
 
 	/**
 	 * The file used to write the commit message.
@@ -179,7 +181,7 @@ public class GitRepository
 	 * The most important file in git. This holds the current file state. When this changes, the state of files in the
 	 * repo has changed.
 	 */
-	private static final String INDEX = "index"; //$NON-NLS-1$
+	static final String INDEX = "index"; //$NON-NLS-1$
 
 	/**
 	 * File created prior to merges (which happen as part of pull, which is just fetch + merge).
@@ -342,11 +344,10 @@ public class GitRepository
 						// Do long running work in another thread/job so we don't tie up the jnotify locks!
 						private void refreshIndex()
 						{
-							// FIXME We get this when the index file changes, which can happen on stage/unstage/rm/add.
-							// Can we temporarily disable it if the operation causing it is us and we're already up to
-							// date? Maybe if we know that the filewatcher is going to pick it up, we just don't refresh
-							// in our own code?
-							index().scheduleBatchRefresh();
+							// We get this when the index file changes, which can happen on stage/unstage/rm/add, or
+							// just because git refreshed its stat data. Only the paths whose entries changed (if
+							// any) get refreshed.
+							index().indexFileChanged();
 						}
 
 						protected void checkForBranchChange()
@@ -944,22 +945,8 @@ public class GitRepository
 
 		refs = new HashMap<String, List<GitRef>>();
 
-		IStatus result = execute(ReadWrite.READ, "for-each-ref", //$NON-NLS-1$
-				"--format=%(refname) %(objecttype) %(objectname) %(*objectname)", "refs"); //$NON-NLS-1$ //$NON-NLS-2$
-
-		String output = result.getMessage();
-		List<String> lines = StringUtil.tokenize(output, "\n"); //$NON-NLS-1$
-
-		for (String line : lines)
+		for (List<String> components : readRefs())
 		{
-			// If its an empty line, skip it (e.g. with empty repositories)
-			if (line.length() == 0)
-			{
-				continue;
-			}
-
-			List<String> components = StringUtil.tokenize(line, " "); //$NON-NLS-1$
-
 			// First do the ref matching. If this ref is new, add it to our ref list
 			GitRef newRef = GitRef.refFromString(components.get(0));
 			GitRevSpecifier revSpec = new GitRevSpecifier(newRef);
@@ -979,6 +966,92 @@ public class GitRepository
 		return ret;
 	}
 
+	/**
+	 * Returns the refs under refs/, as lists of name, object type, SHA and (for annotated tags) the peeled SHA, like
+	 * <code>git for-each-ref</code> would. These are read from the git directory, git is only asked for the type of
+	 * loose tags (i.e. whether they're annotated).
+	 * 
+	 * @return
+	 */
+	private List<List<String>> readRefs()
+	{
+		try
+		{
+			Map<String, GitRefFiles.Ref> all = refFiles().readAll();
+			List<List<String>> result = new ArrayList<List<String>>(all.size());
+			for (GitRefFiles.Ref ref : all.values())
+			{
+				List<String> components = CollectionsUtil.newList(ref.name, COMMIT_TYPE, ref.sha);
+				if (ref.peeled != null)
+				{
+					components.set(1, TAG_TYPE);
+					components.add(ref.peeled);
+				}
+				else if (!ref.knownNotTag && ref.name.startsWith(GitRef.REFS_TAGS))
+				{
+					String type = objectType(ref.sha);
+					if (type == null)
+					{
+						throw new IOException("Missing object " + ref.sha + " for " + ref.name); //$NON-NLS-1$ //$NON-NLS-2$
+					}
+					components.set(1, type);
+					if (TAG_TYPE.equals(type))
+					{
+						components.add(peelTag(ref.sha));
+					}
+				}
+				result.add(components);
+			}
+			return result;
+		}
+		catch (IOException e)
+		{
+			IdeLog.logWarning(GitPlugin.getDefault(), "Unable to read the refs, asking git", e, IDebugScopes.DEBUG); //$NON-NLS-1$
+		}
+
+		IStatus result = execute(ReadWrite.READ, "for-each-ref", //$NON-NLS-1$
+				"--format=%(refname) %(objecttype) %(objectname) %(*objectname)", "refs"); //$NON-NLS-1$ //$NON-NLS-2$
+		List<List<String>> refLines = new ArrayList<List<String>>();
+		if (result == null || !result.isOK())
+		{
+			return refLines;
+		}
+		for (String line : StringUtil.tokenize(result.getMessage(), "\n")) //$NON-NLS-1$
+		{
+			// If its an empty line, skip it (e.g. with empty repositories)
+			if (line.length() != 0)
+			{
+				refLines.add(StringUtil.tokenize(line, " ")); //$NON-NLS-1$
+			}
+		}
+		return refLines;
+	}
+
+	/**
+	 * Returns the SHA of the object an annotated tag points to.
+	 */
+	private String peelTag(String sha) throws IOException
+	{
+		byte[] tag = readRawObject(sha);
+		// "object <sha>\n" is the first line of a tag
+		String header = (tag == null) ? StringUtil.EMPTY : new String(tag, 0, Math.min(tag.length, 48), IOUtil.UTF_8);
+		if (!header.startsWith("object ") || header.length() < 47) //$NON-NLS-1$
+		{
+			throw new IOException("Unable to read tag " + sha); //$NON-NLS-1$
+		}
+		return header.substring(7, 47);
+	}
+
+	/**
+	 * Reads refs straight from the git directory.
+	 * 
+	 * @return
+	 */
+	GitRefFiles refFiles()
+	{
+		return new GitRefFiles(gitDirPath().toFile());
+	}
+
 	private GitRevSpecifier addBranch(GitRevSpecifier rev)
 	{
 		if (rev.parameters().isEmpty())
@@ -1019,12 +1092,20 @@ public class GitRepository
 
 	private String parseSymbolicReference(String reference)
 	{
-		IStatus result = execute(ReadWrite.READ, "symbolic-ref", "-q", reference); //$NON-NLS-1$ //$NON-NLS-2$
-		if (result == null || !result.isOK())
+		String ref;
+		try
 		{
-			return null;
+			ref = refFiles().readSymbolicRef(reference);
+		}
+		catch (IOException e)
+		{
+			IStatus result = execute(ReadWrite.READ, "symbolic-ref", "-q", reference); //$NON-NLS-1$ //$NON-NLS-2$
+			if (result == null || !result.isOK())
+			{
+				return null;
+			}
+			ref = result.getMessage();
 		}
-		String ref = result.getMessage();
 		if (ref != null && ref.startsWith(GitRef.REFS))
 		{
 			return ref;
@@ -1527,6 +1608,96 @@ public class GitRepository
 		READ, WRITE
 	}
 
+	/**
+	 * Returns the raw contents of an object, like a file of a commit ("&lt;sha&gt;:&lt;path&gt;"), or null if there's
+	 * no such object. Rather than launching a git process per call, objects are read from a
+	 * <code>git cat-file --batch</code> process kept running for the repository. The name must not refer to the index
+	 * (":0:&lt;path&gt;"), as the long-lived process doesn't see later changes to it.
+	 * 
+	 * @param objectName
+	 * @return
+	 */
+	public byte[] readObject(String objectName)
+	{
+		try
+		{
+			return readRawObject(objectName);
+		}
+		catch (IOException e)
+		{
+			IdeLog.logWarning(GitPlugin.getDefault(),
+					MessageFormat.format("Unable to read {0} through git cat-file", objectName), e, IDebugScopes.DEBUG); //$NON-NLS-1$
+		}
+
+		// fall back to a one-off process
+		IStatus result = execute(GitRepository.ReadWrite.READ, "cat-file", "-p", objectName); //$NON-NLS-1$ //$NON-NLS-2$
+		if (result == null || !result.isOK())
+		{
+			return null;
+		}
+		try
+		{
+			return result.getMessage().getBytes(IOUtil.UTF_8);
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			return result.getMessage().getBytes();
+		}
+	}
+
+	/**
+	 * Like {@link #readObject(String)}, but fails rather than falling back to a one-off (pretty printing) git process,
+	 * so trees always come back in their binary form.
+	 * 
+	 * @param objectName
+	 * @return
+	 * @throws IOException
+	 */
+	byte[] readRawObject(String objectName) throws IOException
+	{
+		GitExecutable executable = getGitExecutable();
+		if (executable == null)
+		{
+			throw new IOException("No git executable"); //$NON-NLS-1$
+		}
+		if (!enterRead())
+		{
+			throw new IOException(Messages.GitRepository_FailedAcquireReadLock);
+		}
+		try
+		{
+			return executable.readObject(workingDirectory(), objectName);
+		}
+		finally
+		{
+			exitRead();
+		}
+	}
+
+	/**
+	 * Returns the type of the given object, or null if there's no such object. See {@link #readObject(String)}.
+	 */
+	private String objectType(String objectName) throws IOException
+	{
+		GitExecutable executable = getGitExecutable();
+		if (executable == null)
+		{
+			throw new IOException("No git executable"); //$NON-NLS-1$
+		}
+		if (!enterRead())
+		{
+			throw new IOException(Messages.GitRepository_FailedAcquireReadLock);
+		}
+		try
+		{
+			return executable.objectType(workingDirectory(), objectName);
+		}
+		finally
+		{
+			exitRead();
+		}
+	}
+
 	/**
 	 * Execute a git process, specifying the arguments and whether we should lock for read or write.
 	 * 
@@ -1697,6 +1868,12 @@ public class GitRepository
 
 	void dispose()
 	{
+		// stop the long-lived git processes (don't go looking for git if it's been reset since)
+		GitExecutable executable = GitExecutable.fgExecutable;
+		if (executable != null)
+		{
+			executable.closeCatFiles(workingDirectory());
+		}
 		// clean up any file watchers
 		if (fileWatcherIds != null)
 		{
@@ -1905,30 +2082,18 @@ public class GitRepository
 	 */
 	public String toSHA(GitRef ref)
 	{
-		File sha1File = gitFile(ref.ref());
-		// If the file doesn't exist, it's inside packed-refs!
 		try
 		{
-			if (!sha1File.isFile())
+			String sha = refFiles().resolve(ref.ref());
+			if (sha != null)
 			{
-				File packedRefs = gitFile(PACKED_REFS);
-				String packedRefContents = IOUtil.read(new FileInputStream(packedRefs)); // $codepro.audit.disable
-																							// closeWhereCreated
-				// each line is 40 char sha, space, ref name
-				int index = packedRefContents.indexOf(ref.ref());
-				if (index != -1)
-				{
-					return new String(packedRefContents.substring(index - 41, index - 1));
-				}
-			}
-			else
-			{
-				return IOUtil.read(new FileInputStream(sha1File)).trim(); // $codepro.audit.disable closeWhereCreated
+				return sha;
 			}
 		}
-		catch (FileNotFoundException e) // $codepro.audit.disable emptyCatchClause
+		catch (IOException e)
 		{
-			// ignore
+			IdeLog.logWarning(GitPlugin.getDefault(), MessageFormat.format("Unable to resolve {0}", ref.ref()), e, //$NON-NLS-1$
+					IDebugScopes.DEBUG);
 		}
 		return ref.ref();
 	}
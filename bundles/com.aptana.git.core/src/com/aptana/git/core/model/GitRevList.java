@@ -7,6 +7,7 @@
  */
 package com.aptana.git.core.model;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -14,7 +15,9 @@ import java.io.UnsupportedEncodingException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -36,6 +39,35 @@ public class GitRevList
 
 	private static final int NO_LIMIT = -1;
 
+	/**
+	 * A reasonable number of commits to show at once, for
+	 * {@link #walkRevisionList(GitRevSpecifier, int, IPageListener, IProgressMonitor)}.
+	 */
+	public static final int DEFAULT_PAGE_SIZE = 500;
+
+	private static final String HISTORY_CACHE_DIR = "history"; //$NON-NLS-1$
+	private static final String[] REF_PREFIXES = { GitRef.REFS, GitRef.REFS_TAGS, GitRef.REFS_HEADS,
+			GitRef.REFS_REMOTES };
+	/**
+	 * What makes a revision more than a plain ref or SHA (parents, ranges, reflog entries, globs, ...).
+	 */
+	private static final String[] REV_OPERATORS = { "^", "~", ":", "..", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			"@{", "*", "?", "[" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+	/**
+	 * Receives the commits of a paged walk as they're read.
+	 */
+	public interface IPageListener
+	{
+		/**
+		 * Called with each page of commits, in order.
+		 * 
+		 * @param commits
+		 *            the commits read since the previous page, in reverse chronological order
+		 */
+		void pageLoaded(List<GitCommit> commits);
+	}
+
 	public GitRevList(GitRepository repo)
 	{
 		repository = repo;
@@ -71,13 +103,7 @@ public class GitRevList
 		long start = System.currentTimeMillis();
 		List<GitCommit> revisions = new ArrayList<GitCommit>();
 		GitExecutable gitExe = GitExecutable.instance();
-		Version v = gitExe.version();
-		// Git format doesn't support %B until 1.7.3+
-		boolean useRaw = false;
-		if (v.compareTo(Version.parseVersion("1.7.3")) >= 0) //$NON-NLS-1$
-		{
-			useRaw = true;
-		}
+		boolean useRaw = supportsRawBody(gitExe);
 		// @formatter:off
 		List<String> arguments = CollectionsUtil.newList(
 			"log", //$NON-NLS-1$
@@ -124,23 +150,22 @@ public class GitRevList
 		if (!repository.enterRead())
 		{
 			// Bail early and report a failure to acquire the lock on the repo
-			return new Status(
-					IStatus.ERROR,
-					GitPlugin.getPluginId(),
-					"Failed to acquire read lock on the git repository. A long-running operation that writes to the repo is running (i.e. pull). Please ensure that has finished before trying again."); //$NON-NLS-1$
+			return readLockFailure();
 		}
 
 		try
 		{
 			// FIXME Move this into GitRepository, so we can set up lock/monitor on it!
 			Process p = gitExe.run(repository.workingDirectory(), arguments.toArray(new String[arguments.size()]));
-			InputStream stream = p.getInputStream();
+			InputStream stream = new BufferedInputStream(p.getInputStream());
+			Map<String, String> strings = new HashMap<String, String>();
 
 			int num = 0;
 			while (true)
 			{
 				if (subMonitor.isCanceled())
 				{
+					p.destroy();
 					return Status.CANCEL_STATUS;
 				}
 
@@ -169,64 +194,10 @@ public class GitRevList
 					sha = sha.substring(startIndex, startIndex + 40);
 				}
 
-				String encoding = getline(stream, '\1', IOUtil.UTF_8);
-				GitCommit newCommit = new GitCommit(repository, sha);
-
-				String author = getline(stream, '\1', encoding);
-				String authorEmail = getline(stream, '\1', encoding);
-
-				String subject;
-				String body;
-				if (useRaw)
-				{
-					body = getline(stream, '\1', encoding);
-					subject = StringUtil.LINE_SPLITTER.split(body)[0];
-				}
-				else
-				{
-					subject = getline(stream, '\1', encoding);
-					body = getline(stream, '\1', encoding);
-				}
-
-				String parentString = getline(stream, '\1');
-				if (parentString != null && parentString.length() != 0)
-				{
-					if (((parentString.length() + 1) % 41) != 0)
-					{
-						IdeLog.logError(GitPlugin.getDefault(),
-								MessageFormat.format("invalid parents: {0}", parentString.length()), IDebugScopes.DEBUG); //$NON-NLS-1$
-						continue;
-					}
-					int nParents = (parentString.length() + 1) / 41;
-					List<String> parents = new ArrayList<String>(nParents);
-					for (int parentIndex = 0; parentIndex < nParents; ++parentIndex)
-					{
-						int stringIndex = parentIndex * 41;
-						parents.add(parentString.substring(stringIndex, stringIndex + 40));
-					}
-
-					newCommit.setParents(parents);
-				}
-
-				long time = readLong(stream); // read 10 chars as a string and parse into a long
-
-				newCommit.setSubject(subject);
-				newCommit.setComment(body);
-				newCommit.setAuthor(author);
-				newCommit.setAuthorEmail(authorEmail);
-				newCommit.setTimestamp(time);
-
-				if (showSign)
+				GitCommit newCommit = readCommit(stream, sha, useRaw, true, showSign, strings);
+				if (newCommit == null)
 				{
-					stream.read(); // Remove separator
-					char c = (char) stream.read();
-					if (c != '>' && c != '<' && c != '^' && c != '-')
-					{
-						IdeLog.logError(GitPlugin.getDefault(),
-								"Error loading commits: sign not correct", IDebugScopes.DEBUG); //$NON-NLS-1$
-						// newCommit.setSign(c);
-					}
-
+					continue;
 				}
 
 				int read = stream.read();
@@ -268,6 +239,376 @@ public class GitRevList
 		return Status.OK_STATUS;
 	}
 
+	/**
+	 * Walks a revision in pages, handing each page of commits to the listener as soon as it has been read, so callers
+	 * can show the most recent commits while the rest of the history is still loading. Once done,
+	 * {@link #getCommits()} returns all of them.
+	 * <p>
+	 * Unlike {@link #walkRevisionListWithSpecifier(GitRevSpecifier, IProgressMonitor)}, commits come in git's default
+	 * (reverse chronological) order rather than topological order: the latter makes git walk the whole history before
+	 * printing the first commit. The commits don't carry their message, {@link GitCommit#getComment()} reads it when
+	 * asked for. Completed walks are cached on disk, keyed by the SHA the revision resolves to, and replayed from there
+	 * until that changes.
+	 * 
+	 * @param rev
+	 *            the revision to walk, HEAD if null
+	 * @param pageSize
+	 *            the number of commits per page
+	 * @param listener
+	 *            notified of each page, in order, on the calling thread. The last page may be shorter, or empty if
+	 *            there are no commits at all.
+	 * @param monitor
+	 * @return
+	 */
+	public IStatus walkRevisionList(GitRevSpecifier rev, int pageSize, IPageListener listener, IProgressMonitor monitor)
+	{
+		SubMonitor subMonitor = SubMonitor.convert(monitor, 100000);
+		long start = System.currentTimeMillis();
+		pageSize = Math.max(1, pageSize);
+
+		GitHistoryCache cache = historyCache();
+		String key = cacheKey(rev);
+		String tip = (cache == null) ? null : resolveTip(rev);
+		if (tip != null)
+		{
+			List<GitCommit> cached = cache.read(repository, key, tip);
+			if (cached != null)
+			{
+				firePages(cached, pageSize, listener);
+				setCommits(cached, true);
+				logInfo(MessageFormat.format("Loaded {0} commits from the history cache in {1} ms", cached.size(), //$NON-NLS-1$
+						System.currentTimeMillis() - start));
+				subMonitor.done();
+				return Status.OK_STATUS;
+			}
+		}
+
+		GitExecutable gitExe = GitExecutable.instance();
+		// The message is loaded on demand, only the subject is needed here
+		String formatString = "--pretty=format:%H\01%e\01%an\01%ae\01%s\01%P\01%at"; //$NON-NLS-1$
+		boolean showSign = ((rev == null) ? false : rev.hasLeftRight());
+		if (showSign)
+		{
+			formatString += "\01%m"; //$NON-NLS-1$
+		}
+		List<String> arguments = CollectionsUtil.newList("log", "-z", formatString); //$NON-NLS-1$ //$NON-NLS-2$
+		if (rev == null)
+		{
+			arguments.add(GitRepository.HEAD);
+		}
+		else
+		{
+			arguments.addAll(rev.parameters());
+		}
+
+		if (subMonitor.isCanceled())
+		{
+			return Status.CANCEL_STATUS;
+		}
+
+		if (!repository.enterRead())
+		{
+			return readLockFailure();
+		}
+
+		List<GitCommit> revisions = new ArrayList<GitCommit>();
+		try
+		{
+			Process p = gitExe.run(repository.workingDirectory(), arguments.toArray(new String[arguments.size()]));
+			InputStream stream = new BufferedInputStream(p.getInputStream());
+			Map<String, String> strings = new HashMap<String, String>();
+			List<GitCommit> page = new ArrayList<GitCommit>(pageSize);
+			while (true)
+			{
+				if (subMonitor.isCanceled())
+				{
+					p.destroy();
+					return Status.CANCEL_STATUS;
+				}
+
+				String sha = getline(stream, '\1');
+				if (sha == null)
+				{
+					break;
+				}
+
+				GitCommit newCommit = readCommit(stream, sha, false, false, showSign, strings);
+				if (newCommit == null)
+				{
+					continue;
+				}
+				revisions.add(newCommit);
+				page.add(newCommit);
+				subMonitor.worked(1);
+
+				if (page.size() == pageSize)
+				{
+					listener.pageLoaded(page);
+					page = new ArrayList<GitCommit>(pageSize);
+				}
+
+				int read = stream.read();
+				if (read == -1)
+				{
+					break;
+				}
+				if (read != 0)
+				{
+					IdeLog.logError(GitPlugin.getDefault(), "Error", IDebugScopes.DEBUG); //$NON-NLS-1$
+				}
+			}
+			if (!page.isEmpty() || revisions.isEmpty())
+			{
+				listener.pageLoaded(page);
+			}
+
+			int exitCode = p.waitFor();
+			logInfo(MessageFormat.format("Loaded {0} commits in {1} ms", revisions.size(), //$NON-NLS-1$
+					System.currentTimeMillis() - start));
+			if (exitCode == 0 && tip != null)
+			{
+				try
+				{
+					cache.write(key, tip, revisions);
+				}
+				catch (IOException e)
+				{
+					IdeLog.logWarning(GitPlugin.getDefault(), "Unable to cache the history", e, IDebugScopes.DEBUG); //$NON-NLS-1$
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			return new Status(IStatus.ERROR, GitPlugin.getPluginId(), e.getMessage(), e);
+		}
+		finally
+		{
+			repository.exitRead();
+			subMonitor.done();
+		}
+		setCommits(revisions, true);
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * Reads the fields following the SHA of a commit in our log format, up to (not including) the terminating NUL.
+	 * Returns null if the parents are garbled.
+	 * 
+	 * @param stream
+	 * @param sha
+	 * @param useRaw
+	 *            whether the format has the raw body (%B) rather than subject and body (%s, %b)
+	 * @param withComment
+	 *            whether the format has the message at all, or just the subject (%s)
+	 * @param showSign
+	 *            whether the format ends with the left/right mark (%m)
+	 * @param strings
+	 *            used to share equal author names and emails across commits
+	 * @return
+	 * @throws IOException
+	 */
+	private GitCommit readCommit(InputStream stream, String sha, boolean useRaw, boolean withComment,
+			boolean showSign, Map<String, String> strings) throws IOException
+	{
+		String encoding = getline(stream, '\1', IOUtil.UTF_8);
+		GitCommit newCommit = new GitCommit(repository, sha);
+
+		String author = intern(getline(stream, '\1', encoding), strings);
+		String authorEmail = intern(getline(stream, '\1', encoding), strings);
+
+		String subject;
+		String body = null;
+		if (!withComment)
+		{
+			subject = getline(stream, '\1', encoding);
+		}
+		else if (useRaw)
+		{
+			body = getline(stream, '\1', encoding);
+			subject = StringUtil.LINE_SPLITTER.split(body)[0];
+		}
+		else
+		{
+			subject = getline(stream, '\1', encoding);
+			body = getline(stream, '\1', encoding);
+		}
+
+		String parentString = getline(stream, '\1');
+		if (parentString != null && parentString.length() != 0)
+		{
+			if (((parentString.length() + 1) % 41) != 0)
+			{
+				IdeLog.logError(GitPlugin.getDefault(),
+						MessageFormat.format("invalid parents: {0}", parentString.length()), IDebugScopes.DEBUG); //$NON-NLS-1$
+				return null;
+			}
+			int nParents = (parentString.length() + 1) / 41;
+			List<String> parents = new ArrayList<String>(nParents);
+			for (int parentIndex = 0; parentIndex < nParents; ++parentIndex)
+			{
+				int stringIndex = parentIndex * 41;
+				parents.add(parentString.substring(stringIndex, stringIndex + 40));
+			}
+
+			newCommit.setParents(parents);
+		}
+
+		long time = readLong(stream); // read 10 chars as a string and parse into a long
+
+		newCommit.setSubject(subject);
+		if (withComment)
+		{
+			newCommit.setComment(body);
+		}
+		else
+		{
+			newCommit.setCommentNotLoaded();
+		}
+		newCommit.setAuthor(author);
+		newCommit.setAuthorEmail(authorEmail);
+		newCommit.setTimestamp(time);
+
+		if (showSign)
+		{
+			stream.read(); // Remove separator
+			char c = (char) stream.read();
+			if (c != '>' && c != '<' && c != '^' && c != '-')
+			{
+				IdeLog.logError(GitPlugin.getDefault(), "Error loading commits: sign not correct", IDebugScopes.DEBUG); //$NON-NLS-1$
+				// newCommit.setSign(c);
+			}
+		}
+		return newCommit;
+	}
+
+	private static String intern(String string, Map<String, String> strings)
+	{
+		if (string == null)
+		{
+			return null;
+		}
+		String existing = strings.get(string);
+		if (existing != null)
+		{
+			return existing;
+		}
+		strings.put(string, string);
+		return string;
+	}
+
+	private static void firePages(List<GitCommit> commits, int pageSize, IPageListener listener)
+	{
+		if (commits.isEmpty())
+		{
+			listener.pageLoaded(new ArrayList<GitCommit>(0));
+			return;
+		}
+		for (int i = 0; i < commits.size(); i += pageSize)
+		{
+			listener.pageLoaded(new ArrayList<GitCommit>(commits.subList(i, Math.min(i + pageSize, commits.size()))));
+		}
+	}
+
+	private static boolean supportsRawBody(GitExecutable gitExe)
+	{
+		// Git format doesn't support %B until 1.7.3+
+		Version v = gitExe.version();
+		return v.compareTo(Version.parseVersion("1.7.3")) >= 0; //$NON-NLS-1$
+	}
+
+	private static IStatus readLockFailure()
+	{
+		return new Status(
+				IStatus.ERROR,
+				GitPlugin.getPluginId(),
+				"Failed to acquire read lock on the git repository. A long-running operation that writes to the repo is running (i.e. pull). Please ensure that has finished before trying again."); //$NON-NLS-1$
+	}
+
+	/**
+	 * Where completed walks are cached, null when we're not running as a plugin.
+	 */
+	private static GitHistoryCache historyCache()
+	{
+		GitPlugin plugin = GitPlugin.getDefault();
+		if (plugin == null)
+		{
+			return null;
+		}
+		return new GitHistoryCache(plugin.getStateLocation().append(HISTORY_CACHE_DIR).toFile());
+	}
+
+	private String cacheKey(GitRevSpecifier rev)
+	{
+		StringBuilder key = new StringBuilder(repository.workingDirectory().toPortableString());
+		List<String> parameters = (rev == null) ? Collections.singletonList(GitRepository.HEAD) : rev.parameters();
+		for (String parameter : parameters)
+		{
+			key.append('\0').append(parameter);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Returns the SHA the single revision being walked resolves to, read from the refs files. Returns null when there's
+	 * more to the walk than one revision (ranges, options, several revisions) or it can't be resolved here: those
+	 * aren't cached.
+	 */
+	private String resolveTip(GitRevSpecifier rev)
+	{
+		List<String> parameters = (rev == null) ? Collections.singletonList(GitRepository.HEAD) : rev.parameters();
+		String name = null;
+		for (String parameter : parameters)
+		{
+			if ("--".equals(parameter)) //$NON-NLS-1$
+			{
+				break;
+			}
+			if (parameter.startsWith("-") || name != null) //$NON-NLS-1$
+			{
+				return null;
+			}
+			name = parameter;
+		}
+		if (name == null)
+		{
+			name = GitRepository.HEAD;
+		}
+		for (String operator : REV_OPERATORS)
+		{
+			if (name.indexOf(operator) != -1)
+			{
+				return null;
+			}
+		}
+		if (name.length() == 40 && name.matches("[0-9a-f]{40}")) //$NON-NLS-1$
+		{
+			return name;
+		}
+
+		GitRefFiles refFiles = repository.refFiles();
+		try
+		{
+			if (GitRepository.HEAD.equals(name) || name.startsWith(GitRef.REFS))
+			{
+				return refFiles.resolve(name);
+			}
+			// the order git looks them up in
+			for (String prefix : REF_PREFIXES)
+			{
+				String sha = refFiles.resolve(prefix + name);
+				if (sha != null)
+				{
+					return sha;
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			IdeLog.logWarning(GitPlugin.getDefault(), e.getMessage(), e, IDebugScopes.DEBUG);
+		}
+		return null;
+	}
+
 	private void logInfo(String string)
 	{
 		if (GitPlugin.getDefault() != null)
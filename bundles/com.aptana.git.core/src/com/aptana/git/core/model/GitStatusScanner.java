@@ -0,0 +1,454 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Computes the unstaged (index vs working tree) and staged (HEAD vs index) changes of a repository in-process, from a
+ * {@link GitIndexFile}. The results are keyed by repository relative path, with values tokenized the way
+ * <code>git diff-files</code>/<code>git diff-index --cached</code> raw output is (":srcmode", "dstmode", "srcsha",
+ * "dstsha", "status"), so they can be used interchangeably with the output of those commands.
+ * <p>
+ * Working tree files are compared to the index by their size and modification time only. When that can't tell (the
+ * timestamps differ but the size doesn't, the entry is racily clean, or it's a symlink, submodule, etc) the path is
+ * reported as uncertain, and it's up to the caller to ask git, which compares the contents.
+ */
+class GitStatusScanner
+{
+	/**
+	 * Reads raw (not pretty printed) objects of the repository.
+	 */
+	interface ObjectReader
+	{
+		/**
+		 * Returns the contents of the object with the given SHA, or null if there's no such object.
+		 * 
+		 * @param sha
+		 * @return
+		 * @throws IOException
+		 */
+		byte[] read(String sha) throws IOException;
+	}
+
+	static final String NULL_SHA = "0000000000000000000000000000000000000000"; //$NON-NLS-1$
+	private static final String NULL_MODE = "000000"; //$NON-NLS-1$
+
+	private static final String MODIFIED = "M"; //$NON-NLS-1$
+	private static final String TYPE_CHANGED = "T"; //$NON-NLS-1$
+	private static final String ADDED = "A"; //$NON-NLS-1$
+	private static final String DELETED = "D"; //$NON-NLS-1$
+	private static final String UNMERGED = "U"; //$NON-NLS-1$
+
+	/**
+	 * File#canExecute(), when running on Java 6 or later.
+	 */
+	private static final Method CAN_EXECUTE;
+	static
+	{
+		Method canExecute = null;
+		try
+		{
+			canExecute = File.class.getMethod("canExecute"); //$NON-NLS-1$
+		}
+		catch (NoSuchMethodException e) // $codepro.audit.disable emptyCatchClause
+		{
+			// ignore
+		}
+		CAN_EXECUTE = canExecute;
+	}
+
+	private final File workingDirectory;
+	private final GitIndexFile index;
+	private final Collection<String> filter;
+	private final boolean checkExecutableBit;
+
+	private Set<String> uncertain;
+
+	/**
+	 * @param workingDirectory
+	 *            the root of the working tree
+	 * @param index
+	 * @param filter
+	 *            if not empty, only paths equal to or under one of these (repository relative, portable) are looked at
+	 * @param checkExecutableBit
+	 *            whether changes to the executable bit of files count (git's core.filemode)
+	 */
+	GitStatusScanner(File workingDirectory, GitIndexFile index, Collection<String> filter, boolean checkExecutableBit)
+	{
+		this.workingDirectory = workingDirectory;
+		this.index = index;
+		this.filter = (filter == null) ? Collections.<String> emptySet() : filter;
+		this.checkExecutableBit = checkExecutableBit && CAN_EXECUTE != null;
+	}
+
+	/**
+	 * Returns the changes between the index and the working tree, leaving out the uncertain ones (see
+	 * {@link #getUncertainPaths()}).
+	 * 
+	 * @return
+	 */
+	Map<String, List<String>> unstaged()
+	{
+		Map<String, List<String>> result = new HashMap<String, List<String>>();
+		uncertain = new LinkedHashSet<String>();
+		long indexSeconds = index.lastModified() / 1000;
+		for (GitIndexFile.Entry entry : index.getEntries())
+		{
+			if (!matches(entry.path))
+			{
+				continue;
+			}
+			if (entry.stage != 0)
+			{
+				// git reports these as unmerged, or as modified when "ours" doesn't match the working tree (which
+				// takes a content check)
+				uncertain.add(entry.path);
+				continue;
+			}
+			if (entry.assumeValid || entry.skipWorktree)
+			{
+				// git doesn't look at those either
+				continue;
+			}
+			int type = entry.mode & GitIndexFile.MODE_TYPE_MASK;
+			if (type != GitIndexFile.MODE_FILE || entry.intentToAdd)
+			{
+				// We can't read symlinks nor look into submodules
+				uncertain.add(entry.path);
+				continue;
+			}
+
+			// Stat calls are what this costs, so the common cases are settled with as few as possible
+			File file = new File(workingDirectory, entry.path);
+			long lastModified = file.lastModified();
+			if (lastModified == 0L && !file.exists())
+			{
+				result.put(entry.path, status(mode(entry.mode), NULL_MODE, entry.sha, NULL_SHA, DELETED));
+				continue;
+			}
+
+			// the index only keeps the lower 32 bits of the size
+			if ((file.length() & 0xffffffffL) != (entry.size & 0xffffffffL))
+			{
+				if (entry.size == 0 || !file.isFile())
+				{
+					// Either git zeroed the size of a racily clean entry to force a content check, or the file was
+					// replaced by a directory
+					uncertain.add(entry.path);
+				}
+				else
+				{
+					result.put(entry.path, status(mode(entry.mode), mode(workingTreeMode(entry, file)), entry.sha,
+							NULL_SHA, MODIFIED));
+				}
+				continue;
+			}
+
+			if (!sameModificationTime(lastModified, entry) || entry.mtimeSeconds >= indexSeconds)
+			{
+				// Either touched, or modified in the same second the index was written (so possibly after it):
+				// only the contents can tell
+				uncertain.add(entry.path);
+				continue;
+			}
+
+			int mode = workingTreeMode(entry, file);
+			if (mode != entry.mode)
+			{
+				result.put(entry.path, status(mode(entry.mode), mode(mode), entry.sha, NULL_SHA, MODIFIED));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the paths {@link #unstaged()} couldn't decide on.
+	 * 
+	 * @return
+	 */
+	Set<String> getUncertainPaths()
+	{
+		if (uncertain == null)
+		{
+			throw new IllegalStateException("The working tree hasn't been scanned yet"); //$NON-NLS-1$
+		}
+		return uncertain;
+	}
+
+	/**
+	 * Returns the changes between the given commit and the index. Trees the cache-tree extension of the index says are
+	 * unchanged aren't read.
+	 * 
+	 * @param headCommit
+	 *            the SHA of the HEAD commit
+	 * @param reader
+	 * @return
+	 * @throws IOException
+	 */
+	Map<String, List<String>> staged(String headCommit, ObjectReader reader) throws IOException
+	{
+		String rootTree = treeOf(headCommit, reader);
+
+		Map<String, String[]> head = new HashMap<String, String[]>();
+		Set<String> unchangedTrees = new HashSet<String>();
+		readTree(rootTree, "", reader, head, unchangedTrees); //$NON-NLS-1$
+
+		Map<String, List<String>> result = new HashMap<String, List<String>>();
+		for (GitIndexFile.Entry entry : index.getEntries())
+		{
+			if (!matches(entry.path) || isUnder(entry.path, unchangedTrees))
+			{
+				continue;
+			}
+			String[] headEntry = head.remove(entry.path);
+			if (entry.stage != 0)
+			{
+				// there's one entry per conflicting side, report the path once
+				if (!result.containsKey(entry.path))
+				{
+					result.put(entry.path, (headEntry == null) ? status(NULL_MODE, NULL_MODE, NULL_SHA, NULL_SHA,
+							UNMERGED) : status(headEntry[0], NULL_MODE, headEntry[1], NULL_SHA, UNMERGED));
+				}
+				continue;
+			}
+			if (entry.intentToAdd)
+			{
+				// not really added yet
+				continue;
+			}
+			String mode = mode(entry.mode);
+			if (headEntry == null)
+			{
+				result.put(entry.path, status(NULL_MODE, mode, NULL_SHA, entry.sha, ADDED));
+			}
+			else if (!headEntry[1].equals(entry.sha) || !headEntry[0].equals(mode))
+			{
+				int headType = Integer.parseInt(headEntry[0], 8) & GitIndexFile.MODE_TYPE_MASK;
+				String status = (headType == (entry.mode & GitIndexFile.MODE_TYPE_MASK)) ? MODIFIED : TYPE_CHANGED;
+				result.put(entry.path, status(headEntry[0], mode, headEntry[1], entry.sha, status));
+			}
+		}
+		// What's left in HEAD isn't in the index anymore
+		for (Map.Entry<String, String[]> entry : head.entrySet())
+		{
+			if (!result.containsKey(entry.getKey()))
+			{
+				String[] headEntry = entry.getValue();
+				result.put(entry.getKey(), status(headEntry[0], NULL_MODE, headEntry[1], NULL_SHA, DELETED));
+			}
+		}
+		return result;
+	}
+
+	private String treeOf(String commit, ObjectReader reader) throws IOException
+	{
+		byte[] contents = reader.read(commit);
+		if (contents == null)
+		{
+			throw new IOException("Missing commit " + commit); //$NON-NLS-1$
+		}
+		// "tree <sha>\n" is always the first line
+		String header = new String(contents, 0, Math.min(contents.length, 46), "UTF-8"); //$NON-NLS-1$
+		if (!header.startsWith("tree ")) //$NON-NLS-1$
+		{
+			throw new IOException(commit + " isn't a commit"); //$NON-NLS-1$
+		}
+		return header.substring(5, 45);
+	}
+
+	/**
+	 * Collects the blobs of a tree object ("mode SP name NUL 20-byte-sha" entries) and of its subtrees into head, with
+	 * their mode and SHA. Subtrees that match the index's cache-tree are recorded in unchangedTrees instead.
+	 */
+	private void readTree(String sha, String path, ObjectReader reader, Map<String, String[]> head,
+			Set<String> unchangedTrees) throws IOException
+	{
+		if (sha.equals(index.getTreeSHA(path)))
+		{
+			unchangedTrees.add(path);
+			return;
+		}
+		byte[] contents = reader.read(sha);
+		if (contents == null)
+		{
+			throw new IOException("Missing tree " + sha); //$NON-NLS-1$
+		}
+		int i = 0;
+		while (i < contents.length)
+		{
+			int modeEnd = indexOf(contents, (byte) ' ', i);
+			int nameEnd = indexOf(contents, (byte) 0, modeEnd + 1);
+			if (modeEnd == -1 || nameEnd == -1 || nameEnd + 21 > contents.length)
+			{
+				throw new IOException("Corrupt tree " + sha); //$NON-NLS-1$
+			}
+			int mode = Integer.parseInt(new String(contents, i, modeEnd - i, "US-ASCII"), 8); //$NON-NLS-1$
+			String name = new String(contents, modeEnd + 1, nameEnd - modeEnd - 1, "UTF-8"); //$NON-NLS-1$
+			String entryPath = (path.length() == 0) ? name : path + '/' + name;
+			byte[] hash = new byte[20];
+			System.arraycopy(contents, nameEnd + 1, hash, 0, hash.length);
+			String entrySHA = GitIndexFile.toHex(hash);
+			i = nameEnd + 21;
+
+			if ((mode & GitIndexFile.MODE_TYPE_MASK) == GitIndexFile.MODE_TREE)
+			{
+				if (matchesTree(entryPath))
+				{
+					readTree(entrySHA, entryPath, reader, head, unchangedTrees);
+				}
+			}
+			else if (matches(entryPath))
+			{
+				head.put(entryPath, new String[] { mode(mode), entrySHA });
+			}
+		}
+	}
+
+	private boolean matches(String path)
+	{
+		if (filter.isEmpty())
+		{
+			return true;
+		}
+		for (String filterPath : filter)
+		{
+			if (path.equals(filterPath) || isParent(filterPath, path))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Whether anything under the given directory can match the filter.
+	 */
+	private boolean matchesTree(String directory)
+	{
+		if (filter.isEmpty())
+		{
+			return true;
+		}
+		for (String filterPath : filter)
+		{
+			if (directory.equals(filterPath) || isParent(filterPath, directory) || isParent(directory, filterPath))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isUnder(String path, Set<String> directories)
+	{
+		if (directories.isEmpty())
+		{
+			return false;
+		}
+		if (directories.contains("")) //$NON-NLS-1$
+		{
+			return true;
+		}
+		int slash = path.indexOf('/');
+		while (slash != -1)
+		{
+			if (directories.contains(path.substring(0, slash)))
+			{
+				return true;
+			}
+			slash = path.indexOf('/', slash + 1);
+		}
+		return false;
+	}
+
+	private static boolean isParent(String parent, String path)
+	{
+		return parent.length() == 0
+				|| (path.length() > parent.length() && path.charAt(parent.length()) == '/' && path.startsWith(parent));
+	}
+
+	/**
+	 * Compares a working tree timestamp to the one recorded in the index entry. Older JREs (and some file systems) only
+	 * give seconds, in which case only those are compared.
+	 */
+	private static boolean sameModificationTime(long lastModified, GitIndexFile.Entry entry)
+	{
+		if (lastModified / 1000 != (entry.mtimeSeconds & 0xffffffffL))
+		{
+			return false;
+		}
+		long millis = lastModified % 1000;
+		return millis == 0 || millis == entry.mtimeNanos / 1000000;
+	}
+
+	/**
+	 * Returns the mode git would give the (regular) file, as far as we can tell.
+	 */
+	private int workingTreeMode(GitIndexFile.Entry entry, File file)
+	{
+		if (!checkExecutableBit || canExecute(file) == ((entry.mode & 0111) != 0))
+		{
+			return entry.mode;
+		}
+		// git only tracks 644 and 755
+		return entry.mode ^ 0111;
+	}
+
+	private static boolean canExecute(File file)
+	{
+		try
+		{
+			return (Boolean) CAN_EXECUTE.invoke(file);
+		}
+		catch (Exception e)
+		{
+			return false;
+		}
+	}
+
+	private static String mode(int mode)
+	{
+		String octal = Integer.toOctalString(mode);
+		return (octal.length() >= NULL_MODE.length()) ? octal : NULL_MODE.substring(octal.length()) + octal;
+	}
+
+	private static List<String> status(String srcMode, String dstMode, String srcSHA, String dstSHA, String status)
+	{
+		List<String> result = new ArrayList<String>(5);
+		result.add(':' + srcMode);
+		result.add(dstMode);
+		result.add(srcSHA);
+		result.add(dstSHA);
+		result.add(status);
+		return result;
+	}
+
+	private static int indexOf(byte[] bytes, byte b, int from)
+	{
+		for (int i = from; i < bytes.length; i++)
+		{
+			if (bytes[i] == b)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+}
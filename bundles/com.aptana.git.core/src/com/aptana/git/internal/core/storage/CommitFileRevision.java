@@ -9,7 +9,6 @@ package com.aptana.git.internal.core.storage;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
@@ -17,17 +16,14 @@ import java.util.List;
 import org.eclipse.core.resources.IStorage;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.team.core.history.IFileRevision;
 import org.eclipse.team.core.history.ITag;
 import org.eclipse.team.core.history.provider.FileRevision;
 
 import com.aptana.core.util.ArrayUtil;
-import com.aptana.core.util.IOUtil;
 import com.aptana.git.core.model.GitCommit;
 import com.aptana.git.core.model.GitRef;
-import com.aptana.git.core.model.GitRepository;
 
 public class CommitFileRevision extends FileRevision
 {
@@ -74,20 +70,12 @@ public class CommitFileRevision extends FileRevision
 				{
 					return new ByteArrayInputStream(ArrayUtil.NO_BYTES); // $codepro.audit.disable closeWhereCreated
 				}
-				IStatus result = commit.repository().execute(GitRepository.ReadWrite.READ,
-						"show", commit.sha() + ":" + path); //$NON-NLS-1$ //$NON-NLS-2$
-
-				// Encode using UTF-8, otherwise use default character set for platform
-				try
-				{
-					return new ByteArrayInputStream(result.getMessage().getBytes(IOUtil.UTF_8)); // $codepro.audit.disable
-																									// closeWhereCreated
-				}
-				catch (UnsupportedEncodingException e)
+				byte[] contents = commit.repository().readObject(commit.sha() + ":" + path); //$NON-NLS-1$
+				if (contents == null)
 				{
-					return new ByteArrayInputStream(result.getMessage().getBytes()); // $codepro.audit.disable
-																						// closeWhereCreated
+					return new ByteArrayInputStream(ArrayUtil.NO_BYTES); // $codepro.audit.disable closeWhereCreated
 				}
+				return new ByteArrayInputStream(contents); // $codepro.audit.disable closeWhereCreated
 			}
 		};
 	}
@@ -8,6 +8,7 @@
 package com.aptana.git.ui.internal.history;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -49,6 +50,7 @@ class CommitGraphTable extends TableViewer
 	private BranchPainter renderer;
 	private Map<GitCommit, GraphCellInfo> decorations;
 	private List<GitCommit> commits;
+	private GitGrapher grapher;
 
 	CommitGraphTable(Composite parent)
 	{
@@ -109,7 +111,8 @@ class CommitGraphTable extends TableViewer
 	void setCommits(final List<GitCommit> commits)
 	{
 		this.commits = commits;
-		decorations = new GitGrapher().decorateCommits(commits);
+		grapher = new GitGrapher();
+		decorations = grapher.decorateCommits(commits);
 		setInput(commits);
 		if (!commits.isEmpty())
 		{
@@ -117,6 +120,27 @@ class CommitGraphTable extends TableViewer
 		}
 	}
 
+	/**
+	 * Appends the next commits of the history, keeping the selection.
+	 * 
+	 * @param more
+	 *            the commits following the ones already shown
+	 */
+	void addCommits(List<GitCommit> more)
+	{
+		if (commits == null || grapher == null)
+		{
+			setCommits(more);
+			return;
+		}
+		List<GitCommit> all = new ArrayList<GitCommit>(commits.size() + more.size());
+		all.addAll(commits);
+		all.addAll(more);
+		this.commits = all;
+		decorations.putAll(grapher.decorateMoreCommits(more));
+		setInput(all);
+	}
+
 	/**
 	 * Tell SWT that we'll be painting the first column.
 	 * 
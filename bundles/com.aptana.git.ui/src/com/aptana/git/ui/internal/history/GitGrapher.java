@@ -47,6 +47,19 @@ class GitGrapher
 	Map<GitCommit, GraphCellInfo> decorateCommits(List<GitCommit> commits)
 	{
 		GitLane.resetColors();
+		return decorateMoreCommits(commits);
+	}
+
+	/**
+	 * Carries on from the commits decorated so far with the ones that follow them, for histories that are loaded in
+	 * pages.
+	 * 
+	 * @param commits
+	 *            the commits following the ones already decorated, in reverse chronological order.
+	 * @return
+	 */
+	Map<GitCommit, GraphCellInfo> decorateMoreCommits(List<GitCommit> commits)
+	{
 		Map<GitCommit, GraphCellInfo> decorations = new HashMap<GitCommit, GraphCellInfo>();
 		for (GitCommit commit : commits)
 		{
@@ -80,6 +80,11 @@ public class GitHistoryPage extends HistoryPage
 	private CommitFileDiffViewer fileViewer;
 	private String currentRef;
 
+	/**
+	 * The job loading the history being shown, only its pages make it to {@link #graph}.
+	 */
+	private Job loadJob;
+
 	@Override
 	public boolean inputSet()
 	{
@@ -117,6 +122,10 @@ public class GitHistoryPage extends HistoryPage
 	private void loadHistory(final IResource resource, final String ref)
 	{
 		currentRef = ref;
+		if (loadJob != null)
+		{
+			loadJob.cancel();
+		}
 		Job job = new Job(Messages.GitHistoryPage_GeneratingHistoryJob_title)
 		{
 			@Override
@@ -147,30 +156,49 @@ public class GitHistoryPage extends HistoryPage
 				{
 					rev = new GitRevSpecifier(ref, "--", resourcePath.toOSString()); //$NON-NLS-1$
 				}
-				IStatus result = revList.walkRevisionListWithSpecifier(rev, subMonitor.newChild(95));
-				if (result != null && result.isOK())
-				{
-					final List<GitCommit> commits = revList.getCommits();
-					Display.getDefault().asyncExec(new Runnable()
-					{
-
-						public void run()
+				// Show each page of commits as soon as it's read, rather than waiting for the whole history
+				final Job self = this;
+				final boolean[] first = new boolean[] { true };
+				IStatus result = revList.walkRevisionList(rev, GitRevList.DEFAULT_PAGE_SIZE,
+						new GitRevList.IPageListener()
 						{
-							graph.setCommits(commits);
-							if (getControl() != null && !getControl().isDisposed())
+							public void pageLoaded(final List<GitCommit> commits)
 							{
-								getSite().getPage().activate((IWorkbenchPart) getHistoryView());
-								((IViewPart) getHistoryView()).getViewSite().getActionBars().updateActionBars();
+								final boolean firstPage = first[0];
+								first[0] = false;
+								Display.getDefault().asyncExec(new Runnable()
+								{
+
+									public void run()
+									{
+										// a newer load has taken over the table
+										if (loadJob != self || graph.getControl().isDisposed())
+										{
+											return;
+										}
+										if (!firstPage)
+										{
+											graph.addCommits(commits);
+											return;
+										}
+										graph.setCommits(commits);
+										if (getControl() != null && !getControl().isDisposed())
+										{
+											getSite().getPage().activate((IWorkbenchPart) getHistoryView());
+											((IViewPart) getHistoryView()).getViewSite().getActionBars()
+													.updateActionBars();
+										}
+									}
+								});
 							}
-						}
-					});
-				}
+						}, subMonitor.newChild(95));
 				subMonitor.done();
 				return result;
 			}
 		};
 		job.setUser(true);
 		job.setPriority(Job.SHORT);
+		loadJob = job;
 		schedule(job);
 	}
 
@@ -21,8 +21,10 @@ public abstract class AbstractFileIndexingParticipant implements IFileStoreIndex
 {
 
 	private static final String ATTR_PRIORITY = "priority"; //$NON-NLS-1$
+	private static final String ATTR_THREAD_SAFE = "threadSafe"; //$NON-NLS-1$
 
 	private int priority;
+	private boolean threadSafe;
 
 	protected void addIndex(Index index, URI uri, String category, String word)
 	{
@@ -53,10 +55,19 @@ public abstract class AbstractFileIndexingParticipant implements IFileStoreIndex
 		return priority;
 	}
 
+	/**
+	 * Participants declare themselves thread-safe through the extension point.
+	 */
+	public boolean isThreadSafe()
+	{
+		return threadSafe;
+	}
+
 	public void setInitializationData(IConfigurationElement config, String propertyName, Object data)
 			throws CoreException
 	{
 		priority = DEFAULT_PRIORITY;
+		threadSafe = Boolean.parseBoolean(config.getAttribute(ATTR_THREAD_SAFE));
 
 		try
 		{
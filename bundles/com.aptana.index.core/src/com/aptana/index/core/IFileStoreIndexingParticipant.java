@@ -35,4 +35,12 @@ public interface IFileStoreIndexingParticipant
 	 */
 	int getPriority();
 
+	/**
+	 * Can {@link #index(BuildContext, Index, IProgressMonitor)} be called for different files from several threads at
+	 * the same time? If not, the files are indexed by this participant one at a time.
+	 * 
+	 * @return
+	 */
+	boolean isThreadSafe();
+
 }
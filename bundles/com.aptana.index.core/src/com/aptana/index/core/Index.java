@@ -12,11 +12,12 @@ import java.io.IOException;
 import java.net.URI;
 import java.text.MessageFormat;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Pattern;
@@ -33,7 +34,8 @@ public class Index
 {
 	private static final int MATCH_RULE_INDEX_MASK = SearchPattern.EXACT_MATCH | SearchPattern.PREFIX_MATCH
 			| SearchPattern.PATTERN_MATCH | SearchPattern.CASE_SENSITIVE | SearchPattern.REGEX_MATCH;
-	private static final Map<String, Pattern> PATTERNS = new HashMap<String, Pattern>();
+	// shared by concurrent readers of the index, see query(String[], String, int)
+	private static final Map<String, Pattern> PATTERNS = new ConcurrentHashMap<String, Pattern>();
 	// Separator to use after the container path
 	public static final char DEFAULT_SEPARATOR = '/';
 
@@ -304,6 +306,8 @@ public class Index
 	private DiskIndex diskIndex;
 	ReadWriteLock monitor;
 	private URI containerURI;
+	// bumped whenever the contents of this index may have changed, see getGeneration()
+	private final AtomicLong generation = new AtomicLong();
 
 	/**
 	 * Index
@@ -352,6 +356,7 @@ public class Index
 		try
 		{
 			this.memoryIndex.addEntry(category, key, containerRelativeURI.toString());
+			this.generation.incrementAndGet();
 		}
 		finally
 		{
@@ -487,6 +492,18 @@ public class Index
 		return this.diskIndex == null ? null : this.diskIndex.indexFile;
 	}
 
+	/**
+	 * Returns a number that changes every time entries are added to or removed from this index, or the index is saved
+	 * or reset. Callers that cache values built from query results can record the generation before querying, and
+	 * consider the cached values stale once it no longer matches.
+	 * 
+	 * @return
+	 */
+	public long getGeneration()
+	{
+		return this.generation.get();
+	}
+
 	/**
 	 * @deprecated
 	 * @return
@@ -626,6 +643,7 @@ public class Index
 		try
 		{
 			this.memoryIndex.remove(documentName);
+			this.generation.incrementAndGet();
 		}
 		finally
 		{
@@ -644,6 +662,7 @@ public class Index
 		try
 		{
 			this.memoryIndex.removeCategories(categoryNames);
+			this.generation.incrementAndGet();
 			this.diskIndex = this.diskIndex.removeCategories(categoryNames, this.memoryIndex);
 		}
 		catch (IOException e)
@@ -697,6 +716,7 @@ public class Index
 			int numberOfChanges = this.memoryIndex.numberOfChanges();
 			this.diskIndex = this.diskIndex.mergeWith(this.memoryIndex);
 			this.memoryIndex = new MemoryIndex();
+			this.generation.incrementAndGet();
 
 			if (numberOfChanges > 1000)
 			{
@@ -738,7 +758,9 @@ public class Index
 	public void reset() throws IOException
 	{
 		this.memoryIndex = new MemoryIndex();
+		this.diskIndex.close();
 		this.diskIndex = new DiskIndex(this.diskIndex.indexFile.getCanonicalPath());
 		this.diskIndex.initialize(false/* do not reuse the index file */);
+		this.generation.incrementAndGet();
 	}
 }
@@ -17,6 +17,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import org.eclipse.core.runtime.CoreException;
@@ -30,6 +34,7 @@ import com.aptana.core.logging.IdeLog;
 import com.aptana.core.util.CollectionsUtil;
 import com.aptana.core.util.EclipseUtil;
 import com.aptana.core.util.IConfigurationElementProcessor;
+import com.aptana.core.util.ObjectUtil;
 import com.aptana.core.util.StringUtil;
 import com.aptana.index.core.filter.IIndexFilterParticipant;
 
@@ -48,23 +53,41 @@ public class IndexManager
 	private static final String FILE_CONTRIBUTORS_ID = "fileContributors"; //$NON-NLS-1$
 	private static final String ELEMENT_CONTRIBUTOR = "contributor"; //$NON-NLS-1$
 
+	/**
+	 * Upper bound on the number of threads used to index files concurrently, shared by all index jobs.
+	 */
+	private static final int MAX_INDEXING_THREADS = 8;
+
 	private Map<URI, Index> indexes;
 
 	private ArrayList<IIndexFileContributor> fileContributors;
 	private ArrayList<IIndexFilterParticipant> filterParticipants;
 
-	static final ISchedulingRule MUTEX_RULE = new ISchedulingRule()
+	private ExecutorService indexingExecutor;
+
+	/**
+	 * A scheduling rule that serializes the jobs working on the index of a single container, while letting jobs for
+	 * different containers run at the same time.
+	 */
+	private static class IndexRule implements ISchedulingRule
 	{
+		private final URI containerURI;
+
+		IndexRule(URI containerURI)
+		{
+			this.containerURI = containerURI;
+		}
+
 		public boolean contains(ISchedulingRule rule)
 		{
-			return rule == this;
+			return isConflicting(rule);
 		}
 
 		public boolean isConflicting(ISchedulingRule rule)
 		{
-			return rule == this;
+			return rule instanceof IndexRule && ObjectUtil.areEqual(containerURI, ((IndexRule) rule).containerURI);
 		}
-	};
+	}
 
 	/**
 	 * IndexManager
@@ -74,6 +97,58 @@ public class IndexManager
 		this.indexes = new HashMap<URI, Index>();
 	}
 
+	/**
+	 * Returns the rule used to schedule jobs that modify the index for the given container.
+	 * 
+	 * @param containerURI
+	 * @return
+	 */
+	static ISchedulingRule getIndexRule(URI containerURI)
+	{
+		return new IndexRule(containerURI);
+	}
+
+	/**
+	 * Returns the bounded pool of threads used to index files. The pool is shared by all index jobs, so the total
+	 * number of files being indexed at once is capped no matter how many containers are being indexed.
+	 * 
+	 * @return
+	 */
+	synchronized ExecutorService getIndexingExecutor()
+	{
+		if (indexingExecutor == null)
+		{
+			int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_INDEXING_THREADS));
+
+			indexingExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+			{
+				private final AtomicInteger count = new AtomicInteger();
+
+				public Thread newThread(Runnable r)
+				{
+					Thread thread = new Thread(r, "Indexer-" + count.incrementAndGet()); //$NON-NLS-1$
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+		}
+
+		return indexingExecutor;
+	}
+
+	/**
+	 * Stops the indexing threads. Called when the plugin is stopped.
+	 */
+	synchronized void dispose()
+	{
+		if (indexingExecutor != null)
+		{
+			indexingExecutor.shutdownNow();
+			indexingExecutor = null;
+		}
+	}
+
 	/**
 	 * getIndex
 	 * 
@@ -71,7 +71,14 @@ public class IndexPlugin extends Plugin
 			}
 		}
 
-		fManager = null;
+		synchronized (this)
+		{
+			if (fManager != null)
+			{
+				fManager.dispose();
+				fManager = null;
+			}
+		}
 		plugin = null;
 		super.stop(context);
 	}
@@ -65,6 +65,38 @@ public abstract class IndexReader
 		return new CategoryInfo(category, lengths);
 	}
 
+	/**
+	 * Return the specified column of an index word, or null if the word does not have that many columns or the column
+	 * is empty. This avoids splitting the entire word with {@link #getDelimiterPattern()} to get at a single column.
+	 * 
+	 * @param word
+	 * @param columnIndex
+	 * @return
+	 */
+	protected String getColumn(String word, int columnIndex)
+	{
+		String delimiter = this.getDelimiter();
+		int start = 0;
+
+		for (int i = 0; i < columnIndex; i++)
+		{
+			int end = word.indexOf(delimiter, start);
+
+			if (end == -1)
+			{
+				return null;
+			}
+
+			start = end + delimiter.length();
+		}
+
+		int end = word.indexOf(delimiter, start);
+		String column = (end == -1) ? word.substring(start) : word.substring(start, end);
+
+		// there's nothing to deserialize from an empty column
+		return (column.length() == 0) ? null : column;
+	}
+
 	/**
 	 * Get the top-level delimiter string used to separate columns in an index word
 	 * 
@@ -173,12 +205,11 @@ public abstract class IndexReader
 	{
 		if (item != null && element != null && 0 <= columnIndex)
 		{
-			String key = item.getWord();
-			String[] columns = this.getDelimiterPattern().split(key);
+			String column = this.getColumn(item.getWord(), columnIndex);
 
-			if (columnIndex < columns.length)
+			if (column != null)
 			{
-				this.populateElement(element, columns[columnIndex], item.getDocuments());
+				this.populateElement(element, column, item.getDocuments());
 			}
 		}
 
@@ -200,7 +231,8 @@ public abstract class IndexReader
 		{
 			try
 			{
-				Object m = JSON.parse(value);
+				// values are either in the binary encoding or JSON, depending on how the writer was configured
+				Object m = IndexValueCodec.isEncoded(value) ? IndexValueCodec.decode(value) : JSON.parse(value);
 
 				if (m instanceof Map)
 				{
@@ -216,7 +248,7 @@ public abstract class IndexReader
 			{
 				// @formatter:off
 				String message = MessageFormat.format(
-					"An error occurred while processing the following JSON string\n{0}", // //$NON-NLS-1$
+					"An error occurred while processing the following index value\n{0}", // //$NON-NLS-1$
 					value
 				);
 				// @formatter:on
@@ -9,14 +9,24 @@ package com.aptana.index.core;
 
 import java.net.URI;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.core.filesystem.IFileStore;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.jobs.Job;
@@ -30,8 +40,72 @@ abstract class IndexRequestJob extends Job
 {
 	public static final String INDEX_REQUEST_JOB_FAMILY = "index-request-job-family";
 
+	/**
+	 * How long we wait for an indexed file before checking for cancellation again
+	 */
+	private static final long POLL_INTERVAL = 100;
+
 	private URI containerURI;
 
+	/**
+	 * Keeps track of the files being indexed on other threads, so that we don't return while one still writes to the
+	 * index.
+	 */
+	private static final class Workers
+	{
+		private boolean stopped;
+		private int running;
+
+		/**
+		 * Called by a worker before it indexes a file.
+		 * 
+		 * @return false if the indexing was stopped, the file must be skipped then
+		 */
+		synchronized boolean start()
+		{
+			if (stopped)
+			{
+				return false;
+			}
+			running++;
+			return true;
+		}
+
+		/**
+		 * Called by a worker once it's done with a file it started.
+		 */
+		synchronized void done()
+		{
+			running--;
+			notifyAll();
+		}
+
+		/**
+		 * Keeps any more files from being started and waits for the ones started to be done. An interrupt doesn't stop
+		 * the wait, it is restored once they are.
+		 */
+		synchronized void stop()
+		{
+			stopped = true;
+			boolean interrupted = false;
+			while (running > 0)
+			{
+				try
+				{
+					wait();
+				}
+				catch (InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+			if (interrupted)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
 	/**
 	 * IndexRequestJob
 	 * 
@@ -42,7 +116,7 @@ abstract class IndexRequestJob extends Job
 	{
 		super(name);
 		this.containerURI = containerURI;
-		setRule(IndexManager.MUTEX_RULE);
+		setRule(IndexManager.getIndexRule(containerURI));
 		setPriority(Job.BUILD);
 		// setSystem(true);
 	}
@@ -153,14 +227,17 @@ abstract class IndexRequestJob extends Job
 
 	/**
 	 * Indexes a set of {@link IFileStore}s with the appropriate {@link IFileStoreIndexingParticipant}s that apply to
-	 * the content types (matching is done via filename/extension).
+	 * the content types (matching is done via filename/extension). Files are indexed concurrently on the index
+	 * manager's pool of indexing threads; each file is handled by a single thread, and the {@link Index} serializes
+	 * the writes made to it. Only the participants declared thread-safe index several files at once, the calls to the
+	 * others are serialized. This doesn't return before the files being indexed are done, even when canceled.
 	 * 
 	 * @param index
 	 * @param fileStores
 	 * @param monitor
 	 * @throws CoreException
 	 */
-	protected void indexFileStores(Index index, Set<IFileStore> fileStores, IProgressMonitor monitor)
+	protected void indexFileStores(final Index index, Set<IFileStore> fileStores, IProgressMonitor monitor)
 			throws CoreException
 	{
 		if (index == null)
@@ -176,43 +253,151 @@ abstract class IndexRequestJob extends Job
 
 		int remaining = fileStores.size();
 		SubMonitor sub = SubMonitor.convert(monitor, remaining * 11);
+		IndexManager manager = getIndexManager();
+		ExecutorService executor = (manager != null) ? manager.getIndexingExecutor() : null;
+		// Participants run on other threads, so we can't hand them our monitor. This one only tracks cancellation.
+		final IProgressMonitor workerMonitor = new NullProgressMonitor();
+		final Workers workers = new Workers();
+		List<Future<IFileStore>> futures = new ArrayList<Future<IFileStore>>(remaining);
+
 		try
 		{
-			for (IFileStore file : fileStores)
+			if (executor == null)
 			{
-				if (sub.isCanceled())
+				for (IFileStore file : fileStores)
 				{
-					throw new CoreException(Status.CANCEL_STATUS);
+					if (sub.isCanceled())
+					{
+						throw new CoreException(Status.CANCEL_STATUS);
+					}
+					indexFileStore(index, file, sub.newChild(11));
 				}
-				// First cleanup old index entries for file
-				index.remove(file.toURI());
-				sub.worked(1);
+				return;
+			}
 
-				// Now run indexers on file
-				List<IFileStoreIndexingParticipant> indexers = getIndexParticipants(file);
-				if (!CollectionsUtil.isEmpty(indexers))
+			CompletionService<IFileStore> completionService = new ExecutorCompletionService<IFileStore>(executor);
+			for (final IFileStore file : fileStores)
+			{
+				futures.add(completionService.submit(new Callable<IFileStore>()
 				{
-					int work = 10 / indexers.size();
-					BuildContext context = new FileStoreBuildContext(file);
-					for (IFileStoreIndexingParticipant indexer : indexers)
+					public IFileStore call() throws Exception
 					{
-						if (sub.isCanceled())
+						if (!workerMonitor.isCanceled() && workers.start())
 						{
-							throw new CoreException(Status.CANCEL_STATUS);
+							try
+							{
+								indexFileStore(index, file, workerMonitor);
+							}
+							finally
+							{
+								workers.done();
+							}
 						}
-						try
+						return file;
+					}
+				}));
+			}
+
+			while (remaining > 0)
+			{
+				if (sub.isCanceled())
+				{
+					throw new CoreException(Status.CANCEL_STATUS);
+				}
+
+				Future<IFileStore> future = completionService.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				if (future == null)
+				{
+					continue;
+				}
+
+				try
+				{
+					future.get();
+				}
+				catch (ExecutionException e)
+				{
+					IdeLog.logError(IndexPlugin.getDefault(), e.getCause());
+				}
+
+				// Update remaining units
+				remaining--;
+				sub.setWorkRemaining(remaining * 11);
+			}
+		}
+		catch (RejectedExecutionException e)
+		{
+			// The pool has been shut down underneath us, the plugin is stopping
+			throw new CoreException(Status.CANCEL_STATUS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new CoreException(Status.CANCEL_STATUS);
+		}
+		finally
+		{
+			// stop any files still queued or being indexed if we're leaving early
+			workerMonitor.setCanceled(true);
+			for (Future<IFileStore> future : futures)
+			{
+				future.cancel(false);
+			}
+			// the callers may save or reuse the index once we return
+			workers.stop();
+			sub.done();
+		}
+	}
+
+	/**
+	 * Cleans up the old index entries for a single file and runs the indexers for it.
+	 * 
+	 * @param index
+	 * @param file
+	 * @param monitor
+	 * @throws CoreException
+	 */
+	private void indexFileStore(Index index, IFileStore file, IProgressMonitor monitor) throws CoreException
+	{
+		SubMonitor sub = SubMonitor.convert(monitor, 11);
+		try
+		{
+			// First cleanup old index entries for file
+			index.remove(file.toURI());
+			sub.worked(1);
+
+			// Now run indexers on file
+			List<IFileStoreIndexingParticipant> indexers = getIndexParticipants(file);
+			if (!CollectionsUtil.isEmpty(indexers))
+			{
+				int work = 10 / indexers.size();
+				BuildContext context = new FileStoreBuildContext(file);
+				for (IFileStoreIndexingParticipant indexer : indexers)
+				{
+					if (sub.isCanceled())
+					{
+						throw new CoreException(Status.CANCEL_STATUS);
+					}
+					try
+					{
+						if (indexer.isThreadSafe())
 						{
 							indexer.index(context, index, sub.newChild(work));
 						}
-						catch (CoreException e)
+						else
 						{
-							IdeLog.logError(IndexPlugin.getDefault(), e);
+							// a participant is created for each file, so serialize on the class of the declaration
+							synchronized (indexer.getClass())
+							{
+								indexer.index(context, index, sub.newChild(work));
+							}
 						}
 					}
+					catch (CoreException e)
+					{
+						IdeLog.logError(IndexPlugin.getDefault(), e);
+					}
 				}
-				// Update remaining units
-				remaining--;
-				sub.setWorkRemaining(remaining * 11);
 			}
 		}
 		finally
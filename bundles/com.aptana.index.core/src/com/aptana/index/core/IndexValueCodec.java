@@ -0,0 +1,629 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license-epl.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.index.core;
+
+import java.lang.reflect.Array;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.aptana.jetty.util.epl.ajax.JSON.Convertible;
+import com.aptana.jetty.util.epl.ajax.JSON.Output;
+
+/**
+ * A compact encoding for the values stored in index words, used in place of JSON. The object graph produced by a
+ * {@link Convertible}'s toJSON method is written as a table of the distinct strings it contains, followed by the
+ * values themselves, where numbers, lengths and string references are variable length integers. Decoding gives back
+ * the same kinds of values JSON.parse does (Maps, Object[], String, Long, Double, Boolean and null), so fromJSON
+ * implementations work unchanged.
+ * <p>
+ * Index words are Strings which get written to disk as modified UTF-8, and the index readers split words on "\0". So
+ * rather than bytes, the encoding is made of chars: everything other than the contents of the string table falls in
+ * the range 0x01-0x7F, which is a single byte on disk, and a '\0' inside of a string is escaped.
+ * <p>
+ * Objects are decoded lazily. Decoding a value only reads its field names and where each field value starts. A field
+ * value is decoded the first time it is asked for, so callers that look at a few fields of a large element don't pay
+ * for the rest of it.
+ */
+public class IndexValueCodec
+{
+	/**
+	 * The first character of every encoded value. JSON values start with '{', so this lets readers tell which format a
+	 * value was written in
+	 */
+	private static final char MARKER = '\u0001';
+
+	/**
+	 * Escapes characters inside of strings that would otherwise clash with the index delimiter or the escape itself
+	 */
+	private static final char ESCAPE = '\u0001';
+	private static final int ESCAPE_OFFSET = 0x20;
+
+	/**
+	 * Variable length integers are written five bits per char, least significant bits first. Each char has the VARINT
+	 * bit set, and the CONTINUATION bit set when more chars follow. This keeps the chars between 0x20 and 0x7F.
+	 */
+	private static final int VARINT = 0x20;
+	private static final int CONTINUATION = 0x40;
+	private static final int VARINT_BITS = 5;
+	private static final int VARINT_MASK = 0x1F;
+
+	private static final char NULL = 'N';
+	private static final char TRUE = 'T';
+	private static final char FALSE = 'F';
+	private static final char LONG = 'L';
+	private static final char DOUBLE = 'D';
+	private static final char STRING = 'S';
+	private static final char ARRAY = 'A';
+	private static final char OBJECT = 'O';
+
+	/**
+	 * Thrown while encoding when we run into a value we can't represent, in which case the caller should fall back to
+	 * JSON
+	 */
+	private static class UnsupportedValueException extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		UnsupportedValueException(String message)
+		{
+			super(message);
+		}
+	}
+
+	/**
+	 * Collects the fields written by a Convertible's toJSON method, in order
+	 */
+	private static class FieldCollector implements Output
+	{
+		private final Map<String, Object> fields = new LinkedHashMap<String, Object>();
+		private Object value;
+		private boolean hasValue;
+
+		public void add(Object obj)
+		{
+			value = obj;
+			hasValue = true;
+		}
+
+		public void add(String name, boolean value)
+		{
+			fields.put(name, Boolean.valueOf(value));
+		}
+
+		public void add(String name, double value)
+		{
+			fields.put(name, new Double(value));
+		}
+
+		public void add(String name, long value)
+		{
+			fields.put(name, Long.valueOf(value));
+		}
+
+		public void add(String name, Object value)
+		{
+			fields.put(name, value);
+		}
+
+		@SuppressWarnings("rawtypes")
+		public void addClass(Class c)
+		{
+			// JSON.parse uses the class name to create the object, which we don't support
+			throw new UnsupportedValueException(c.getName());
+		}
+	}
+
+	/**
+	 * The lazily decoded fields of an object
+	 */
+	private static class LazyObject extends AbstractMap<String, Object>
+	{
+		private final Decoder decoder;
+		private final String[] keys;
+		private final int[] offsets;
+		private final Object[] values;
+		private final boolean[] decoded;
+
+		LazyObject(Decoder decoder, String[] keys, int[] offsets)
+		{
+			this.decoder = decoder;
+			this.keys = keys;
+			this.offsets = offsets;
+			this.values = new Object[keys.length];
+			this.decoded = new boolean[keys.length];
+		}
+
+		@Override
+		public boolean containsKey(Object key)
+		{
+			return indexOf(key) != -1;
+		}
+
+		@Override
+		public Set<Map.Entry<String, Object>> entrySet()
+		{
+			Map<String, Object> result = new LinkedHashMap<String, Object>(keys.length);
+
+			for (int i = 0; i < keys.length; i++)
+			{
+				result.put(keys[i], getValue(i));
+			}
+
+			return Collections.unmodifiableMap(result).entrySet();
+		}
+
+		@Override
+		public Object get(Object key)
+		{
+			int index = indexOf(key);
+
+			return (index == -1) ? null : getValue(index);
+		}
+
+		private Object getValue(int index)
+		{
+			if (!decoded[index])
+			{
+				values[index] = decoder.readValue(offsets[index]);
+				decoded[index] = true;
+			}
+
+			return values[index];
+		}
+
+		private int indexOf(Object key)
+		{
+			for (int i = 0; i < keys.length; i++)
+			{
+				if (keys[i].equals(key))
+				{
+					return i;
+				}
+			}
+
+			return -1;
+		}
+
+		@Override
+		public int size()
+		{
+			return keys.length;
+		}
+	}
+
+	/**
+	 * Writes values, collecting the strings they use into the string table
+	 */
+	private static class Encoder
+	{
+		private final Map<String, Integer> stringIndices = new HashMap<String, Integer>();
+		private final List<String> strings = new ArrayList<String>();
+		private final StringBuilder values = new StringBuilder();
+
+		private int getStringIndex(String string)
+		{
+			Integer index = stringIndices.get(string);
+
+			if (index == null)
+			{
+				index = strings.size();
+				stringIndices.put(string, index);
+				strings.add(string);
+			}
+
+			return index;
+		}
+
+		private void writeArray(Object array)
+		{
+			int length = Array.getLength(array);
+
+			values.append(ARRAY);
+			writeVarint(values, length);
+
+			for (int i = 0; i < length; i++)
+			{
+				writeValue(Array.get(array, i));
+			}
+		}
+
+		private void writeCollection(Collection<?> collection)
+		{
+			values.append(ARRAY);
+			writeVarint(values, collection.size());
+
+			for (Object item : collection)
+			{
+				writeValue(item);
+			}
+		}
+
+		private void writeObject(Map<?, ?> map)
+		{
+			values.append(OBJECT);
+			writeVarint(values, map.size());
+
+			for (Map.Entry<?, ?> entry : map.entrySet())
+			{
+				writeVarint(values, getStringIndex(String.valueOf(entry.getKey())));
+
+				// write the value on its own so we can record its length, which lets readers skip over it
+				int start = values.length();
+
+				writeValue(entry.getValue());
+
+				String value = values.substring(start);
+
+				values.setLength(start);
+				writeVarint(values, value.length());
+				values.append(value);
+			}
+		}
+
+		private void writeString(StringBuilder builder, String string)
+		{
+			int length = string.length();
+
+			writeVarint(builder, length);
+
+			for (int i = 0; i < length; i++)
+			{
+				char c = string.charAt(i);
+
+				if (c < ESCAPE_OFFSET && (c == '\0' || c == ESCAPE))
+				{
+					builder.append(ESCAPE).append((char) (c + ESCAPE_OFFSET));
+				}
+				else
+				{
+					builder.append(c);
+				}
+			}
+		}
+
+		private void writeValue(Object value)
+		{
+			if (value == null)
+			{
+				values.append(NULL);
+			}
+			else if (value instanceof Convertible)
+			{
+				FieldCollector collector = new FieldCollector();
+
+				((Convertible) value).toJSON(collector);
+
+				if (collector.hasValue)
+				{
+					writeValue(collector.value);
+				}
+				else
+				{
+					writeObject(collector.fields);
+				}
+			}
+			else if (value instanceof Map)
+			{
+				writeObject((Map<?, ?>) value);
+			}
+			else if (value instanceof Collection)
+			{
+				writeCollection((Collection<?>) value);
+			}
+			else if (value.getClass().isArray())
+			{
+				writeArray(value);
+			}
+			else if (value instanceof String || value instanceof Character)
+			{
+				values.append(STRING);
+				writeVarint(values, getStringIndex(value.toString()));
+			}
+			else if (value instanceof Boolean)
+			{
+				values.append(((Boolean) value).booleanValue() ? TRUE : FALSE);
+			}
+			else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte)
+			{
+				long number = ((Number) value).longValue();
+
+				// zig-zag encode so small negative numbers stay short
+				values.append(LONG);
+				writeVarint(values, (number << 1) ^ (number >> 63));
+			}
+			else if (value instanceof Double || value instanceof Float)
+			{
+				values.append(DOUBLE);
+				writeVarint(values, getStringIndex(Double.toString(((Number) value).doubleValue())));
+			}
+			else
+			{
+				// JSON has its own conversions for anything else
+				throw new UnsupportedValueException(value.getClass().getName());
+			}
+		}
+
+		String encode(Object object)
+		{
+			writeValue(object);
+
+			StringBuilder result = new StringBuilder(values.length() + strings.size() * 8 + 8);
+
+			result.append(MARKER);
+			writeVarint(result, strings.size());
+
+			for (String string : strings)
+			{
+				writeString(result, string);
+			}
+
+			result.append(values);
+
+			return result.toString();
+		}
+	}
+
+	/**
+	 * Reads values out of an encoded string
+	 */
+	private static class Decoder
+	{
+		private final String source;
+		private int[] stringOffsets;
+		private String[] strings;
+		private int position;
+
+		Decoder(String source)
+		{
+			this.source = source;
+		}
+
+		Object decode()
+		{
+			position = 1; // skip the marker
+
+			// only find where each string starts here, they're created the first time a value refers to them
+			int count = (int) readVarint();
+
+			stringOffsets = new int[count];
+			strings = new String[count];
+
+			for (int i = 0; i < count; i++)
+			{
+				stringOffsets[i] = position;
+
+				int length = (int) readVarint();
+
+				for (int j = 0; j < length; j++)
+				{
+					if (source.charAt(position++) == ESCAPE)
+					{
+						position++;
+					}
+				}
+			}
+
+			return readValue(position);
+		}
+
+		private String getString(int index)
+		{
+			String result = strings[index];
+
+			if (result == null)
+			{
+				int savedPosition = position;
+
+				position = stringOffsets[index];
+
+				int length = (int) readVarint();
+				int start = position;
+				StringBuilder builder = null;
+
+				for (int i = 0; i < length; i++)
+				{
+					char c = source.charAt(position++);
+
+					if (c == ESCAPE)
+					{
+						if (builder == null)
+						{
+							builder = new StringBuilder(length);
+							builder.append(source, start, position - 1);
+						}
+
+						c = (char) (source.charAt(position++) - ESCAPE_OFFSET);
+					}
+
+					if (builder != null)
+					{
+						builder.append(c);
+					}
+				}
+
+				result = (builder == null) ? source.substring(start, position) : builder.toString();
+				strings[index] = result;
+				position = savedPosition;
+			}
+
+			return result;
+		}
+
+		Object readValue(int offset)
+		{
+			position = offset;
+
+			return readValue();
+		}
+
+		private Object readValue()
+		{
+			char tag = source.charAt(position++);
+
+			switch (tag)
+			{
+				case NULL:
+					return null;
+
+				case TRUE:
+					return Boolean.TRUE;
+
+				case FALSE:
+					return Boolean.FALSE;
+
+				case LONG:
+				{
+					long value = readVarint();
+
+					return Long.valueOf((value >>> 1) ^ -(value & 1));
+				}
+
+				case DOUBLE:
+					return Double.valueOf(getString((int) readVarint()));
+
+				case STRING:
+					return getString((int) readVarint());
+
+				case ARRAY:
+				{
+					Object[] result = new Object[(int) readVarint()];
+
+					for (int i = 0; i < result.length; i++)
+					{
+						result[i] = readValue();
+					}
+
+					return result;
+				}
+
+				case OBJECT:
+				{
+					int count = (int) readVarint();
+					String[] keys = new String[count];
+					int[] offsets = new int[count];
+
+					for (int i = 0; i < count; i++)
+					{
+						keys[i] = getString((int) readVarint());
+
+						int length = (int) readVarint();
+
+						offsets[i] = position;
+						position += length;
+					}
+
+					if (position > source.length())
+					{
+						throw new IndexOutOfBoundsException();
+					}
+
+					return new LazyObject(this, keys, offsets);
+				}
+
+				default:
+					throw new IllegalArgumentException("Unexpected value type '" + tag + "' at offset " + (position - 1)); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+
+		private long readVarint()
+		{
+			long result = 0;
+			int shift = 0;
+			char c;
+
+			do
+			{
+				c = source.charAt(position++);
+				result |= (long) (c & VARINT_MASK) << shift;
+				shift += VARINT_BITS;
+			}
+			while ((c & CONTINUATION) != 0);
+
+			return result;
+		}
+	}
+
+	private IndexValueCodec()
+	{
+	}
+
+	/**
+	 * Decode a value created by {@link #encode(Object)}. Maps in the result decode their fields on first access.
+	 *
+	 * @param value
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if the value is not a valid encoding
+	 */
+	public static Object decode(String value)
+	{
+		if (!isEncoded(value))
+		{
+			throw new IllegalArgumentException("Not an encoded index value"); //$NON-NLS-1$
+		}
+
+		try
+		{
+			return new Decoder(value).decode();
+		}
+		catch (IndexOutOfBoundsException e)
+		{
+			throw new IllegalArgumentException("Truncated index value", e); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Encode the specified object. This returns null when the object contains a value that can only be represented in
+	 * JSON, like a Convertible that writes its class name, or a type JSON converts on its own.
+	 *
+	 * @param object
+	 * @return
+	 */
+	public static String encode(Object object)
+	{
+		try
+		{
+			return new Encoder().encode(object);
+		}
+		catch (UnsupportedValueException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Determine if the specified index value was created by this codec
+	 *
+	 * @param value
+	 * @return
+	 */
+	public static boolean isEncoded(String value)
+	{
+		return value != null && value.length() > 0 && value.charAt(0) == MARKER;
+	}
+
+	private static void writeVarint(StringBuilder builder, long value)
+	{
+		do
+		{
+			int bits = (int) (value & VARINT_MASK);
+
+			value >>>= VARINT_BITS;
+
+			builder.append((char) (VARINT | bits | (value != 0 ? CONTINUATION : 0)));
+		}
+		while (value != 0);
+	}
+}
@@ -16,6 +16,27 @@ import com.aptana.jetty.util.epl.ajax.JSON;
  */
 public abstract class IndexWriter
 {
+	private final boolean binaryValues;
+
+	/**
+	 * Create a writer that serializes values as JSON
+	 */
+	protected IndexWriter()
+	{
+		this(false);
+	}
+
+	/**
+	 * Create a writer that serializes values using the compact binary encoding when binaryValues is true, and as JSON
+	 * otherwise. {@link IndexReader} recognizes both formats, so an index may contain values written either way.
+	 * 
+	 * @param binaryValues
+	 */
+	protected IndexWriter(boolean binaryValues)
+	{
+		this.binaryValues = binaryValues;
+	}
+
 	/**
 	 * Get the URI used as the metadata path
 	 * 
@@ -32,6 +53,27 @@ public abstract class IndexWriter
 	 */
 	protected String serialize(Object object)
 	{
+		if (binaryValues)
+		{
+			String value = IndexValueCodec.encode(object);
+
+			// values that can only be expressed in JSON fall through to it
+			if (value != null)
+			{
+				return value;
+			}
+		}
+
 		return JSON.toString(object);
 	}
+
+	/**
+	 * Determine if this writer serializes values using the binary encoding
+	 * 
+	 * @return
+	 */
+	public boolean usesBinaryValues()
+	{
+		return binaryValues;
+	}
 }
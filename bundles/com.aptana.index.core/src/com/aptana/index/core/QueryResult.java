@@ -53,6 +53,17 @@ public class QueryResult
 		return Collections.unmodifiableSet(documentNames);
 	}
 
+	/**
+	 * Returns the number of documents the word was found in, without copying the document names. Callers can use this
+	 * to cap the number of results they go on to process.
+	 * 
+	 * @return
+	 */
+	public int getDocumentCount()
+	{
+		return documentNames.size();
+	}
+
 	public boolean isEmpty()
 	{
 		return this.documentTables.isEmpty() && this.documentNames.isEmpty();
@@ -36,6 +36,7 @@ import com.aptana.core.util.StringUtil;
 import com.aptana.index.core.IDebugScopes;
 import com.aptana.index.core.IndexPlugin;
 import com.aptana.parsing.IParseState;
+import com.aptana.parsing.IParseStateCacheKey;
 import com.aptana.parsing.ParseResult;
 import com.aptana.parsing.ParseState;
 import com.aptana.parsing.ParserPoolFactory;
@@ -52,6 +53,13 @@ public class BuildContext
 	protected Map<String, Collection<IProblem>> problems;
 	private ParseResult fParseResult;
 
+	/**
+	 * The key of the parse state {@link #fParseResult} (or {@link #fParseException}) came from, so that later requests
+	 * asking for the same source and options share it rather than parsing again.
+	 */
+	private IParseStateCacheKey fParseStateKey;
+	private CoreException fParseException;
+
 	private String fContents;
 
 	protected BuildContext()
@@ -90,33 +98,60 @@ public class BuildContext
 		return file.getLocationURI();
 	}
 
+	/**
+	 * Returns the AST of the contents, parsed with the default options of the language (which include everything the
+	 * parsers know how to collect, i.e. comments). The file is parsed once: all the participants building it share the
+	 * same AST, so they must treat it as read-only.
+	 * 
+	 * @return
+	 * @throws CoreException
+	 */
 	public IParseRootNode getAST() throws CoreException
 	{
 		return getAST(new ParseState(getContents())).getRootNode();
 	}
 
 	/**
-	 * Does not return null (must be an empty parse result in the case the ast == null).
+	 * Does not return null (must be an empty parse result in the case the ast == null). If the last parse was done for
+	 * the same source with options that satisfy the given parse state, its result is returned again.
 	 */
 	public synchronized ParseResult getAST(IParseState parseState) throws CoreException
 	{
 		try
 		{
+			String contentType = getContentType();
+			IParseStateCacheKey parseStateKey = (contentType == null) ? null : parseState.getCacheKey(contentType);
+			if (fParseStateKey != null && !fParseStateKey.requiresReparse(parseStateKey))
+			{
+				if (fParseException != null)
+				{
+					throw fParseException;
+				}
+				return (fParseResult == null) ? ParseResult.EMPTY : fParseResult;
+			}
+
+			fParseStateKey = parseStateKey;
+			fParseException = null;
 			// FIXME What if we fail to parse? Should we catch and log that exception here and return null?
 			try
 			{
 				// FIXME The parsers need to throw a specific SyntaxException or something for us to differentiate
 				// between those and IO errors!
 				WorkingParseResult working = new WorkingParseResult();
-				fParseResult = parse(getContentType(), parseState, working);
+				fParseResult = parse(contentType, parseState, working);
 			}
 			catch (CoreException e)
 			{
+				fParseResult = null;
+				fParseException = e;
 				throw e;
 			}
 			catch (Exception e)
 			{
-				throw new CoreException(new Status(IStatus.ERROR, IndexPlugin.PLUGIN_ID, e.getMessage(), e));
+				fParseResult = null;
+				fParseException = new CoreException(new Status(IStatus.ERROR, IndexPlugin.PLUGIN_ID, e.getMessage(),
+						e));
+				throw fParseException;
 			}
 			if (fParseResult == null)
 			{
@@ -143,6 +178,8 @@ public class BuildContext
 	public synchronized void resetAST()
 	{
 		fParseResult = null;
+		fParseStateKey = null;
+		fParseException = null;
 	}
 
 	public synchronized String getContents()
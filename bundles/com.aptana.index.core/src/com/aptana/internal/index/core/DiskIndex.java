@@ -7,16 +7,18 @@
  */
 package com.aptana.internal.index.core;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.io.UTFDataFormatException;
+import java.lang.reflect.Method;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -26,9 +28,11 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import com.aptana.core.logging.IdeLog;
 import com.aptana.core.util.CollectionsUtil;
+import com.aptana.core.util.IOUtil;
 import com.aptana.core.util.StringUtil;
 import com.aptana.index.core.Index;
 import com.aptana.index.core.IndexPlugin;
@@ -36,23 +40,34 @@ import com.aptana.index.core.QueryResult;
 import com.aptana.index.core.SearchPattern;
 
 /**
- * Yuck this needs to be a random access file that stores the index of documents, category names, and the relationship
- * between them. We need to be careful to allow for quick access into the categories when reading, and to keep filesize
- * down if possible.
+ * A random access file that stores the index of documents, category names, and the relationship between them. The
+ * file is memory-mapped read-only once it has been written, and all reads are absolute reads against private views of
+ * that mapping, so any number of threads may query a DiskIndex concurrently without locking. Writing only ever happens
+ * into a new file (see {@link #mergeWith(MemoryIndex)}).
+ * <p>
+ * Each category table is a block of word entries (the word followed by its document numbers) written in sorted word
+ * order, followed by the number of entries and the offset of each entry. The category offset points at that trailing
+ * key block, which lets us binary search a category for a word, and answer prefix queries with a range scan, without
+ * reading the whole table.
+ * <p>
+ * Files written in the older "INDEX VERSION 0.1" format are rewritten into the current format when they are
+ * initialized.
  * 
  * @author cwilliams
  */
 public class DiskIndex
 {
-	private static final String SIGNATURE = "INDEX VERSION 0.1"; //$NON-NLS-1$
+	private static final String SIGNATURE = "INDEX VERSION 0.2"; //$NON-NLS-1$
+	private static final String LEGACY_SIGNATURE = "INDEX VERSION 0.1"; //$NON-NLS-1$
 	private static final int CHUNK_SIZE = 100;
 	private static final int RE_INDEXED = -1;
 	private static final int DELETED = -2;
 	private static final boolean DEBUG = true;
 
 	public File indexFile;
+	private MappedByteBuffer mappedFile;
+	private boolean legacyFormat;
 	private int headerInfoOffset;
-	private int streamRead;
 	private int numberOfChunks;
 	private int sizeOfLastChunk;
 	private int documentReferenceSize;
@@ -60,13 +75,11 @@ public class DiskIndex
 	private int[] chunkOffsets;
 	private int startOfCategoryTables;
 	private Map<String, Integer> categoryOffsets;
-	// Usually a map from string to map from string to list of integer. But may also be a single integer (to represent a
-	// pointer to long array)
-	// FIXME YUCK!! This "usually a list of integers, sometimes one integer that acts as a pointer" stuff is killing me!
-	private Map<String, Map<String, Object>> categoryTables;
+	// Only used while writing a new index file, holds the tables to be written keyed by category name
+	private Map<String, Map<String, List<Integer>>> categoryTables;
 
 	private int streamEnd;
-	private String[][] cachedChunks;
+	private AtomicReferenceArray<String[]> cachedChunks;
 	private String[] categoriesToDiscard;
 
 	/**
@@ -154,13 +167,13 @@ public class DiskIndex
 	 * 
 	 * @param results
 	 * @param word
-	 * @param wordsToDocNumbers
+	 * @param docNumbers
 	 * @param memoryIndex
 	 * @return
 	 * @throws IOException
 	 */
 	private Map<String, QueryResult> addQueryResult(Map<String, QueryResult> results, String word,
-			Map<String, Object> wordsToDocNumbers, MemoryIndex memoryIndex) throws IOException
+			List<Integer> docNumbers, MemoryIndex memoryIndex) throws IOException
 	{
 		// must skip over documents which have been added/changed/deleted in the memory index
 		if (results == null)
@@ -178,10 +191,6 @@ public class DiskIndex
 				results.put(word, result);
 			}
 
-			result.addDocumentTable(wordsToDocNumbers);
-
-			List<Integer> docNumbers = readDocumentNumbers(wordsToDocNumbers.get(word));
-
 			for (Integer docNumber : docNumbers)
 			{
 				result.addDocumentName(readDocumentName(docNumber));
@@ -196,8 +205,6 @@ public class DiskIndex
 				result = new QueryResult(word, null);
 			}
 
-			List<Integer> docNumbers = readDocumentNumbers(wordsToDocNumbers.get(word));
-
 			for (Integer docNumber : docNumbers)
 			{
 				String docName = readDocumentName(docNumber);
@@ -256,28 +263,28 @@ public class DiskIndex
 		{
 			for (int i = 0, l = categories.length; i < l; i++)
 			{
-				Map<String, Object> wordsToDocNumbers = readCategoryTable(categories[i], true); // cache if key
-				// is null
-				// since its a definite
-				// match
-				if (wordsToDocNumbers != null)
+				int tableOffset = getCategoryTableOffset(categories[i]);
+
+				if (tableOffset >= 0)
 				{
+					int size = this.mappedFile.getInt(tableOffset);
+
 					if (results == null)
 					{
-						results = new HashMap<String, QueryResult>(wordsToDocNumbers.size());
+						results = new HashMap<String, QueryResult>(size);
 					}
 
-					for (String word : wordsToDocNumbers.keySet())
+					for (int j = 0; j < size; j++)
 					{
-						if (word != null)
-						{
-							results = addQueryResult(results, word, wordsToDocNumbers, memoryIndex);
-						}
+						ByteBuffer entry = getEntry(tableOffset, j);
+						String word = readString(entry);
+
+						results = addQueryResult(results, word, readDocumentArray(entry, entry.getInt()), memoryIndex);
 					}
 				}
 			}
 
-			if (results != null && this.cachedChunks == null)
+			if (results != null)
 			{
 				cacheDocumentNames();
 			}
@@ -289,45 +296,74 @@ public class DiskIndex
 				case SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE:
 					for (int i = 0, l = categories.length; i < l; i++)
 					{
-						Map<String, Object> wordsToDocNumbers = readCategoryTable(categories[i], false);
+						int tableOffset = getCategoryTableOffset(categories[i]);
 
-						if (wordsToDocNumbers != null && wordsToDocNumbers.containsKey(key))
+						if (tableOffset >= 0)
 						{
-							results = addQueryResult(results, key, wordsToDocNumbers, memoryIndex);
+							int index = findEntry(tableOffset, key);
+
+							if (index >= 0)
+							{
+								ByteBuffer entry = getEntry(tableOffset, index);
+
+								readString(entry); // skip over the word, we already know it matches
+								results = addQueryResult(results, key, readDocumentArray(entry, entry.getInt()),
+										memoryIndex);
+							}
 						}
 					}
 					break;
 
-				case SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE:
+				default:
+					// only the ranges of the sorted words starting with one of these prefixes can hold matches
+					List<String> prefixes = QueryPrefixes.compute(key, matchRule);
+
 					for (int i = 0, l = categories.length; i < l; i++)
 					{
-						Map<String, Object> wordsToDocNumbers = readCategoryTable(categories[i], false);
+						int tableOffset = getCategoryTableOffset(categories[i]);
 
-						if (wordsToDocNumbers != null)
+						if (tableOffset < 0)
 						{
-							for (String word : wordsToDocNumbers.keySet())
+							continue;
+						}
+
+						int size = this.mappedFile.getInt(tableOffset);
+
+						if (prefixes == null)
+						{
+							for (int j = 0; j < size; j++)
 							{
-								if (word != null && word.startsWith(key))
+								ByteBuffer entry = getEntry(tableOffset, j);
+								String word = readString(entry);
+
+								if (Index.isMatch(key, word, matchRule))
 								{
-									results = addQueryResult(results, word, wordsToDocNumbers, memoryIndex);
+									results = addQueryResult(results, word, readDocumentArray(entry, entry.getInt()),
+											memoryIndex);
 								}
 							}
 						}
-					}
-					break;
-
-				default:
-					for (int i = 0, l = categories.length; i < l; i++)
-					{
-						Map<String, Object> wordsToDocNumbers = readCategoryTable(categories[i], false);
-
-						if (wordsToDocNumbers != null)
+						else
 						{
-							for (String word : wordsToDocNumbers.keySet())
+							for (String prefix : prefixes)
 							{
-								if (word != null && Index.isMatch(key, word, matchRule))
+								int start = findEntry(tableOffset, prefix);
+
+								for (int j = (start < 0) ? -(start + 1) : start; j < size; j++)
 								{
-									results = addQueryResult(results, word, wordsToDocNumbers, memoryIndex);
+									ByteBuffer entry = getEntry(tableOffset, j);
+									String word = readString(entry);
+
+									if (!word.startsWith(prefix))
+									{
+										break;
+									}
+
+									if (Index.isMatch(key, word, matchRule))
+									{
+										results = addQueryResult(results, word,
+												readDocumentArray(entry, entry.getInt()), memoryIndex);
+									}
 								}
 							}
 						}
@@ -346,34 +382,13 @@ public class DiskIndex
 	private void cacheDocumentNames() throws IOException
 	{
 		// will need all document names so get them now
-		this.cachedChunks = new String[this.numberOfChunks][];
-
-		InputStream stream = new BufferedInputStream(new FileInputStream(this.indexFile));
-
-		try
+		for (int i = 0; i < this.numberOfChunks; i++)
 		{
-			// if (this.numberOfChunks > 5)
-			// BUFFER_READ_SIZE <<= 1;
-			int offset = this.chunkOffsets[0];
-
-			skip(stream, offset);
-
-			for (int i = 0; i < this.numberOfChunks; i++)
+			if (this.cachedChunks.get(i) == null)
 			{
-				int size = i == this.numberOfChunks - 1 ? this.sizeOfLastChunk : CHUNK_SIZE;
-
-				readChunk(this.cachedChunks[i] = new String[size], stream, 0, size);
+				this.cachedChunks.set(i, readChunk(i));
 			}
 		}
-		catch (IOException e)
-		{
-			this.cachedChunks = null;
-			throw e;
-		}
-		finally
-		{
-			stream.close();
-		}
 	}
 
 	/**
@@ -541,13 +556,54 @@ public class DiskIndex
 		return newDocNames;
 	}
 
+	/**
+	 * close
+	 */
+	public void close()
+	{
+		// The mapping itself goes away once the buffer has been garbage collected, see deleteFile(File)
+		this.mappedFile = null;
+	}
+
+	/**
+	 * Closes the index and releases the mapping of its file right away, so the file can be deleted. Only safe while no
+	 * one else can be reading from this index.
+	 */
+	private void unmap()
+	{
+		MappedByteBuffer buffer = this.mappedFile;
+
+		close();
+
+		if (buffer != null)
+		{
+			try
+			{
+				// there's no public API to unmap a buffer, use the cleaner the JRE gives direct buffers if there's one
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner"); //$NON-NLS-1$
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+
+				if (cleaner != null)
+				{
+					Method cleanMethod = cleaner.getClass().getMethod("clean"); //$NON-NLS-1$
+					cleanMethod.setAccessible(true);
+					cleanMethod.invoke(cleaner);
+				}
+			}
+			catch (Exception e) // $codepro.audit.disable emptyCatchClause
+			{
+				// not available on this JRE, the mapping is released once the buffer is garbage collected
+			}
+		}
+	}
+
 	/**
 	 * copyQueryResults
 	 * 
 	 * @param categoryToWords
 	 * @param newPosition
 	 */
-	@SuppressWarnings("unchecked")
 	private void copyQueryResults(Map<String, Set<String>> categoryToWords, int newPosition)
 	{
 		for (Map.Entry<String, Set<String>> entry : categoryToWords.entrySet())
@@ -559,11 +615,11 @@ public class DiskIndex
 				continue;
 			}
 
-			Map<String, Object> wordsToDocs = this.categoryTables.get(categoryName);
+			Map<String, List<Integer>> wordsToDocs = this.categoryTables.get(categoryName);
 
 			if (wordsToDocs == null)
 			{
-				this.categoryTables.put(categoryName, wordsToDocs = new HashMap<String, Object>());
+				this.categoryTables.put(categoryName, wordsToDocs = new HashMap<String, List<Integer>>());
 			}
 
 			for (String word : entry.getValue())
@@ -573,18 +629,75 @@ public class DiskIndex
 					continue;
 				}
 
-				Object positions = wordsToDocs.get(word);
+				List<Integer> positions = wordsToDocs.get(word);
 
 				if (positions == null)
 				{
 					wordsToDocs.put(word, positions = new ArrayList<Integer>());
 				}
 
-				((List<Integer>) positions).add(newPosition);
+				positions.add(newPosition);
 			}
 		}
 	}
 
+	/**
+	 * Delete the given file. Platforms like Windows refuse to delete a file while a mapping of it is still alive. Our
+	 * own mapping is released before we get here, but one dropped elsewhere may not be, so we give the garbage
+	 * collector one chance to release it before giving up.
+	 * 
+	 * @param file
+	 * @return
+	 */
+	private static boolean deleteFile(File file)
+	{
+		if (!file.exists() || file.delete())
+		{
+			return true;
+		}
+
+		System.gc();
+		System.runFinalization();
+
+		return !file.exists() || file.delete();
+	}
+
+	/**
+	 * Binary search the sorted key block of the category table at the given offset. Returns the index of the entry for
+	 * the word, or (-(insertion point) - 1) if the word is not in the table.
+	 * 
+	 * @param tableOffset
+	 * @param word
+	 * @return
+	 * @throws IOException
+	 */
+	private int findEntry(int tableOffset, String word) throws IOException
+	{
+		int low = 0;
+		int high = this.mappedFile.getInt(tableOffset) - 1;
+
+		while (low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			int comparison = readString(getEntry(tableOffset, mid)).compareTo(word);
+
+			if (comparison < 0)
+			{
+				low = mid + 1;
+			}
+			else if (comparison > 0)
+			{
+				high = mid - 1;
+			}
+			else
+			{
+				return mid;
+			}
+		}
+
+		return -(low + 1);
+	}
+
 	/**
 	 * getCategories
 	 * 
@@ -606,6 +719,19 @@ public class DiskIndex
 		return result;
 	}
 
+	/**
+	 * Returns the offset to the key block of the named category table, or -1 if the category is unknown
+	 * 
+	 * @param categoryName
+	 * @return
+	 */
+	private int getCategoryTableOffset(String categoryName)
+	{
+		Integer offset = this.categoryOffsets.get(categoryName);
+
+		return (offset == null) ? -1 : offset.intValue();
+	}
+
 	/**
 	 * getDocuments
 	 * 
@@ -626,6 +752,35 @@ public class DiskIndex
 		return result;
 	}
 
+	/**
+	 * Returns a private view of the mapped file positioned at the index'th entry of the category table at the given
+	 * offset
+	 * 
+	 * @param tableOffset
+	 * @param index
+	 * @return
+	 */
+	private ByteBuffer getEntry(int tableOffset, int index)
+	{
+		return getView(this.mappedFile.getInt(tableOffset + 4 + (index << 2)));
+	}
+
+	/**
+	 * Returns a view of the mapped file positioned at the given offset. Each reader works on its own view so readers
+	 * never share a position and need no synchronization.
+	 * 
+	 * @param offset
+	 * @return
+	 */
+	private ByteBuffer getView(int offset)
+	{
+		ByteBuffer view = this.mappedFile.duplicate();
+
+		view.position(offset);
+
+		return view;
+	}
+
 	/**
 	 * initialize
 	 * 
@@ -638,37 +793,56 @@ public class DiskIndex
 			if (reuseExistingFile)
 			{
 				// read it in!
-				InputStream stream = new BufferedInputStream(new FileInputStream(this.indexFile));
+				map();
 
 				try
 				{
-					streamRead = 0;
-
-					String signature = readString(stream);
+					ByteBuffer view = getView(0);
+					String signature = readString(view);
 
-					if (!signature.equals(SIGNATURE))
+					if (LEGACY_SIGNATURE.equals(signature))
+					{
+						this.legacyFormat = true;
+					}
+					else if (!SIGNATURE.equals(signature))
 					{
 						throw new IOException(Messages.DiskIndex_Wrong_Format);
 					}
 
-					this.headerInfoOffset = readStreamInt(stream);
+					// empty legacy files only wrote a single byte in place of the header offset
+					this.headerInfoOffset = (view.remaining() >= 4) ? view.getInt() : -1;
 
 					if (this.headerInfoOffset > 0)
 					{ // file is empty if its not set
-						skip(stream, this.headerInfoOffset - this.streamRead); // assume that the header info offset is
-						// over
-						// current buffer end
-						readHeaderInfo(stream);
+						readHeaderInfo(getView(this.headerInfoOffset));
+					}
+
+					if (this.legacyFormat)
+					{
+						migrate();
 					}
 				}
-				finally
+				catch (BufferUnderflowException e)
 				{
-					stream.close();
+					close();
+					throw new IOException(MessageFormat.format("Corrupt index file ''{0}''", this.indexFile)); //$NON-NLS-1$
+				}
+				catch (IllegalArgumentException e)
+				{
+					close();
+					throw new IOException(MessageFormat.format("Corrupt index file ''{0}''", this.indexFile)); //$NON-NLS-1$
+				}
+				catch (IOException e)
+				{
+					close();
+					throw e;
 				}
 				return;
 			}
 
-			if (!this.indexFile.delete())
+			unmap();
+
+			if (!deleteFile(this.indexFile))
 			{
 				if (DEBUG)
 				{
@@ -682,17 +856,19 @@ public class DiskIndex
 		// create a new empty one!
 		if (indexFile.createNewFile())
 		{
-			FileOutputStream stream = new FileOutputStream(this.indexFile, false);
+			OutputStream stream = new FileOutputStream(this.indexFile, false);
 
 			try
 			{
 				writeString(stream, SIGNATURE);
-				stream.write(-1);
+				writeStreamInt(stream, -1);
 			}
 			finally
 			{
 				stream.close();
 			}
+
+			map();
 		}
 		else
 		{
@@ -733,11 +909,33 @@ public class DiskIndex
 
 		int size = diskIndex.categoryOffsets == null ? 8 : diskIndex.categoryOffsets.size();
 		this.categoryOffsets = new HashMap<String, Integer>(size);
-		this.categoryTables = new HashMap<String, Map<String, Object>>(size);
+		this.categoryTables = new HashMap<String, Map<String, List<Integer>>>(size);
 		this.separator = diskIndex.separator;
 		this.categoriesToDiscard = diskIndex.categoriesToDiscard;
 	}
 
+	/**
+	 * map
+	 * 
+	 * @throws IOException
+	 */
+	private void map() throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(this.indexFile, "r"); //$NON-NLS-1$
+
+		try
+		{
+			FileChannel channel = file.getChannel();
+
+			// the mapping remains valid after the channel has been closed
+			this.mappedFile = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally
+		{
+			file.close();
+		}
+	}
+
 	/**
 	 * mergeCategories
 	 * 
@@ -781,22 +979,21 @@ public class DiskIndex
 	 * @param stream
 	 * @throws IOException
 	 */
-	@SuppressWarnings("unchecked")
 	private void mergeCategory(String categoryName, DiskIndex onDisk, int[] positions, OutputStream stream)
 			throws IOException
 	{
-		Map<String, Object> wordsToDocs = this.categoryTables.get(categoryName);
+		Map<String, List<Integer>> wordsToDocs = this.categoryTables.get(categoryName);
 
 		if (wordsToDocs == null)
 		{
-			wordsToDocs = new HashMap<String, Object>(3);
+			wordsToDocs = new HashMap<String, List<Integer>>(3);
 		}
 
-		Map<String, Object> oldWordsToDocs = onDisk.readCategoryTable(categoryName, true);
+		Map<String, List<Integer>> oldWordsToDocs = onDisk.readCategoryTable(categoryName);
 
 		if (oldWordsToDocs != null)
 		{
-			nextWord: for (Map.Entry<String, Object> entry : oldWordsToDocs.entrySet())
+			nextWord: for (Map.Entry<String, List<Integer>> entry : oldWordsToDocs.entrySet())
 			{
 				String oldWord = entry.getKey();
 
@@ -805,7 +1002,7 @@ public class DiskIndex
 					continue;
 				}
 
-				List<Integer> oldDocNumbers = (List<Integer>) entry.getValue();
+				List<Integer> oldDocNumbers = entry.getValue();
 				List<Integer> mappedNumbers = new ArrayList<Integer>(oldDocNumbers.size());
 
 				for (Integer oldDocNumber : oldDocNumbers)
@@ -823,31 +1020,17 @@ public class DiskIndex
 					continue nextWord; // skip words which no longer have any references
 				}
 
-				Object o = wordsToDocs.get(oldWord);
+				List<Integer> list = wordsToDocs.get(oldWord);
 
-				if (o == null)
+				if (list == null)
 				{
 					wordsToDocs.put(oldWord, mappedNumbers);
 				}
 				else
 				{
-					List<Integer> list = null;
-
-					if (o instanceof List<?>)
-					{
-						list = (List<Integer>) o;
-					}
-					else
-					{
-						list = new ArrayList<Integer>();
-						wordsToDocs.put(oldWord, list);
-					}
-
 					list.addAll(mappedNumbers);
 				}
 			}
-
-			onDisk.categoryTables.put(categoryName, null); // flush cached table
 		}
 
 		writeCategoryTable(categoryName, wordsToDocs, stream);
@@ -881,6 +1064,8 @@ public class DiskIndex
 			}
 
 			// index is now empty since all the saved documents were removed
+			unmap();
+
 			DiskIndex newDiskIndex = new DiskIndex(this.indexFile.getPath());
 			newDiskIndex.initialize(false);
 
@@ -941,14 +1126,23 @@ public class DiskIndex
 			newDiskIndex.writeOffsetToHeader(offsetToHeader);
 
 			// rename file by deleting previous index file & renaming temp one
-			if (this.indexFile.exists() && !this.indexFile.delete())
+			unmap();
+
+			if (!deleteFile(this.indexFile))
 			{
+				map(); // keep serving queries from the previous file
 				throw new IOException("Failed to delete index file " + this.indexFile); //$NON-NLS-1$
 			}
 
-			if (!newDiskIndex.indexFile.renameTo(this.indexFile))
+			if (!newDiskIndex.indexFile.renameTo(this.indexFile) && !copyFile(newDiskIndex.indexFile, this.indexFile))
 			{
-				throw new IOException("Failed to rename index file " + this.indexFile); //$NON-NLS-1$
+				// the previous file is gone, so keep the temp one and serve queries from it rather than losing both
+				String message = "Failed to rename index file ''{0}'', using ''{1}''"; //$NON-NLS-1$
+				IdeLog.logError(IndexPlugin.getDefault(),
+						MessageFormat.format(message, this.indexFile, newDiskIndex.indexFile));
+				newDiskIndex.map();
+
+				return newDiskIndex;
 			}
 		}
 		catch (IOException e)
@@ -965,265 +1159,172 @@ public class DiskIndex
 		}
 
 		newDiskIndex.indexFile = this.indexFile;
+		newDiskIndex.map();
 
 		return newDiskIndex;
 	}
 
 	/**
-	 * read
+	 * Copies a new index file over the path of the previous one, for when it couldn't be renamed. The source is deleted
+	 * once copied, and a partial copy is deleted when the copy fails.
 	 * 
-	 * @param stream
-	 * @return
-	 * @throws IOException
+	 * @param source
+	 * @param destination
+	 * @return whether the copy succeeded
 	 */
-	private int read(InputStream stream) throws IOException
+	private static boolean copyFile(File source, File destination)
 	{
-		int val = stream.read();
+		try
+		{
+			IOUtil.copyFile(source, destination);
+		}
+		catch (IOException e)
+		{
+			if (DEBUG)
+			{
+				System.out.println("mergeWith - Failed to copy temp index " + source); //$NON-NLS-1$
+			}
+			deleteFile(destination);
 
-		streamRead++;
+			return false;
+		}
 
-		return val;
+		if (!deleteFile(source) && DEBUG)
+		{
+			System.out.println("mergeWith - Failed to delete temp index " + source); //$NON-NLS-1$
+		}
+
+		return true;
 	}
 
 	/**
-	 * readAllDocumentNames
+	 * Rewrite an index file read in the legacy format into the current one, adopting the state of the rewritten file.
 	 * 
-	 * @return
 	 * @throws IOException
 	 */
-	private synchronized List<String> readAllDocumentNames() throws IOException
+	private void migrate() throws IOException
 	{
 		if (this.numberOfChunks <= 0)
 		{
-			return Collections.emptyList();
+			// nothing worth keeping, just start an empty index file in the current format
+			initialize(false);
 		}
-
-		InputStream stream = new BufferedInputStream(new FileInputStream(this.indexFile));
-
-		try
+		else
 		{
-			int offset = this.chunkOffsets[0];
+			DiskIndex migrated = mergeWith(new MemoryIndex());
 
-			skip(stream, offset);
+			this.mappedFile = migrated.mappedFile;
+			this.headerInfoOffset = migrated.headerInfoOffset;
+			this.numberOfChunks = migrated.numberOfChunks;
+			this.sizeOfLastChunk = migrated.sizeOfLastChunk;
+			this.documentReferenceSize = migrated.documentReferenceSize;
+			this.separator = migrated.separator;
+			this.chunkOffsets = migrated.chunkOffsets;
+			this.startOfCategoryTables = migrated.startOfCategoryTables;
+			this.categoryOffsets = migrated.categoryOffsets;
+			this.cachedChunks = migrated.cachedChunks;
+		}
 
-			int lastIndex = this.numberOfChunks - 1;
+		this.legacyFormat = false;
+	}
 
-			String[] docNames = new String[lastIndex * CHUNK_SIZE + sizeOfLastChunk];
+	/**
+	 * readAllDocumentNames
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	private List<String> readAllDocumentNames() throws IOException
+	{
+		if (this.numberOfChunks <= 0)
+		{
+			return Collections.emptyList();
+		}
 
-			for (int i = 0; i < this.numberOfChunks; i++)
-			{
-				readChunk(docNames, stream, i * CHUNK_SIZE, i < lastIndex ? CHUNK_SIZE : sizeOfLastChunk);
-			}
+		ByteBuffer view = getView(this.chunkOffsets[0]);
+		int lastIndex = this.numberOfChunks - 1;
+		String[] docNames = new String[lastIndex * CHUNK_SIZE + sizeOfLastChunk];
 
-			return Arrays.asList(docNames);
-		}
-		finally
+		for (int i = 0; i < this.numberOfChunks; i++)
 		{
-			stream.close();
+			readChunk(docNames, view, i * CHUNK_SIZE, i < lastIndex ? CHUNK_SIZE : sizeOfLastChunk);
 		}
+
+		return Arrays.asList(docNames);
 	}
 
 	/**
-	 * readCategoryTable
+	 * Reads the full word to document numbers table for the given category, or returns null if the category is unknown
 	 * 
 	 * @param categoryName
-	 * @param readDocNumbers
 	 * @return
 	 * @throws IOException
 	 */
-	private synchronized Map<String, Object> readCategoryTable(String categoryName, boolean readDocNumbers)
-			throws IOException
+	private Map<String, List<Integer>> readCategoryTable(String categoryName) throws IOException
 	{
-		// result will be null if categoryName is unknown
-		Integer offset = this.categoryOffsets.get(categoryName);
+		int offset = getCategoryTableOffset(categoryName);
 
-		if (offset == null)
+		if (offset < 0)
 		{
 			return null;
 		}
 
-		if (this.categoryTables == null)
+		if (this.legacyFormat)
 		{
-			this.categoryTables = new HashMap<String, Map<String, Object>>(3);
+			return readLegacyCategoryTable(categoryName, offset);
 		}
-		else
-		{
-			Map<String, Object> cachedTable = this.categoryTables.get(categoryName);
 
-			if (cachedTable != null)
-			{
-				if (readDocNumbers)
-				{ // must cache remaining document number arrays
-					Map<String, Object> copy = new HashMap<String, Object>(cachedTable);
-
-					for (Map.Entry<String, Object> entry : cachedTable.entrySet())
-					{
-						Object arrayOffset = entry.getValue();
-
-						if (arrayOffset instanceof Integer)
-						{
-							copy.put(entry.getKey(), readDocumentNumbers(arrayOffset));
-						}
-					}
+		int size = this.mappedFile.getInt(offset);
+		Map<String, List<Integer>> categoryTable = new HashMap<String, List<Integer>>(size);
 
-					cachedTable = copy;
-				}
-
-				return cachedTable;
-			}
-		}
-
-		InputStream stream = new BufferedInputStream(new FileInputStream(this.indexFile));
-		Map<String, Object> categoryTable = null;
-		String[] matchingWords = null;
-		int count = 0;
-		int firstOffset = -1;
-
-		try
+		for (int i = 0; i < size; i++)
 		{
-			// skip to start of category
-			skip(stream, offset);
-
-			// Read the number of words in the category
-			int size = readStreamInt(stream);
-
-			try
-			{
-				if (size < 0)
-				{
-					// DEBUG
-					StringBuilder debug = new StringBuilder();
-					debug.append("-------------------- DEBUG --------------------\n"); //$NON-NLS-1$
-					debug.append("file = ").append(this.indexFile).append('\n'); //$NON-NLS-1$
-					debug.append("offset = ").append(offset).append('\n'); //$NON-NLS-1$
-					debug.append("size = ").append(size).append('\n'); //$NON-NLS-1$
-					debug.append("--------------------   END   --------------------\n"); //$NON-NLS-1$
-					System.err.print(debug.toString());
-					IdeLog.logError(
-							IndexPlugin.getDefault(),
-							MessageFormat.format(
-									"Size of category ''{0}'' negative:\n{1}", categoryName, debug.toString())); //$NON-NLS-1$
-					size = 0;
-				}
+			ByteBuffer entry = getEntry(offset, i);
+			String word = readString(entry);
 
-				categoryTable = new HashMap<String, Object>(size);
-			}
-			catch (OutOfMemoryError oom)
-			{
-				// Here we hope that those string allocation will not throw another OutOfMemoryError...
-				// DEBUG
-				oom.printStackTrace();
-				String error = MessageFormat
-						.format("Index error in readCategoryTable. \nfile = {0} \noffset = {1} \n size = {2}", this.indexFile, offset, size); //$NON-NLS-1$
-				System.err.println("-------------------- DEBUG --------------------\n"); //$NON-NLS-1$
-				System.err.println(error);
-				System.err.println("--------------------   END   --------------------\n"); //$NON-NLS-1$
-				IdeLog.logError(IndexPlugin.getDefault(), error, oom);
-				throw oom;
-			}
-
-			int largeArraySize = 256;
-
-			for (int i = 0; i < size; i++)
-			{
-				String word = readString(stream);
-				int arrayOffset = readStreamInt(stream);
-
-				// if arrayOffset is:
-				// <= 0 then the array size == 1 with the value -> -arrayOffset
-				// > 1 & < 256 then the size of the array is > 1 & < 256, the document array follows immediately
-				// 256 if the array size >= 256 followed by another int which is the offset to the array (written prior
-				// to the table)
-				if (arrayOffset <= 0)
-				{
-					categoryTable.put(word, CollectionsUtil.newList(-arrayOffset)); // store 1 element array by negating
-					// documentNumber
-				}
-				else if (arrayOffset < largeArraySize)
-				{
-					categoryTable.put(word, readStreamDocumentArray(stream, arrayOffset)); // read in-lined array
-					// providing size
-				}
-				else
-				{
-					arrayOffset = readStreamInt(stream); // read actual offset
-
-					if (readDocNumbers)
-					{
-						if (matchingWords == null)
-						{
-							matchingWords = new String[size];
-						}
-
-						if (count == 0)
-						{
-							firstOffset = arrayOffset;
-						}
-
-						matchingWords[count++] = word;
-					}
-
-					categoryTable.put(word, new Integer(arrayOffset)); // offset to array in the file
-				}
-			}
-
-			this.categoryTables.put(categoryName, categoryTable);
-		}
-		catch (IOException ioe)
-		{
-			throw ioe;
-		}
-		finally
-		{
-			stream.close();
+			categoryTable.put(word, readDocumentArray(entry, entry.getInt()));
 		}
 
-		if (matchingWords != null && count > 0)
-		{
-			stream = new BufferedInputStream(new FileInputStream(this.indexFile));
+		return categoryTable;
+	}
 
-			try
-			{
-				skip(stream, firstOffset);
+	/**
+	 * readChunk
+	 * 
+	 * @param chunkNumber
+	 * @return
+	 * @throws IOException
+	 */
+	private String[] readChunk(int chunkNumber) throws IOException
+	{
+		int numberOfNames = (chunkNumber == this.numberOfChunks - 1) ? this.sizeOfLastChunk : CHUNK_SIZE;
+		String[] chunk = new String[numberOfNames];
 
-				for (int i = 0; i < count; i++)
-				{ // each array follows the previous one
-					categoryTable.put(matchingWords[i], readStreamDocumentArray(stream, readStreamInt(stream)));
-				}
-			}
-			catch (IOException ioe)
-			{
-				throw ioe;
-			}
-			finally
-			{
-				stream.close();
-			}
-		}
+		readChunk(chunk, getView(this.chunkOffsets[chunkNumber]), 0, numberOfNames);
 
-		return categoryTable;
+		return chunk;
 	}
 
 	/**
 	 * readChunk
 	 * 
 	 * @param docNames
-	 * @param stream
+	 * @param view
 	 * @param index
 	 * @param size
 	 * @throws IOException
 	 */
-	private void readChunk(String[] docNames, InputStream stream, int index, int size) throws IOException
+	private void readChunk(String[] docNames, ByteBuffer view, int index, int size) throws IOException
 	{
-		String current = readString(stream);
+		String current = readString(view);
 
 		docNames[index++] = current;
 
 		for (int i = 1; i < size; i++)
 		{
-			int start = read(stream) & 0xFF;
-			int end = read(stream) & 0xFF;
-			String next = readString(stream);
+			int start = view.get() & 0xFF;
+			int end = view.get() & 0xFF;
+			String next = readString(view);
 
 			if (start > 0)
 			{
@@ -1251,201 +1352,176 @@ public class DiskIndex
 	}
 
 	/**
-	 * readDocumentName
+	 * readDocumentArray
 	 * 
-	 * @param docNumber
+	 * @param view
+	 * @param arraySize
 	 * @return
-	 * @throws IOException
 	 */
-	private synchronized String readDocumentName(int docNumber) throws IOException
+	private List<Integer> readDocumentArray(ByteBuffer view, int arraySize)
 	{
-		if (this.cachedChunks == null)
+		if (arraySize == 0)
 		{
-			this.cachedChunks = new String[this.numberOfChunks][];
+			return Collections.emptyList();
 		}
 
-		int chunkNumber = docNumber / CHUNK_SIZE;
-		String[] chunk = this.cachedChunks[chunkNumber];
+		List<Integer> indexes = new ArrayList<Integer>(arraySize);
 
-		if (chunk == null)
+		for (int i = 0; i < arraySize; i++)
 		{
-			boolean isLastChunk = chunkNumber == this.numberOfChunks - 1;
-			int start = this.chunkOffsets[chunkNumber];
-			int numberOfBytes = (isLastChunk ? this.startOfCategoryTables : this.chunkOffsets[chunkNumber + 1]) - start;
+			int value;
 
-			if (numberOfBytes < 0)
-			{
-				throw new IllegalArgumentException();
-			}
-
-			InputStream file = new BufferedInputStream(new FileInputStream(this.indexFile));
-
-			try
+			switch (this.documentReferenceSize)
 			{
-				skip(file, start);
+				case 1:
+					value = view.get() & 0xFF;
+					break;
 
-				int numberOfNames = isLastChunk ? this.sizeOfLastChunk : CHUNK_SIZE;
+				case 2:
+					value = view.getShort() & 0xFFFF;
+					break;
 
-				chunk = new String[numberOfNames];
-				readChunk(chunk, file, 0, numberOfNames);
-			}
-			catch (IOException ioe)
-			{
-				throw ioe;
-			}
-			finally
-			{
-				file.close();
+				default:
+					value = view.getInt();
+					break;
 			}
 
-			this.cachedChunks[chunkNumber] = chunk;
+			indexes.add(value);
 		}
 
-		return chunk[docNumber - (chunkNumber * CHUNK_SIZE)];
+		return indexes;
 	}
 
 	/**
-	 * readDocumentNumbers
+	 * readDocumentName
 	 * 
-	 * @param arrayOffset
+	 * @param docNumber
 	 * @return
 	 * @throws IOException
 	 */
-	private @SuppressWarnings("unchecked")
-	synchronized List<Integer> readDocumentNumbers(Object arrayOffset) throws IOException
+	private String readDocumentName(int docNumber) throws IOException
 	{
-		// arrayOffset is either a cached array of docNumbers or an Integer offset in the file
-		if (arrayOffset instanceof List<?>)
-		{
-			return (List<Integer>) arrayOffset;
-		}
-
-		InputStream stream = new BufferedInputStream(new FileInputStream(this.indexFile));
-
-		try
-		{
-			int offset = ((Integer) arrayOffset).intValue();
-
-			skip(stream, offset);
+		int chunkNumber = docNumber / CHUNK_SIZE;
+		String[] chunk = this.cachedChunks.get(chunkNumber);
 
-			return readStreamDocumentArray(stream, readStreamInt(stream));
-		}
-		finally
+		if (chunk == null)
 		{
-			stream.close();
+			// Two readers may decode the same chunk at once, but they'll produce equal results so either one can win
+			chunk = readChunk(chunkNumber);
+			this.cachedChunks.set(chunkNumber, chunk);
 		}
+
+		return chunk[docNumber - (chunkNumber * CHUNK_SIZE)];
 	}
 
 	/**
 	 * readHeaderInfo
 	 * 
-	 * @param stream
+	 * @param view
 	 * @throws IOException
 	 */
-	private void readHeaderInfo(InputStream stream) throws IOException
+	private void readHeaderInfo(ByteBuffer view) throws IOException
 	{
 		// must be same order as writeHeaderInfo()
-		this.numberOfChunks = readStreamInt(stream);
+		this.numberOfChunks = view.getInt();
 		if (this.numberOfChunks < 0)
 		{
 			throw new IOException(MessageFormat.format("Corrupt index file, reported {0} chunks", numberOfChunks)); //$NON-NLS-1$
 		}
-		this.sizeOfLastChunk = read(stream) & 0xFF;
-		this.documentReferenceSize = read(stream) & 0xFF;
-		this.separator = (char) (read(stream) & 0xFF);
+		this.sizeOfLastChunk = view.get() & 0xFF;
+		this.documentReferenceSize = view.get() & 0xFF;
+		this.separator = (char) (view.get() & 0xFF);
 
 		this.chunkOffsets = new int[this.numberOfChunks];
 		for (int i = 0; i < this.numberOfChunks; i++)
 		{
-			this.chunkOffsets[i] = readStreamInt(stream);
+			this.chunkOffsets[i] = view.getInt();
 		}
+		this.cachedChunks = new AtomicReferenceArray<String[]>(this.numberOfChunks);
 
-		this.startOfCategoryTables = readStreamInt(stream);
+		this.startOfCategoryTables = view.getInt();
 
 		// Build the table of categories to offsets where they start
-		int categoryCount = readStreamInt(stream);
+		int categoryCount = view.getInt();
+		if (categoryCount < 0)
+		{
+			throw new IOException(MessageFormat.format("Corrupt index file, reported {0} categories", categoryCount)); //$NON-NLS-1$
+		}
 		this.categoryOffsets = new HashMap<String, Integer>(categoryCount);
 		for (int i = 0; i < categoryCount; i++)
 		{
-			String categoryName = readString(stream);
-			int offset = readStreamInt(stream);
+			String categoryName = readString(view);
+			int offset = view.getInt();
 			this.categoryOffsets.put(categoryName, offset); // cache offset to category table
 		}
-
-		this.categoryTables = new HashMap<String, Map<String, Object>>(3);
 	}
 
 	/**
-	 * readStreamDocumentArray
+	 * Reads a category table written in the "INDEX VERSION 0.1" format, only used to migrate those files.
 	 * 
-	 * @param stream
-	 * @param arraySize
+	 * @param categoryName
+	 * @param offset
 	 * @return
 	 * @throws IOException
 	 */
-	private List<Integer> readStreamDocumentArray(InputStream stream, int arraySize) throws IOException
+	private Map<String, List<Integer>> readLegacyCategoryTable(String categoryName, int offset) throws IOException
 	{
-		if (arraySize == 0)
+		ByteBuffer view = getView(offset);
+
+		// Read the number of words in the category
+		int size = view.getInt();
+
+		if (size < 0)
 		{
-			return Collections.emptyList();
+			IdeLog.logError(IndexPlugin.getDefault(), MessageFormat.format(
+					"Size of category ''{0}'' negative:\nfile = {1}\noffset = {2}\nsize = {3}", categoryName, //$NON-NLS-1$
+					this.indexFile, offset, size));
+			size = 0;
 		}
 
-		List<Integer> indexes = new ArrayList<Integer>();
+		Map<String, List<Integer>> categoryTable = new HashMap<String, List<Integer>>(size);
+		int largeArraySize = 256;
 
-		for (int i = 0; i < arraySize; i++)
+		for (int i = 0; i < size; i++)
 		{
-			int value = 0;
+			String word = readString(view);
+			int arrayOffset = view.getInt();
 
-			switch (this.documentReferenceSize)
+			// if arrayOffset is:
+			// <= 0 then the array size == 1 with the value -> -arrayOffset
+			// > 1 & < 256 then the size of the array is > 1 & < 256, the document array follows immediately
+			// 256 if the array size >= 256 followed by another int which is the offset to the array (written prior
+			// to the table)
+			if (arrayOffset <= 0)
 			{
-				case 1:
-					value = read(stream) & 0xFF;
-					break;
-
-				case 2:
-					value = (read(stream) & 0xFF) << 8;
-					value = value + (read(stream) & 0xFF);
-					break;
-
-				default:
-					value = readStreamInt(stream);
-					break;
+				categoryTable.put(word, CollectionsUtil.newList(-arrayOffset)); // store 1 element array by negating
+				// documentNumber
 			}
+			else if (arrayOffset < largeArraySize)
+			{
+				categoryTable.put(word, readDocumentArray(view, arrayOffset)); // read in-lined array providing size
+			}
+			else
+			{
+				ByteBuffer array = getView(view.getInt()); // read actual offset
 
-			indexes.add(value);
+				categoryTable.put(word, readDocumentArray(array, array.getInt()));
+			}
 		}
 
-		return indexes;
-	}
-
-	/**
-	 * readStreamInt
-	 * 
-	 * @param stream
-	 * @return
-	 * @throws IOException
-	 */
-	private int readStreamInt(InputStream stream) throws IOException
-	{
-		int val = (read(stream) & 0xFF) << 24;
-
-		val += (read(stream) & 0xFF) << 16;
-		val += (read(stream) & 0xFF) << 8;
-
-		return val + (read(stream) & 0xFF);
+		return categoryTable;
 	}
 
 	/**
 	 * readString
 	 * 
-	 * @param stream
+	 * @param view
 	 * @return
 	 * @throws IOException
 	 */
-	private String readString(InputStream stream) throws IOException
+	private String readString(ByteBuffer view) throws IOException
 	{
-		int length = (read(stream) & 0xFF) << 8;
-		length += read(stream) & 0xFF;
+		int length = view.getShort() & 0xFFFF;
 
 		// fill the chars from bytes buffer
 		char[] word = new char[length];
@@ -1453,7 +1529,7 @@ public class DiskIndex
 
 		while (i < length)
 		{
-			byte b = (byte) read(stream);
+			byte b = view.get();
 
 			switch (b & 0xF0)
 			{
@@ -1470,7 +1546,7 @@ public class DiskIndex
 
 				case 0xC0:
 				case 0xD0:
-					char next = (char) read(stream);
+					char next = (char) (view.get() & 0xFF);
 
 					if ((next & 0xC0) != 0x80)
 					{
@@ -1484,8 +1560,8 @@ public class DiskIndex
 					break;
 
 				case 0xE0:
-					char first = (char) read(stream);
-					char second = (char) read(stream);
+					char first = (char) (view.get() & 0xFF);
+					char second = (char) (view.get() & 0xFF);
 
 					if ((first & second & 0xC0) != 0x80)
 					{
@@ -1522,13 +1598,6 @@ public class DiskIndex
 		// FIXME We need to wipe out the category from the file somehow! The problem is that we can drop a document/file
 		// fairly easily by setting it's mapping to null in memory index and merging, but the way the thing is set up we
 		// don't really have an easy way of wiping a category out from memory and disk right now.
-
-		// int offset = this.categoryOffsets.get(categoryName);
-		// // "Wipe out" from the category offset to next category offset. However we need to handle the "long arrays"
-		// written just before offsets!
-		// RandomAccessFile file = new RandomAccessFile(this.indexFile, "rw");
-		// file.seek(offset);
-
 		this.categoriesToDiscard = categoryNames;
 
 		DiskIndex newIndex = mergeWith(memoryIndex);
@@ -1538,45 +1607,6 @@ public class DiskIndex
 		return newIndex;
 	}
 
-	/**
-	 * skip
-	 * 
-	 * @param stream
-	 * @param n
-	 * @return
-	 * @throws IOException
-	 */
-	private long skip(InputStream stream, long n) throws IOException
-	{
-		final long wantToSkip = n;
-		long actuallySkipped = 0;
-
-		while (n > 0)
-		{
-			long skipped = stream.skip(n);
-
-			actuallySkipped += skipped;
-			n = n - skipped;
-
-			if (actuallySkipped == wantToSkip)
-			{
-				return actuallySkipped;
-			}
-
-			int read = stream.read();
-
-			if (read == -1)
-			{
-				return actuallySkipped;
-			}
-
-			n--;
-			actuallySkipped++;
-		}
-
-		return actuallySkipped;
-	}
-
 	/**
 	 * writeCategories
 	 * 
@@ -1585,7 +1615,7 @@ public class DiskIndex
 	 */
 	private void writeCategories(OutputStream stream) throws IOException
 	{
-		for (Map.Entry<String, Map<String, Object>> entry : categoryTables.entrySet())
+		for (Map.Entry<String, Map<String, List<Integer>>> entry : categoryTables.entrySet())
 		{
 			String categoryName = entry.getKey();
 
@@ -1606,8 +1636,7 @@ public class DiskIndex
 	 * @param stream
 	 * @throws IOException
 	 */
-	@SuppressWarnings("unchecked")
-	private void writeCategoryTable(String categoryName, Map<String, Object> wordsToDocs, OutputStream stream)
+	private void writeCategoryTable(String categoryName, Map<String, List<Integer>> wordsToDocs, OutputStream stream)
 			throws IOException
 	{
 		if (this.categoriesToDiscard != null)
@@ -1622,59 +1651,23 @@ public class DiskIndex
 		}
 
 		// the format of a category table is as follows:
-		// any document number arrays with >= 256 elements are written before the table (the offset to each array is
-		// remembered)
-		// then the number of word->int[] pairs in the table is written
-		// for each word -> int[] pair, the word is written followed by:
-		// an int <= 0 if the array size == 1
-		// an int > 1 & < 256 for the size of the array if its > 1 & < 256, the document array follows immediately
-		// 256 if the array size >= 256 followed by another int which is the offset to the array (written prior to the
-		// table)
-
-		Map<String, Integer> longArrays = new HashMap<String, Integer>();
-		int largeArraySize = 256;
+		// for each word in sorted order, the word is written followed by the number of documents and the document
+		// numbers
+		// then the number of words in the table is written, followed by the offset of each word entry. The offset of
+		// the category points at this key block
+		List<String> words = new ArrayList<String>(wordsToDocs.keySet());
+		Collections.sort(words);
+
+		int[] entryOffsets = new int[words.size()];
+		int count = 0;
 
-		for (Map.Entry<String, Object> entry : wordsToDocs.entrySet())
+		for (String word : words)
 		{
-			List<Integer> docNumbers = (List<Integer>) entry.getValue();
+			int entryOffset = this.streamEnd;
 
-			if (docNumbers.size() >= largeArraySize)
-			{
-				longArrays.put(entry.getKey(), new Integer(this.streamEnd));
-				writeDocumentNumbers(docNumbers, stream);
-			}
-		}
-
-		this.categoryOffsets.put(categoryName, this.streamEnd); // remember the offset to the start of the table
-		this.categoryTables.put(categoryName, null); // flush cached table
-		writeStreamInt(stream, wordsToDocs.size());
-
-		for (Map.Entry<String, Object> entry : wordsToDocs.entrySet())
-		{
 			try
 			{
-				writeString(stream, entry.getKey());
-
-				if (longArrays.containsKey(entry.getKey()))
-				{
-					writeStreamInt(stream, largeArraySize); // mark to identify that an offset follows
-					writeStreamInt(stream, longArrays.get(entry.getKey()).intValue()); // offset in the file of the
-																						// array of
-					// document numbers
-				}
-				else
-				{
-					List<Integer> documentNumbers = (List<Integer>) entry.getValue();
-
-					if (documentNumbers.size() == 1)
-					{
-						writeStreamInt(stream, -documentNumbers.get(0));
-					}
-					else
-					{
-						writeDocumentNumbers(documentNumbers, stream);
-					}
-				}
+				writeString(stream, word);
 			}
 			catch (IOException ioe)
 			{
@@ -1682,7 +1675,19 @@ public class DiskIndex
 				IdeLog.logError(IndexPlugin.getDefault(), ioe);
 				// To limit the damage, we're going to effectively skip writing one entry into the index. This will
 				// break our knowledge of some property/type in JS but will allow indexing to continue.
+				continue;
 			}
+
+			writeDocumentNumbers(wordsToDocs.get(word), stream);
+			entryOffsets[count++] = entryOffset;
+		}
+
+		this.categoryOffsets.put(categoryName, this.streamEnd); // remember the offset to the start of the key block
+		writeStreamInt(stream, count);
+
+		for (int i = 0; i < count; i++)
+		{
+			writeStreamInt(stream, entryOffsets[i]);
 		}
 	}
 
@@ -1713,6 +1718,7 @@ public class DiskIndex
 		// reference
 
 		this.chunkOffsets = new int[this.numberOfChunks];
+		this.cachedChunks = new AtomicReferenceArray<String[]>(this.numberOfChunks);
 		int lastIndex = this.numberOfChunks - 1;
 
 		for (int i = 0; i < this.numberOfChunks; i++)
@@ -1822,8 +1828,6 @@ public class DiskIndex
 					break;
 			}
 		}
-
-		stream.flush();
 	}
 
 	/**
@@ -1901,7 +1905,6 @@ public class DiskIndex
 		stream.write((byte) (val >> 8));
 		stream.write((byte) val);
 		this.streamEnd += 4;
-		stream.flush();
 	}
 
 	/**
@@ -1972,7 +1975,5 @@ public class DiskIndex
 				streamEnd++;
 			}
 		}
-
-		stream.flush();
 	}
 }
@@ -14,6 +14,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import com.aptana.index.core.Index;
 import com.aptana.index.core.QueryResult;
@@ -23,6 +25,8 @@ public class MemoryIndex
 {
 	private static final int MERGE_THRESHOLD = 100;
 	private HashMap<String, Map<String, Set<String>>> documentsToTable;
+	// The inverse of documentsToTable: for each category, its words in sorted order and the documents using them
+	private HashMap<String, SortedMap<String, Set<String>>> wordsByCategory;
 
 	/**
 	 * MemoryIndex
@@ -30,6 +34,7 @@ public class MemoryIndex
 	public MemoryIndex()
 	{
 		documentsToTable = new HashMap<String, Map<String, Set<String>>>();
+		wordsByCategory = new HashMap<String, SortedMap<String, Set<String>>>();
 	}
 
 	/**
@@ -90,6 +95,53 @@ public class MemoryIndex
 		}
 
 		words.add(key);
+
+		if (key == null)
+		{
+			// null words are never written to disk nor matched, so they don't go into the sorted dictionary
+			return;
+		}
+
+		SortedMap<String, Set<String>> wordsToDocuments = wordsByCategory.get(category);
+
+		if (wordsToDocuments == null)
+		{
+			wordsToDocuments = new TreeMap<String, Set<String>>();
+			wordsByCategory.put(category, wordsToDocuments);
+		}
+
+		Set<String> documents = wordsToDocuments.get(key);
+
+		if (documents == null)
+		{
+			documents = new HashSet<String>();
+			wordsToDocuments.put(key, documents);
+		}
+
+		documents.add(filePath);
+	}
+
+	/**
+	 * addQueryResult
+	 * 
+	 * @param results
+	 * @param word
+	 * @param documents
+	 */
+	private void addQueryResult(Map<String, QueryResult> results, String word, Set<String> documents)
+	{
+		QueryResult result = results.get(word);
+
+		if (result == null)
+		{
+			result = new QueryResult(word);
+			results.put(word, result);
+		}
+
+		for (String document : documents)
+		{
+			result.addDocumentName(document);
+		}
 	}
 
 	/**
@@ -109,55 +161,55 @@ public class MemoryIndex
 			results = new HashMap<String, QueryResult>();
 		}
 
-		for (Map.Entry<String, Map<String, Set<String>>> entry : documentsToTable.entrySet())
+		// only the ranges of the sorted words starting with one of these prefixes can hold matches
+		List<String> prefixes = QueryPrefixes.compute(key, matchRules);
+
+		for (String category : categories)
 		{
-			Map<String, Set<String>> categoriesToWords = entry.getValue();
+			SortedMap<String, Set<String>> wordsToDocuments = wordsByCategory.get(category);
 
-			if (categoriesToWords == null)
+			if (wordsToDocuments == null)
 			{
 				continue;
 			}
 
-			for (String category : categories)
+			// When we're looking for exact matches, case sensitive, just look up the key
+			if (matchRules == (SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE))
 			{
-				Set<String> words = categoriesToWords.get(category);
-				if (words == null)
+				Set<String> documents = (key == null) ? null : wordsToDocuments.get(key);
+
+				if (documents != null)
 				{
-					continue;
+					addQueryResult(results, key, documents);
 				}
-
-				// When we're looking for exact matches, case sensitive, just ask wordset if it contains key!
-				if (matchRules == (SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE))
+			}
+			else if (prefixes == null)
+			{
+				// Otherwise we need to check each word individually
+				for (Map.Entry<String, Set<String>> entry : wordsToDocuments.entrySet())
 				{
-					if (words.contains(key))
+					if (Index.isMatch(key, entry.getKey(), matchRules))
 					{
-						QueryResult result = results.get(key);
-
-						if (result == null)
-						{
-							result = new QueryResult(key);
-						}
-
-						result.addDocumentName(entry.getKey());
-						results.put(key, result);
+						addQueryResult(results, entry.getKey(), entry.getValue());
 					}
 				}
-				else
+			}
+			else
+			{
+				for (String prefix : prefixes)
 				{
-					// Otherwise we need to check each word individually
-					for (String word : words)
+					for (Map.Entry<String, Set<String>> entry : wordsToDocuments.tailMap(prefix).entrySet())
 					{
-						if (Index.isMatch(key, word, matchRules))
-						{
-							QueryResult result = results.get(word);
+						String word = entry.getKey();
 
-							if (result == null)
-							{
-								result = new QueryResult(word);
-							}
+						if (!word.startsWith(prefix))
+						{
+							break;
+						}
 
-							result.addDocumentName(entry.getKey());
-							results.put(word, result);
+						if (Index.isMatch(key, word, matchRules))
+						{
+							addQueryResult(results, word, entry.getValue());
 						}
 					}
 				}
@@ -246,7 +298,37 @@ public class MemoryIndex
 	 */
 	public void remove(String documentName)
 	{
-		this.documentsToTable.put(documentName, null);
+		Map<String, Set<String>> categoriesToDocumentWords = this.documentsToTable.put(documentName, null);
+
+		if (categoriesToDocumentWords == null)
+		{
+			return;
+		}
+
+		for (Map.Entry<String, Set<String>> entry : categoriesToDocumentWords.entrySet())
+		{
+			SortedMap<String, Set<String>> wordsToDocuments = wordsByCategory.get(entry.getKey());
+
+			if (wordsToDocuments == null)
+			{
+				continue;
+			}
+
+			for (String word : entry.getValue())
+			{
+				Set<String> documents = (word == null) ? null : wordsToDocuments.get(word);
+
+				if (documents != null && documents.remove(documentName) && documents.isEmpty())
+				{
+					wordsToDocuments.remove(word);
+				}
+			}
+
+			if (wordsToDocuments.isEmpty())
+			{
+				wordsByCategory.remove(entry.getKey());
+			}
+		}
 	}
 
 	/**
@@ -256,6 +338,11 @@ public class MemoryIndex
 	 */
 	public void removeCategories(String[] categoryNames)
 	{
+		for (String category : categoryNames)
+		{
+			wordsByCategory.remove(category);
+		}
+
 		for (Map<String, Set<String>> categoriesToWords : documentsToTable.values())
 		{
 			if (categoriesToWords != null)
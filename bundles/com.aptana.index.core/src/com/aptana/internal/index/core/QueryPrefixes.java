@@ -0,0 +1,468 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license-epl.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.internal.index.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.aptana.core.util.StringUtil;
+import com.aptana.index.core.SearchPattern;
+
+/**
+ * Computes the set of prefixes every word matching a query has to start with. Both the disk and memory indices keep
+ * the words of a category sorted, so each prefix turns into a range scan of the category instead of a test of every
+ * word in it. Words found in those ranges still need to be checked against the query itself.
+ */
+class QueryPrefixes
+{
+	/**
+	 * Upper bound on the number of prefixes we'll generate for a regex made of alternations
+	 */
+	private static final int MAX_PREFIXES = 64;
+	private static final String REGEX_META_CHARS = "\\^$.|?*+()[]{}"; //$NON-NLS-1$
+
+	private QueryPrefixes()
+	{
+	}
+
+	/**
+	 * Returns the prefixes for the given query, sorted and with any prefix that starts with another one in the list
+	 * removed, so the ranges never overlap. A null result means the query can match any word.
+	 * 
+	 * @param key
+	 * @param matchRule
+	 * @return
+	 */
+	static List<String> compute(String key, int matchRule)
+	{
+		if (key == null || key.length() == 0)
+		{
+			return null;
+		}
+
+		List<String> prefixes;
+
+		switch (matchRule)
+		{
+			case SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE:
+			case SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE:
+				prefixes = Collections.singletonList(key);
+				break;
+
+			case SearchPattern.EXACT_MATCH:
+			case SearchPattern.PREFIX_MATCH:
+				prefixes = getCaseInsensitivePrefixes(key);
+				break;
+
+			case SearchPattern.REGEX_MATCH | SearchPattern.CASE_SENSITIVE:
+				prefixes = getRegexPrefixes(key);
+				break;
+
+			default:
+				// Pattern matches may start at any word boundary inside of a word
+				prefixes = null;
+				break;
+		}
+
+		return normalize(prefixes);
+	}
+
+	/**
+	 * Case-insensitive matches can only be narrowed down to the words starting with either case of the first
+	 * character. We only do this for ASCII where lower and upper case map one to one.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	private static List<String> getCaseInsensitivePrefixes(String key)
+	{
+		char c = key.charAt(0);
+
+		if (c > 0x7F)
+		{
+			return null;
+		}
+
+		List<String> prefixes = new ArrayList<String>(2);
+
+		prefixes.add(String.valueOf(Character.toLowerCase(c)));
+		prefixes.add(String.valueOf(Character.toUpperCase(c)));
+
+		return prefixes;
+	}
+
+	/**
+	 * Collects the literal text at the start of an anchored regex. This handles the patterns built by the index readers,
+	 * like "^(\QWindow\E|\QArray\E)\0", which start with a literal or a group of literal alternatives.
+	 * 
+	 * @param regex
+	 * @return
+	 */
+	private static List<String> getRegexPrefixes(String regex)
+	{
+		if (regex.charAt(0) != '^' || hasTopLevelAlternation(regex))
+		{
+			return null;
+		}
+
+		List<String> prefixes = Collections.singletonList(StringUtil.EMPTY);
+		int length = regex.length();
+		int index = 1;
+
+		while (index < length)
+		{
+			char c = regex.charAt(index);
+			List<String> literals;
+			int next;
+
+			if (c == '(')
+			{
+				int end = findGroupEnd(regex, index);
+
+				if (end == -1)
+				{
+					break;
+				}
+
+				String body = regex.substring(index + 1, end);
+
+				if (body.startsWith("?:")) //$NON-NLS-1$
+				{
+					body = body.substring(2);
+				}
+
+				literals = getLiteralAlternatives(body);
+				next = end + 1;
+			}
+			else
+			{
+				StringBuilder literal = new StringBuilder();
+
+				next = readLiteral(regex, index, literal);
+				literals = (next == -1) ? null : Collections.singletonList(literal.toString());
+			}
+
+			// stop at the first construct we can't expand, or one that's optional or repeated
+			if (literals == null || (next < length && isQuantifier(regex.charAt(next))))
+			{
+				break;
+			}
+
+			if (prefixes.size() * literals.size() > MAX_PREFIXES)
+			{
+				break;
+			}
+
+			List<String> expanded = new ArrayList<String>(prefixes.size() * literals.size());
+
+			for (String prefix : prefixes)
+			{
+				for (String literal : literals)
+				{
+					expanded.add(prefix + literal);
+				}
+			}
+
+			prefixes = expanded;
+			index = next;
+		}
+
+		return prefixes;
+	}
+
+	/**
+	 * Splits the body of a group into its alternatives, returning null if any of them is not plain literal text.
+	 * 
+	 * @param body
+	 * @return
+	 */
+	private static List<String> getLiteralAlternatives(String body)
+	{
+		List<String> alternatives = new ArrayList<String>();
+		StringBuilder current = new StringBuilder();
+		int index = 0;
+		int length = body.length();
+
+		while (index <= length)
+		{
+			if (index == length || body.charAt(index) == '|')
+			{
+				alternatives.add(current.toString());
+				current.setLength(0);
+				index++;
+				continue;
+			}
+
+			StringBuilder literal = new StringBuilder();
+			int next = readLiteral(body, index, literal);
+
+			if (next == -1 || (next < length && isQuantifier(body.charAt(next))))
+			{
+				return null;
+			}
+
+			current.append(literal);
+			index = next;
+		}
+
+		return alternatives;
+	}
+
+	/**
+	 * Reads one literal element, a plain character, an escaped meta character, or a \Q...\E quoted section, into the
+	 * builder. Returns the index following the element, or -1 if the element at the given index is not a literal.
+	 * 
+	 * @param regex
+	 * @param index
+	 * @param literal
+	 * @return
+	 */
+	private static int readLiteral(String regex, int index, StringBuilder literal)
+	{
+		char c = regex.charAt(index);
+
+		if (c != '\\')
+		{
+			if (REGEX_META_CHARS.indexOf(c) != -1)
+			{
+				return -1;
+			}
+
+			literal.append(c);
+
+			return index + 1;
+		}
+
+		if (index + 1 >= regex.length())
+		{
+			return -1;
+		}
+
+		char escaped = regex.charAt(index + 1);
+
+		if (escaped == 'Q')
+		{
+			int end = regex.indexOf("\\E", index + 2); //$NON-NLS-1$
+
+			if (end == -1)
+			{
+				literal.append(regex.substring(index + 2));
+
+				return regex.length();
+			}
+
+			// a quantifier after \E only applies to the last quoted character
+			if (end + 2 < regex.length() && isQuantifier(regex.charAt(end + 2)))
+			{
+				return -1;
+			}
+
+			literal.append(regex.substring(index + 2, end));
+
+			return end + 2;
+		}
+
+		// escaped letters and digits are character classes, back references, etc.
+		if (Character.isLetterOrDigit(escaped))
+		{
+			return -1;
+		}
+
+		literal.append(escaped);
+
+		return index + 2;
+	}
+
+	/**
+	 * Returns the index of the parenthesis closing the group opened at the given index, or -1
+	 * 
+	 * @param regex
+	 * @param start
+	 * @return
+	 */
+	private static int findGroupEnd(String regex, int start)
+	{
+		int depth = 0;
+		int length = regex.length();
+
+		for (int i = start; i < length; i++)
+		{
+			char c = regex.charAt(i);
+
+			if (c == '\\')
+			{
+				i = skipEscape(regex, i);
+			}
+			else if (c == '[')
+			{
+				i = skipCharacterClass(regex, i);
+			}
+			else if (c == '(')
+			{
+				depth++;
+			}
+			else if (c == ')')
+			{
+				depth--;
+
+				if (depth == 0)
+				{
+					return i;
+				}
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Determines if the regex has an alternation outside of any group, in which case the leading anchor only applies to
+	 * the first alternative.
+	 * 
+	 * @param regex
+	 * @return
+	 */
+	private static boolean hasTopLevelAlternation(String regex)
+	{
+		int depth = 0;
+		int length = regex.length();
+
+		for (int i = 0; i < length; i++)
+		{
+			char c = regex.charAt(i);
+
+			if (c == '\\')
+			{
+				i = skipEscape(regex, i);
+			}
+			else if (c == '[')
+			{
+				i = skipCharacterClass(regex, i);
+			}
+			else if (c == '(')
+			{
+				depth++;
+			}
+			else if (c == ')')
+			{
+				depth--;
+			}
+			else if (c == '|' && depth == 0)
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * isQuantifier
+	 * 
+	 * @param c
+	 * @return
+	 */
+	private static boolean isQuantifier(char c)
+	{
+		return c == '?' || c == '*' || c == '+' || c == '{';
+	}
+
+	/**
+	 * Sorts the prefixes and drops the ones covered by a shorter prefix. Returns null if any prefix is empty.
+	 * 
+	 * @param prefixes
+	 * @return
+	 */
+	private static List<String> normalize(List<String> prefixes)
+	{
+		if (prefixes == null)
+		{
+			return null;
+		}
+
+		List<String> sorted = new ArrayList<String>(prefixes);
+		Collections.sort(sorted);
+
+		List<String> result = new ArrayList<String>(sorted.size());
+		String last = null;
+
+		for (String prefix : sorted)
+		{
+			if (prefix.length() == 0)
+			{
+				return null;
+			}
+
+			if (last == null || !prefix.startsWith(last))
+			{
+				result.add(prefix);
+				last = prefix;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns the index of the last character of the escape sequence starting at the given index
+	 * 
+	 * @param regex
+	 * @param index
+	 * @return
+	 */
+	private static int skipEscape(String regex, int index)
+	{
+		if (index + 1 < regex.length() && regex.charAt(index + 1) == 'Q')
+		{
+			int end = regex.indexOf("\\E", index + 2); //$NON-NLS-1$
+
+			return (end == -1) ? regex.length() : end + 1;
+		}
+
+		return index + 1;
+	}
+
+	/**
+	 * Returns the index of the bracket closing the character class starting at the given index
+	 * 
+	 * @param regex
+	 * @param index
+	 * @return
+	 */
+	private static int skipCharacterClass(String regex, int index)
+	{
+		int depth = 0;
+		int length = regex.length();
+
+		for (int i = index; i < length; i++)
+		{
+			char c = regex.charAt(i);
+
+			if (c == '\\')
+			{
+				i = skipEscape(regex, i);
+			}
+			else if (c == '[')
+			{
+				depth++;
+			}
+			else if (c == ']')
+			{
+				depth--;
+
+				if (depth == 0)
+				{
+					return i;
+				}
+			}
+		}
+
+		return length;
+	}
+}
@@ -543,7 +543,14 @@ public class JSFileIndexingParticipant extends AbstractFileIndexingParticipant
 		List<String> typeNames = property.getTypeNames();
 		if (!CollectionsUtil.isEmpty(typeNames))
 		{
-			return queryHelper.getTypeMembers(typeNames);
+			// the members get re-parented onto the global type, so make sure we don't modify the cached ones
+			Collection<PropertyElement> members = queryHelper.getTypeMembers(typeNames);
+			List<PropertyElement> copies = new ArrayList<PropertyElement>(members.size());
+			for (PropertyElement member : members)
+			{
+				copies.add(JSIndexQueryHelper.copyMember(member));
+			}
+			return copies;
 		}
 
 		return Collections.emptyList();
@@ -15,6 +15,7 @@ import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 
@@ -32,17 +33,22 @@ import com.aptana.index.core.IndexManager;
 import com.aptana.index.core.IndexPlugin;
 import com.aptana.index.core.QueryResult;
 import com.aptana.index.core.SearchPattern;
+import com.aptana.jetty.util.epl.ajax.JSON;
 import com.aptana.js.core.JSTypeConstants;
 import com.aptana.js.core.inferencing.JSTypeUtil;
 import com.aptana.js.core.model.EventElement;
 import com.aptana.js.core.model.FunctionElement;
 import com.aptana.js.core.model.PropertyElement;
 import com.aptana.js.core.model.TypeElement;
+import com.aptana.js.internal.core.index.JSIndexElementCache;
 import com.aptana.js.internal.core.index.JSIndexReader;
 
 /**
  * This class is intended to silently query the types/functions/properties/events for a given project. It uses the
  * project's build paths to know what indices to look through and their ordering.
+ * <p>
+ * The results of the member and ancestor lookups are cached until one of the queried indices changes. The elements
+ * returned by those lookups are shared between helpers, and need to be copied before being modified.
  * 
  * @author cwilliams
  */
@@ -51,12 +57,52 @@ public class JSIndexQueryHelper
 
 	private static final String DOT_EXPORTS = ".exports"; //$NON-NLS-1$
 
+	/**
+	 * Kinds of queries held in the element cache
+	 */
+	private static final String ANCESTORS = "ancestors"; //$NON-NLS-1$
+	private static final String FUNCTIONS = "functions"; //$NON-NLS-1$
+	private static final String PROPERTIES = "properties"; //$NON-NLS-1$
+	private static final String TYPE_MEMBERS = "typeMembers"; //$NON-NLS-1$
+	private static final String TYPE_PROPERTIES = "typeProperties"; //$NON-NLS-1$
+
+	private static final JSIndexElementCache ELEMENT_CACHE = new JSIndexElementCache();
+
+	/**
+	 * Returns the cache shared by all query helpers for decoded elements and type ancestors
+	 * 
+	 * @return
+	 */
+	public static JSIndexElementCache getElementCache()
+	{
+		return ELEMENT_CACHE;
+	}
+
 	public static Index getJSCoreIndex()
 	{
 		IndexManager manager = getIndexManager();
 		return manager == null ? null : manager.getIndex(URI.create(IJSIndexConstants.METADATA_INDEX_LOCATION));
 	}
 
+	/**
+	 * Returns a deep copy of a member returned by one of the queries. Use this before modifying members, the ones we
+	 * return are shared with the element cache.
+	 * 
+	 * @param member
+	 * @return
+	 */
+	@SuppressWarnings("rawtypes")
+	public static PropertyElement copyMember(PropertyElement member)
+	{
+		PropertyElement copy = (member instanceof FunctionElement) ? new FunctionElement() : new PropertyElement();
+		copy.fromJSON((Map) JSON.parse(JSON.toString(member)));
+		for (String document : member.getDocuments())
+		{
+			copy.addDocument(document);
+		}
+		return copy;
+	}
+
 	protected static IndexManager getIndexManager()
 	{
 		IndexPlugin plugin = IndexPlugin.getDefault();
@@ -222,6 +268,17 @@ public class JSIndexQueryHelper
 	 * @return
 	 */
 	public List<String> getTypeAncestorNames(String typeName)
+	{
+		List<String> cached = ELEMENT_CACHE.get(indices, ANCESTORS, typeName);
+		if (cached == null)
+		{
+			long[] generations = ELEMENT_CACHE.getGenerations(indices);
+			cached = ELEMENT_CACHE.put(indices, generations, ANCESTORS, computeTypeAncestorNames(typeName), typeName);
+		}
+		return new ArrayList<String>(cached);
+	}
+
+	private List<String> computeTypeAncestorNames(String typeName)
 	{
 		// Using linked hash set to preserve the order items were added to set
 		Set<String> types = new LinkedHashSet<String>();
@@ -269,13 +326,19 @@ public class JSIndexQueryHelper
 	 */
 	public Collection<PropertyElement> getTypeMembers(String typeName, String memberName)
 	{
-		ArrayList<PropertyElement> properties = new ArrayList<PropertyElement>();
-		for (Index index : indices)
+		List<PropertyElement> cached = ELEMENT_CACHE.get(indices, TYPE_MEMBERS, typeName, memberName);
+		if (cached == null)
 		{
-			properties.addAll(_reader.getFunctions(index, typeName, memberName));
-			properties.addAll(_reader.getProperties(index, typeName, memberName));
+			long[] generations = ELEMENT_CACHE.getGenerations(indices);
+			ArrayList<PropertyElement> properties = new ArrayList<PropertyElement>();
+			for (Index index : indices)
+			{
+				properties.addAll(_reader.getFunctions(index, typeName, memberName));
+				properties.addAll(_reader.getProperties(index, typeName, memberName));
+			}
+			cached = ELEMENT_CACHE.put(indices, generations, TYPE_MEMBERS, properties, typeName, memberName);
 		}
-		return properties;
+		return new ArrayList<PropertyElement>(cached);
 	}
 
 	/**
@@ -290,16 +353,23 @@ public class JSIndexQueryHelper
 		{
 			return Collections.emptyList();
 		}
-		ArrayList<PropertyElement> properties = new ArrayList<PropertyElement>();
-		// FIXME Can we search both functions and properties at the same time?
-		// FIXME What about "sub-types" that aren't hung explicitly off owning type? i.e. "Global.console"
-		for (Index index : indices)
+		List<PropertyElement> cached = ELEMENT_CACHE.get(indices, TYPE_MEMBERS, typeNames);
+		if (cached == null)
 		{
-			properties.addAll(_reader.getFunctions(index, typeNames));
-			properties.addAll(_reader.getProperties(index, typeNames));
+			// copy the names, the caller is free to modify its list once we return
+			List<String> names = new ArrayList<String>(typeNames);
+			long[] generations = ELEMENT_CACHE.getGenerations(indices);
+			ArrayList<PropertyElement> properties = new ArrayList<PropertyElement>();
+			// FIXME Can we search both functions and properties at the same time?
+			// FIXME What about "sub-types" that aren't hung explicitly off owning type? i.e. "Global.console"
+			for (Index index : indices)
+			{
+				properties.addAll(_reader.getFunctions(index, names));
+				properties.addAll(_reader.getProperties(index, names));
+			}
+			cached = ELEMENT_CACHE.put(indices, generations, TYPE_MEMBERS, properties, names);
 		}
-		properties.trimToSize();
-		return properties;
+		return new ArrayList<PropertyElement>(cached);
 	}
 
 	/**
@@ -315,13 +385,18 @@ public class JSIndexQueryHelper
 		{
 			return Collections.emptyList();
 		}
-		ArrayList<PropertyElement> properties = new ArrayList<PropertyElement>();
-		for (Index index : indices)
+		List<PropertyElement> cached = ELEMENT_CACHE.get(indices, TYPE_PROPERTIES, typeName);
+		if (cached == null)
 		{
-			properties.addAll(_reader.getProperties(index, typeName));
+			long[] generations = ELEMENT_CACHE.getGenerations(indices);
+			ArrayList<PropertyElement> properties = new ArrayList<PropertyElement>();
+			for (Index index : indices)
+			{
+				properties.addAll(_reader.getProperties(index, typeName));
+			}
+			cached = ELEMENT_CACHE.put(indices, generations, TYPE_PROPERTIES, properties, typeName);
 		}
-		properties.trimToSize();
-		return properties;
+		return new ArrayList<PropertyElement>(cached);
 	}
 
 	/**
@@ -404,24 +479,34 @@ public class JSIndexQueryHelper
 
 	public List<FunctionElement> getFunctions(String typeName, String propertyName)
 	{
-		ArrayList<FunctionElement> functions = new ArrayList<FunctionElement>();
-		for (Index index : indices)
+		List<FunctionElement> cached = ELEMENT_CACHE.get(indices, FUNCTIONS, typeName, propertyName);
+		if (cached == null)
 		{
-			functions.addAll(_reader.getFunctions(index, typeName, propertyName));
+			long[] generations = ELEMENT_CACHE.getGenerations(indices);
+			ArrayList<FunctionElement> functions = new ArrayList<FunctionElement>();
+			for (Index index : indices)
+			{
+				functions.addAll(_reader.getFunctions(index, typeName, propertyName));
+			}
+			cached = ELEMENT_CACHE.put(indices, generations, FUNCTIONS, functions, typeName, propertyName);
 		}
-		functions.trimToSize();
-		return functions;
+		return new ArrayList<FunctionElement>(cached);
 	}
 
 	public List<PropertyElement> getProperties(String typeName, String propertyName)
 	{
-		ArrayList<PropertyElement> properties = new ArrayList<PropertyElement>();
-		for (Index index : indices)
+		List<PropertyElement> cached = ELEMENT_CACHE.get(indices, PROPERTIES, typeName, propertyName);
+		if (cached == null)
 		{
-			properties.addAll(_reader.getProperties(index, typeName, propertyName));
+			long[] generations = ELEMENT_CACHE.getGenerations(indices);
+			ArrayList<PropertyElement> properties = new ArrayList<PropertyElement>();
+			for (Index index : indices)
+			{
+				properties.addAll(_reader.getProperties(index, typeName, propertyName));
+			}
+			cached = ELEMENT_CACHE.put(indices, generations, PROPERTIES, properties, typeName, propertyName);
 		}
-		properties.trimToSize();
-		return properties;
+		return new ArrayList<PropertyElement>(cached);
 	}
 
 	/**
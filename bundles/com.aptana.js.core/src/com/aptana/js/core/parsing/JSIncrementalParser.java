@@ -0,0 +1,852 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.js.core.parsing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.aptana.js.core.IJSConstants;
+import com.aptana.js.core.parsing.ast.IJSNodeTypes;
+import com.aptana.js.core.parsing.ast.JSForInNode;
+import com.aptana.js.core.parsing.ast.JSForNode;
+import com.aptana.js.core.parsing.ast.JSFunctionNode;
+import com.aptana.js.core.parsing.ast.JSIfNode;
+import com.aptana.js.core.parsing.ast.JSLabelledNode;
+import com.aptana.js.core.parsing.ast.JSParseRootNode;
+import com.aptana.js.core.parsing.ast.JSStatementsNode;
+import com.aptana.js.core.parsing.ast.JSSwitchNode;
+import com.aptana.js.core.parsing.ast.JSTryNode;
+import com.aptana.js.core.parsing.ast.JSWhileNode;
+import com.aptana.js.core.parsing.ast.JSWithNode;
+import com.aptana.parsing.ParseResult;
+import com.aptana.parsing.ParseState;
+import com.aptana.parsing.WorkingParseResult;
+import com.aptana.parsing.ast.IParseError;
+import com.aptana.parsing.ast.IParseNode;
+import com.aptana.parsing.ast.IParseRootNode;
+import com.aptana.parsing.ast.ParseError;
+import com.aptana.parsing.ast.ParseNode;
+
+/**
+ * Re-parses a JS source using the result of a previous parse of the same document (see
+ * {@link ParseState#setPreviousParse(String, ParseResult)}). The modified range is found by comparing both sources.
+ * Only the statements touched by the modification, within the innermost block (e.g. a function body) that contains
+ * it, are parsed again; the rest of the tree is copied from the previous one with the offsets adjusted.
+ * <p>
+ * This is only done when the result is known to be the same as the one of a full parse: the previous parse must not
+ * have had errors, the re-parsed region must be delimited by statements that can't be extended by what follows them
+ * (i.e. they end with a semicolon or with the closing brace of a block) or by the braces of the block, and the region
+ * itself has to parse without errors. In all other cases {@link #reparse(ParseState, WorkingParseResult)} returns
+ * false and the caller should do a full parse.
+ * <p>
+ * Instances are meant to be used for a single parse.
+ */
+class JSIncrementalParser
+{
+	/**
+	 * Re-parsing more than this fraction of the source isn't worth the bookkeeping
+	 */
+	private static final double MAX_REPARSED_RATIO = 0.5;
+
+	private static final short[] COMMENT_TYPES = { IJSNodeTypes.SDOC_COMMENT, IJSNodeTypes.VSDOC_COMMENT,
+			IJSNodeTypes.SINGLE_LINE_COMMENT, IJSNodeTypes.MULTI_LINE_COMMENT };
+
+	/**
+	 * The parse state used for the modified region, which has no previous parse and the same comment settings as the
+	 * parse state of the whole source.
+	 */
+	private static class RegionParseState extends JSParseState
+	{
+		private final boolean attachComments;
+		private final boolean collectComments;
+
+		RegionParseState(String source, boolean attachComments, boolean collectComments)
+		{
+			super(source);
+			this.attachComments = attachComments;
+			this.collectComments = collectComments;
+		}
+
+		@Override
+		public boolean attachComments()
+		{
+			return attachComments;
+		}
+
+		@Override
+		public boolean collectComments()
+		{
+			return collectComments;
+		}
+	}
+
+	private final JSParser fParser;
+
+	private String fSource;
+	private String fPreviousSource;
+	private ParseResult fPrevious;
+	private JSParseRootNode fPreviousRoot;
+	private IParseNode[] fPreviousComments;
+	private boolean fAttachComments;
+	private boolean fCollectComments;
+
+	/**
+	 * The modified range of the previous source, [fModificationStart, fModificationEnd)
+	 */
+	private int fModificationStart;
+	private int fModificationEnd;
+	private int fDelta;
+
+	/**
+	 * JSIncrementalParser
+	 * 
+	 * @param parser
+	 *            The parser used to parse the modified region
+	 */
+	JSIncrementalParser(JSParser parser)
+	{
+		fParser = parser;
+	}
+
+	/**
+	 * Tries to build the result for the given parse state from its previous parse. Returns true if the root node and
+	 * errors were set in the working result, false if a full parse is needed.
+	 * 
+	 * @param parseState
+	 * @param working
+	 * @return
+	 */
+	boolean reparse(ParseState parseState, WorkingParseResult working)
+	{
+		fSource = parseState.getSource();
+		fPreviousSource = parseState.getPreviousSource();
+		fPrevious = parseState.getPreviousParseResult();
+
+		if (fSource == null || fPreviousSource == null || fPrevious == null || parseState.getStartingOffset() != 0)
+		{
+			return false;
+		}
+
+		IParseRootNode previousRoot = fPrevious.getRootNode();
+
+		if (!(previousRoot instanceof JSParseRootNode) || previousRoot.getChildCount() == 0
+				|| hasErrors(fPrevious.getErrors()))
+		{
+			return false;
+		}
+
+		fPreviousRoot = (JSParseRootNode) previousRoot;
+		fPreviousComments = fPreviousRoot.getCommentNodes();
+
+		if (fPreviousComments == null)
+		{
+			fPreviousComments = new IParseNode[0];
+		}
+
+		int previousLength = fPreviousSource.length();
+		int length = fSource.length();
+
+		// the previous parse has to cover the whole source, otherwise we can't tell how the rest of it would parse
+		if (!isBlank(fPreviousSource, fPreviousRoot.getLastChild().getEndingOffset() + 1, previousLength))
+		{
+			return false;
+		}
+
+		// find the modified range of the previous source
+		int common = Math.min(previousLength, length);
+		int prefix = 0;
+
+		while (prefix < common && fPreviousSource.charAt(prefix) == fSource.charAt(prefix))
+		{
+			prefix++;
+		}
+
+		if (prefix == previousLength && prefix == length)
+		{
+			return false;
+		}
+
+		int suffix = 0;
+
+		while (suffix < common - prefix
+				&& fPreviousSource.charAt(previousLength - 1 - suffix) == fSource.charAt(length - 1 - suffix))
+		{
+			suffix++;
+		}
+
+		fModificationStart = prefix;
+		fModificationEnd = previousLength - suffix;
+		fDelta = length - previousLength;
+
+		fAttachComments = true;
+		fCollectComments = true;
+
+		if (parseState instanceof JSParseState)
+		{
+			JSParseState jsParseState = (JSParseState) parseState;
+
+			fAttachComments = jsParseState.attachComments();
+			fCollectComments = jsParseState.attachComments() || jsParseState.collectComments();
+		}
+
+		// start with the innermost block, the larger ones may still work if its boundaries aren't safe
+		for (IParseNode block : getEnclosingBlocks())
+		{
+			if (reparse(block, working))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the blocks of the previous tree that contain the modified range within their braces, innermost first. The
+	 * root node comes last.
+	 * 
+	 * @return
+	 */
+	private List<IParseNode> getEnclosingBlocks()
+	{
+		List<IParseNode> result = new ArrayList<IParseNode>();
+		IParseNode node = fPreviousRoot;
+
+		result.add(node);
+
+		while (node != null)
+		{
+			IParseNode next = null;
+
+			for (IParseNode child : node.getChildren())
+			{
+				if (child.getStartingOffset() < fModificationStart && fModificationEnd <= child.getEndingOffset())
+				{
+					next = child;
+					break;
+				}
+			}
+
+			if (next instanceof JSStatementsNode && fPreviousSource.charAt(next.getStartingOffset()) == '{'
+					&& fPreviousSource.charAt(next.getEndingOffset()) == '}')
+			{
+				result.add(0, next);
+			}
+
+			node = next;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Re-parses the statements of the given block (or root node) touched by the modification
+	 * 
+	 * @param block
+	 * @param working
+	 * @return
+	 */
+	private boolean reparse(IParseNode block, WorkingParseResult working)
+	{
+		boolean isRoot = (block == fPreviousRoot);
+		IParseNode[] statements = block.getChildren();
+		int count = statements.length;
+		int length = fSource.length();
+
+		// statements [0, first) are before the modification and [last, count) are after it
+		int first = 0;
+
+		while (first < count && statements[first].getEndingOffset() < fModificationStart)
+		{
+			first++;
+		}
+
+		int last = first;
+
+		while (last < count && statements[last].getStartingOffset() < fModificationEnd)
+		{
+			last++;
+		}
+
+		// the region to re-parse is [regionStart, previousRegionEnd) in the previous source and [regionStart,
+		// regionEnd) in the new one
+		int regionStart;
+		int previousRegionEnd;
+
+		if (first > 0)
+		{
+			regionStart = statements[first - 1].getEndingOffset() + 1;
+		}
+		else
+		{
+			regionStart = isRoot ? 0 : block.getStartingOffset() + 1;
+		}
+		if (last < count)
+		{
+			previousRegionEnd = statements[last].getStartingOffset();
+		}
+		else
+		{
+			previousRegionEnd = isRoot ? fPreviousSource.length() : block.getEndingOffset();
+		}
+
+		int regionEnd = previousRegionEnd + fDelta;
+
+		if (regionEnd - regionStart > length * MAX_REPARSED_RATIO)
+		{
+			return false;
+		}
+		if (first > 0 && !isTerminated(fPreviousSource, statements[first - 1]))
+		{
+			return false;
+		}
+		// whether a slash starts a regex or a division depends on the preceding token, which changes at the region
+		// boundaries
+		if (last < count && fPreviousSource.charAt(previousRegionEnd) == '/')
+		{
+			return false;
+		}
+		if (fAttachComments
+				&& hasLooseDocumentation(fPreviousComments, statements, first, last, regionStart, previousRegionEnd))
+		{
+			// documentation blocks between statements may have been attached to the reused nodes
+			return false;
+		}
+		// the scanner places VSDoc blocks at the token that follows them
+		if (hasVSDocAt(fPreviousComments, previousRegionEnd))
+		{
+			return false;
+		}
+
+		// pad the region so that the offsets of its nodes, comments and errors are the final ones
+		char[] chars = new char[regionEnd];
+		Arrays.fill(chars, 0, regionStart, ' ');
+		fSource.getChars(regionStart, regionEnd, chars, regionStart);
+
+		WorkingParseResult regionWorking = new WorkingParseResult();
+
+		try
+		{
+			fParser.parse(new RegionParseState(new String(chars), fAttachComments, fCollectComments), regionWorking);
+		}
+		catch (Exception e)
+		{
+			return false;
+		}
+
+		IParseRootNode regionRoot = regionWorking.getImmutableResult().getRootNode();
+		List<IParseError> regionErrors = regionWorking.getErrors();
+
+		if (!(regionRoot instanceof JSParseRootNode) || hasErrors(regionErrors))
+		{
+			return false;
+		}
+
+		IParseNode[] regionStatements = regionRoot.getChildren();
+		int regionCount = regionStatements.length;
+		IParseNode[] regionComments = ((JSParseRootNode) regionRoot).getCommentNodes();
+
+		if (regionCount > 0)
+		{
+			IParseNode lastRegionStatement = regionStatements[regionCount - 1];
+
+			if (fSource.charAt(regionStatements[0].getStartingOffset()) == '/')
+			{
+				return false;
+			}
+			if (!isBlank(fSource, lastRegionStatement.getEndingOffset() + 1, regionEnd))
+			{
+				// the region wasn't consumed entirely, probably because of a scanner error
+				return false;
+			}
+			if ((last < count || !isRoot) && !isTerminated(fSource, lastRegionStatement))
+			{
+				return false;
+			}
+		}
+		else if (!isBlank(fSource, regionStart, regionEnd))
+		{
+			return false;
+		}
+		if (fAttachComments
+				&& hasLooseDocumentation(regionComments, regionStatements, 0, regionCount, regionStart, regionEnd))
+		{
+			return false;
+		}
+		if (hasVSDocAt(regionComments, regionEnd))
+		{
+			return false;
+		}
+
+		// build the new tree, reusing the root of the region since it has been set up by the parser
+		JSParseRootNode root = (JSParseRootNode) regionRoot;
+
+		try
+		{
+			if (isRoot)
+			{
+				root.setChildren(replace(fPreviousRoot, first, last, regionStatements));
+			}
+			else
+			{
+				root.setChildren(replace(block, first, last, regionStatements));
+			}
+		}
+		catch (IllegalStateException e)
+		{
+			return false;
+		}
+
+		root.setLocation(0, length - 1);
+
+		if (fCollectComments)
+		{
+			root.setCommentNodes(mergeComments(regionComments, regionStart, previousRegionEnd));
+		}
+
+		// keep the warnings of the reused statements, the ones of the region have just been computed again. The parser
+		// reports them as the statements get reduced, so the ones of the region go before the ones of the statements
+		// following or enclosing it.
+		boolean regionErrorsAdded = false;
+
+		for (IParseError error : fPrevious.getErrors())
+		{
+			int offset = error.getOffset();
+
+			if (offset < regionStart && offset + error.getLength() <= regionStart)
+			{
+				working.addError(error);
+				continue;
+			}
+			if (offset >= regionStart && offset < previousRegionEnd)
+			{
+				continue;
+			}
+			if (!regionErrorsAdded)
+			{
+				addErrors(working, regionErrors);
+				regionErrorsAdded = true;
+			}
+
+			working.addError(shift(error, regionStart));
+		}
+
+		if (!regionErrorsAdded)
+		{
+			addErrors(working, regionErrors);
+		}
+
+		working.setParseResult(root);
+
+		return true;
+	}
+
+	/**
+	 * Returns the top-level statements of the new tree: copies of the previous ones where the statements [first, last)
+	 * of the given block have been replaced by the re-parsed ones.
+	 * 
+	 * @param block
+	 * @param first
+	 * @param last
+	 * @param regionStatements
+	 * @return
+	 */
+	private IParseNode[] replace(IParseNode block, int first, int last, IParseNode[] regionStatements)
+	{
+		IParseNode[] statements = fPreviousRoot.getChildren();
+		List<IParseNode> result = new ArrayList<IParseNode>(statements.length + regionStatements.length);
+
+		if (block == fPreviousRoot)
+		{
+			for (int i = 0; i < statements.length; i++)
+			{
+				if (i == first)
+				{
+					result.addAll(Arrays.asList(regionStatements));
+				}
+				if (i < first)
+				{
+					result.add(((ParseNode) statements[i]).copy());
+				}
+				else if (i >= last)
+				{
+					result.add(shift(statements[i]));
+				}
+			}
+			if (first == statements.length)
+			{
+				result.addAll(Arrays.asList(regionStatements));
+			}
+
+			return result.toArray(new IParseNode[result.size()]);
+		}
+
+		// find the path to the block so we can get to its copy
+		List<Integer> path = new ArrayList<Integer>();
+
+		for (IParseNode node = block; node != fPreviousRoot; node = node.getParent())
+		{
+			int index = node.getIndex();
+
+			if (index == -1)
+			{
+				throw new IllegalStateException("Detached node in the previous tree"); //$NON-NLS-1$
+			}
+
+			path.add(0, index);
+		}
+
+		int top = path.get(0);
+		ParseNode topCopy = ((ParseNode) statements[top]).copy();
+		ParseNode blockCopy = topCopy;
+
+		for (int i = 1; i < path.size(); i++)
+		{
+			blockCopy = (ParseNode) blockCopy.getChild(path.get(i));
+		}
+
+		// remove the re-parsed statements before shifting what follows them, and only then add the new ones
+		IParseNode[] children = blockCopy.getChildren();
+		List<IParseNode> before = Arrays.asList(children).subList(0, first);
+		List<IParseNode> after = Arrays.asList(children).subList(last, children.length);
+		List<IParseNode> blockChildren = new ArrayList<IParseNode>(children.length + regionStatements.length);
+
+		blockChildren.addAll(before);
+		blockChildren.addAll(after);
+		blockCopy.setChildren(blockChildren.toArray(new IParseNode[blockChildren.size()]));
+		topCopy.shiftOffsets(fModificationEnd, fDelta);
+
+		blockChildren.clear();
+		blockChildren.addAll(before);
+		blockChildren.addAll(Arrays.asList(regionStatements));
+		blockChildren.addAll(after);
+		blockCopy.setChildren(blockChildren.toArray(new IParseNode[blockChildren.size()]));
+
+		for (int i = 0; i < statements.length; i++)
+		{
+			if (i < top)
+			{
+				result.add(((ParseNode) statements[i]).copy());
+			}
+			else if (i == top)
+			{
+				result.add(topCopy);
+			}
+			else
+			{
+				result.add(shift(statements[i]));
+			}
+		}
+
+		return result.toArray(new IParseNode[result.size()]);
+	}
+
+	/**
+	 * Determines if a statement can't be extended by the tokens following it: it either ends with a semicolon or with
+	 * the closing brace of a block.
+	 * 
+	 * @param source
+	 * @param statement
+	 * @return
+	 */
+	private boolean isTerminated(String source, IParseNode statement)
+	{
+		int end = statement.getEndingOffset();
+
+		if (end < statement.getStartingOffset() || end >= source.length())
+		{
+			return false;
+		}
+
+		switch (source.charAt(end))
+		{
+			case ';':
+				// an inserted semicolon is empty and so it is never the last character of the statement
+				return true;
+
+			case '}':
+				return endsWithBlock(statement);
+
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Determines if the last nested statement of the given node is a block, so that its closing brace doesn't belong
+	 * to an expression (like the one of a function expression or an object literal).
+	 * 
+	 * @param node
+	 * @return
+	 */
+	private boolean endsWithBlock(IParseNode node)
+	{
+		if (node instanceof JSFunctionNode || node instanceof JSStatementsNode || node instanceof JSSwitchNode
+				|| node instanceof JSTryNode)
+		{
+			return true;
+		}
+		if (node instanceof JSIfNode)
+		{
+			JSIfNode ifNode = (JSIfNode) node;
+			IParseNode falseBlock = ifNode.getFalseBlock();
+
+			return endsWithBlock((falseBlock == null || falseBlock.isEmpty()) ? ifNode.getTrueBlock() : falseBlock);
+		}
+		if (node instanceof JSForNode)
+		{
+			return endsWithBlock(((JSForNode) node).getBody());
+		}
+		if (node instanceof JSForInNode)
+		{
+			return endsWithBlock(((JSForInNode) node).getBody());
+		}
+		if (node instanceof JSWhileNode)
+		{
+			return endsWithBlock(((JSWhileNode) node).getBody());
+		}
+		if (node instanceof JSWithNode)
+		{
+			return endsWithBlock(((JSWithNode) node).getBody());
+		}
+		if (node instanceof JSLabelledNode)
+		{
+			return endsWithBlock(((JSLabelledNode) node).getBlock());
+		}
+
+		return false;
+	}
+
+	/**
+	 * Determines if there's nothing but whitespace and comments in the given range of the source.
+	 * 
+	 * @param source
+	 * @param start
+	 * @param end
+	 *            exclusive
+	 * @return
+	 */
+	private boolean isBlank(String source, int start, int end)
+	{
+		int i = start;
+
+		while (i < end)
+		{
+			char c = source.charAt(i);
+
+			if (Character.isWhitespace(c))
+			{
+				i++;
+			}
+			else if (c == '/' && i + 1 < end && source.charAt(i + 1) == '/')
+			{
+				while (i < end && source.charAt(i) != '\n' && source.charAt(i) != '\r')
+				{
+					i++;
+				}
+			}
+			else if (c == '/' && i + 1 < end && source.charAt(i + 1) == '*')
+			{
+				int close = source.indexOf("*/", i + 2); //$NON-NLS-1$
+
+				if (close == -1 || close + 2 > end)
+				{
+					return false;
+				}
+
+				i = close + 2;
+			}
+			else
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Determines if any of the given comments in the given range is a documentation block that isn't contained by one
+	 * of the given statements. Such blocks get attached to the statement before or after them.
+	 * 
+	 * @param comments
+	 * @param statements
+	 * @param from
+	 *            index of the first statement to look at
+	 * @param to
+	 *            index after the last statement to look at
+	 * @param start
+	 * @param end
+	 *            exclusive
+	 * @return
+	 */
+	private boolean hasLooseDocumentation(IParseNode[] comments, IParseNode[] statements, int from, int to, int start,
+			int end)
+	{
+		if (comments == null)
+		{
+			return false;
+		}
+
+		for (IParseNode comment : comments)
+		{
+			short type = comment.getNodeType();
+			int offset = comment.getStartingOffset();
+
+			if ((type == IJSNodeTypes.SDOC_COMMENT || type == IJSNodeTypes.VSDOC_COMMENT) && start <= offset
+					&& offset < end)
+			{
+				boolean contained = false;
+
+				for (int i = from; i < to && !contained; i++)
+				{
+					contained = statements[i].contains(offset);
+				}
+
+				if (!contained)
+				{
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Determines if there's a VSDoc block at the given offset
+	 * 
+	 * @param comments
+	 * @param offset
+	 * @return
+	 */
+	private boolean hasVSDocAt(IParseNode[] comments, int offset)
+	{
+		if (comments != null)
+		{
+			for (IParseNode comment : comments)
+			{
+				if (comment.getNodeType() == IJSNodeTypes.VSDOC_COMMENT && comment.getStartingOffset() == offset)
+				{
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Merges the comments of the region into the ones of the previous parse. Like the parser does, comments are
+	 * grouped by type and in source order within each group.
+	 * 
+	 * @param regionComments
+	 * @param regionStart
+	 * @param previousRegionEnd
+	 * @return
+	 */
+	private IParseNode[] mergeComments(IParseNode[] regionComments, int regionStart, int previousRegionEnd)
+	{
+		List<IParseNode> result = new ArrayList<IParseNode>(fPreviousComments.length + regionComments.length);
+
+		for (short type : COMMENT_TYPES)
+		{
+			for (IParseNode comment : fPreviousComments)
+			{
+				if (comment.getNodeType() == type && comment.getEndingOffset() < regionStart)
+				{
+					// comments have no parent, they can be shared
+					result.add(comment);
+				}
+			}
+			for (IParseNode comment : regionComments)
+			{
+				if (comment.getNodeType() == type)
+				{
+					result.add(comment);
+				}
+			}
+			for (IParseNode comment : fPreviousComments)
+			{
+				if (comment.getNodeType() == type && comment.getStartingOffset() >= previousRegionEnd)
+				{
+					result.add(shift(comment));
+				}
+			}
+		}
+
+		return result.toArray(new IParseNode[result.size()]);
+	}
+
+	private boolean hasErrors(List<IParseError> errors)
+	{
+		for (IParseError error : errors)
+		{
+			if (error.getSeverity() == IParseError.Severity.ERROR)
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns a copy of a node of the previous tree that follows the modification, moved to its new location
+	 * 
+	 * @param node
+	 * @return
+	 */
+	private IParseNode shift(IParseNode node)
+	{
+		ParseNode result = ((ParseNode) node).copy();
+
+		result.shiftOffsets(fModificationEnd, fDelta);
+
+		return result;
+	}
+
+	private void addErrors(WorkingParseResult working, List<IParseError> errors)
+	{
+		for (IParseError error : errors)
+		{
+			working.addError(error);
+		}
+	}
+
+	/**
+	 * Returns the given error of the previous parse at its new location. Errors starting before the region enclose it
+	 * and so only their length changes.
+	 * 
+	 * @param error
+	 * @param regionStart
+	 * @return
+	 */
+	private IParseError shift(IParseError error, int regionStart)
+	{
+		if (fDelta == 0)
+		{
+			return error;
+		}
+
+		int offset = error.getOffset();
+		int length = error.getLength();
+
+		if (offset < regionStart)
+		{
+			length += fDelta;
+		}
+		else
+		{
+			offset += fDelta;
+		}
+
+		return new ParseError(IJSConstants.CONTENT_TYPE_JS, offset, length, error.getMessage(), error.getSeverity());
+	}
+}
@@ -12,6 +12,7 @@ import java.util.ArrayList;
 import java.util.List;
 import com.aptana.parsing.IParser;
 import com.aptana.parsing.ParseResult;
+import com.aptana.parsing.ParseState;
 import org.eclipse.core.runtime.Platform;
 import com.aptana.js.core.IJSConstants;
 import com.aptana.parsing.IParseState;
@@ -343,6 +344,12 @@ public class JSParser extends Parser implements IParser {
 	 */
 	protected synchronized void parse(IParseState parseState, WorkingParseResult working) throws java.lang.Exception
 	{
+		if (parseState instanceof ParseState && new JSIncrementalParser(this).reparse((ParseState) parseState, working))
+		{
+			// only the modified statements had to be parsed again
+			return;
+		}
+
 		fWorking = working;
 		String severity = Platform.getPreferencesService().getString(JSCorePlugin.PLUGIN_ID, IPreferenceConstants.PREF_MISSING_SEMICOLON_SEVERITY, null, null);
 		fSemicolonSeverity = IProblem.Severity.create(severity);
@@ -27,6 +27,19 @@ public class JSArrayNode extends JSNode
 		this._rightBracket = rightBracket;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.parsing.ast.ParseNode#shiftOffsets(int, int)
+	 */
+	@Override
+	public void shiftOffsets(int position, int delta)
+	{
+		super.shiftOffsets(position, delta);
+
+		_leftBracket = shiftSymbol(_leftBracket, position, delta);
+		_rightBracket = shiftSymbol(_rightBracket, position, delta);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
@@ -74,6 +74,18 @@ public class JSAssignmentNode extends JSNode
 		this.setChildren(new JSNode[] { left, right });
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.parsing.ast.ParseNode#shiftOffsets(int, int)
+	 */
+	@Override
+	public void shiftOffsets(int position, int delta)
+	{
+		super.shiftOffsets(position, delta);
+
+		_operator = shiftSymbol(_operator, position, delta);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
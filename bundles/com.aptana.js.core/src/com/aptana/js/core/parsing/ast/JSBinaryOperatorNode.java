@@ -41,6 +41,18 @@ public abstract class JSBinaryOperatorNode extends JSNode
 		this._operator = operator;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.parsing.ast.ParseNode#shiftOffsets(int, int)
+	 */
+	@Override
+	public void shiftOffsets(int position, int delta)
+	{
+		super.shiftOffsets(position, delta);
+
+		_operator = shiftSymbol(_operator, position, delta);
+	}
+
 	/**
 	 * getLeftHandSide
 	 * 
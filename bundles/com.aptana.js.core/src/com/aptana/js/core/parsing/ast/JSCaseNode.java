@@ -32,6 +32,18 @@ public class JSCaseNode extends JSNode
 		this._colon = colon;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.parsing.ast.ParseNode#shiftOffsets(int, int)
+	 */
+	@Override
+	public void shiftOffsets(int position, int delta)
+	{
+		super.shiftOffsets(position, delta);
+
+		_colon = shiftSymbol(_colon, position, delta);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
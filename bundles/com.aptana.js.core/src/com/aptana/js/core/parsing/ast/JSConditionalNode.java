@@ -29,6 +29,19 @@ public class JSConditionalNode extends JSNode
 		this._colon = colon;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.parsing.ast.ParseNode#shiftOffsets(int, int)
+	 */
+	@Override
+	public void shiftOffsets(int position, int delta)
+	{
+		super.shiftOffsets(position, delta);
+
+		_questionMark = shiftSymbol(_questionMark, position, delta);
+		_colon = shiftSymbol(_colon, position, delta);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
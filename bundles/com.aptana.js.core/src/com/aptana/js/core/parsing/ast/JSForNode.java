@@ -34,6 +34,21 @@ public class JSForNode extends JSNode
 		this._rightParenthesis = rightParenthesis;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.parsing.ast.ParseNode#shiftOffsets(int, int)
+	 */
+	@Override
+	public void shiftOffsets(int position, int delta)
+	{
+		super.shiftOffsets(position, delta);
+
+		_leftParenthesis = shiftSymbol(_leftParenthesis, position, delta);
+		_semicolon1 = shiftSymbol(_semicolon1, position, delta);
+		_semicolon2 = shiftSymbol(_semicolon2, position, delta);
+		_rightParenthesis = shiftSymbol(_rightParenthesis, position, delta);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
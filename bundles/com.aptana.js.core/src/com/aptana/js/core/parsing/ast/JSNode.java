@@ -10,6 +10,7 @@ package com.aptana.js.core.parsing.ast;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -459,6 +460,66 @@ public class JSNode extends ParseNode
 		fHash = -1;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.parsing.ast.ParseNode#shiftOffsets(int, int)
+	 */
+	@Override
+	public void shiftOffsets(int position, int delta)
+	{
+		super.shiftOffsets(position, delta);
+
+		if (fDoc == null || delta == 0 || fDoc.getStart() < position)
+		{
+			return;
+		}
+
+		if (fDoc instanceof DocumentationBlock)
+		{
+			// like the tokens, the block may be shared with a copy of this node
+			DocumentationBlock block = (DocumentationBlock) fDoc;
+			DocumentationBlock shifted = new DocumentationBlock(block.getText(), block.getTags());
+			shifted.setRange(block.getStart() + delta, block.getEnd() + delta);
+			fDoc = shifted;
+		}
+		else if (fDoc.value instanceof List)
+		{
+			// the lines of a VSDoc block carry their own offsets
+			@SuppressWarnings("unchecked")
+			List<Symbol> lines = (List<Symbol>) fDoc.value;
+			List<Symbol> shiftedLines = new ArrayList<Symbol>(lines.size());
+			for (Symbol line : lines)
+			{
+				shiftedLines.add(shiftSymbol(line, position, delta));
+			}
+			fDoc = new Symbol(fDoc.getId(), fDoc.getStart() + delta, fDoc.getEnd() + delta, shiftedLines);
+		}
+		else
+		{
+			fDoc = shiftSymbol(fDoc, position, delta);
+		}
+	}
+
+	/**
+	 * Returns the given token moved by the given amount if it starts at or after the given position. Nodes keeping some
+	 * of their tokens (operators, parentheses, etc.) use this in {@link #shiftOffsets(int, int)}. A new symbol is
+	 * created since the original one may be shared with a copy of the node.
+	 * 
+	 * @param symbol
+	 * @param position
+	 * @param delta
+	 * @return
+	 */
+	protected static Symbol shiftSymbol(Symbol symbol, int position, int delta)
+	{
+		if (symbol == null || delta == 0 || symbol.getStart() < position)
+		{
+			return symbol;
+		}
+
+		return new Symbol(symbol.getId(), symbol.getStart() + delta, symbol.getEnd() + delta, symbol.value);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.parsing.ast.ParseNode#toString()
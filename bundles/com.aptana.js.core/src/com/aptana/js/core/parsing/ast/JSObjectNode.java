@@ -29,6 +29,19 @@ public class JSObjectNode extends JSNode
 		this._rightBrace = rightBrace;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.parsing.ast.ParseNode#shiftOffsets(int, int)
+	 */
+	@Override
+	public void shiftOffsets(int position, int delta)
+	{
+		super.shiftOffsets(position, delta);
+
+		_leftBrace = shiftSymbol(_leftBrace, position, delta);
+		_rightBrace = shiftSymbol(_rightBrace, position, delta);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
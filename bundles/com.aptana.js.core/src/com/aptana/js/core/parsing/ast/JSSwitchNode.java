@@ -44,6 +44,21 @@ public class JSSwitchNode extends JSNode
 		this._rightBrace = rightBrace;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.parsing.ast.ParseNode#shiftOffsets(int, int)
+	 */
+	@Override
+	public void shiftOffsets(int position, int delta)
+	{
+		super.shiftOffsets(position, delta);
+
+		_leftParenthesis = shiftSymbol(_leftParenthesis, position, delta);
+		_rightParenthesis = shiftSymbol(_rightParenthesis, position, delta);
+		_leftBrace = shiftSymbol(_leftBrace, position, delta);
+		_rightBrace = shiftSymbol(_rightBrace, position, delta);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.parsing.ast.JSNode#accept(com.aptana.editor.js.parsing.ast.JSTreeWalker)
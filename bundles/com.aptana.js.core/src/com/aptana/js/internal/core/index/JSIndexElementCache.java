@@ -0,0 +1,226 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.js.internal.core.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.aptana.core.epl.util.ILRUCacheable;
+import com.aptana.core.epl.util.LRUCache;
+import com.aptana.index.core.Index;
+
+/**
+ * A bounded cache of the elements decoded by index queries. Every entry remembers the generation of each index it was
+ * built from (see {@link Index#getGeneration()}), and is only handed out while none of those indices has been modified
+ * or saved since. This lets repeated lookups of the same types and members, like content assist and hovers on Window,
+ * Array or Titanium.UI, skip both the index query and the deserialization of the matching entries.
+ * <p>
+ * The cached lists are unmodifiable and the elements in them are shared by everyone asking for the same query, so
+ * callers must copy the elements before modifying them.
+ */
+public class JSIndexElementCache
+{
+	/**
+	 * The cache space is measured in number of cached elements.
+	 */
+	private static final int DEFAULT_SPACE_LIMIT = 20000;
+
+	private static final class Key
+	{
+		private final Index[] indices;
+		private final String kind;
+		private final Object[] arguments;
+		private final int hashCode;
+
+		private Key(List<Index> indices, String kind, Object... arguments)
+		{
+			this.indices = indices.toArray(new Index[indices.size()]);
+			this.kind = kind;
+			this.arguments = arguments;
+			this.hashCode = 31 * (31 * Arrays.hashCode(this.indices) + kind.hashCode()) + Arrays.hashCode(arguments);
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+			{
+				return true;
+			}
+			if (!(obj instanceof Key))
+			{
+				return false;
+			}
+
+			Key other = (Key) obj;
+
+			return hashCode == other.hashCode && kind.equals(other.kind) && Arrays.equals(indices, other.indices)
+					&& Arrays.equals(arguments, other.arguments);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hashCode;
+		}
+	}
+
+	private static final class Entry implements ILRUCacheable
+	{
+		private final long[] generations;
+		private final List<?> elements;
+
+		private Entry(long[] generations, List<?> elements)
+		{
+			this.generations = generations;
+			this.elements = elements;
+		}
+
+		public int getCacheFootprint()
+		{
+			return Math.max(1, elements.size());
+		}
+	}
+
+	private final LRUCache<Key, Entry> cache;
+	private final Object lock = new Object();
+	private int hits;
+	private int misses;
+
+	/**
+	 * JSIndexElementCache
+	 */
+	public JSIndexElementCache()
+	{
+		this(DEFAULT_SPACE_LIMIT);
+	}
+
+	/**
+	 * JSIndexElementCache
+	 * 
+	 * @param maxElements
+	 *            The maximum number of elements held by all cached queries combined
+	 */
+	public JSIndexElementCache(int maxElements)
+	{
+		cache = new LRUCache<Key, Entry>(maxElements);
+	}
+
+	/**
+	 * Returns the current generations of the given indices. This needs to be grabbed <em>before</em> running the query
+	 * whose result gets passed to {@link #put(List, long[], String, List, Object...)}, so that changes made while
+	 * querying invalidate the entry.
+	 * 
+	 * @param indices
+	 * @return
+	 */
+	public long[] getGenerations(List<Index> indices)
+	{
+		long[] generations = new long[indices.size()];
+
+		for (int i = 0; i < generations.length; i++)
+		{
+			generations[i] = indices.get(i).getGeneration();
+		}
+
+		return generations;
+	}
+
+	/**
+	 * Returns the cached result of the query of the given kind and arguments against the given indices, or null if the
+	 * query hasn't been cached or one of the indices has changed since.
+	 * 
+	 * @param indices
+	 * @param kind
+	 * @param arguments
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> List<T> get(List<Index> indices, String kind, Object... arguments)
+	{
+		Key key = new Key(indices, kind, arguments);
+		long[] generations = getGenerations(indices);
+
+		synchronized (lock)
+		{
+			Entry entry = cache.get(key);
+
+			if (entry != null && Arrays.equals(entry.generations, generations))
+			{
+				hits++;
+				return (List<T>) entry.elements;
+			}
+
+			misses++;
+			return null;
+		}
+	}
+
+	/**
+	 * Caches the result of a query and returns it as an unmodifiable list.
+	 * 
+	 * @param indices
+	 * @param generations
+	 *            The generations of the indices before the query was run
+	 * @param kind
+	 * @param elements
+	 * @param arguments
+	 * @return
+	 */
+	public <T> List<T> put(List<Index> indices, long[] generations, String kind, List<T> elements,
+			Object... arguments)
+	{
+		List<T> result = Collections.unmodifiableList(new ArrayList<T>(elements));
+
+		synchronized (lock)
+		{
+			cache.put(new Key(indices, kind, arguments), new Entry(generations, result));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Removes all cached queries
+	 */
+	public void flush()
+	{
+		synchronized (lock)
+		{
+			cache.flush();
+		}
+	}
+
+	/**
+	 * Returns the number of lookups answered from the cache
+	 * 
+	 * @return
+	 */
+	public int getHitCount()
+	{
+		synchronized (lock)
+		{
+			return hits;
+		}
+	}
+
+	/**
+	 * Returns the number of lookups that had to go to the indices
+	 * 
+	 * @return
+	 */
+	public int getMissCount()
+	{
+		synchronized (lock)
+		{
+			return misses;
+		}
+	}
+}
@@ -26,6 +26,15 @@ import com.aptana.js.core.model.TypeElement;
 
 public class JSIndexWriter extends IndexWriter
 {
+	/**
+	 * JSIndexWriter
+	 */
+	public JSIndexWriter()
+	{
+		// type members are read back for nearly every content assist and hover, so use the compact binary values
+		super(true);
+	}
+
 	/**
 	 * getDocumentPath
 	 * 
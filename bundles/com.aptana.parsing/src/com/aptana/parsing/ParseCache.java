@@ -0,0 +1,354 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.parsing;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.aptana.core.IFilter;
+import com.aptana.core.epl.util.ILRUCacheable;
+import com.aptana.core.epl.util.SoftHashMap;
+
+/**
+ * A thread-safe version of the LRUCacheWithSoftPrunedValues used for parse results. The keys are spread over a number
+ * of segments which are locked independently, so threads asking for different sources don't wait on each other. The
+ * space limit applies to the cache as a whole: when it's exceeded, the least recently used entry of all segments is
+ * moved to the segment's map of soft references (from which it may still be recovered on a later get).
+ */
+class ParseCache<K, V extends ILRUCacheable>
+{
+	private static final int SEGMENT_COUNT = 16;
+
+	private static class Entry<V>
+	{
+		private final V value;
+		private final int space;
+		private volatile long lastAccess;
+
+		private Entry(V value, int space, long lastAccess)
+		{
+			this.value = value;
+			this.space = space;
+			this.lastAccess = lastAccess;
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private static class Segment<K, V> extends ReentrantLock
+	{
+		/**
+		 * Strongly referenced entries, in access order (eldest first).
+		 */
+		private final LinkedHashMap<K, Entry<V>> strong = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+
+		/**
+		 * Values pruned from the strong map.
+		 */
+		private final SoftHashMap<K, V> soft = new SoftHashMap<K, V>();
+
+		private Map.Entry<K, Entry<V>> eldest()
+		{
+			Iterator<Map.Entry<K, Entry<V>>> iterator = strong.entrySet().iterator();
+			return iterator.hasNext() ? iterator.next() : null;
+		}
+	}
+
+	private final Segment<K, V>[] segments;
+	private final int spaceLimit;
+	private final AtomicInteger currentSpace = new AtomicInteger();
+	private final AtomicLong clock = new AtomicLong();
+	private final Object evictionLock = new Object();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong softHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	@SuppressWarnings("unchecked")
+	ParseCache(int spaceLimit)
+	{
+		this.spaceLimit = spaceLimit;
+		this.segments = new Segment[SEGMENT_COUNT];
+		for (int i = 0; i < SEGMENT_COUNT; i++)
+		{
+			segments[i] = new Segment<K, V>();
+		}
+	}
+
+	private Segment<K, V> segmentFor(Object key)
+	{
+		int h = key.hashCode();
+		// spread the bits a bit, the low ones of String-based hashes are not that well distributed
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return segments[h & (SEGMENT_COUNT - 1)];
+	}
+
+	/**
+	 * Returns the value for the given key if there's one and it's accepted by the filter. Otherwise the given value is
+	 * stored for the key and returned (so, callers can compare the result with the value they passed to know if they
+	 * are the ones that have to compute it). This is done atomically for a given key.
+	 * 
+	 * @param key
+	 * @param value
+	 * @param reusable
+	 *            determines whether a value already in the cache can be returned for the key
+	 * @return
+	 */
+	V getOrPut(K key, V value, IFilter<V> reusable)
+	{
+		Segment<K, V> segment = segmentFor(key);
+		V result;
+
+		segment.lock();
+		try
+		{
+			V existing = get(segment, key);
+
+			if (existing != null && reusable.include(existing))
+			{
+				hits.incrementAndGet();
+				result = existing;
+			}
+			else
+			{
+				misses.incrementAndGet();
+				put(segment, key, value);
+				result = value;
+			}
+		}
+		finally
+		{
+			segment.unlock();
+		}
+
+		evictIfNeeded();
+		return result;
+	}
+
+	/**
+	 * Returns the value for the given key, bringing it back into the strongly referenced entries if it had been pruned.
+	 * Doesn't affect the hit/miss counts.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	V get(K key)
+	{
+		Segment<K, V> segment = segmentFor(key);
+		V result;
+
+		segment.lock();
+		try
+		{
+			result = get(segment, key);
+		}
+		finally
+		{
+			segment.unlock();
+		}
+
+		evictIfNeeded();
+		return result;
+	}
+
+	/**
+	 * Removes the entry for the given key if it's (still) the given value.
+	 * 
+	 * @param key
+	 * @param value
+	 */
+	void remove(K key, V value)
+	{
+		Segment<K, V> segment = segmentFor(key);
+
+		segment.lock();
+		try
+		{
+			Entry<V> entry = segment.strong.get(key);
+			if (entry != null && entry.value == value)
+			{
+				segment.strong.remove(key);
+				currentSpace.addAndGet(-entry.space);
+			}
+			else if (segment.soft.get(key) == value)
+			{
+				segment.soft.remove(key);
+			}
+		}
+		finally
+		{
+			segment.unlock();
+		}
+	}
+
+	/**
+	 * Removes all the entries from the cache. The statistics are kept.
+	 */
+	void flush()
+	{
+		for (Segment<K, V> segment : segments)
+		{
+			segment.lock();
+			try
+			{
+				for (Entry<V> entry : segment.strong.values())
+				{
+					currentSpace.addAndGet(-entry.space);
+				}
+				segment.strong.clear();
+				segment.soft.clear();
+			}
+			finally
+			{
+				segment.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the cache statistics
+	 * 
+	 * @return
+	 */
+	ParseCacheStatistics getStatistics()
+	{
+		int strongEntries = 0;
+		int softEntries = 0;
+
+		for (Segment<K, V> segment : segments)
+		{
+			segment.lock();
+			try
+			{
+				strongEntries += segment.strong.size();
+				segment.soft.removeStaleEntries();
+				softEntries += segment.soft.size();
+			}
+			finally
+			{
+				segment.unlock();
+			}
+		}
+
+		return new ParseCacheStatistics(hits.get(), softHits.get(), misses.get(), evictions.get(), strongEntries,
+				softEntries, currentSpace.get(), spaceLimit);
+	}
+
+	private V get(Segment<K, V> segment, K key)
+	{
+		Entry<V> entry = segment.strong.get(key);
+
+		if (entry != null)
+		{
+			entry.lastAccess = clock.incrementAndGet();
+			return entry.value;
+		}
+
+		// Note: SoftHashMap.remove() doesn't return the removed value
+		V value = segment.soft.get(key);
+
+		if (value != null)
+		{
+			softHits.incrementAndGet();
+			put(segment, key, value);
+		}
+
+		return value;
+	}
+
+	private void put(Segment<K, V> segment, K key, V value)
+	{
+		int space = value.getCacheFootprint();
+
+		if (space > spaceLimit)
+		{
+			// too big to ever be strongly referenced
+			Entry<V> old = segment.strong.remove(key);
+			if (old != null)
+			{
+				currentSpace.addAndGet(-old.space);
+			}
+			segment.soft.put(key, value);
+			return;
+		}
+
+		Entry<V> old = segment.strong.put(key, new Entry<V>(value, space, clock.incrementAndGet()));
+
+		currentSpace.addAndGet(space - ((old == null) ? 0 : old.space));
+		segment.soft.remove(key);
+	}
+
+	/**
+	 * Moves the least recently used entries to the soft maps until we're back under the space limit. Must not be called
+	 * with a segment lock held.
+	 */
+	private void evictIfNeeded()
+	{
+		if (currentSpace.get() <= spaceLimit)
+		{
+			return;
+		}
+
+		synchronized (evictionLock)
+		{
+			while (currentSpace.get() > spaceLimit)
+			{
+				Segment<K, V> oldestSegment = null;
+				long oldestAccess = Long.MAX_VALUE;
+
+				for (Segment<K, V> segment : segments)
+				{
+					segment.lock();
+					try
+					{
+						Map.Entry<K, Entry<V>> eldest = segment.eldest();
+						if (eldest != null && eldest.getValue().lastAccess < oldestAccess)
+						{
+							oldestAccess = eldest.getValue().lastAccess;
+							oldestSegment = segment;
+						}
+					}
+					finally
+					{
+						segment.unlock();
+					}
+				}
+
+				if (oldestSegment == null)
+				{
+					return;
+				}
+
+				oldestSegment.lock();
+				try
+				{
+					// the segment may have changed since we looked at it, in which case we'll just pick again
+					Map.Entry<K, Entry<V>> eldest = oldestSegment.eldest();
+					if (eldest != null && eldest.getValue().lastAccess == oldestAccess)
+					{
+						K key = eldest.getKey();
+						Entry<V> entry = eldest.getValue();
+						oldestSegment.strong.remove(key);
+						oldestSegment.soft.put(key, entry.value);
+						currentSpace.addAndGet(-entry.space);
+						evictions.incrementAndGet();
+					}
+				}
+				finally
+				{
+					oldestSegment.unlock();
+				}
+			}
+		}
+	}
+}
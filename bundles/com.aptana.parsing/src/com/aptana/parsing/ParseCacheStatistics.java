@@ -0,0 +1,142 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.parsing;
+
+import java.text.MessageFormat;
+
+/**
+ * A snapshot of the counters of the parse cache, see {@link ParserPoolFactory#getCacheStatistics()}. The space of the
+ * cache is measured in number of chars of the parsed sources.
+ */
+public final class ParseCacheStatistics
+{
+	private final long hits;
+	private final long softHits;
+	private final long misses;
+	private final long evictions;
+	private final int strongEntries;
+	private final int softEntries;
+	private final int space;
+	private final int spaceLimit;
+
+	ParseCacheStatistics(long hits, long softHits, long misses, long evictions, int strongEntries, int softEntries,
+			int space, int spaceLimit)
+	{
+		this.hits = hits;
+		this.softHits = softHits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.strongEntries = strongEntries;
+		this.softEntries = softEntries;
+		this.space = space;
+		this.spaceLimit = spaceLimit;
+	}
+
+	/**
+	 * Returns the number of parses answered from the cache (including the ones that waited on a parse in progress).
+	 * 
+	 * @return
+	 */
+	public long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * Returns how many of the hits (and re-accesses) had to recover the result from the soft references.
+	 * 
+	 * @return
+	 */
+	public long getSoftHits()
+	{
+		return softHits;
+	}
+
+	/**
+	 * Returns the number of cacheable parses that had to actually be done.
+	 * 
+	 * @return
+	 */
+	public long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * Returns the number of results moved out of the strong references because the space limit was exceeded.
+	 * 
+	 * @return
+	 */
+	public long getEvictions()
+	{
+		return evictions;
+	}
+
+	/**
+	 * Returns the number of results currently kept with strong references.
+	 * 
+	 * @return
+	 */
+	public int getStrongEntryCount()
+	{
+		return strongEntries;
+	}
+
+	/**
+	 * Returns the number of results currently kept with soft references that haven't been collected yet.
+	 * 
+	 * @return
+	 */
+	public int getSoftEntryCount()
+	{
+		return softEntries;
+	}
+
+	/**
+	 * Returns the number of chars of the sources whose results are strongly referenced.
+	 * 
+	 * @return
+	 */
+	public int getSpace()
+	{
+		return space;
+	}
+
+	/**
+	 * Returns the maximum number of chars of the sources whose results may be strongly referenced.
+	 * 
+	 * @return
+	 */
+	public int getSpaceLimit()
+	{
+		return spaceLimit;
+	}
+
+	/**
+	 * Returns the ratio of hits to lookups, between 0 and 1.
+	 * 
+	 * @return
+	 */
+	public double getHitRatio()
+	{
+		long lookups = hits + misses;
+		return (lookups == 0) ? 0 : (double) hits / lookups;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return MessageFormat.format(
+				"hits: {0} (soft: {1}), misses: {2}, evictions: {3}, entries: {4} (soft: {5}), space: {6}/{7}", //$NON-NLS-1$
+				hits, softHits, misses, evictions, strongEntries, softEntries, space, spaceLimit);
+	}
+}
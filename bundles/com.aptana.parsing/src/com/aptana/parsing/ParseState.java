@@ -25,6 +25,13 @@ public class ParseState implements IParseState
 
 	private IProgressMonitor fProgressMonitor;
 
+	/**
+	 * The source and result of an earlier parse of the same document, used by the parsers that support incremental
+	 * re-parsing.
+	 */
+	private String fPreviousSource;
+	private ParseResult fPreviousResult;
+
 	/**
 	 * Used for determining if we need to re-parse or cache is valid. If 2 objects have the same cache-key, their parse
 	 * results should be considered equal.
@@ -84,6 +91,8 @@ public class ParseState implements IParseState
 	{
 		fSource = null;
 		fSkippedRanges = null;
+		fPreviousSource = null;
+		fPreviousResult = null;
 	}
 
 	public String getSource()
@@ -96,6 +105,41 @@ public class ParseState implements IParseState
 		return fStartingOffset;
 	}
 
+	/**
+	 * Sets the source and the result of a previous parse of the same document. Parsers that support it may use these to
+	 * only re-parse the parts of the source that were modified since, and reuse the rest of the previous tree. The
+	 * previous result must have been produced by the same parser from a parse state with the same settings (starting
+	 * offset, comment handling, etc.) and is not modified. Parsers are free to ignore it and do a full parse.
+	 * 
+	 * @param previousSource
+	 * @param previousResult
+	 */
+	public void setPreviousParse(String previousSource, ParseResult previousResult)
+	{
+		fPreviousSource = previousSource;
+		fPreviousResult = previousResult;
+	}
+
+	/**
+	 * Returns the source of the previous parse, if one was set
+	 * 
+	 * @return
+	 */
+	public String getPreviousSource()
+	{
+		return fPreviousSource;
+	}
+
+	/**
+	 * Returns the result of the previous parse, if one was set
+	 * 
+	 * @return
+	 */
+	public ParseResult getPreviousParseResult()
+	{
+		return fPreviousResult;
+	}
+
 	public void setSkippedRanges(IParseNode[] skippedRanges)
 	{
 		fSkippedRanges = skippedRanges;
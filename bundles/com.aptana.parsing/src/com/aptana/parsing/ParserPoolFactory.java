@@ -238,4 +238,15 @@ public class ParserPoolFactory implements ParsingEngine.IParserPoolProvider
 	{
 		fParsingEngine.clearCache();
 	}
+
+	/**
+	 * Returns the hit/miss/eviction counts of the parse cache. Useful to tell whether its size (see
+	 * {@link ParsingEngine#MAXIMUM_NUMBER_OF_CHARS_IN_STRONG_REFERENCES_CACHE}) fits the projects being worked on.
+	 * 
+	 * @return
+	 */
+	public ParseCacheStatistics getCacheStatistics()
+	{
+		return fParsingEngine.getCacheStatistics();
+	}
 }
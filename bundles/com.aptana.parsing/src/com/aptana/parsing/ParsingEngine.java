@@ -11,8 +11,8 @@ import java.text.MessageFormat;
 
 import org.eclipse.core.runtime.Assert;
 
+import com.aptana.core.IFilter;
 import com.aptana.core.epl.util.ILRUCacheable;
-import com.aptana.core.epl.util.LRUCacheWithSoftPrunedValues;
 import com.aptana.core.logging.IdeLog;
 import com.aptana.core.util.StringUtil;
 
@@ -130,20 +130,15 @@ public class ParsingEngine
 
 	/**
 	 * A parse cache. Keyed by combo of content type and source hash, holds IParseRootNode result. Retains most recently
-	 * used ASTs.
+	 * used ASTs. It's striped, so it may be accessed concurrently without any additional lock.
 	 */
-	private LRUCacheWithSoftPrunedValues<IParseStateCacheKey, CacheValue> fParseCache;
+	private volatile ParseCache<IParseStateCacheKey, CacheValue> fParseCache;
 
 	/**
 	 * Object providing access to the pool provider.
 	 */
 	private IParserPoolProvider fParserPoolProvider;
 
-	/**
-	 * Any access to the fParseCache should have this lock in place.
-	 */
-	private final Object fParseCacheLock = new Object();
-
 	/**
 	 * Default for fMinimunNumberOfCharsToEnterCache.
 	 */
@@ -174,7 +169,7 @@ public class ParsingEngine
 	 */
 	protected ParsingEngine(IParserPoolProvider parserPoolProvider, int cacheSize, int minCacheElementSize)
 	{
-		fParseCache = new LRUCacheWithSoftPrunedValues<IParseStateCacheKey, CacheValue>(cacheSize);
+		fParseCache = new ParseCache<IParseStateCacheKey, CacheValue>(cacheSize);
 		fParserPoolProvider = parserPoolProvider;
 		fMinimumNumberOfCharsToEnterCache = minCacheElementSize;
 	}
@@ -195,11 +190,23 @@ public class ParsingEngine
 	 */
 	public void clearCache()
 	{
-		if (fParseCache == null) // already disposed.
+		ParseCache<IParseStateCacheKey, CacheValue> parseCache = fParseCache;
+		if (parseCache == null) // already disposed.
 		{
 			return;
 		}
-		fParseCache.flush();
+		parseCache.flush();
+	}
+
+	/**
+	 * Returns the current hit/miss/eviction counts of the parse cache, or null if the engine has been disposed.
+	 * 
+	 * @return
+	 */
+	public ParseCacheStatistics getCacheStatistics()
+	{
+		ParseCache<IParseStateCacheKey, CacheValue> parseCache = fParseCache;
+		return (parseCache == null) ? null : parseCache.getStatistics();
 	}
 
 	public ParseResult parse(String contentTypeId, IParseState parseState) throws Exception // $codepro.audit.disable
@@ -229,120 +236,74 @@ public class ParsingEngine
 				return noCacheParse(contentTypeId, parseState);
 			}
 
-			IParseStateCacheKey newParseStateKey = parseState.getCacheKey(contentTypeId);
-			CacheValue cacheValue = null;
-			LRUCacheWithSoftPrunedValues<IParseStateCacheKey, CacheValue> parseCache = fParseCache;
+			final IParseStateCacheKey newParseStateKey = parseState.getCacheKey(contentTypeId);
+			ParseCache<IParseStateCacheKey, CacheValue> parseCache = fParseCache;
 			if (parseCache == null)
 			{
 				return ParseResult.EMPTY; // already disposed.
 			}
 
-			boolean getResultFromCache = false;
 			boolean traceEnabled = plugin != null && IdeLog.isTraceEnabled(plugin, IDebugScopes.PARSING);
-			IParserPool pool = null;
-			IParser parser = null;
-			try
+
+			// Either get the value of a parse that's done or in progress, or register ours so that others asking for
+			// the same content wait on it (this is atomic for a given key).
+			CacheValue newCacheValue = new CacheValue(newParseStateKey, sourceLen);
+			CacheValue cacheValue = parseCache.getOrPut(newParseStateKey, newCacheValue, new IFilter<CacheValue>()
 			{
-				synchronized (fParseCacheLock)
+				public boolean include(CacheValue item)
 				{
-					cacheValue = parseCache.get(newParseStateKey);
-
-					if (cacheValue != null && !cacheValue.requiresReparse(newParseStateKey))
-					{
-
-						if (traceEnabled)
-						{
-							IdeLog.logTrace(plugin,
-									MessageFormat.format("Parsing cache hit for key {0}", newParseStateKey), //$NON-NLS-1$
-									IDebugScopes.PARSING);
-						}
-
-						// Cache hit... it may still be in progress, but the cacheValue.getResult should handle that
-						// (but we'll get out of the synchronized block to actually do that).
-						getResultFromCache = true;
-					}
-					else
-					{
-						if (cacheValue == null)
-						{
-							if (traceEnabled)
-							{
-								IdeLog.logTrace(plugin,
-										MessageFormat.format("Parsing cache miss for key {0}", newParseStateKey), //$NON-NLS-1$
-										IDebugScopes.PARSING);
-							}
-						}
-						else if (cacheValue != null && cacheValue.requiresReparse(newParseStateKey))
-						{
-							if (traceEnabled)
-							{
-								IdeLog.logTrace(plugin, MessageFormat.format(
-										"Parsing cache hit for key {0}, but reparse required", newParseStateKey), //$NON-NLS-1$
-										IDebugScopes.PARSING);
-							}
-						}
-
-						// No cache-hit, we'll do the parsing here.
-						pool = fParserPoolProvider.getParserPool(contentTypeId);
-
-						// If we won't be able to do the parsing because we're unable to get the pool or the
-						// parser, don't even register the cache value (so that no one listens for something thot
-						// won't yield a correct return anyways).
-						if (pool == null)
-						{
-							if (IdeLog.isInfoEnabled(plugin, null))
-							{
-								String message = MessageFormat.format(
-										Messages.ParserPoolFactory_Cannot_Acquire_Parser_Pool, contentTypeId);
-								IdeLog.logInfo(plugin, message, IDebugScopes.PARSING);
-							}
-							return ParseResult.EMPTY;
-						}
-						parser = pool.checkOut();
-						if (parser == null)
-						{
-							String message = MessageFormat.format(Messages.ParserPoolFactory_Cannot_Acquire_Parser,
-									contentTypeId);
-							IdeLog.logError(plugin, message, IDebugScopes.PARSING);
-							return ParseResult.EMPTY;
-						}
-
-						// Ok, we're in a state where either there's no one parsing or the currently cached value does
-						// not match the one in the cache for this key (i.e.: parse without comments and later with
-						// comments).
-						cacheValue = new CacheValue(newParseStateKey, sourceLen);
-						parseCache.put(newParseStateKey, cacheValue);
-						// Important: after we put it here (in the situation getResultFromCache), we MUST have a result
-						// cacheValue.setResult(), otherwise we may end up with a listener waiting eternally for a
-						// result.
-					}
+					return !item.requiresReparse(newParseStateKey);
 				}
+			});
+			boolean getResultFromCache = cacheValue != newCacheValue;
+
+			if (traceEnabled)
+			{
+				IdeLog.logTrace(plugin, MessageFormat.format(getResultFromCache ? "Parsing cache hit for key {0}" //$NON-NLS-1$
+						: "Parsing cache miss for key {0}", newParseStateKey), IDebugScopes.PARSING); //$NON-NLS-1$
 			}
-			catch (Throwable e)
+
+			IParserPool pool = null;
+			IParser parser = null;
+			if (!getResultFromCache)
 			{
-				if (!getResultFromCache)
+				// Important: after we put it in the cache, we MUST have a result cacheValue.setResult(), otherwise we
+				// may end up with a listener waiting eternally for a result.
+				try
+				{
+					pool = fParserPoolProvider.getParserPool(contentTypeId);
+					parser = (pool == null) ? null : pool.checkOut();
+				}
+				catch (Throwable e)
 				{
-					// Clean up if something bad happened at somewhere there (to avoid any possible deadlock).
-					if (pool != null && parser != null)
+					parseCache.remove(newParseStateKey, cacheValue);
+					cacheValue.setResult(ParseResult.EMPTY);
+					throw new RuntimeException(e);
+				}
+
+				// If we're unable to get the pool or the parser, don't leave the value registered (so that the next
+				// request tries again instead of getting a result that isn't correct anyways).
+				if (parser == null)
+				{
+					parseCache.remove(newParseStateKey, cacheValue);
+					cacheValue.setResult(ParseResult.EMPTY);
+					if (pool == null)
 					{
-						try
+						if (IdeLog.isInfoEnabled(plugin, null))
 						{
-							pool.checkIn(parser);
-						}
-						catch (Throwable e1)
-						{
-							// Don't even log this one (we're already in a bad state if something happened and we'll
-							// throw the original exception).
+							String message = MessageFormat.format(
+									Messages.ParserPoolFactory_Cannot_Acquire_Parser_Pool, contentTypeId);
+							IdeLog.logInfo(plugin, message, IDebugScopes.PARSING);
 						}
 					}
-					if (cacheValue != null)
+					else
 					{
-						// We really HAVE to call this one to avoid possible deadlocks.
-						cacheValue.setResult(ParseResult.EMPTY);
+						String message = MessageFormat.format(Messages.ParserPoolFactory_Cannot_Acquire_Parser,
+								contentTypeId);
+						IdeLog.logError(plugin, message, IDebugScopes.PARSING);
 					}
+					return ParseResult.EMPTY;
 				}
-				throw new RuntimeException(e);
-
 			}
 
 			if (getResultFromCache)
@@ -372,13 +333,10 @@ public class ParsingEngine
 					{
 						pool.checkIn(parser);
 					}
-					synchronized (fParseCacheLock)
-					{
-						// Make a get just to update time stamp or change it from the soft map back into the main LRU.
-						// Done because we may have the situation where the a main parse has multiple sub-parses, and
-						// it's more important to persist the main parse than the sub-parses.
-						parseCache.get(newParseStateKey);
-					}
+					// Make a get just to update time stamp or change it from the soft map back into the main LRU.
+					// Done because we may have the situation where the a main parse has multiple sub-parses, and
+					// it's more important to persist the main parse than the sub-parses.
+					parseCache.get(newParseStateKey);
 				}
 				finally
 				{
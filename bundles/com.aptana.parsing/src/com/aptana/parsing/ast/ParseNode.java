@@ -22,7 +22,7 @@ import com.aptana.parsing.ParsingPlugin;
 import com.aptana.parsing.lexer.IRange;
 import com.aptana.parsing.lexer.Range;
 
-public abstract class ParseNode extends Node implements IParseNode
+public abstract class ParseNode extends Node implements IParseNode, Cloneable
 {
 	protected static final class NameNode implements INameNode
 	{
@@ -116,6 +116,82 @@ public abstract class ParseNode extends Node implements IParseNode
 		setLocation(getStart() + offset, getEnd() + offset);
 	}
 
+	/**
+	 * Returns a deep copy of this node and its descendants. The copy has no parent. This allows reusing parts of a tree
+	 * that may be shared (e.g. through the parse cache) in a new tree without modifying the original nodes.
+	 * 
+	 * @return
+	 * @throws IllegalStateException
+	 *             if one of the descendants is not a ParseNode
+	 */
+	public ParseNode copy()
+	{
+		ParseNode result;
+
+		try
+		{
+			result = (ParseNode) clone();
+		}
+		catch (CloneNotSupportedException e)
+		{
+			throw new IllegalStateException(e);
+		}
+
+		result.fParent = null;
+		result.fChildren = NO_CHILDREN;
+		result.fChildrenCount = 0;
+
+		if (fChildrenCount > 0)
+		{
+			IParseNode[] children = new IParseNode[fChildrenCount];
+
+			for (int i = 0; i < fChildrenCount; i++)
+			{
+				if (!(fChildren[i] instanceof ParseNode))
+				{
+					throw new IllegalStateException(MessageFormat.format(
+							"Unable to copy child node of type {0}", fChildren[i].getClass().getName())); //$NON-NLS-1$
+				}
+
+				children[i] = ((ParseNode) fChildren[i]).copy();
+			}
+
+			result.setChildren(children);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Updates the offsets of this node and its descendants after text has been inserted (or removed, for a negative
+	 * delta) at the given position of the source: offsets at or after the position are moved by the delta, the ones
+	 * before it are left untouched. Subclasses keeping other offsets need to update them too.
+	 * 
+	 * @param position
+	 * @param delta
+	 */
+	public void shiftOffsets(int position, int delta)
+	{
+		int start = getStart();
+		int end = getEnd();
+		int newStart = (start >= position) ? start + delta : start;
+		// empty nodes have to stay empty
+		int newEnd = (end < start) ? newStart - 1 : ((end >= position) ? end + delta : end);
+
+		if (newStart != start || newEnd != end)
+		{
+			setLocation(newStart, newEnd);
+		}
+
+		for (int i = 0; i < fChildrenCount; i++)
+		{
+			if (fChildren[i] instanceof ParseNode)
+			{
+				((ParseNode) fChildren[i]).shiftOffsets(position, delta);
+			}
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.parsing.lexer.IRange#contains(int)
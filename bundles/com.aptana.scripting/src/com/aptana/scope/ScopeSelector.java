@@ -12,7 +12,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import beaver.Symbol;
 
@@ -132,6 +134,44 @@ public class ScopeSelector extends Symbol implements IScopeSelector
 		}
 	}
 
+	/**
+	 * Sorts the bundle elements from "worst" match to "best" match of the given scope. Unlike
+	 * {@link #sort(List)}, this does not rely on the scope each selector was matched against last, so the
+	 * elements may come from a cached lookup.
+	 * 
+	 * @param bundleElements
+	 * @param scope
+	 */
+	public static void sort(List<? extends AbstractBundleElement> bundleElements, String scope)
+	{
+		if (!CollectionsUtil.isEmpty(bundleElements))
+		{
+			final Map<AbstractBundleElement, List<Integer>> results;
+			results = new IdentityHashMap<AbstractBundleElement, List<Integer>>(bundleElements.size());
+
+			for (AbstractBundleElement element : bundleElements)
+			{
+				IScopeSelector selector = element.getScopeSelector();
+
+				// selectors are shared, keep another thread from matching in between
+				synchronized (selector)
+				{
+					selector.matches(scope);
+					results.put(element, new ArrayList<Integer>(selector.getMatchResults()));
+				}
+			}
+
+			Collections.sort(bundleElements, new Comparator<AbstractBundleElement>()
+			{
+				public int compare(AbstractBundleElement o1, AbstractBundleElement o2)
+				{
+					return ScopeSelector.compare(new ArrayList<Integer>(results.get(o1)),
+							new ArrayList<Integer>(results.get(o2)));
+				}
+			});
+		}
+	}
+
 	private final ISelectorNode _root;
 	private List<Integer> matchResults;
 
@@ -215,7 +255,7 @@ public class ScopeSelector extends Symbol implements IScopeSelector
 	 * (non-Javadoc)
 	 * @see com.aptana.scope.IScopeSelector#getMatchResults()
 	 */
-	public List<Integer> getMatchResults()
+	public synchronized List<Integer> getMatchResults()
 	{
 		if (matchResults == null)
 		{
@@ -245,7 +285,7 @@ public class ScopeSelector extends Symbol implements IScopeSelector
 	 * (non-Javadoc)
 	 * @see com.aptana.scope.IScopeSelector#matches(java.lang.String)
 	 */
-	public boolean matches(String scope)
+	public synchronized boolean matches(String scope)
 	{
 		matchResults = new ArrayList<Integer>();
 		boolean result = false;
@@ -254,38 +294,42 @@ public class ScopeSelector extends Symbol implements IScopeSelector
 		{
 			MatchContext context = new MatchContext(scope);
 
-			for (int i = 0; i < context.getLength(); i++)
+			// parsed selectors are shared between equal selectors, and so is their match state
+			synchronized (this._root)
 			{
-				// save current position so we can advance later
-				context.pushCurrentStep();
-
-				// see if we match at this point within the context
-				if (this._root.matches(context))
+				for (int i = 0; i < context.getLength(); i++)
 				{
-					// Add match results. If more than one value, we need to replace existing zeros in our list...
-					Collection<Integer> tmpResults = this._root.getMatchResults();
-					int toRemove = tmpResults.size() - 1;
-					for (int x = 0; x < toRemove; x++)
-					{
-						matchResults.remove(0);
-					}
-					matchResults.addAll(0, tmpResults);
+					// save current position so we can advance later
+					context.pushCurrentStep();
 
-					// Fill with preceding zeros.
-					while (matchResults.size() < context.getLength())
+					// see if we match at this point within the context
+					if (this._root.matches(context))
 					{
-						matchResults.add(0, 0);
+						// Add match results. If more than one value, we need to replace existing zeros in our list...
+						Collection<Integer> tmpResults = this._root.getMatchResults();
+						int toRemove = tmpResults.size() - 1;
+						for (int x = 0; x < toRemove; x++)
+						{
+							matchResults.remove(0);
+						}
+						matchResults.addAll(0, tmpResults);
+
+						// Fill with preceding zeros.
+						while (matchResults.size() < context.getLength())
+						{
+							matchResults.add(0, 0);
+						}
+
+						// we matched, so report success and stop looking for a match
+						result = true;
+						break;
 					}
+					matchResults.add(0, 0); // Add a non-match
 
-					// we matched, so report success and stop looking for a match
-					result = true;
-					break;
+					// restore position where we started and move forward one
+					context.popCurrentStep();
+					context.backup();
 				}
-				matchResults.add(0, 0); // Add a non-match
-
-				// restore position where we started and move forward one
-				context.popCurrentStep();
-				context.backup();
 			}
 		}
 
@@ -296,7 +340,7 @@ public class ScopeSelector extends Symbol implements IScopeSelector
 	 * (non-Javadoc)
 	 * @see com.aptana.scope.IScopeSelector#matches(java.lang.String[])
 	 */
-	public boolean matches(String[] scopes)
+	public synchronized boolean matches(String[] scopes)
 	{
 		boolean result = false;
 
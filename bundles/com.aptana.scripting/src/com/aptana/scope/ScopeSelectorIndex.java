@@ -0,0 +1,326 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.scope;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.aptana.core.epl.util.LRUCache;
+import com.aptana.core.util.StringUtil;
+
+/**
+ * A list of selectors compiled for matching many scopes against all of them at once.
+ * <p>
+ * Every selector names at least one scope element the scope has to contain to match, e.g. <code>string.quoted</code>
+ * for <code>source.php string.quoted</code>. Those names are put in a tree of their dot-separated parts, so that one
+ * walk of the scope's elements down the tree finds the few selectors that can match it; only those are then evaluated,
+ * and ranked like {@link ScopeSelector#bestMatch(Collection, String)} does. The selectors for which no such name can be
+ * found (a negative lookahead alone, say) are always evaluated.
+ * <p>
+ * The best match of the latest scopes is cached. This is thread-safe, but selectors keep the results of their last
+ * match, so they shouldn't be matched elsewhere concurrently.
+ */
+public final class ScopeSelectorIndex
+{
+
+	private static final int CACHE_SIZE = 1000;
+	private static final Pattern SPACES = Pattern.compile("\\s+"); //$NON-NLS-1$
+
+	private final IScopeSelector[] selectors;
+	private final Node root = new Node();
+
+	/**
+	 * The selectors that can't be put in the tree.
+	 */
+	private final BitSet unindexed = new BitSet();
+
+	private final LRUCache<String, Integer> bestMatches = new LRUCache<String, Integer>(CACHE_SIZE);
+
+	/**
+	 * @param selectors
+	 *            in order, a selector wins the ties against those before it
+	 */
+	public ScopeSelectorIndex(Collection<? extends IScopeSelector> selectors)
+	{
+		this.selectors = selectors.toArray(new IScopeSelector[selectors.size()]);
+		for (int i = 0; i < this.selectors.length; i++)
+		{
+			IScopeSelector selector = this.selectors[i];
+			if (selector == null)
+			{
+				continue;
+			}
+			if (!(selector instanceof ScopeSelector))
+			{
+				unindexed.set(i);
+				continue;
+			}
+			ISelectorNode selectorRoot = ((ScopeSelector) selector).getRoot();
+			if (selectorRoot == null)
+			{
+				// never matches
+				continue;
+			}
+			List<String> names = new ArrayList<String>();
+			if (!collectRequiredNames(selectorRoot, names))
+			{
+				unindexed.set(i);
+				continue;
+			}
+			for (String name : names)
+			{
+				root.add(split(name, true), i);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of selectors.
+	 * 
+	 * @return
+	 */
+	public int size()
+	{
+		return selectors.length;
+	}
+
+	/**
+	 * Returns the selector that best matches a scope, or null if none matches. This is the same as
+	 * {@link ScopeSelector#bestMatch(Collection, String)} on the selectors.
+	 * 
+	 * @param scope
+	 * @return
+	 */
+	public synchronized IScopeSelector bestMatch(String scope)
+	{
+		if (scope == null)
+		{
+			return null;
+		}
+		Integer cached = bestMatches.get(scope);
+		if (cached == null)
+		{
+			cached = findBestMatch(scope);
+			bestMatches.put(scope, cached);
+		}
+		return (cached < 0) ? null : selectors[cached];
+	}
+
+	/**
+	 * Returns the selectors that match a scope, in order.
+	 * 
+	 * @param scope
+	 * @return
+	 */
+	public List<IScopeSelector> getMatches(String scope)
+	{
+		BitSet indices = getMatchIndices(scope);
+		List<IScopeSelector> matches = new ArrayList<IScopeSelector>(indices.cardinality());
+		for (int i = indices.nextSetBit(0); i >= 0; i = indices.nextSetBit(i + 1))
+		{
+			matches.add(selectors[i]);
+		}
+		return matches;
+	}
+
+	/**
+	 * Returns the positions of the selectors that match a scope, in the collection the index was created from.
+	 * 
+	 * @param scope
+	 * @return
+	 */
+	public synchronized BitSet getMatchIndices(String scope)
+	{
+		if (scope == null)
+		{
+			return new BitSet();
+		}
+		BitSet candidates = getCandidates(scope);
+		for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1))
+		{
+			if (!selectors[i].matches(scope))
+			{
+				candidates.clear(i);
+			}
+		}
+		return candidates;
+	}
+
+	private int findBestMatch(String scope)
+	{
+		BitSet candidates = getCandidates(scope);
+		int[] indices = new int[candidates.cardinality()];
+		int count = 0;
+		for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1))
+		{
+			indices[count++] = i;
+		}
+
+		// the later selectors win the ties, so go through them first and only replace on a strictly better match
+		int best = -1;
+		for (int i = count - 1; i >= 0; i--)
+		{
+			IScopeSelector selector = selectors[indices[i]];
+			if (selector.matches(scope) && (best == -1 || selector.compareTo(selectors[best]) > 0))
+			{
+				best = indices[i];
+			}
+		}
+		return best;
+	}
+
+	private BitSet getCandidates(String scope)
+	{
+		BitSet candidates = (BitSet) unindexed.clone();
+		for (String step : SPACES.split(scope))
+		{
+			Node node = root;
+			for (String part : split(step, false))
+			{
+				node = node.getChild(part);
+				if (node == null)
+				{
+					break;
+				}
+				node.addSelectors(candidates);
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * Collects the names of which at least one has to prefix an element of the scope for the selector to match.
+	 * 
+	 * @return false if there are no such names
+	 */
+	private static boolean collectRequiredNames(ISelectorNode node, List<String> names)
+	{
+		if (node instanceof NameSelector)
+		{
+			String name = node.toString();
+			if (StringUtil.isEmpty(name))
+			{
+				return false;
+			}
+			names.add(name);
+			return true;
+		}
+		if (node instanceof GroupSelector)
+		{
+			ISelectorNode child = ((GroupSelector) node).getChild();
+			return child != null && collectRequiredNames(child, names);
+		}
+		if (!(node instanceof BinarySelector))
+		{
+			return false;
+		}
+		ISelectorNode left = ((BinarySelector) node).getLeftChild();
+		ISelectorNode right = ((BinarySelector) node).getRightChild();
+		if (left == null || right == null)
+		{
+			return false;
+		}
+		if (node instanceof OrSelector)
+		{
+			// either side may match
+			return collectRequiredNames(left, names) && collectRequiredNames(right, names);
+		}
+		if (node instanceof NegativeLookaheadSelector)
+		{
+			return collectRequiredNames(left, names);
+		}
+		if (node instanceof DescendantSelector || node instanceof IntersectionSelector)
+		{
+			// both sides have to match, the deepest one is the most selective
+			int size = names.size();
+			if (collectRequiredNames(right, names))
+			{
+				return true;
+			}
+			names.subList(size, names.size()).clear();
+			return collectRequiredNames(left, names);
+		}
+		return false;
+	}
+
+	/**
+	 * Splits a name or a scope element on its periods. The trailing empty parts of names are dropped: the names are
+	 * then put higher in the tree, where they're found for more scopes, never fewer.
+	 */
+	private static List<String> split(String name, boolean dropTrailingEmptyParts)
+	{
+		List<String> parts = new ArrayList<String>();
+		int start = 0;
+		int end;
+		while ((end = name.indexOf('.', start)) != -1)
+		{
+			parts.add(name.substring(start, end));
+			start = end + 1;
+		}
+		parts.add(name.substring(start));
+		if (dropTrailingEmptyParts)
+		{
+			while (parts.size() > 1 && parts.get(parts.size() - 1).length() == 0)
+			{
+				parts.remove(parts.size() - 1);
+			}
+		}
+		return parts;
+	}
+
+	/**
+	 * A part of a name, with the selectors requiring the name made of the parts down to it.
+	 */
+	private static final class Node
+	{
+		private Map<String, Node> children;
+		private BitSet selectors;
+
+		private void add(List<String> parts, int selector)
+		{
+			Node node = this;
+			for (String part : parts)
+			{
+				if (node.children == null)
+				{
+					node.children = new HashMap<String, Node>();
+				}
+				Node child = node.children.get(part);
+				if (child == null)
+				{
+					child = new Node();
+					node.children.put(part, child);
+				}
+				node = child;
+			}
+			if (node.selectors == null)
+			{
+				node.selectors = new BitSet();
+			}
+			node.selectors.set(selector);
+		}
+
+		private Node getChild(String part)
+		{
+			return (children == null) ? null : children.get(part);
+		}
+
+		private void addSelectors(BitSet candidates)
+		{
+			if (selectors != null)
+			{
+				candidates.or(selectors);
+			}
+		}
+	}
+}
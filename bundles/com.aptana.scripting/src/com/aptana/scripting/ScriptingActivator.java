@@ -124,7 +124,11 @@ public class ScriptingActivator extends Plugin
 	{
 		try
 		{
-			bundleManager = null;
+			if (bundleManager != null)
+			{
+				bundleManager.dispose();
+				bundleManager = null;
+			}
 			if (bundleMonitor != null)
 			{
 				bundleMonitor.endMonitoring();
@@ -113,6 +113,22 @@ public class ScriptingEngine
 		return result;
 	}
 
+	/**
+	 * Creates a container with a JRuby runtime of its own, with the ruble framework loaded, so that bundles can be
+	 * loaded in it while others are loaded in the shared container. Such a container isn't thread-safe: only one script
+	 * should run in it at a time.
+	 * 
+	 * @return
+	 */
+	public ScriptingContainer createBundleLoadContainer()
+	{
+		ScriptingContainer result = this.createScriptingContainer(LocalContextScope.SINGLETHREAD);
+
+		result.runScriptlet("require 'ruble'"); //$NON-NLS-1$
+
+		return result;
+	}
+
 	/**
 	 * getContributedLoadPaths
 	 * 
@@ -267,8 +283,25 @@ public class ScriptingEngine
 	 */
 	public Object runScript(String fullPath, List<String> loadPaths, RunType runType, boolean async)
 	{
-		ScriptLoadJob job = new ScriptLoadJob(fullPath, loadPaths);
+		return this.runScript(new ScriptLoadJob(fullPath, loadPaths), fullPath, runType, async);
+	}
 
+	/**
+	 * Runs a script in a container other than the shared one, typically one created by
+	 * {@link #createBundleLoadContainer()}
+	 * 
+	 * @param fullPath
+	 * @param loadPaths
+	 * @param container
+	 * @return
+	 */
+	public Object runScript(String fullPath, List<String> loadPaths, ScriptingContainer container)
+	{
+		return this.runScript(new ScriptLoadJob(fullPath, loadPaths, container), fullPath, this._runType, false);
+	}
+
+	private Object runScript(ScriptLoadJob job, String fullPath, RunType runType, boolean async)
+	{
 		try
 		{
 			job.run("Load '" + fullPath + "'", runType, async); //$NON-NLS-1$ //$NON-NLS-2$
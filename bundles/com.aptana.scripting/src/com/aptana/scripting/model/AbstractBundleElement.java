@@ -149,6 +149,11 @@ public abstract class AbstractBundleElement extends AbstractElement
 		{
 			this._scope = BundleManager.getInstance().sharedString(scope);
 			this._scopeSelector = null;
+
+			if (this.owningBundle != null)
+			{
+				BundleManager.getInstance().elementScopeChanged();
+			}
 		}
 	}
 
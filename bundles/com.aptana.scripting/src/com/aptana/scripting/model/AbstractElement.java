@@ -18,6 +18,7 @@ import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.core.internal.utils.StringPool;
+import org.jruby.Ruby;
 
 import com.aptana.core.logging.IdeLog;
 import com.aptana.core.util.ObjectUtil;
@@ -113,6 +114,26 @@ public abstract class AbstractElement implements Comparable<AbstractElement>
 		return result;
 	}
 
+	/**
+	 * Returns all the elements currently registered
+	 * 
+	 * @return
+	 */
+	static List<AbstractElement> getRegisteredElements()
+	{
+		List<AbstractElement> result = new ArrayList<AbstractElement>();
+
+		synchronized (ELEMENTS_BY_PATH)
+		{
+			for (List<AbstractElement> elements : ELEMENTS_BY_PATH.values())
+			{
+				result.addAll(elements);
+			}
+		}
+
+		return result;
+	}
+
 	/**
 	 * registerElement
 	 * 
@@ -214,6 +235,17 @@ public abstract class AbstractElement implements Comparable<AbstractElement>
 		registerElement(this);
 	}
 
+	/**
+	 * Determines if this element holds on to blocks created in the given runtime
+	 * 
+	 * @param runtime
+	 * @return
+	 */
+	boolean usesRuntime(Ruby runtime)
+	{
+		return false;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see java.lang.Comparable#compareTo(java.lang.Object)
@@ -0,0 +1,1411 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.scripting.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.SubMonitor;
+import org.jruby.Ruby;
+import org.jruby.RubyRegexp;
+import org.jruby.runtime.builtin.IRubyObject;
+import org.jruby.util.RegexpOptions;
+
+import com.aptana.core.logging.IdeLog;
+import com.aptana.core.util.IOUtil;
+import com.aptana.core.util.ObjectUtil;
+import com.aptana.scope.ScopeSelector;
+import com.aptana.scripting.IDebugScopes;
+import com.aptana.scripting.ScriptLogger;
+import com.aptana.scripting.ScriptingActivator;
+import com.aptana.scripting.ScriptingEngine;
+
+/**
+ * Saves the bundles loaded from a bundle directory in a binary snapshot, which is loaded instead of running the scripts
+ * of the bundle again on the next startups. A snapshot is only used while the scripts, localization files and libraries
+ * the bundles were loaded from are unchanged, in the same locale and with the same version of the scripting plugin.
+ * <p>
+ * Blocks can't be saved: the commands and environments that have some are restored without them, and the script that
+ * defines them is loaded again the first time one of their blocks is needed.
+ */
+/* package */class BundleCacher
+{
+	/**
+	 * The start of the snapshot files, followed by the version of their format, to be increased whenever it changes.
+	 */
+	private static final int MAGIC = 0x41505442;
+	private static final int VERSION = 1;
+
+	private static final String CACHE_DIRECTORY = "bundles"; //$NON-NLS-1$
+	private static final String CACHE_FILE_EXTENSION = ".cache"; //$NON-NLS-1$
+	private static final String TEMP_FILE_EXTENSION = ".tmp"; //$NON-NLS-1$
+
+	// kinds of elements
+	private static final byte BUILD_PATH = 1;
+	private static final byte COMMAND = 2;
+	private static final byte CONTENT_ASSIST = 3;
+	private static final byte ENVIRONMENT = 4;
+	private static final byte MENU = 5;
+	private static final byte PROJECT_SAMPLE = 6;
+	private static final byte PROJECT_TEMPLATE = 7;
+	private static final byte SMART_TYPING_PAIRS = 8;
+	private static final byte SNIPPET = 9;
+	private static final byte SNIPPET_CATEGORY = 10;
+	private static final byte TEMPLATE = 11;
+
+	// types of property values
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte STRING_ARRAY = 2;
+	private static final byte OBJECT_ARRAY = 3;
+	private static final byte LIST = 4;
+	private static final byte MAP = 5;
+	private static final byte BOOLEAN = 6;
+	private static final byte INTEGER = 7;
+	private static final byte LONG = 8;
+	private static final byte DOUBLE = 9;
+
+	private final BundleManager manager;
+
+	/**
+	 * The scripts loaded again for the blocks of the elements restored from their snapshot.
+	 */
+	private final Set<String> materializedScripts = new HashSet<String>();
+
+	/**
+	 * BundleCacher
+	 * 
+	 * @param manager
+	 */
+	BundleCacher(BundleManager manager)
+	{
+		this.manager = manager;
+	}
+
+	/**
+	 * Saves the bundles loaded from a bundle directory. Nothing is saved if an element or a property value of the
+	 * bundles can't be, the bundles are then loaded from their scripts on the next startup.
+	 * 
+	 * @param bundleDirectory
+	 */
+	void cache(File bundleDirectory)
+	{
+		File cacheFile = getCacheFile(bundleDirectory);
+
+		if (cacheFile == null)
+		{
+			return;
+		}
+
+		List<BundleElement> bundles = manager.getBundlesInDirectory(bundleDirectory);
+
+		if (bundles.isEmpty())
+		{
+			cacheFile.delete();
+			return;
+		}
+
+		// write to a temporary file first, so a snapshot being written is never read
+		File tempFile = new File(cacheFile.getPath() + TEMP_FILE_EXTENSION);
+		DataOutputStream out = null;
+		boolean written = false;
+
+		try
+		{
+			cacheFile.getParentFile().mkdirs();
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+
+			writeHeader(out, bundleDirectory);
+			writeDependencies(out, bundleDirectory);
+
+			out.writeInt(bundles.size());
+
+			for (BundleElement bundle : bundles)
+			{
+				writeBundle(out, bundle);
+			}
+
+			out.close();
+			out = null;
+
+			written = tempFile.renameTo(cacheFile) || (cacheFile.delete() && tempFile.renameTo(cacheFile));
+		}
+		catch (NotSerializableException e)
+		{
+			String message = "Bundle at {0} can''t be cached, it contains a {1}"; //$NON-NLS-1$
+			manager.showBundleLoadInfo(MessageFormat.format(message, bundleDirectory, e.getMessage()));
+		}
+		catch (IOException e)
+		{
+			IdeLog.logWarning(ScriptingActivator.getDefault(),
+					MessageFormat.format(Messages.BundleCacher_SerializationExceptionDeletingCacheFile, cacheFile), e,
+					IDebugScopes.SHOW_BUNDLE_LOAD_INFO);
+		}
+		finally
+		{
+			close(out);
+
+			if (!written)
+			{
+				tempFile.delete();
+				cacheFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Deletes the snapshots of all bundles.
+	 */
+	void clear()
+	{
+		File cacheDirectory = getCacheDirectory();
+
+		if (cacheDirectory != null)
+		{
+			File[] files = cacheDirectory.listFiles();
+
+			if (files != null)
+			{
+				for (File file : files)
+				{
+					file.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the bundles saved from a bundle directory to the bundle manager, if their snapshot is still valid.
+	 * 
+	 * @param bundleDirectory
+	 * @param scripts
+	 *            the scripts currently in the bundle directory
+	 * @param monitor
+	 * @return true if the bundles were loaded from their snapshot, false if they have to be loaded from their scripts
+	 */
+	boolean load(File bundleDirectory, List<File> scripts, IProgressMonitor monitor)
+	{
+		File cacheFile = getCacheFile(bundleDirectory);
+
+		if (cacheFile == null || !cacheFile.isFile())
+		{
+			return false;
+		}
+
+		SubMonitor sub = SubMonitor.convert(monitor,
+				MessageFormat.format(Messages.BundleCacher_LoadCacheTaskName, bundleDirectory.getAbsolutePath()), 2);
+		Reader reader = new Reader();
+		DataInputStream in = null;
+		List<BundleElement> bundles;
+
+		try
+		{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+
+			if (!reader.readHeader(in, bundleDirectory) || !reader.readDependencies(in, bundleDirectory, scripts, sub))
+			{
+				return false;
+			}
+
+			sub.worked(1);
+
+			int count = in.readInt();
+			bundles = new ArrayList<BundleElement>(count);
+
+			for (int i = 0; i < count; i++)
+			{
+				bundles.add(reader.readBundle(in));
+			}
+		}
+		catch (Exception e)
+		{
+			// the snapshot is incomplete or from an incompatible version, forget what it's been read from it
+			reader.dispose();
+			cacheFile.delete();
+
+			IdeLog.logWarning(ScriptingActivator.getDefault(),
+					MessageFormat.format(Messages.BundleCacher_LoadingCacheError, bundleDirectory), e,
+					IDebugScopes.SHOW_BUNDLE_LOAD_INFO);
+
+			return false;
+		}
+		finally
+		{
+			close(in);
+		}
+
+		synchronized (materializedScripts)
+		{
+			for (File script : scripts)
+			{
+				materializedScripts.remove(script.getAbsolutePath());
+			}
+		}
+
+		for (BundleElement bundle : bundles)
+		{
+			manager.addBundle(bundle);
+		}
+
+		LibraryCrossReference xref = LibraryCrossReference.getInstance();
+
+		for (Map.Entry<String, List<String>> entry : reader.libraries.entrySet())
+		{
+			List<String> libraries = entry.getValue();
+
+			xref.registerLibraryReference(entry.getKey(), libraries.toArray(new String[libraries.size()]));
+		}
+
+		for (File script : scripts)
+		{
+			manager.fireScriptLoadedEvent(script);
+		}
+
+		sub.done();
+
+		return true;
+	}
+
+	/**
+	 * Returns the element of the same type and name as an element restored from a snapshot, as defined by its script.
+	 * The script is loaded again the first time this is called for one of its elements, which replaces them all.
+	 * 
+	 * @param element
+	 * @return the element loaded from the script, or null if the script doesn't define it anymore
+	 */
+	@SuppressWarnings("unchecked")
+	<T extends AbstractBundleElement> T materialize(T element)
+	{
+		String path = element.getPath();
+
+		synchronized (materializedScripts)
+		{
+			if (materializedScripts.add(path))
+			{
+				manager.showBundleLoadInfo("Loading script for the blocks of cached elements: " + path); //$NON-NLS-1$
+				manager.reloadScript(new File(path));
+			}
+		}
+
+		for (AbstractElement candidate : AbstractElement.getElementsByPath(path))
+		{
+			if (candidate != element && candidate.getClass() == element.getClass()
+					&& ObjectUtil.areEqual(candidate.getDisplayName(), element.getDisplayName()))
+			{
+				return (T) candidate;
+			}
+		}
+
+		ScriptLogger.logWarning(MessageFormat.format(Messages.BundleCacher_DefinitionNotFoundMsg,
+				element.getDisplayName(), path));
+
+		return null;
+	}
+
+	private File getCacheDirectory()
+	{
+		ScriptingActivator plugin = ScriptingActivator.getDefault();
+
+		if (plugin == null)
+		{
+			return null;
+		}
+
+		try
+		{
+			return plugin.getStateLocation().append(CACHE_DIRECTORY).toFile();
+		}
+		catch (IllegalStateException e)
+		{
+			// no instance location
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the file of the snapshot of a bundle directory. Its name is made unique by the hash of the directory
+	 * path, the path is also checked when the snapshot is read.
+	 */
+	private File getCacheFile(File bundleDirectory)
+	{
+		File cacheDirectory = getCacheDirectory();
+
+		if (cacheDirectory == null)
+		{
+			return null;
+		}
+
+		String path = bundleDirectory.getAbsolutePath();
+		String name = bundleDirectory.getName().replaceAll("[^\\w.-]", "_"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		return new File(cacheDirectory, name + '_' + Integer.toHexString(path.hashCode()) + CACHE_FILE_EXTENSION);
+	}
+
+	/**
+	 * Returns the version of the scripting plugin, the scripts may be loaded differently by another one.
+	 */
+	private static String getPluginVersion()
+	{
+		return ScriptingActivator.getDefault().getBundle().getVersion().toString();
+	}
+
+	/**
+	 * Returns the files other than scripts the bundles of a directory depend on: their localization files and the
+	 * libraries their scripts required.
+	 */
+	private List<File> getFiles(File bundleDirectory, Map<String, List<String>> libraries)
+	{
+		List<File> result = new ArrayList<File>(manager.localizationFiles(bundleDirectory));
+		Set<String> paths = new HashSet<String>();
+
+		for (List<String> scriptLibraries : libraries.values())
+		{
+			for (String library : scriptLibraries)
+			{
+				if (paths.add(library))
+				{
+					result.add(new File(library));
+				}
+			}
+		}
+
+		return result;
+	}
+
+	private void writeHeader(DataOutputStream out, File bundleDirectory) throws IOException
+	{
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		writeString(out, getPluginVersion());
+		writeString(out, Locale.getDefault().toString());
+		writeString(out, bundleDirectory.getAbsolutePath());
+	}
+
+	private void writeDependencies(DataOutputStream out, File bundleDirectory) throws IOException
+	{
+		List<File> scripts = manager.getBundleScripts(bundleDirectory);
+		LibraryCrossReference xref = LibraryCrossReference.getInstance();
+		Map<String, List<String>> libraries = new HashMap<String, List<String>>();
+
+		for (File script : scripts)
+		{
+			String[] scriptLibraries = xref.getLibrariesFromPath(script.getAbsolutePath());
+
+			if (scriptLibraries.length > 0)
+			{
+				List<String> list = new ArrayList<String>(scriptLibraries.length);
+
+				for (String library : scriptLibraries)
+				{
+					list.add(library);
+				}
+
+				libraries.put(script.getAbsolutePath(), list);
+			}
+		}
+
+		writeFiles(out, scripts);
+		writeFiles(out, getFiles(bundleDirectory, libraries));
+
+		out.writeInt(libraries.size());
+
+		for (Map.Entry<String, List<String>> entry : libraries.entrySet())
+		{
+			writeString(out, entry.getKey());
+			writeStrings(out, entry.getValue());
+		}
+	}
+
+	private void writeFiles(DataOutputStream out, List<File> files) throws IOException
+	{
+		out.writeInt(files.size());
+
+		for (File file : files)
+		{
+			writeString(out, file.getAbsolutePath());
+			out.writeLong(file.lastModified());
+			out.writeLong(file.length());
+		}
+	}
+
+	private void writeBundle(DataOutputStream out, BundleElement bundle) throws IOException
+	{
+		writeString(out, bundle.getPath());
+		writeString(out, bundle.getDisplayName());
+		writeProperties(out, bundle.getCustomProperties());
+
+		writeString(out, bundle.getAuthor());
+		writeString(out, bundle.getCopyright());
+		writeString(out, bundle.getDescription());
+		writeString(out, bundle.getLicense());
+		writeString(out, bundle.getLicenseUrl());
+		writeString(out, bundle.getRepository());
+
+		writeStrings(out, bundle.getFileTypes());
+		writeStringMap(out, bundle.getFileTypeRegistry());
+
+		writeMarkers(out, bundle.getFoldingStartMarkers());
+		writeMarkers(out, bundle.getFoldingStopMarkers());
+		writeMarkers(out, bundle.getIncreaseIndentMarkers());
+		writeMarkers(out, bundle.getDecreaseIndentMarkers());
+
+		List<AbstractBundleElement> children = bundle.getChildren();
+
+		out.writeInt(children.size());
+
+		for (AbstractBundleElement child : children)
+		{
+			writeElement(out, child);
+		}
+	}
+
+	private void writeElement(DataOutputStream out, AbstractBundleElement element) throws IOException
+	{
+		byte kind = getKind(element);
+
+		out.writeByte(kind);
+		writeString(out, element.getPath());
+		writeString(out, element.getDisplayName());
+		writeString(out, element.getScope());
+		writeProperties(out, element.getCustomProperties());
+
+		switch (kind)
+		{
+			case BUILD_PATH:
+				writeString(out, ((BuildPathElement) element).getBuildPath());
+				break;
+
+			case COMMAND:
+			case CONTENT_ASSIST:
+				writeCommand(out, (CommandElement) element);
+				break;
+
+			case ENVIRONMENT:
+				out.writeBoolean(((EnvironmentElement) element).hasInvokeBlock());
+				break;
+
+			case MENU:
+				MenuElement menu = (MenuElement) element;
+				List<MenuElement> menus = menu.getChildren();
+
+				writeString(out, menu.getCommandName());
+				out.writeInt(menus.size());
+
+				for (MenuElement child : menus)
+				{
+					writeElement(out, child);
+				}
+				break;
+
+			case PROJECT_SAMPLE:
+				ProjectSampleElement sample = (ProjectSampleElement) element;
+
+				writeString(out, sample.getId());
+				writeString(out, sample.getCategory());
+				writeString(out, sample.getLocation());
+				writeString(out, sample.getDescription());
+				writeValue(out, sample.getNatures());
+				writeStringMap(out, sample.getIcon());
+				break;
+
+			case PROJECT_TEMPLATE:
+				ProjectTemplateElement template = (ProjectTemplateElement) element;
+
+				writeString(out, template.getTypeString());
+				writeString(out, template.getLocation());
+				writeString(out, template.getDescription());
+				writeString(out, template.getId());
+				writeString(out, template.getIcon());
+				out.writeInt(template.getPriority());
+				writeStrings(out, template.getTags());
+				break;
+
+			case SMART_TYPING_PAIRS:
+				List<Character> pairs = ((SmartTypingPairsElement) element).getPairs();
+
+				out.writeInt((pairs != null) ? pairs.size() : -1);
+
+				if (pairs != null)
+				{
+					for (Character c : pairs)
+					{
+						out.writeChar(c);
+					}
+				}
+				break;
+
+			case SNIPPET:
+				SnippetElement snippet = (SnippetElement) element;
+
+				writeCommand(out, snippet);
+				writeString(out, snippet.getExpansion());
+				writeString(out, snippet.getCategory());
+				writeStrings(out, snippet.getTags());
+				writeString(out, snippet.getIconPath());
+				writeString(out, snippet.getDescription());
+				break;
+
+			case SNIPPET_CATEGORY:
+				writeString(out, ((SnippetCategoryElement) element).getIconPath());
+				break;
+
+			case TEMPLATE:
+				writeCommand(out, (TemplateElement) element);
+				writeString(out, ((TemplateElement) element).getFiletype());
+				break;
+
+			default:
+				break;
+		}
+	}
+
+	private void writeCommand(DataOutputStream out, CommandElement command) throws IOException
+	{
+		Map<Platform, String> invokes = command.getInvokes();
+
+		out.writeInt(invokes.size());
+
+		for (Map.Entry<Platform, String> entry : invokes.entrySet())
+		{
+			writeString(out, entry.getKey().getName());
+			writeString(out, entry.getValue());
+		}
+
+		List<Platform> blocks = command.getInvokeBlockPlatforms();
+
+		out.writeInt(blocks.size());
+
+		for (Platform platform : blocks)
+		{
+			writeString(out, platform.getName());
+		}
+
+		Map<Platform, List<String>> keyBindings = command.getKeyBindingMap();
+
+		out.writeInt((keyBindings != null) ? keyBindings.size() : 0);
+
+		if (keyBindings != null)
+		{
+			for (Map.Entry<Platform, List<String>> entry : keyBindings.entrySet())
+			{
+				writeString(out, entry.getKey().getName());
+				writeStrings(out, entry.getValue());
+			}
+		}
+
+		InputType[] inputTypes = command.getInputTypes();
+
+		out.writeInt(inputTypes.length);
+
+		for (InputType inputType : inputTypes)
+		{
+			writeString(out, inputType.getName());
+		}
+
+		writeString(out, command.getInputPath());
+		writeString(out, command.getOutputType());
+		writeString(out, command.getOutputPath());
+		out.writeBoolean(command.isAsync());
+		writeString(out, command.getRunType());
+		writeString(out, command.getWorkingDirectoryType().getName());
+		writeString(out, (command.getWorkingDirectoryPath() != null) ? command.getWorkingDirectoryPath()
+				.toPortableString() : null);
+	}
+
+	private void writeMarkers(DataOutputStream out, Map<ScopeSelector, RubyRegexp> markers) throws IOException
+	{
+		out.writeInt(markers.size());
+
+		for (Map.Entry<ScopeSelector, RubyRegexp> entry : markers.entrySet())
+		{
+			RubyRegexp regexp = entry.getValue();
+
+			writeString(out, entry.getKey().toString());
+			writeString(out, regexp.source().toString());
+			out.writeInt(regexp.getOptions().toEmbeddedOptions());
+		}
+	}
+
+	private void writeProperties(DataOutputStream out, Map<String, Object> properties) throws IOException
+	{
+		out.writeInt((properties != null) ? properties.size() : -1);
+
+		if (properties != null)
+		{
+			for (Map.Entry<String, Object> entry : properties.entrySet())
+			{
+				writeString(out, entry.getKey());
+				writeValue(out, entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Writes a property value. Only the Java values the properties are set to from the scripts can be written, the
+	 * Ruby objects have to be created by running the scripts.
+	 */
+	private void writeValue(DataOutputStream out, Object value) throws IOException
+	{
+		if (value == null)
+		{
+			out.writeByte(NULL);
+		}
+		else if (value instanceof IRubyObject)
+		{
+			throw new NotSerializableException(value.getClass().getName());
+		}
+		else if (value instanceof String)
+		{
+			out.writeByte(STRING);
+			writeString(out, (String) value);
+		}
+		else if (value instanceof String[])
+		{
+			String[] strings = (String[]) value;
+
+			out.writeByte(STRING_ARRAY);
+			out.writeInt(strings.length);
+
+			for (String string : strings)
+			{
+				writeString(out, string);
+			}
+		}
+		else if (value instanceof Object[])
+		{
+			Object[] values = (Object[]) value;
+
+			out.writeByte(OBJECT_ARRAY);
+			out.writeInt(values.length);
+
+			for (Object item : values)
+			{
+				writeValue(out, item);
+			}
+		}
+		else if (value instanceof List)
+		{
+			List<?> values = (List<?>) value;
+
+			out.writeByte(LIST);
+			out.writeInt(values.size());
+
+			for (Object item : values)
+			{
+				writeValue(out, item);
+			}
+		}
+		else if (value instanceof Map)
+		{
+			Map<?, ?> values = (Map<?, ?>) value;
+
+			out.writeByte(MAP);
+			out.writeInt(values.size());
+
+			for (Map.Entry<?, ?> entry : values.entrySet())
+			{
+				writeValue(out, entry.getKey());
+				writeValue(out, entry.getValue());
+			}
+		}
+		else if (value instanceof Boolean)
+		{
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		}
+		else if (value instanceof Integer)
+		{
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) value);
+		}
+		else if (value instanceof Long)
+		{
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		}
+		else if (value instanceof Double)
+		{
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		}
+		else
+		{
+			throw new NotSerializableException(value.getClass().getName());
+		}
+	}
+
+	private static void writeStringMap(DataOutputStream out, Map<String, String> map) throws IOException
+	{
+		out.writeInt(map.size());
+
+		for (Map.Entry<String, String> entry : map.entrySet())
+		{
+			writeString(out, entry.getKey());
+			writeString(out, entry.getValue());
+		}
+	}
+
+	private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException
+	{
+		out.writeInt((strings != null) ? strings.size() : -1);
+
+		if (strings != null)
+		{
+			for (String string : strings)
+			{
+				writeString(out, string);
+			}
+		}
+	}
+
+	/**
+	 * Writes a string of any length, unlike {@link DataOutputStream#writeUTF(String)}, or null.
+	 */
+	private static void writeString(DataOutputStream out, String string) throws IOException
+	{
+		if (string == null)
+		{
+			out.writeInt(-1);
+		}
+		else
+		{
+			byte[] bytes = string.getBytes(IOUtil.UTF_8);
+
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException
+	{
+		int length = in.readInt();
+
+		if (length < 0)
+		{
+			return null;
+		}
+
+		byte[] bytes = new byte[length];
+
+		in.readFully(bytes);
+
+		return new String(bytes, IOUtil.UTF_8);
+	}
+
+	private static List<String> readStrings(DataInputStream in) throws IOException
+	{
+		int size = in.readInt();
+
+		if (size < 0)
+		{
+			return null;
+		}
+
+		List<String> result = new ArrayList<String>(size);
+
+		for (int i = 0; i < size; i++)
+		{
+			result.add(readString(in));
+		}
+
+		return result;
+	}
+
+	private static Map<String, String> readStringMap(DataInputStream in) throws IOException
+	{
+		int size = in.readInt();
+		Map<String, String> result = new HashMap<String, String>(size);
+
+		for (int i = 0; i < size; i++)
+		{
+			result.put(readString(in), readString(in));
+		}
+
+		return result;
+	}
+
+	private static byte getKind(AbstractBundleElement element) throws NotSerializableException
+	{
+		// the exact types, a subclass may have more to save
+		Class<?> type = element.getClass();
+
+		if (type == BuildPathElement.class)
+		{
+			return BUILD_PATH;
+		}
+		if (type == CommandElement.class)
+		{
+			return COMMAND;
+		}
+		if (type == ContentAssistElement.class)
+		{
+			return CONTENT_ASSIST;
+		}
+		if (type == EnvironmentElement.class)
+		{
+			return ENVIRONMENT;
+		}
+		if (type == MenuElement.class)
+		{
+			return MENU;
+		}
+		if (type == ProjectSampleElement.class)
+		{
+			return PROJECT_SAMPLE;
+		}
+		if (type == ProjectTemplateElement.class)
+		{
+			return PROJECT_TEMPLATE;
+		}
+		if (type == SmartTypingPairsElement.class)
+		{
+			return SMART_TYPING_PAIRS;
+		}
+		if (type == SnippetElement.class)
+		{
+			return SNIPPET;
+		}
+		if (type == SnippetCategoryElement.class)
+		{
+			return SNIPPET_CATEGORY;
+		}
+		if (type == TemplateElement.class)
+		{
+			return TEMPLATE;
+		}
+
+		throw new NotSerializableException(type.getName());
+	}
+
+	private static void close(java.io.Closeable stream)
+	{
+		if (stream != null)
+		{
+			try
+			{
+				stream.close();
+			}
+			catch (IOException e)
+			{
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Reads a snapshot, remembering the elements it creates, since they register themselves by path.
+	 */
+	private class Reader
+	{
+		private final List<AbstractElement> elements = new ArrayList<AbstractElement>();
+		private final Map<String, List<String>> libraries = new HashMap<String, List<String>>();
+		private Ruby runtime;
+
+		/**
+		 * Unregisters the elements read so far.
+		 */
+		private void dispose()
+		{
+			for (AbstractElement element : elements)
+			{
+				AbstractElement.unregisterElement(element);
+			}
+
+			elements.clear();
+		}
+
+		private boolean readHeader(DataInputStream in, File bundleDirectory) throws IOException
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+			{
+				manager.showBundleLoadInfo("Bundle cache has a different version: " + bundleDirectory); //$NON-NLS-1$
+				return false;
+			}
+
+			if (!getPluginVersion().equals(readString(in)) || !Locale.getDefault().toString().equals(readString(in))
+					|| !bundleDirectory.getAbsolutePath().equals(readString(in)))
+			{
+				manager.showBundleLoadInfo("Bundle cache is for another version, locale or directory: " //$NON-NLS-1$
+						+ bundleDirectory);
+				return false;
+			}
+
+			return true;
+		}
+
+		/**
+		 * Reads the files the bundles were loaded from, and checks that they haven't changed.
+		 */
+		private boolean readDependencies(DataInputStream in, File bundleDirectory, List<File> scripts, SubMonitor sub)
+				throws IOException
+		{
+			Set<String> paths = new HashSet<String>();
+			int count = in.readInt();
+
+			if (count != scripts.size())
+			{
+				manager.showBundleLoadInfo(MessageFormat.format(Messages.BundleCacher_OutOfDateCacheMsg,
+						bundleDirectory));
+				return false;
+			}
+
+			for (int i = 0; i < count; i++)
+			{
+				String path = readString(in);
+
+				// the scripts have to be the same, in the same order
+				if (!path.equals(scripts.get(i).getAbsolutePath()) || !readFile(in, path, bundleDirectory, sub))
+				{
+					return false;
+				}
+			}
+
+			count = in.readInt();
+
+			for (int i = 0; i < count; i++)
+			{
+				String path = readString(in);
+
+				if (!readFile(in, path, bundleDirectory, sub))
+				{
+					return false;
+				}
+
+				paths.add(path);
+			}
+
+			// a localization file may have been added
+			for (File file : manager.localizationFiles(bundleDirectory))
+			{
+				if (!paths.contains(file.getAbsolutePath()))
+				{
+					manager.showBundleLoadInfo(MessageFormat.format(Messages.BundleCacher_OutOfDateCacheMsg, file));
+					return false;
+				}
+			}
+
+			count = in.readInt();
+
+			for (int i = 0; i < count; i++)
+			{
+				libraries.put(readString(in), readStrings(in));
+			}
+
+			return true;
+		}
+
+		private boolean readFile(DataInputStream in, String path, File bundleDirectory, SubMonitor sub)
+				throws IOException
+		{
+			long lastModified = in.readLong();
+			long length = in.readLong();
+			File file = new File(path);
+
+			sub.subTask(MessageFormat.format(Messages.BundleCacher_ComparingTimestampSubTaskName, path));
+
+			if (!file.exists())
+			{
+				manager.showBundleLoadInfo(MessageFormat.format(Messages.BundleCacher_FileReferencedInCacheMissingMsg,
+						path, bundleDirectory));
+				return false;
+			}
+
+			if (file.lastModified() != lastModified || file.length() != length)
+			{
+				manager.showBundleLoadInfo(MessageFormat.format(Messages.BundleCacher_OutOfDateCacheMsg, path));
+				return false;
+			}
+
+			return true;
+		}
+
+		private BundleElement readBundle(DataInputStream in) throws IOException
+		{
+			BundleElement bundle = new BundleElement(readString(in));
+
+			elements.add(bundle);
+			bundle.setDisplayName(readString(in));
+			bundle.setCustomProperties(readProperties(in));
+
+			bundle.setAuthor(readString(in));
+			bundle.setCopyright(readString(in));
+			bundle.setDescription(readString(in));
+			bundle.setLicense(readString(in));
+			bundle.setLicenseUrl(readString(in));
+			bundle.setRepository(readString(in));
+
+			bundle.setFileTypes(readStrings(in));
+
+			Map<String, String> fileTypeRegistry = readStringMap(in);
+
+			if (!fileTypeRegistry.isEmpty())
+			{
+				bundle.setFileTypeRegistry(fileTypeRegistry);
+			}
+
+			bundle.setFoldingStartMarkers(readMarkers(in));
+			bundle.setFoldingStopMarkers(readMarkers(in));
+			bundle.setIncreaseIndentMarkers(readMarkers(in));
+			bundle.setDecreaseIndentMarkers(readMarkers(in));
+
+			int count = in.readInt();
+
+			for (int i = 0; i < count; i++)
+			{
+				bundle.addChild(readElement(in));
+			}
+
+			return bundle;
+		}
+
+		private AbstractBundleElement readElement(DataInputStream in) throws IOException
+		{
+			byte kind = in.readByte();
+			String path = readString(in);
+			AbstractBundleElement element;
+
+			switch (kind)
+			{
+				case BUILD_PATH:
+					element = new BuildPathElement(path);
+					break;
+
+				case COMMAND:
+					element = new CommandElement(path);
+					break;
+
+				case CONTENT_ASSIST:
+					element = new ContentAssistElement(path);
+					break;
+
+				case ENVIRONMENT:
+					element = new EnvironmentElement(path);
+					break;
+
+				case MENU:
+					element = new MenuElement(path);
+					break;
+
+				case PROJECT_SAMPLE:
+					element = new ProjectSampleElement(path);
+					break;
+
+				case PROJECT_TEMPLATE:
+					element = new ProjectTemplateElement(path);
+					break;
+
+				case SMART_TYPING_PAIRS:
+					element = new SmartTypingPairsElement(path);
+					break;
+
+				case SNIPPET:
+					element = new SnippetElement(path);
+					break;
+
+				case SNIPPET_CATEGORY:
+					element = new SnippetCategoryElement(path);
+					break;
+
+				case TEMPLATE:
+					element = new TemplateElement(path);
+					break;
+
+				default:
+					throw new IOException("Unknown element kind: " + kind); //$NON-NLS-1$
+			}
+
+			elements.add(element);
+			element.setDisplayName(readString(in));
+			element.setScope(readString(in));
+			element.setCustomProperties(readProperties(in));
+
+			switch (kind)
+			{
+				case BUILD_PATH:
+					((BuildPathElement) element).setBuildPath(readString(in));
+					break;
+
+				case COMMAND:
+				case CONTENT_ASSIST:
+					readCommand(in, (CommandElement) element);
+					break;
+
+				case ENVIRONMENT:
+					if (in.readBoolean())
+					{
+						((EnvironmentElement) element).setInvokeBlockPending();
+					}
+					break;
+
+				case MENU:
+					MenuElement menu = (MenuElement) element;
+
+					menu.setCommandName(readString(in));
+
+					int count = in.readInt();
+
+					for (int i = 0; i < count; i++)
+					{
+						menu.addMenu((MenuElement) readElement(in));
+					}
+					break;
+
+				case PROJECT_SAMPLE:
+					ProjectSampleElement sample = (ProjectSampleElement) element;
+
+					sample.setId(readString(in));
+					sample.setCategory(readString(in));
+					sample.setLocation(readString(in));
+					sample.setDescription(readString(in));
+					sample.setNatures((String[]) readValue(in));
+					sample.setIcon(readStringMap(in));
+					break;
+
+				case PROJECT_TEMPLATE:
+					ProjectTemplateElement template = (ProjectTemplateElement) element;
+
+					template.setType(readString(in));
+					template.setLocation(readString(in));
+					template.setDescription(readString(in));
+					template.setId(readString(in));
+					template.setIcon(readString(in));
+					template.setPriority(in.readInt());
+					template.setTags(readStrings(in));
+					break;
+
+				case SMART_TYPING_PAIRS:
+					int size = in.readInt();
+
+					if (size >= 0)
+					{
+						List<Character> pairs = new ArrayList<Character>(size);
+
+						for (int i = 0; i < size; i++)
+						{
+							pairs.add(in.readChar());
+						}
+
+						((SmartTypingPairsElement) element).setPairs(pairs);
+					}
+					break;
+
+				case SNIPPET:
+					SnippetElement snippet = (SnippetElement) element;
+
+					readCommand(in, snippet);
+					snippet.setExpansion(readString(in));
+					snippet.setCategory(readString(in));
+					snippet.setTags(readStrings(in));
+					snippet.setIconPath(readString(in));
+					snippet.setDescription(readString(in));
+					break;
+
+				case SNIPPET_CATEGORY:
+					((SnippetCategoryElement) element).setIconPath(readString(in));
+					break;
+
+				case TEMPLATE:
+					readCommand(in, (TemplateElement) element);
+					((TemplateElement) element).setFiletype(readString(in));
+					break;
+
+				default:
+					break;
+			}
+
+			return element;
+		}
+
+		private void readCommand(DataInputStream in, CommandElement command) throws IOException
+		{
+			int count = in.readInt();
+
+			for (int i = 0; i < count; i++)
+			{
+				command.setInvoke(readString(in), readString(in));
+			}
+
+			count = in.readInt();
+
+			for (int i = 0; i < count; i++)
+			{
+				command.setInvokeBlockPending(Platform.get(readString(in)));
+			}
+
+			count = in.readInt();
+
+			for (int i = 0; i < count; i++)
+			{
+				String platform = readString(in);
+				List<String> keyBindings = readStrings(in);
+
+				command.setKeyBindings(platform, keyBindings.toArray(new String[keyBindings.size()]));
+			}
+
+			count = in.readInt();
+
+			String[] inputTypes = new String[count];
+
+			for (int i = 0; i < count; i++)
+			{
+				inputTypes[i] = readString(in);
+			}
+
+			command.setInputType(inputTypes);
+			command.setInputPath(readString(in));
+			command.setOutputType(readString(in));
+			command.setOutputPath(readString(in));
+			command.setAsync(in.readBoolean());
+			command.setRunType(readString(in));
+			command.setWorkingDirectoryType(readString(in));
+
+			String workingDirectoryPath = readString(in);
+
+			if (workingDirectoryPath != null)
+			{
+				command.setWorkingDirectoryPath(Path.fromPortableString(workingDirectoryPath));
+			}
+		}
+
+		private Map<ScopeSelector, RubyRegexp> readMarkers(DataInputStream in) throws IOException
+		{
+			int size = in.readInt();
+
+			if (size == 0)
+			{
+				return null;
+			}
+
+			if (runtime == null)
+			{
+				// creates the runtime the scripts are run in if it doesn't exist yet, but doesn't run anything
+				runtime = ScriptingEngine.getInstance().getScriptingContainer().getProvider().getRuntime();
+			}
+
+			Map<ScopeSelector, RubyRegexp> result = new HashMap<ScopeSelector, RubyRegexp>(size);
+
+			for (int i = 0; i < size; i++)
+			{
+				ScopeSelector selector = new ScopeSelector(readString(in));
+				String source = readString(in);
+				int options = in.readInt();
+
+				result.put(selector, RubyRegexp.newRegexp(runtime, source, RegexpOptions.fromEmbeddedOptions(options)));
+			}
+
+			return result;
+		}
+
+		private Map<String, Object> readProperties(DataInputStream in) throws IOException
+		{
+			int size = in.readInt();
+
+			if (size < 0)
+			{
+				return null;
+			}
+
+			Map<String, Object> result = new HashMap<String, Object>(size);
+
+			for (int i = 0; i < size; i++)
+			{
+				result.put(readString(in), readValue(in));
+			}
+
+			return result;
+		}
+
+		private Object readValue(DataInputStream in) throws IOException
+		{
+			byte type = in.readByte();
+
+			switch (type)
+			{
+				case NULL:
+					return null;
+
+				case STRING:
+					return readString(in);
+
+				case STRING_ARRAY:
+					String[] strings = new String[in.readInt()];
+
+					for (int i = 0; i < strings.length; i++)
+					{
+						strings[i] = readString(in);
+					}
+
+					return strings;
+
+				case OBJECT_ARRAY:
+					Object[] values = new Object[in.readInt()];
+
+					for (int i = 0; i < values.length; i++)
+					{
+						values[i] = readValue(in);
+					}
+
+					return values;
+
+				case LIST:
+					int size = in.readInt();
+					List<Object> list = new ArrayList<Object>(size);
+
+					for (int i = 0; i < size; i++)
+					{
+						list.add(readValue(in));
+					}
+
+					return list;
+
+				case MAP:
+					int count = in.readInt();
+					Map<Object, Object> map = new HashMap<Object, Object>(count);
+
+					for (int i = 0; i < count; i++)
+					{
+						map.put(readValue(in), readValue(in));
+					}
+
+					return map;
+
+				case BOOLEAN:
+					return in.readBoolean();
+
+				case INTEGER:
+					return in.readInt();
+
+				case LONG:
+					return in.readLong();
+
+				case DOUBLE:
+					return in.readDouble();
+
+				default:
+					throw new IOException("Unknown property value type: " + type); //$NON-NLS-1$
+			}
+		}
+	}
+}
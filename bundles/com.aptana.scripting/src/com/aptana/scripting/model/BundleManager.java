@@ -18,6 +18,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -37,7 +38,9 @@ import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.jobs.ISchedulingRule;
 import org.eclipse.core.runtime.jobs.Job;
+import org.jruby.Ruby;
 import org.jruby.RubyRegexp;
+import org.jruby.embed.ScriptingContainer;
 import org.osgi.framework.Bundle;
 
 import com.aptana.core.logging.IdeLog;
@@ -56,6 +59,7 @@ import com.aptana.scripting.ScriptingActivator;
 import com.aptana.scripting.ScriptingEngine;
 import com.aptana.scripting.model.filters.AndFilter;
 import com.aptana.scripting.model.filters.IModelFilter;
+import com.aptana.scripting.model.filters.ScopeFilter;
 import com.aptana.scripting.model.filters.IsExecutableCommandFilter;
 
 public class BundleManager
@@ -66,6 +70,11 @@ public class BundleManager
 	 */
 	private static final String STUDIO_BUNDLE_LOAD_CONCURRENCY = "studio.bundleLoadConcurrency"; //$NON-NLS-1$
 
+	/**
+	 * The system property to set to false for the bundles loaded in parallel to share a single JRuby runtime.
+	 */
+	private static final String STUDIO_BUNDLE_LOAD_RUNTIMES = "studio.bundleLoadRuntimes"; //$NON-NLS-1$
+
 	private static final String APPLICATION_BUNDLE_PATHS_ID = "applicationBundlePaths"; //$NON-NLS-1$
 	private static final String TAG_BUNDLE_PATH = "bundlePath"; //$NON-NLS-1$
 	private static final String ATTR_PATH = "path"; //$NON-NLS-1$
@@ -80,32 +89,48 @@ public class BundleManager
 
 		private File bundleDirectory;
 
-		BundleLoadJob(File bundleDirectory)
+		/**
+		 * The slot the job runs in among those loading bundles in parallel, which decides the runtime its scripts run
+		 * in
+		 */
+		private int slot;
+
+		BundleLoadJob(File bundleDirectory, int slot)
 		{
 			super("Loading bundle: " + bundleDirectory.getAbsolutePath()); //$NON-NLS-1$
 
 			this.bundleDirectory = bundleDirectory;
+			this.slot = slot;
 
 			setPriority(Job.SHORT);
 		}
 
 		public IStatus run(IProgressMonitor monitor)
 		{
+			long start = System.currentTimeMillis();
+			boolean cached = false;
 			List<File> bundleScripts = getBundleScripts(bundleDirectory);
-			SubMonitor sub = SubMonitor.convert(monitor, bundleScripts.size() + 1);
+			SubMonitor sub = SubMonitor.convert(monitor, bundleScripts.size() + 2);
 			try
 			{
+				if (useCache() && _bundleCacher.load(bundleDirectory, bundleScripts, sub.newChild(1)))
+				{
+					cached = true;
+					return Status.OK_STATUS;
+				}
+
 				if (bundleScripts.size() > 0)
 				{
 					showBundleLoadInfo("cached failed, loading files directly: " + bundleDirectory); //$NON-NLS-1$
 
 					List<String> bundleLoadPaths = getBundleLoadPaths(bundleDirectory);
+					ScriptingContainer container = getBundleLoadContainer(slot);
 
 					// first script is always bundle.rb, so go ahead
 					// and process that
 					File bundleScript = bundleScripts.get(0);
 					sub.subTask(bundleScript.getAbsolutePath());
-					loadScript(bundleScript, true, bundleLoadPaths);
+					loadScript(bundleScript, true, bundleLoadPaths, container);
 					sub.worked(1);
 
 					// some new scripts may have come in while we were
@@ -126,15 +151,21 @@ public class BundleManager
 						for (File script : bundleScripts)
 						{
 							sub.subTask(script.getAbsolutePath());
-							loadScript(script, true, bundleLoadPaths);
+							loadScript(script, true, bundleLoadPaths, container);
 							sub.worked(1);
 						}
 					}
+
+					if (useCache())
+					{
+						_bundleCacher.cache(bundleDirectory);
+					}
 				}
 			}
 			finally
 			{
 				sub.done();
+				recordBundleLoadTime(bundleDirectory, System.currentTimeMillis() - start, cached);
 			}
 			return Status.OK_STATUS;
 		}
@@ -417,6 +448,16 @@ public class BundleManager
 	private List<ElementVisibilityListener> _elementVisibilityListeners;
 	private List<LoadCycleListener> _loadCycleListeners;
 
+	/**
+	 * The visible elements indexed by scope, for the lookups filtering on scopes.
+	 */
+	private ScopedElementRegistry _scopedElements;
+
+	/**
+	 * Saves the bundles loaded from each bundle directory, and restores them on the next startups.
+	 */
+	private BundleCacher _bundleCacher;
+
 	/**
 	 * This is a pool to reduce duplicated string values eating up RAM. This happens most often with paths (like say in
 	 * MenuElements)
@@ -429,6 +470,17 @@ public class BundleManager
 	 */
 	private int fBundlesToLoadInParallel = -1;
 
+	/**
+	 * The containers the scripts of the bundles loaded in parallel run in, by slot. The first slot uses the shared
+	 * container of the scripting engine, so it has none here.
+	 */
+	private Map<Integer, ScriptingContainer> _bundleLoadContainers;
+
+	/**
+	 * How long each bundle directory took to load since the last reset, in milliseconds, in the order they finished
+	 */
+	private Map<File, Long> _bundleLoadTimes;
+
 	/**
 	 * Create a new instance of BundleManager and initialize its internal structure. Note that this constructor is
 	 * private so it can only be instantiated within a static method in this class
@@ -446,6 +498,15 @@ public class BundleManager
 		this._bundleVisibilityListeners = new ArrayList<BundleVisibilityListener>();
 		this._elementVisibilityListeners = new ArrayList<ElementVisibilityListener>();
 		this._loadCycleListeners = new ArrayList<LoadCycleListener>();
+
+		this._scopedElements = new ScopedElementRegistry(this);
+		this.addElementVisibilityListener(this._scopedElements);
+		this.addLoadCycleListener(this._scopedElements);
+
+		this._bundleCacher = new BundleCacher(this);
+
+		this._bundleLoadContainers = new HashMap<Integer, ScriptingContainer>();
+		this._bundleLoadTimes = new LinkedHashMap<File, Long>();
 	}
 
 	/**
@@ -490,6 +551,9 @@ public class BundleManager
 					entry.addBundle(bundle);
 				}
 			}
+
+			// the visibility events fired before a new entry was stored
+			this._scopedElements.invalidate();
 		}
 	}
 
@@ -930,6 +994,43 @@ public class BundleManager
 		return Collections.emptyList();
 	}
 
+	/**
+	 * Return all the bundle elements defined within the specified directory, the last one being the bundle element
+	 * returned by {@link #getBundleFromPath(File)}
+	 * 
+	 * @param bundleDirectory
+	 *            A bundle directory
+	 * @return A copy of the list of bundle elements, empty if none is defined
+	 */
+	List<BundleElement> getBundlesInDirectory(File bundleDirectory)
+	{
+		File key = bundleDirectory.getAbsoluteFile();
+
+		synchronized (this._bundlesByPath)
+		{
+			if (this._bundlesByPath.containsKey(key))
+			{
+				return new ArrayList<BundleElement>(this._bundlesByPath.get(key));
+			}
+		}
+
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Return how long each bundle directory took to load since the last reset, whether from its scripts or from the
+	 * bundle cache, in milliseconds. The directories are in the order they finished loading
+	 * 
+	 * @return A copy of the load times by bundle directory
+	 */
+	public Map<File, Long> getBundleLoadTimes()
+	{
+		synchronized (this._bundleLoadTimes)
+		{
+			return new LinkedHashMap<File, Long>(this._bundleLoadTimes);
+		}
+	}
+
 	/**
 	 * Find the bundle element contained within the specified directory
 	 * 
@@ -1278,6 +1379,12 @@ public class BundleManager
 	 */
 	public List<CommandElement> getCommands(IModelFilter filter)
 	{
+		ScopeFilter scopeFilter = ScopedElementRegistry.getScopeFilter(filter);
+		if (scopeFilter != null)
+		{
+			return this._scopedElements.commands.getElements(filter, scopeFilter);
+		}
+
 		List<CommandElement> result = new ArrayList<CommandElement>();
 
 		for (String name : this.getBundleNames())
@@ -1299,6 +1406,12 @@ public class BundleManager
 	 */
 	public List<ContentAssistElement> getContentAssists(IModelFilter filter)
 	{
+		ScopeFilter scopeFilter = ScopedElementRegistry.getScopeFilter(filter);
+		if (scopeFilter != null)
+		{
+			return this._scopedElements.contentAssists.getElements(filter, scopeFilter);
+		}
+
 		List<ContentAssistElement> result = new ArrayList<ContentAssistElement>();
 
 		for (String name : this.getBundleNames())
@@ -1359,6 +1472,12 @@ public class BundleManager
 	 */
 	public List<EnvironmentElement> getEnvs(IModelFilter filter)
 	{
+		ScopeFilter scopeFilter = ScopedElementRegistry.getScopeFilter(filter);
+		if (scopeFilter != null)
+		{
+			return this._scopedElements.envs.getElements(filter, scopeFilter);
+		}
+
 		List<EnvironmentElement> result = new ArrayList<EnvironmentElement>();
 
 		for (String name : this.getBundleNames())
@@ -1490,6 +1609,12 @@ public class BundleManager
 	 */
 	public List<MenuElement> getMenus(IModelFilter filter)
 	{
+		ScopeFilter scopeFilter = ScopedElementRegistry.getScopeFilter(filter);
+		if (scopeFilter != null)
+		{
+			return this._scopedElements.menus.getElements(filter, scopeFilter);
+		}
+
 		List<MenuElement> result = new ArrayList<MenuElement>();
 
 		for (String name : this.getBundleNames())
@@ -1511,6 +1636,12 @@ public class BundleManager
 	 */
 	public List<SmartTypingPairsElement> getPairs(IModelFilter filter)
 	{
+		ScopeFilter scopeFilter = ScopedElementRegistry.getScopeFilter(filter);
+		if (scopeFilter != null)
+		{
+			return this._scopedElements.pairs.getElements(filter, scopeFilter);
+		}
+
 		List<SmartTypingPairsElement> result = new ArrayList<SmartTypingPairsElement>();
 
 		for (String name : this.getBundleNames())
@@ -1578,6 +1709,12 @@ public class BundleManager
 	 */
 	public List<SnippetElement> getSnippets(IModelFilter filter)
 	{
+		ScopeFilter scopeFilter = ScopedElementRegistry.getScopeFilter(filter);
+		if (scopeFilter != null)
+		{
+			return this._scopedElements.snippets.getElements(filter, scopeFilter);
+		}
+
 		List<SnippetElement> result = new ArrayList<SnippetElement>();
 
 		for (String name : this.getBundleNames())
@@ -1599,6 +1736,12 @@ public class BundleManager
 	 */
 	public List<SnippetCategoryElement> getSnippetCategories(IModelFilter filter)
 	{
+		ScopeFilter scopeFilter = ScopedElementRegistry.getScopeFilter(filter);
+		if (scopeFilter != null)
+		{
+			return this._scopedElements.snippetCategories.getElements(filter, scopeFilter);
+		}
+
 		List<SnippetCategoryElement> result = new ArrayList<SnippetCategoryElement>();
 
 		for (String name : this.getBundleNames())
@@ -1816,12 +1959,11 @@ public class BundleManager
 	 */
 	public void loadBundle(File bundleDirectory, boolean wait)
 	{
-		BundleLoadJob job = new BundleLoadJob(bundleDirectory);
-
 		// If we're running and not testing, schedule in parallel but limit how many run in parallel based on processor
 		// count
 		if (!EclipseUtil.isTesting() && Platform.isRunning())
 		{
+			BundleLoadJob job = new BundleLoadJob(bundleDirectory, counter);
 			job.setRule(new SerialPerObjectRule(counter++));
 
 			if (counter >= maxBundlesToLoadInParallel())
@@ -1846,8 +1988,45 @@ public class BundleManager
 		else
 		{
 			// We're already running inline, so don't need to ever "wait"
-			job.run(new NullProgressMonitor());
+			new BundleLoadJob(bundleDirectory, 0).run(new NullProgressMonitor());
+		}
+	}
+
+	/**
+	 * Return the container to run the scripts of the bundles loaded in a slot in, or null for the shared container.
+	 * The first slot uses the shared container, the others get a runtime of their own so that their scripts don't wait
+	 * on each other. The jobs in the same slot never run concurrently (see {@link SerialPerObjectRule}), so each
+	 * container only runs one script at a time.
+	 * 
+	 * @param slot
+	 * @return
+	 */
+	private ScriptingContainer getBundleLoadContainer(int slot)
+	{
+		if (slot == 0 || !Boolean.valueOf(System.getProperty(STUDIO_BUNDLE_LOAD_RUNTIMES, Boolean.TRUE.toString())))
+		{
+			return null;
+		}
+
+		ScriptingContainer container;
+
+		synchronized (this._bundleLoadContainers)
+		{
+			container = this._bundleLoadContainers.get(slot);
 		}
+
+		if (container == null)
+		{
+			// create it outside of the lock, the other slots may be creating theirs too
+			container = getScriptingEngine().createBundleLoadContainer();
+
+			synchronized (this._bundleLoadContainers)
+			{
+				this._bundleLoadContainers.put(slot, container);
+			}
+		}
+
+		return container;
 	}
 
 	/**
@@ -1975,6 +2154,23 @@ public class BundleManager
 	 *            A list of paths for ruby to use to locate libraries when executing the script
 	 */
 	public void loadScript(File script, boolean fireEvent, List<String> loadPaths)
+	{
+		this.loadScript(script, fireEvent, loadPaths, null);
+	}
+
+	/**
+	 * Process the specified script in the specified container, possibly firing a script-load load cycle event
+	 * 
+	 * @param script
+	 *            The script to load
+	 * @param fireEvent
+	 *            A flag indicating if load cycle events should be fired
+	 * @param loadPaths
+	 *            A list of paths for ruby to use to locate libraries when executing the script
+	 * @param container
+	 *            The container to run the script in, or null for the shared container of the scripting engine
+	 */
+	void loadScript(File script, boolean fireEvent, List<String> loadPaths, ScriptingContainer container)
 	{
 		if (script == null)
 		{
@@ -1990,7 +2186,14 @@ public class BundleManager
 		}
 
 		this.showBundleLoadInfo(MessageFormat.format("Loading script: {0}, fire event={1}", script, fireEvent)); //$NON-NLS-1$
-		getScriptingEngine().runScript(script.getAbsolutePath(), loadPaths);
+		if (container != null)
+		{
+			getScriptingEngine().runScript(script.getAbsolutePath(), loadPaths, container);
+		}
+		else
+		{
+			getScriptingEngine().runScript(script.getAbsolutePath(), loadPaths);
+		}
 		this.showBundleLoadInfo(MessageFormat.format("Loading complete: {0}", script)); //$NON-NLS-1$
 
 		if (fireEvent)
@@ -2113,6 +2316,8 @@ public class BundleManager
 			}
 
 			AbstractElement.unregisterElement(bundle);
+
+			this._scopedElements.invalidate();
 		}
 	}
 
@@ -2175,6 +2380,85 @@ public class BundleManager
 		{
 			this._entriesByName.clear();
 		}
+
+		synchronized (this._bundleLoadTimes)
+		{
+			this._bundleLoadTimes.clear();
+		}
+
+		// bundles loaded from now on start from fresh runtimes, without the scripts and requires of the previous ones
+		for (ScriptingContainer container : removeBundleLoadContainers())
+		{
+			Ruby runtime = container.getProvider().getRuntime();
+			boolean inUse = false;
+
+			for (AbstractElement element : AbstractElement.getRegisteredElements())
+			{
+				if (element.usesRuntime(runtime))
+				{
+					inUse = true;
+					break;
+				}
+			}
+
+			// a container whose blocks are still referenced is left for the garbage collector
+			if (!inUse)
+			{
+				container.terminate();
+			}
+		}
+
+		this._scopedElements.invalidate();
+	}
+
+	/**
+	 * Release the runtimes the bundles were loaded in. Called when the scripting plugin stops.
+	 */
+	public void dispose()
+	{
+		for (ScriptingContainer container : removeBundleLoadContainers())
+		{
+			container.terminate();
+		}
+	}
+
+	/**
+	 * Remove all the containers of the bundle load slots, so that new ones are created for the next loads
+	 * 
+	 * @return The containers removed
+	 */
+	private List<ScriptingContainer> removeBundleLoadContainers()
+	{
+		synchronized (this._bundleLoadContainers)
+		{
+			List<ScriptingContainer> result = new ArrayList<ScriptingContainer>(this._bundleLoadContainers.values());
+
+			this._bundleLoadContainers.clear();
+
+			return result;
+		}
+	}
+
+	/**
+	 * Delete the cached versions of all bundles, so that they are loaded from their scripts the next time
+	 */
+	void clearBundleCache()
+	{
+		this._bundleCacher.clear();
+	}
+
+	/**
+	 * Return the element defined by the script of an element that was loaded from the bundle cache. Blocks are not
+	 * cached, so the script is loaded again the first time one of its elements needs a block.
+	 * 
+	 * @param element
+	 *            An element restored from the bundle cache
+	 * @return The element of the same type and name loaded from the script, or null if the script doesn't define it
+	 *         anymore
+	 */
+	<T extends AbstractBundleElement> T materialize(T element)
+	{
+		return this._bundleCacher.materialize(element);
 	}
 
 	/**
@@ -2187,6 +2471,27 @@ public class BundleManager
 		System.setProperty(USE_BUNDLE_CACHE, Boolean.toString(value));
 	}
 
+	/**
+	 * Record and report how long a bundle directory took to load
+	 * 
+	 * @param bundleDirectory
+	 * @param time
+	 *            The load time, in milliseconds
+	 * @param cached
+	 *            A flag indicating if the bundle was loaded from the bundle cache
+	 */
+	private void recordBundleLoadTime(File bundleDirectory, long time, boolean cached)
+	{
+		synchronized (this._bundleLoadTimes)
+		{
+			this._bundleLoadTimes.put(bundleDirectory, time);
+		}
+
+		String message = MessageFormat.format("Loaded bundle {0} in {1}ms", bundleDirectory, time); //$NON-NLS-1$
+
+		this.showBundleLoadInfo(cached ? message + " from cache" : message); //$NON-NLS-1$
+	}
+
 	/**
 	 * Show bundle load info
 	 * 
@@ -2309,13 +2614,23 @@ public class BundleManager
 	}
 
 	/**
-	 * Determine if bundle caching is turned on or off
+	 * Determine if bundle caching is turned on or off. It's off by default when running tests, so that they load the
+	 * bundles they check from their scripts
 	 * 
 	 * @return
 	 */
 	public boolean useCache()
 	{
-		return Boolean.valueOf(System.getProperty(USE_BUNDLE_CACHE, Boolean.TRUE.toString()));
+		return Boolean.valueOf(System.getProperty(USE_BUNDLE_CACHE, Boolean.toString(!EclipseUtil.isTesting())));
+	}
+
+	/**
+	 * Called when the scope of an element changes after it was added to its bundle, so that lookups by scope don't
+	 * use its previous scope.
+	 */
+	void elementScopeChanged()
+	{
+		this._scopedElements.invalidate();
 	}
 
 	/**
@@ -112,15 +112,30 @@ public class CommandBlockRunner extends AbstractCommandRunner
 			hash.putAll(this.getContributedEnvironment());
 
 			// Grab all the matching env objects contributed via bundles that have scope matching!
-			IModelFilter filter = new ScopeFilter((String) hash.get("TM_CURRENT_SCOPE")); //$NON-NLS-1$
+			String scope = (String) hash.get("TM_CURRENT_SCOPE"); //$NON-NLS-1$
+			IModelFilter filter = new ScopeFilter(scope);
 			List<EnvironmentElement> envs = BundleManager.getInstance().getEnvs(filter);
-			ScopeSelector.sort(envs);
+			ScopeSelector.sort(envs, scope);
 			for (EnvironmentElement e : envs)
 			{
 				RubyProc invoke = e.getInvokeBlock();
 				if (invoke != null)
 				{
-					invoke.call(runtime.getCurrentContext(), new IRubyObject[] { hash });
+					Ruby envRuntime = invoke.getRuntime();
+					if (envRuntime == runtime)
+					{
+						invoke.call(runtime.getCurrentContext(), new IRubyObject[] { hash });
+					}
+					else
+					{
+						// the environment's bundle was loaded in another runtime, give it a copy of the hash from its
+						// own runtime and bring back what it sets. Its runtime isn't locked, the block only touches
+						// the copy and locking it while holding ours could deadlock with a command running there
+						RubyHash copy = RubyHash.newHash(envRuntime);
+						copy.putAll(hash);
+						invoke.call(envRuntime.getCurrentContext(), new IRubyObject[] { copy });
+						hash.putAll(copy);
+					}
 				}
 			}
 		}
@@ -29,7 +29,6 @@ import com.aptana.core.util.SourcePrinter;
 import com.aptana.scripting.ScriptLogger;
 import com.aptana.scripting.ScriptUtils;
 import com.aptana.scripting.ScriptingActivator;
-import com.aptana.scripting.ScriptingEngine;
 
 public class CommandElement extends AbstractBundleElement
 {
@@ -38,6 +37,8 @@ public class CommandElement extends AbstractBundleElement
 		String getInvoke();
 
 		RubyProc getInvokeBlock();
+
+		boolean isBlock();
 	}
 
 	private static final class Invoke implements InvokeUnion
@@ -59,6 +60,11 @@ public class CommandElement extends AbstractBundleElement
 			return null;
 		}
 
+		public boolean isBlock()
+		{
+			return false;
+		}
+
 		public String toString()
 		{
 			return "invoke= " + _invoke; //$NON-NLS-1$
@@ -84,6 +90,40 @@ public class CommandElement extends AbstractBundleElement
 			return this._invokeBlock;
 		}
 
+		public boolean isBlock()
+		{
+			return this._invokeBlock != null;
+		}
+
+		public String toString()
+		{
+			return "invoke <block>"; //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * A block of a command restored from the bundle cache, which is only loaded from the script defining the command
+	 * when it's needed.
+	 */
+	private final class PendingInvokeBlock implements InvokeUnion
+	{
+		public String getInvoke()
+		{
+			return null;
+		}
+
+		public RubyProc getInvokeBlock()
+		{
+			materializeInvokeBlocks();
+
+			return CommandElement.this.getInvokeUnion().getInvokeBlock();
+		}
+
+		public boolean isBlock()
+		{
+			return true;
+		}
+
 		public String toString()
 		{
 			return "invoke <block>"; //$NON-NLS-1$
@@ -102,6 +142,11 @@ public class CommandElement extends AbstractBundleElement
 			return null;
 		}
 
+		public boolean isBlock()
+		{
+			return false;
+		}
+
 		public String toString()
 		{
 			return ""; //$NON-NLS-1$
@@ -122,6 +167,7 @@ public class CommandElement extends AbstractBundleElement
 	private boolean _async;
 	private RunType _runType;
 	private Ruby _runtime;
+	private boolean _invokeBlocksPending;
 
 	private IPath _workingDirectoryPath;
 	private WorkingDirectoryType _workingDirectoryType;
@@ -373,6 +419,76 @@ public class CommandElement extends AbstractBundleElement
 		return this.getInvokeUnion().getInvokeBlock();
 	}
 
+	/**
+	 * Returns the platforms for which the command is a block, for the bundle cache
+	 * 
+	 * @return
+	 */
+	List<Platform> getInvokeBlockPlatforms()
+	{
+		List<Platform> result = new ArrayList<Platform>();
+
+		if (this._invokeUnionMap != null)
+		{
+			for (Map.Entry<Platform, InvokeUnion> entry : this._invokeUnionMap.entrySet())
+			{
+				if (entry.getValue().isBlock())
+				{
+					result.add(entry.getKey());
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.scripting.model.AbstractElement#usesRuntime(org.jruby.Ruby)
+	 */
+	@Override
+	boolean usesRuntime(Ruby runtime)
+	{
+		if (this._invokeUnionMap != null)
+		{
+			for (InvokeUnion invokeUnion : this._invokeUnionMap.values())
+			{
+				// only look at the blocks already loaded, a pending block isn't in any runtime yet
+				if (invokeUnion instanceof InvokeBlock && invokeUnion.isBlock()
+						&& invokeUnion.getInvokeBlock().getRuntime() == runtime)
+				{
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the shell commands by platform, for the bundle cache. The platforms for which the command is a block
+	 * aren't included.
+	 * 
+	 * @return
+	 */
+	Map<Platform, String> getInvokes()
+	{
+		Map<Platform, String> result = new HashMap<Platform, String>();
+
+		if (this._invokeUnionMap != null)
+		{
+			for (Map.Entry<Platform, InvokeUnion> entry : this._invokeUnionMap.entrySet())
+			{
+				if (!entry.getValue().isBlock())
+				{
+					result.put(entry.getKey(), entry.getValue().getInvoke());
+				}
+			}
+		}
+
+		return result;
+	}
+
 	/**
 	 * getKeyBinding
 	 * 
@@ -458,6 +574,11 @@ public class CommandElement extends AbstractBundleElement
 	 */
 	public Ruby getRuntime()
 	{
+		if (this._invokeBlocksPending)
+		{
+			this.materializeInvokeBlocks();
+		}
+
 		return this._runtime;
 	}
 
@@ -538,6 +659,26 @@ public class CommandElement extends AbstractBundleElement
 		return this._workingDirectoryType;
 	}
 
+	/**
+	 * Returns the working directory path as it was set, for the bundle cache
+	 * 
+	 * @return
+	 */
+	IPath getWorkingDirectoryPath()
+	{
+		return this._workingDirectoryPath;
+	}
+
+	/**
+	 * hasPendingInvokeBlocks
+	 * 
+	 * @return true if the command was restored from the bundle cache and its blocks haven't been loaded yet
+	 */
+	boolean hasPendingInvokeBlocks()
+	{
+		return this._invokeBlocksPending;
+	}
+
 	/**
 	 * isAsync
 	 * 
@@ -555,7 +696,7 @@ public class CommandElement extends AbstractBundleElement
 	 */
 	public boolean isBlockCommand()
 	{
-		return (this.getInvokeUnion().getInvokeBlock() != null);
+		return this.getInvokeUnion().isBlock();
 	}
 
 	/**
@@ -565,7 +706,7 @@ public class CommandElement extends AbstractBundleElement
 	 */
 	public boolean isExecutable()
 	{
-		return ((this.getInvoke() != null && this.getInvoke().length() > 0) || this.getInvokeBlock() != null);
+		return ((this.getInvoke() != null && this.getInvoke().length() > 0) || this.isBlockCommand());
 	}
 
 	/**
@@ -575,7 +716,43 @@ public class CommandElement extends AbstractBundleElement
 	 */
 	public boolean isShellCommand()
 	{
-		return (this.getInvokeBlock() == null && this.getInvoke() != null && this.getInvoke().length() > 0);
+		return (!this.isBlockCommand() && this.getInvoke() != null && this.getInvoke().length() > 0);
+	}
+
+	/**
+	 * Loads the blocks of a command restored from the bundle cache. The script defining the command is loaded again,
+	 * and the blocks and runtime of the command it defines are used from then on.
+	 */
+	private synchronized void materializeInvokeBlocks()
+	{
+		if (!this._invokeBlocksPending)
+		{
+			return;
+		}
+
+		CommandElement definition = BundleManager.getInstance().materialize(this);
+
+		if (definition != null)
+		{
+			this._invokeUnionMap = (definition._invokeUnionMap != null) ? new HashMap<Platform, InvokeUnion>(
+					definition._invokeUnionMap) : null;
+			this._runtime = definition._runtime;
+
+			// loading the script again replaced this element in its bundle, keep it usable for those holding on to it
+			if (this.owningBundle == null)
+			{
+				this.owningBundle = definition.getOwningBundle();
+			}
+		}
+		else
+		{
+			for (Platform platform : this.getInvokeBlockPlatforms())
+			{
+				this._invokeUnionMap.remove(platform);
+			}
+		}
+
+		this._invokeBlocksPending = false;
 	}
 
 	/**
@@ -606,8 +783,8 @@ public class CommandElement extends AbstractBundleElement
 
 				if (rubyObject.respondsTo(TO_ENV_METHOD_NAME))
 				{
-					Ruby runtime = ScriptingEngine.getInstance().getInitializedScriptingContainer().getProvider()
-							.getRuntime();
+					// bundles may be loaded in runtimes of their own, call the object in the one it comes from
+					Ruby runtime = rubyObject.getRuntime();
 					ThreadContext threadContext = runtime.getCurrentContext();
 
 					try
@@ -870,6 +1047,23 @@ public class CommandElement extends AbstractBundleElement
 		this.setRuntime((block != null) ? block.getRuntime() : null);
 	}
 
+	/**
+	 * Marks the command as a block for a platform, the block being loaded from the script defining the command when
+	 * it's first needed. This is used for commands restored from the bundle cache.
+	 * 
+	 * @param platform
+	 */
+	void setInvokeBlockPending(Platform platform)
+	{
+		if (this._invokeUnionMap == null)
+		{
+			this._invokeUnionMap = new HashMap<Platform, InvokeUnion>(1);
+		}
+
+		this._invokeUnionMap.put(platform, new PendingInvokeBlock());
+		this._invokeBlocksPending = true;
+	}
+
 	/**
 	 * setKeyBinding
 	 * 
@@ -7,6 +7,7 @@
  */
 package com.aptana.scripting.model;
 
+import org.jruby.Ruby;
 import org.jruby.RubyProc;
 
 import com.aptana.core.util.SourcePrinter;
@@ -14,6 +15,7 @@ import com.aptana.core.util.SourcePrinter;
 public class EnvironmentElement extends AbstractBundleElement
 {
 	private RubyProc _invokeBlock;
+	private boolean _invokeBlockPending;
 
 	/**
 	 * EnvironmentElement
@@ -42,9 +44,54 @@ public class EnvironmentElement extends AbstractBundleElement
 	 */
 	public RubyProc getInvokeBlock()
 	{
+		if (_invokeBlockPending)
+		{
+			materializeInvokeBlock();
+		}
+
 		return _invokeBlock;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.scripting.model.AbstractElement#usesRuntime(org.jruby.Ruby)
+	 */
+	@Override
+	boolean usesRuntime(Ruby runtime)
+	{
+		RubyProc invokeBlock = _invokeBlock;
+
+		return invokeBlock != null && invokeBlock.getRuntime() == runtime;
+	}
+
+	/**
+	 * hasInvokeBlock
+	 * 
+	 * @return true if the environment has a block, whether it's been loaded or not
+	 */
+	boolean hasInvokeBlock()
+	{
+		return _invokeBlockPending || _invokeBlock != null;
+	}
+
+	/**
+	 * Loads the block of an environment restored from the bundle cache, from the script defining the environment.
+	 */
+	private synchronized void materializeInvokeBlock()
+	{
+		if (_invokeBlockPending)
+		{
+			EnvironmentElement definition = BundleManager.getInstance().materialize(this);
+
+			if (definition != null)
+			{
+				_invokeBlock = definition.getInvokeBlock();
+			}
+
+			_invokeBlockPending = false;
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.scripting.model.AbstractElement#printBody(com.aptana.core.util.SourcePrinter)
@@ -72,5 +119,15 @@ public class EnvironmentElement extends AbstractBundleElement
 	public void setInvokeBlock(RubyProc block)
 	{
 		this._invokeBlock = block;
+		this._invokeBlockPending = false;
+	}
+
+	/**
+	 * Marks the environment as having a block, which is loaded from the script defining the environment when it's
+	 * first needed. This is used for environments restored from the bundle cache.
+	 */
+	void setInvokeBlockPending()
+	{
+		this._invokeBlockPending = true;
 	}
 }
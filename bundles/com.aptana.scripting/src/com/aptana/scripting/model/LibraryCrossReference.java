@@ -71,6 +71,29 @@ public class LibraryCrossReference
 		return result;
 	}
 	
+	/**
+	 * getLibrariesFromPath
+	 * 
+	 * @param scriptPath
+	 * @return
+	 */
+	public String[] getLibrariesFromPath(String scriptPath)
+	{
+		String[] result = NO_STRINGS;
+		
+		synchronized (LIBS_BY_PATH)
+		{
+			Set<String> libs = LIBS_BY_PATH.get(scriptPath);
+			
+			if (libs != null)
+			{
+				result = libs.toArray(new String[libs.size()]);
+			}
+		}
+		
+		return result;
+	}
+	
 	/**
 	 * hasLibrary
 	 * 
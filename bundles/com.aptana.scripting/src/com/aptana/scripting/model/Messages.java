@@ -14,9 +14,10 @@ public class Messages extends NLS
 	private static final String BUNDLE_NAME = "com.aptana.scripting.model.messages"; //$NON-NLS-1$
 
 	public static String BundleCacher_ComparingTimestampSubTaskName;
+	public static String BundleCacher_DefinitionNotFoundMsg;
 	public static String BundleCacher_FileReferencedInCacheMissingMsg;
 	public static String BundleCacher_LoadCacheTaskName;
-	public static String BundleCacher_LoadingYAMLError;
+	public static String BundleCacher_LoadingCacheError;
 	public static String BundleCacher_OutOfDateCacheMsg;
 	public static String BundleCacher_SerializationExceptionDeletingCacheFile;
 
@@ -0,0 +1,378 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.scripting.model;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import com.aptana.core.epl.util.LRUCache;
+import com.aptana.core.util.CollectionsUtil;
+import com.aptana.scope.IScopeSelector;
+import com.aptana.scope.ScopeSelectorIndex;
+import com.aptana.scripting.model.filters.AndFilter;
+import com.aptana.scripting.model.filters.IModelFilter;
+import com.aptana.scripting.model.filters.ScopeFilter;
+
+/**
+ * The visible elements of each type, with their scope selectors compiled so that the elements matching a scope are
+ * found without evaluating every selector, and remembered for the latest scopes. Lookups by scope happen on most
+ * keystrokes (snippet triggers, smart typing pairs), while the elements only change when bundles are loaded, so
+ * everything is computed again lazily after any load cycle or visibility event.
+ */
+/* package */class ScopedElementRegistry implements LoadCycleListener, ElementVisibilityListener
+{
+
+	/**
+	 * How many scopes the matching elements of each type are remembered for.
+	 */
+	private static final int CACHE_SIZE = 500;
+
+	final ScopedElements<CommandElement> commands;
+	final ScopedElements<ContentAssistElement> contentAssists;
+	final ScopedElements<EnvironmentElement> envs;
+	final ScopedElements<MenuElement> menus;
+	final ScopedElements<SmartTypingPairsElement> pairs;
+	final ScopedElements<SnippetElement> snippets;
+	final ScopedElements<SnippetCategoryElement> snippetCategories;
+
+	private final List<ScopedElements<?>> all = new ArrayList<ScopedElements<?>>();
+
+	/**
+	 * ScopedElementRegistry
+	 * 
+	 * @param manager
+	 */
+	ScopedElementRegistry(final BundleManager manager)
+	{
+		commands = add(new ScopedElements<CommandElement>()
+		{
+			@Override
+			protected List<CommandElement> getAllElements()
+			{
+				List<CommandElement> result = new ArrayList<CommandElement>();
+				for (String name : manager.getBundleNames())
+				{
+					result.addAll(manager.getBundleCommands(name));
+				}
+				return result;
+			}
+		});
+		contentAssists = add(new ScopedElements<ContentAssistElement>()
+		{
+			@Override
+			protected List<ContentAssistElement> getAllElements()
+			{
+				List<ContentAssistElement> result = new ArrayList<ContentAssistElement>();
+				for (String name : manager.getBundleNames())
+				{
+					result.addAll(manager.getBundleContentAssists(name));
+				}
+				return result;
+			}
+		});
+		envs = add(new ScopedElements<EnvironmentElement>()
+		{
+			@Override
+			protected List<EnvironmentElement> getAllElements()
+			{
+				List<EnvironmentElement> result = new ArrayList<EnvironmentElement>();
+				for (String name : manager.getBundleNames())
+				{
+					result.addAll(manager.getBundleEnvs(name));
+				}
+				return result;
+			}
+		});
+		menus = add(new ScopedElements<MenuElement>()
+		{
+			@Override
+			protected List<MenuElement> getAllElements()
+			{
+				List<MenuElement> result = new ArrayList<MenuElement>();
+				for (String name : manager.getBundleNames())
+				{
+					result.addAll(manager.getBundleMenus(name));
+				}
+				return result;
+			}
+		});
+		pairs = add(new ScopedElements<SmartTypingPairsElement>()
+		{
+			@Override
+			protected List<SmartTypingPairsElement> getAllElements()
+			{
+				List<SmartTypingPairsElement> result = new ArrayList<SmartTypingPairsElement>();
+				for (String name : manager.getBundleNames())
+				{
+					result.addAll(manager.getBundlePairs(name));
+				}
+				return result;
+			}
+		});
+		snippets = add(new ScopedElements<SnippetElement>()
+		{
+			@Override
+			protected List<SnippetElement> getAllElements()
+			{
+				List<SnippetElement> result = new ArrayList<SnippetElement>();
+				for (String name : manager.getBundleNames())
+				{
+					result.addAll(manager.getBundleSnippets(name));
+				}
+				return result;
+			}
+		});
+		snippetCategories = add(new ScopedElements<SnippetCategoryElement>()
+		{
+			@Override
+			protected List<SnippetCategoryElement> getAllElements()
+			{
+				List<SnippetCategoryElement> result = new ArrayList<SnippetCategoryElement>();
+				for (String name : manager.getBundleNames())
+				{
+					result.addAll(manager.getBundleSnippetCategories(name));
+				}
+				return result;
+			}
+		});
+	}
+
+	private <T extends AbstractBundleElement> ScopedElements<T> add(ScopedElements<T> elements)
+	{
+		all.add(elements);
+		return elements;
+	}
+
+	/**
+	 * Forgets the elements of all types, they'll be gathered again on the next lookup.
+	 */
+	void invalidate()
+	{
+		for (ScopedElements<?> elements : all)
+		{
+			elements.invalidate();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.scripting.model.ElementVisibilityListener#elementBecameHidden(com.aptana.scripting.model.
+	 * AbstractElement)
+	 */
+	public void elementBecameHidden(AbstractElement element)
+	{
+		invalidate();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.scripting.model.ElementVisibilityListener#elementBecameVisible(com.aptana.scripting.model.
+	 * AbstractElement)
+	 */
+	public void elementBecameVisible(AbstractElement element)
+	{
+		invalidate();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.scripting.model.LoadCycleListener#scriptLoaded(java.io.File)
+	 */
+	public void scriptLoaded(File script)
+	{
+		invalidate();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.scripting.model.LoadCycleListener#scriptReloaded(java.io.File)
+	 */
+	public void scriptReloaded(File script)
+	{
+		invalidate();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.scripting.model.LoadCycleListener#scriptUnloaded(java.io.File)
+	 */
+	public void scriptUnloaded(File script)
+	{
+		invalidate();
+	}
+
+	/**
+	 * Returns the scope filter that the elements have to pass for the filter to include them, or null if there's none
+	 * that can be looked up in the registry. Scope filters are found in and filters too.
+	 * 
+	 * @param filter
+	 * @return
+	 */
+	static ScopeFilter getScopeFilter(IModelFilter filter)
+	{
+		if (filter instanceof ScopeFilter)
+		{
+			String[] scopes = ((ScopeFilter) filter).getScopes();
+			if (scopes == null)
+			{
+				return null;
+			}
+			for (String scope : scopes)
+			{
+				if (scope == null)
+				{
+					return null;
+				}
+			}
+			return (ScopeFilter) filter;
+		}
+		if (filter instanceof AndFilter)
+		{
+			for (IModelFilter child : ((AndFilter) filter).getFilters())
+			{
+				ScopeFilter scopeFilter = getScopeFilter(child);
+				if (scopeFilter != null)
+				{
+					return scopeFilter;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns what's left of a filter once a scope filter it contains is taken out, or null if nothing is.
+	 */
+	private static IModelFilter remove(IModelFilter filter, ScopeFilter scopeFilter)
+	{
+		if (filter == scopeFilter)
+		{
+			return null;
+		}
+		if (filter instanceof AndFilter)
+		{
+			AndFilter result = new AndFilter();
+			for (IModelFilter child : ((AndFilter) filter).getFilters())
+			{
+				result.addFilter(remove(child, scopeFilter));
+			}
+			return (result.getFilters().length == 0) ? null : result;
+		}
+		return filter;
+	}
+
+	/**
+	 * The visible elements of a type.
+	 */
+	abstract static class ScopedElements<T extends AbstractBundleElement>
+	{
+		private volatile Snapshot<T> snapshot;
+		private int generation;
+
+		/**
+		 * Returns the visible elements of the type, in all the bundles.
+		 * 
+		 * @return
+		 */
+		protected abstract List<T> getAllElements();
+
+		/**
+		 * Returns the visible elements that pass a filter, when the filter contains a scope filter.
+		 * 
+		 * @param filter
+		 * @param scopeFilter
+		 *            the scope filter found in the filter
+		 * @return
+		 */
+		List<T> getElements(IModelFilter filter, ScopeFilter scopeFilter)
+		{
+			Snapshot<T> current = snapshot;
+			if (current == null)
+			{
+				int expected;
+				synchronized (this)
+				{
+					expected = generation;
+				}
+				// gather the elements outside of the lock, the bundle manager locks its own collections
+				current = new Snapshot<T>(getAllElements());
+				synchronized (this)
+				{
+					// unless the elements changed meanwhile, the next lookups can use them
+					if (generation == expected)
+					{
+						snapshot = current;
+					}
+				}
+			}
+
+			List<T> matches = current.getMatches(scopeFilter.getScopes());
+			IModelFilter rest = remove(filter, scopeFilter);
+			if (rest == null)
+			{
+				return matches;
+			}
+			List<T> result = new ArrayList<T>(matches.size());
+			CollectionsUtil.filter(matches, result, rest);
+			return result;
+		}
+
+		synchronized void invalidate()
+		{
+			++generation;
+			snapshot = null;
+		}
+	}
+
+	/**
+	 * The elements of a type at some point, with their selectors compiled.
+	 */
+	private static final class Snapshot<T extends AbstractBundleElement>
+	{
+		private final List<T> elements;
+		private final ScopeSelectorIndex index;
+		private final LRUCache<String, BitSet> matchesByScope = new LRUCache<String, BitSet>(CACHE_SIZE);
+
+		private Snapshot(List<T> elements)
+		{
+			this.elements = elements;
+			List<IScopeSelector> selectors = new ArrayList<IScopeSelector>(elements.size());
+			for (T element : elements)
+			{
+				selectors.add(element.getScopeSelector());
+			}
+			this.index = new ScopeSelectorIndex(selectors);
+		}
+
+		private List<T> getMatches(String[] scopes)
+		{
+			BitSet matches = new BitSet();
+			synchronized (matchesByScope)
+			{
+				for (String scope : scopes)
+				{
+					BitSet scopeMatches = matchesByScope.get(scope);
+					if (scopeMatches == null)
+					{
+						scopeMatches = index.getMatchIndices(scope);
+						matchesByScope.put(scope, scopeMatches);
+					}
+					matches.or(scopeMatches);
+				}
+			}
+			List<T> result = new ArrayList<T>(matches.cardinality());
+			for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1))
+			{
+				result.add(elements.get(i));
+			}
+			return result;
+		}
+	}
+}
@@ -31,6 +31,7 @@ public class ScriptLoadJob extends AbstractScriptRunner
 {
 	private String _filename;
 	private Object _returnValue;
+	private ScriptingContainer _container;
 
 	/**
 	 * ExecuteScriptJob
@@ -57,6 +58,21 @@ public class ScriptLoadJob extends AbstractScriptRunner
 		this._filename = filename;
 	}
 
+	/**
+	 * ExecuteScriptJob
+	 * 
+	 * @param filename
+	 * @param loadPaths
+	 * @param container
+	 *            The container to run the script in, instead of the shared one
+	 */
+	public ScriptLoadJob(String filename, List<String> loadPaths, ScriptingContainer container)
+	{
+		this(filename, loadPaths);
+
+		this._container = container;
+	}
+
 	/**
 	 * getReturnValue
 	 * 
@@ -73,7 +89,8 @@ public class ScriptLoadJob extends AbstractScriptRunner
 	 */
 	protected IStatus run(IProgressMonitor monitor)
 	{
-		ScriptingContainer container = ScriptingEngine.getInstance().getInitializedScriptingContainer();
+		ScriptingContainer container = (this._container != null) ? this._container : ScriptingEngine.getInstance()
+				.getInitializedScriptingContainer();
 		Ruby runtime = container.getProvider().getRuntime();
 		Object result = null;
 
@@ -45,6 +45,8 @@ public final class Messages extends NLS
 	 */
 	public static String Synchronizer_CreatedDirectory;
 
+	public static String Synchronizer_Destination_Changed;
+
 	public static String Synchronizer_Destination_Newer;
 
 	public static String Synchronizer_Directory;
@@ -83,6 +85,8 @@ public final class Messages extends NLS
 	 */
 	public static String Synchronizer_ErrorRetrievingCRC;
 
+	public static String Synchronizer_ErrorSavingManifest;
+
 	/**
 	 * Synchronizer_FileNotContained
 	 */
@@ -105,6 +109,10 @@ public final class Messages extends NLS
 
 	public static String Synchronizer_Items_Identical;
 
+	public static String Synchronizer_Listed_Destination;
+
+	public static String Synchronizer_Listed_Source;
+
 	public static String Synchronizer_Listing_Complete;
 
 	/**
@@ -114,6 +122,8 @@ public final class Messages extends NLS
 
 	public static String Synchronizer_Skipping_File;
 
+	public static String Synchronizer_Source_Changed;
+
 	public static String Synchronizer_Source_Newer;
 
 	/**
@@ -125,6 +135,10 @@ public final class Messages extends NLS
 
 	public static String Synchronizer_Times_Modified;
 
+	public static String Synchronizer_Transferred;
+
+	public static String Synchronizer_Unchanged_Since_Last_Sync;
+
 	/**
 	 * Synchronizer_Uploading
 	 */
@@ -0,0 +1,314 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.ide.syncing.core.old;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.eclipse.core.filesystem.IFileInfo;
+
+import com.aptana.core.util.StringUtil;
+import com.aptana.ide.core.io.IConnectionPoint;
+import com.aptana.ide.syncing.core.SyncingPlugin;
+
+/**
+ * What the files of a pair of connection points looked like when they were last synced: for each file, the size and
+ * modification time on both sides, and the CRC of its contents when known. Paths are relative to the root of the
+ * source connection point. The file ends with the CRC of what precedes it, a manifest that doesn't match it is dropped.
+ * <p>
+ * A file whose listing data still matches on both sides hasn't changed since, so it doesn't need to be compared, and
+ * when only one side changed it's the newer one whatever the clocks say. The CRC is computed while the file is
+ * transferred, so comparing CRCs doesn't need to download the side that didn't change.
+ * <p>
+ * This isn't thread-safe, it's only used by the synchronizing thread.
+ */
+public final class SyncManifest
+{
+	/**
+	 * The CRC of an entry whose contents weren't checksummed.
+	 */
+	public static final long UNKNOWN_CRC = -1;
+
+	private static final int MAGIC = 0x53594d31; // "SYM1"
+	private static final int VERSION = 2;
+	private static final String DIRECTORY = "manifests"; //$NON-NLS-1$
+	private static final String EXTENSION = ".manifest"; //$NON-NLS-1$
+
+	/**
+	 * A file as it was last synced.
+	 */
+	static final class Entry
+	{
+		final long clientLength;
+		final long clientModified;
+		final long serverLength;
+		final long serverModified;
+		final long crc;
+
+		private Entry(long clientLength, long clientModified, long serverLength, long serverModified, long crc)
+		{
+			this.clientLength = clientLength;
+			this.clientModified = clientModified;
+			this.serverLength = serverLength;
+			this.serverModified = serverModified;
+			this.crc = crc;
+		}
+
+		/**
+		 * Whether the client file still has the size and modification time it was synced with.
+		 */
+		boolean matchesClient(IFileInfo info)
+		{
+			return info.getLength() == clientLength && info.getLastModified() == clientModified;
+		}
+
+		/**
+		 * Whether the server file still has the size and modification time it was synced with.
+		 */
+		boolean matchesServer(IFileInfo info)
+		{
+			return info.getLength() == serverLength && info.getLastModified() == serverModified;
+		}
+
+		boolean hasCRC()
+		{
+			return crc != UNKNOWN_CRC;
+		}
+	}
+
+	private final File file;
+	private final String key;
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	private boolean dirty;
+
+	/**
+	 * Returns the manifest of the given connection points, read from the plugin's state location.
+	 * 
+	 * @param source
+	 * @param destination
+	 * @param destinationPath
+	 *            the path of the folder synced to in the destination point, files synced to other folders have
+	 *            manifests of their own
+	 * @return
+	 */
+	public static SyncManifest load(IConnectionPoint source, IConnectionPoint destination, String destinationPath)
+	{
+		String key = source.getRootURI() + " -> " + destination.getRootURI() + '/' + destinationPath; //$NON-NLS-1$
+		File dir = SyncingPlugin.getDefault().getStateLocation().append(DIRECTORY).toFile();
+		SyncManifest manifest = new SyncManifest(new File(dir, StringUtil.md5(key) + EXTENSION), key);
+		manifest.read();
+		return manifest;
+	}
+
+	SyncManifest(File file, String key)
+	{
+		this.file = file;
+		this.key = key;
+	}
+
+	/**
+	 * Returns the entry of a file, or null if it wasn't synced.
+	 * 
+	 * @param path
+	 * @return
+	 */
+	Entry get(String path)
+	{
+		return entries.get(path);
+	}
+
+	/**
+	 * Records a file as synced.
+	 * 
+	 * @param path
+	 * @param clientInfo
+	 * @param serverInfo
+	 * @param crc
+	 *            the CRC of its contents, or {@link #UNKNOWN_CRC}
+	 */
+	void put(String path, IFileInfo clientInfo, IFileInfo serverInfo, long crc)
+	{
+		entries.put(path, new Entry(clientInfo.getLength(), clientInfo.getLastModified(), serverInfo.getLength(),
+				serverInfo.getLastModified(), crc));
+		dirty = true;
+	}
+
+	/**
+	 * Forgets a file.
+	 * 
+	 * @param path
+	 */
+	void remove(String path)
+	{
+		if (entries.remove(path) != null)
+		{
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Forgets the files under a directory that aren't in the given set, i.e. that were deleted since.
+	 * 
+	 * @param prefix
+	 *            the path of the directory, or an empty string for the root
+	 * @param paths
+	 *            the paths of the files still there
+	 */
+	void retain(String prefix, Set<String> paths)
+	{
+		String dirPrefix = (prefix.length() == 0) ? prefix : prefix + '/';
+		for (Iterator<String> i = entries.keySet().iterator(); i.hasNext();)
+		{
+			String path = i.next();
+			if (path.startsWith(dirPrefix) && !paths.contains(path))
+			{
+				i.remove();
+				dirty = true;
+			}
+		}
+	}
+
+	/**
+	 * Forgets all the files, so that the next sync compares them all.
+	 */
+	public void clear()
+	{
+		if (!entries.isEmpty())
+		{
+			entries.clear();
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Returns the number of files recorded.
+	 * 
+	 * @return
+	 */
+	public int size()
+	{
+		return entries.size();
+	}
+
+	/**
+	 * Writes the manifest back, if it changed.
+	 * 
+	 * @throws IOException
+	 */
+	public void save() throws IOException
+	{
+		if (!dirty)
+		{
+			return;
+		}
+		File dir = file.getParentFile();
+		if (!dir.isDirectory() && !dir.mkdirs())
+		{
+			throw new IOException("Unable to create " + dir); //$NON-NLS-1$
+		}
+
+		// write to a temporary file first so a crash never leaves half of it
+		File tmp = new File(dir, file.getName() + ".tmp"); //$NON-NLS-1$
+		CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)),
+				new CRC32());
+		DataOutputStream out = new DataOutputStream(checked);
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(key);
+			out.writeInt(entries.size());
+			for (Map.Entry<String, Entry> mapEntry : entries.entrySet())
+			{
+				Entry entry = mapEntry.getValue();
+				out.writeUTF(mapEntry.getKey());
+				out.writeLong(entry.clientLength);
+				out.writeLong(entry.clientModified);
+				out.writeLong(entry.serverLength);
+				out.writeLong(entry.serverModified);
+				out.writeLong(entry.crc);
+			}
+			out.writeLong(checked.getChecksum().getValue());
+		}
+		finally
+		{
+			out.close();
+		}
+		if (file.exists() && !file.delete() || !tmp.renameTo(file))
+		{
+			tmp.delete();
+			throw new IOException("Unable to write " + file); //$NON-NLS-1$
+		}
+		dirty = false;
+	}
+
+	/**
+	 * Reads the entries, if there's a manifest and it's ours. A corrupt one is dropped, it's only an optimization.
+	 */
+	void read()
+	{
+		if (!file.isFile())
+		{
+			return;
+		}
+		DataInputStream in = null;
+		try
+		{
+			CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)),
+					new CRC32());
+			in = new DataInputStream(checked);
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || !key.equals(in.readUTF()))
+			{
+				return;
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++)
+			{
+				String path = in.readUTF();
+				entries.put(path, new Entry(in.readLong(), in.readLong(), in.readLong(), in.readLong(), in.readLong()));
+			}
+			long crc = checked.getChecksum().getValue();
+			if (in.readLong() != crc)
+			{
+				throw new IOException("Checksum mismatch in " + file); //$NON-NLS-1$
+			}
+		}
+		catch (IOException e)
+		{
+			entries.clear();
+			file.delete();
+		}
+		finally
+		{
+			if (in != null)
+			{
+				try
+				{
+					in.close();
+				}
+				catch (IOException e) // $codepro.audit.disable emptyCatchClause
+				{
+					// ignore
+				}
+			}
+		}
+	}
+}
@@ -15,6 +15,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -32,13 +33,19 @@ import org.eclipse.core.runtime.SubMonitor;
 
 import com.aptana.core.io.efs.EFSUtils;
 import com.aptana.core.io.efs.SyncUtils;
+import com.aptana.core.io.vfs.BaseConnectionFileManager;
+import com.aptana.core.io.vfs.FileTreeCrawler;
+import com.aptana.core.io.vfs.IConnectionFileManager;
 import com.aptana.core.io.vfs.IExtendedFileInfo;
 import com.aptana.core.io.vfs.IExtendedFileStore;
 import com.aptana.core.io.vfs.Policy;
+import com.aptana.core.io.vfs.TransferScheduler;
 import com.aptana.core.logging.IdeLog;
 import com.aptana.core.util.FileUtil;
 import com.aptana.filewatcher.FileWatcher;
 import com.aptana.ide.core.io.IConnectionPoint;
+import com.aptana.ide.core.io.LocalConnectionPoint;
+import com.aptana.ide.core.io.WorkspaceConnectionPoint;
 import com.aptana.ide.core.io.preferences.PermissionDirection;
 import com.aptana.ide.core.io.preferences.PreferenceUtils;
 import com.aptana.ide.syncing.core.SyncingPlugin;
@@ -58,6 +65,7 @@ public class Synchronizer implements ILoggable
 	private boolean _useCRC;
 	private boolean _includeCloakedFiles = false;
 	private long _timeTolerance;
+	private boolean _useManifest;
 
 	private int _clientDirectoryCreatedCount;
 	private int _clientDirectoryDeletedCount;
@@ -75,6 +83,16 @@ public class Synchronizer implements ILoggable
 	private ISyncEventHandler _eventHandler;
 	private ILogger logger;
 
+	/**
+	 * The manifest of the connection points being synced, null if not used.
+	 */
+	private SyncManifest _manifest;
+
+	/**
+	 * The path of the client root in its connection point, which the paths of the manifest start with.
+	 */
+	private String _manifestPrefix;
+
 	private List<IFileStore> _newFilesDownloaded;
 	private List<IFileStore> _newFilesUploaded;
 
@@ -329,9 +347,11 @@ public class Synchronizer implements ILoggable
 		setServerFileManager(serverPoint);
 		setClientFileRoot(client);
 		setServerFileRoot(server);
+		loadManifest(clientPoint, serverPoint, client, server);
 
 		IFileStore[] clientFiles = new IFileStore[0];
 		IFileStore[] serverFiles = new IFileStore[0];
+		VirtualFileSyncPair[] syncItems = null;
 		IFileInfo clientInfo = client.fetchInfo();
 		if (!clientInfo.exists())
 		{
@@ -362,20 +382,18 @@ public class Synchronizer implements ILoggable
 			}
 			else
 			{
-				// get the complete file listings for the client and server
+				// get the complete file listings for the client and server, both at once, comparing the files as they
+				// come in
 				log(FileUtil.NEW_LINE);
 				log(MessageFormat.format(Messages.Synchronizer_Gathering_Source, new Object[] { client.toString() }));
-
-				long start = System.currentTimeMillis();
-				clientFiles = EFSUtils.getFiles(client, true, _includeCloakedFiles, monitor);
-				log(MessageFormat.format(Messages.Synchronizer_Completed, System.currentTimeMillis() - start));
-
-				start = System.currentTimeMillis();
-				log(FileUtil.NEW_LINE);
 				log(MessageFormat.format(Messages.Synchronizer_Gathering_Destination,
 						new Object[] { server.toString() }));
-				serverFiles = EFSUtils.getFiles(server, true, _includeCloakedFiles, monitor);
-				log(MessageFormat.format(Messages.Synchronizer_Completed, System.currentTimeMillis() - start));
+
+				syncItems = crawlSyncItems(client, server, monitor);
+				if (syncItems == null)
+				{
+					return null;
+				}
 
 				log(FileUtil.NEW_LINE);
 				log(Messages.Synchronizer_Listing_Complete);
@@ -392,7 +410,65 @@ public class Synchronizer implements ILoggable
 			return null;
 		}
 
-		return createSyncItems(clientFiles, serverFiles, monitor);
+		if (syncItems == null)
+		{
+			syncItems = createSyncItems(clientFiles, serverFiles, monitor);
+		}
+		// what matched is recorded for the next time
+		saveManifest();
+		return syncItems;
+	}
+
+	/**
+	 * Lists the client and the server trees at the same time, each on a thread of its own, pairing and comparing the
+	 * files as they're listed.
+	 * 
+	 * @param client
+	 * @param server
+	 * @param monitor
+	 * @return the sync items, or null if the sync was stopped
+	 * @throws CoreException
+	 */
+	private VirtualFileSyncPair[] crawlSyncItems(IFileStore client, IFileStore server, IProgressMonitor monitor)
+			throws CoreException
+	{
+		log(FileUtil.NEW_LINE + Messages.Synchronizer_Generating_Comparison);
+
+		// reset statistics and clear lists
+		this.reset();
+
+		final IProgressMonitor progress = Policy.monitorFor(monitor);
+
+		final SyncItemsBuilder builder = new SyncItemsBuilder();
+		final long start = System.currentTimeMillis();
+		FileTreeCrawler crawler = new FileTreeCrawler(true, _includeCloakedFiles);
+		crawler.crawl(new IFileStore[] { client, server }, new FileTreeCrawler.IVisitor()
+		{
+			public boolean visit(int root, IFileStore file, IFileInfo info) throws CoreException
+			{
+				if (root == 0)
+				{
+					return builder.addClientFile(file, info, progress);
+				}
+				return builder.addServerFile(file, info, progress);
+			}
+
+			public void rootDone(int root)
+			{
+				log(MessageFormat.format((root == 0) ? Messages.Synchronizer_Listed_Source
+						: Messages.Synchronizer_Listed_Destination, System.currentTimeMillis() - start));
+			}
+		}, progress);
+		if (builder.stopped)
+		{
+			return null;
+		}
+		if (_manifest != null)
+		{
+			// the whole tree was listed, so the files it doesn't have anymore were deleted
+			_manifest.retain(_manifestPrefix, builder.manifestPaths);
+		}
+		return builder.toArray();
 	}
 
 	/**
@@ -411,147 +487,34 @@ public class Synchronizer implements ILoggable
 	{
 		log(FileUtil.NEW_LINE + Messages.Synchronizer_Generating_Comparison);
 
-		Map<String, VirtualFileSyncPair> fileList = new HashMap<String, VirtualFileSyncPair>();
-
 		// reset statistics and clear lists
 		this.reset();
 
 		monitor = Policy.monitorFor(monitor);
 		Policy.checkCanceled(monitor);
 
+		SyncItemsBuilder builder = new SyncItemsBuilder();
+
 		// add all client files by default
-		for (int i = 0; i < clientFiles.length; i++)
+		for (IFileStore clientFile : clientFiles)
 		{
-			if (!syncContinue(monitor))
+			if (!builder.addClientFile(clientFile, null, monitor))
+			{
 				return null;
-
-			Policy.checkCanceled(monitor);
-
-			monitor.worked(1);
-
-			IFileStore clientFile = clientFiles[i];
-			if (clientFile.fetchInfo().getAttribute(EFS.ATTRIBUTE_SYMLINK))
-				continue;
-
-			String relativePath = getCanonicalPath(_clientFileRoot, clientFile);
-			VirtualFileSyncPair item = new VirtualFileSyncPair(clientFile, null, relativePath, SyncState.ClientItemOnly);
-			fileList.put(item.getRelativePath(), item);
+			}
 		}
 
 		// remove matching server files with the same modification date/time
-		for (int i = 0; i < serverFiles.length; i++)
+		for (IFileStore serverFile : serverFiles)
 		{
-			if (!syncContinue(monitor))
-				return null;
-
-			Policy.checkCanceled(monitor);
-
-			monitor.worked(1);
-
-			IFileStore serverFile = serverFiles[i];
-			IFileInfo serverFileInfo = serverFile.fetchInfo(IExtendedFileStore.DETAILED, null);
-			String relativePath = getCanonicalPath(_serverFileRoot, serverFile);
-
-			logDebug(FileUtil.NEW_LINE);
-			logDebug(MessageFormat.format(Messages.Synchronizer_Comparing_Files, new Object[] { relativePath }));
-
-			if (!fileList.containsKey(relativePath)) // Server only
-			{
-				if (serverFileInfo.getAttribute(EFS.ATTRIBUTE_SYMLINK))
-					continue;
-
-				VirtualFileSyncPair item = new VirtualFileSyncPair(null, serverFile, relativePath,
-						SyncState.ServerItemOnly);
-				fileList.put(relativePath, item);
-				logDebug(Messages.Synchronizer_Item_Not_On_Destination);
-				continue;
-			}
-
-			// Client and server
-			// get client sync item already in our file list
-			VirtualFileSyncPair item = fileList.get(relativePath);
-
-			// associate this server file with that sync item
-			item.setDestinationFile(serverFile);
-
-			IFileInfo clientFileInfo = item.getSourceFileInfo(monitor);
-			if (clientFileInfo == null && item.getSyncState() == SyncState.ServerItemOnly)
-			{
-				// This is an item we've seen already. Continue on.
-				continue;
-			}
-
-			if (clientFileInfo.isDirectory() != serverFileInfo.isDirectory())
-			{
-				// this only occurs if one file is a directory and the other
-				// is not a directory
-				item.setSyncState(SyncState.IncompatibleFileTypes);
-				logDebug(Messages.Synchronizer_Incompatible_Types);
-				continue;
-			}
-
-			if (serverFileInfo.isDirectory())
-			{
-				fileList.remove(relativePath);
-				logDebug(Messages.Synchronizer_Directory);
-				continue;
-			}
-
-			// calculate modification time difference, taking server
-			// offset into account
-			long serverFileTime = serverFileInfo.getLastModified();
-			long clientFileTime = clientFileInfo.getLastModified();
-			long timeDiff = serverFileTime - clientFileTime;
-
-			logDebug(MessageFormat.format(Messages.Synchronizer_Times_Modified, new long[] { clientFileTime,
-					serverFileTime }));
-
-			// check modification date
-			if (-this._timeTolerance <= timeDiff && timeDiff <= this._timeTolerance)
-			{
-				if (this._useCRC && !serverFileInfo.isDirectory())
-				{
-					item.setSyncState(this.compareCRC(item));
-				}
-				else
-				{
-					item.setSyncState(SyncState.ItemsMatch);
-					logDebug(Messages.Synchronizer_Items_Identical);
-				}
-			}
-			else
+			if (!builder.addServerFile(serverFile, null, monitor))
 			{
-				if (timeDiff < 0)
-				{
-					item.setSyncState(SyncState.ClientItemIsNewer);
-					logDebug(MessageFormat.format(Messages.Synchronizer_Source_Newer,
-							new long[] { Math.round(Math.abs(timeDiff / 1000)) }));
-				}
-				else
-				{
-					item.setSyncState(SyncState.ServerItemIsNewer);
-					logDebug(MessageFormat.format(Messages.Synchronizer_Destination_Newer,
-							new long[] { Math.round(Math.abs(timeDiff / 1000)) }));
-				}
+				return null;
 			}
 		}
 
-		// sort items
-		Set<String> keySet = fileList.keySet();
-		String[] keys = keySet.toArray(new String[keySet.size()]);
-		Arrays.sort(keys);
-
-		// create modifiable list
-		VirtualFileSyncPair[] syncItems = new VirtualFileSyncPair[keys.length];
-		for (int i = 0; i < keys.length; i++)
-		{
-			syncItems[i] = fileList.get(keys[i]);
-		}
-		// long end = System.currentTimeMillis();
-		// System.out.println(end - start);
-
 		// return results
-		return syncItems;
+		return builder.toArray();
 	}
 
 	/**
@@ -617,46 +580,137 @@ public class Synchronizer implements ILoggable
 	}
 
 	/**
-	 * compareCRC
+	 * Sets whether to record what was synced in a manifest, and compare against it the next time: files that didn't
+	 * change since on either side then match without being compared, and the CRC of the side that didn't change is
+	 * taken from it. Off by default.
+	 * 
+	 * @param useManifest
+	 */
+	public void setUseManifest(boolean useManifest)
+	{
+		this._useManifest = useManifest;
+	}
+
+	/**
+	 * @return whether a manifest of what was synced is used
+	 */
+	public boolean getUseManifest()
+	{
+		return this._useManifest;
+	}
+
+	private void loadManifest(IConnectionPoint clientPoint, IConnectionPoint serverPoint, IFileStore client,
+			IFileStore server)
+	{
+		_manifest = null;
+		if (!_useManifest || clientPoint == null || serverPoint == null)
+		{
+			return;
+		}
+		try
+		{
+			String prefix = getCanonicalPath(clientPoint.getRoot(), client);
+			String serverPath = getCanonicalPath(serverPoint.getRoot(), server);
+			if (prefix != null && serverPath != null)
+			{
+				_manifestPrefix = prefix;
+				_manifest = SyncManifest.load(clientPoint, serverPoint, serverPath);
+			}
+		}
+		catch (CoreException e)
+		{
+			IdeLog.logWarning(SyncingPlugin.getDefault(), e);
+		}
+		catch (IllegalArgumentException e) // $codepro.audit.disable emptyCatchClause
+		{
+			// the client isn't under its connection point, there's nothing to key the files with
+		}
+	}
+
+	private void saveManifest()
+	{
+		if (_manifest == null)
+		{
+			return;
+		}
+		try
+		{
+			_manifest.save();
+		}
+		catch (IOException e)
+		{
+			IdeLog.logWarning(SyncingPlugin.getDefault(), Messages.Synchronizer_ErrorSavingManifest, e);
+		}
+	}
+
+	/**
+	 * Returns the path of an item in the manifest.
+	 */
+	private String getManifestPath(String relativePath)
+	{
+		if (_manifestPrefix.length() == 0)
+		{
+			return relativePath;
+		}
+		return (relativePath.length() == 0) ? _manifestPrefix : _manifestPrefix + '/' + relativePath;
+	}
+
+	/**
+	 * Compares the contents of the files of an item by their CRC. The side that didn't change since the last sync still
+	 * has the contents last synced, so its CRC is taken from the manifest rather than read again.
 	 * 
 	 * @param item
-	 * @return SyncState
+	 * @param entry
+	 *            the item's manifest entry, or null
+	 * @param clientSame
+	 *            whether the client file didn't change since the entry was recorded
+	 * @param serverSame
+	 *            whether the server file didn't change since the entry was recorded
+	 * @return the CRC of both when they match, or {@link SyncManifest#UNKNOWN_CRC} if neither could be read;
+	 *         <code>null</code> if they differ
 	 * @throws CoreException
 	 */
-	private int compareCRC(VirtualFileSyncPair item) throws CoreException
+	private Long compareCRC(VirtualFileSyncPair item, SyncManifest.Entry entry, boolean clientSame,
+			boolean serverSame) throws CoreException
 	{
-		InputStream clientStream = item.getSourceInputStream();
-		InputStream serverStream = item.getDestinationInputStream();
-		int result;
+		boolean known = entry != null && entry.hasCRC();
+		long clientCRC = (clientSame && known) ? entry.crc : getCRC(item, item.getSourceInputStream());
+		long serverCRC = (serverSame && known) ? entry.crc : getCRC(item, item.getDestinationInputStream());
 
-		if (clientStream != null && serverStream != null)
-		{
-			// get individual CRC's
-			long clientCRC = getCRC(clientStream);
-			long serverCRC = getCRC(serverStream);
+		// NOTE: the CRCs are only both unknown if neither stream could be opened, so we assume the files match in that
+		// case
+		return (clientCRC == serverCRC) ? Long.valueOf(clientCRC) : null;
+	}
 
-			// close streams
+	/**
+	 * Reads a stream of an item to compute its CRC, and closes it.
+	 * 
+	 * @param item
+	 * @param stream
+	 * @return the CRC, or {@link SyncManifest#UNKNOWN_CRC} if there's no stream
+	 */
+	private long getCRC(VirtualFileSyncPair item, InputStream stream)
+	{
+		if (stream == null)
+		{
+			return SyncManifest.UNKNOWN_CRC;
+		}
+		try
+		{
+			return getCRC(stream);
+		}
+		finally
+		{
 			try
 			{
-				clientStream.close();
-				serverStream.close();
+				stream.close();
 			}
 			catch (IOException e)
 			{
 				IdeLog.logError(SyncingPlugin.getDefault(),
 						MessageFormat.format(Messages.Synchronizer_ErrorClosingStreams, item.getRelativePath()), e);
 			}
-
-			result = (clientCRC == serverCRC) ? SyncState.ItemsMatch : SyncState.CRCMismatch;
 		}
-		else
-		{
-			// NOTE: clientStream can only equal serverStream if both are null,
-			// so we assume the files match in that case
-			result = (clientStream == serverStream) ? SyncState.ItemsMatch : SyncState.CRCMismatch;
-		}
-
-		return result;
 	}
 
 	/**
@@ -752,9 +806,11 @@ public class Synchronizer implements ILoggable
 
 			this.reset();
 
+			// the items, then the file transfers
 			SubMonitor subMonitor = SubMonitor.convert(monitor, Messages.Synchronizer_Downloading_Files,
-					fileList.length);
+					fileList.length * 2);
 			Policy.checkCanceled(subMonitor);
+			TransferScheduler scheduler = createTransferScheduler();
 
 			FILE_LOOP: for (int i = 0; i < fileList.length; i++)
 			{
@@ -825,40 +881,17 @@ public class Synchronizer implements ILoggable
 							}
 							else
 							{
-								logDownloading(serverFile);
-								try
-								{
-									SyncUtils
-											.copy(serverFile, serverFileInfo, targetClientFile, EFS.NONE, childMonitor);
-									Synchronizer.this._serverFileTransferedCount++;
-									_newFilesDownloaded.add(targetClientFile);
-									// update permissions for the newly created file
-									if (!exists)
-									{
-										updatePermissions(serverFile, targetClientFile, true,
-												PermissionDirection.DOWNLOAD, childMonitor);
-									}
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
-									if (!syncError(item, e, childMonitor))
-									{
-										result = false;
-										break FILE_LOOP;
-									}
-								}
+								scheduler.add(new FileTransfer(item, serverFile, serverFileInfo, targetClientFile,
+										PermissionDirection.DOWNLOAD, true, !exists, serverFile, _manifest != null));
 							}
 							break;
 
 						case SyncState.ServerItemIsNewer:
 						case SyncState.CRCMismatch:
 							// exists on both sides, but the server item is newer
-							logDownloading(serverFile);
 							if (serverFileInfo.isDirectory())
 							{
+								logDownloading(serverFile);
 								try
 								{
 									EFSUtils.setModificationTime(serverFileInfo.getLastModified(), clientFile);
@@ -873,22 +906,8 @@ public class Synchronizer implements ILoggable
 							}
 							else
 							{
-								try
-								{
-									SyncUtils.copy(serverFile, serverFileInfo, clientFile, EFS.NONE, childMonitor);
-									Synchronizer.this._serverFileTransferedCount++;
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
-									if (!syncError(item, e, childMonitor))
-									{
-										result = false;
-										break FILE_LOOP;
-									}
-								}
+								scheduler.add(new FileTransfer(item, serverFile, serverFileInfo, clientFile,
+										PermissionDirection.DOWNLOAD, false, false, serverFile, _manifest != null));
 							}
 							break;
 
@@ -909,6 +928,11 @@ public class Synchronizer implements ILoggable
 				}
 			}
 
+			// the files queued before a stop are copied, like the ones done on the way
+			if (!runTransfers(scheduler, subMonitor.newChild(fileList.length)))
+			{
+				result = false;
+			}
 			return result;
 		}
 		finally
@@ -980,8 +1004,11 @@ public class Synchronizer implements ILoggable
 			// reset stats
 			this.reset();
 
-			SubMonitor subMonitor = SubMonitor.convert(monitor, Messages.Synchronizer_Synchronizing, fileList.length);
+			// the items, then the file transfers
+			SubMonitor subMonitor = SubMonitor.convert(monitor, Messages.Synchronizer_Synchronizing,
+					fileList.length * 2);
 			Policy.checkCanceled(subMonitor);
+			TransferScheduler scheduler = createTransferScheduler();
 
 			// process all items in our list
 			FILE_LOOP: for (int i = 0; i < fileList.length; i++)
@@ -1013,35 +1040,19 @@ public class Synchronizer implements ILoggable
 					{
 						case SyncState.ClientItemIsNewer:
 							// item exists on both ends, but the client one is newer
-							logUploading(serverFile);
 							if (clientFileInfo.isDirectory())
 							{
+								logUploading(serverFile);
 								EFSUtils.setModificationTime(clientFileInfo.getLastModified(), serverFile);
 								logSuccess();
 								syncDone(item, childMonitor);
 							}
 							else
 							{
-								try
-								{
-									SyncUtils.copy(clientFile, clientFileInfo, serverFile, EFS.NONE, childMonitor);
-									Synchronizer.this._clientFileTransferedCount++;
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
-
-									if (!syncError(item, e, childMonitor))
-									{
-										result = false;
-										break FILE_LOOP;
-									}
-								}
-
-							}
-							break;
+								scheduler.add(new FileTransfer(item, clientFile, clientFileInfo, serverFile,
+										PermissionDirection.UPLOAD, false, false, serverFile, _manifest != null));
+							}
+							break;
 
 						case SyncState.ClientItemOnly:
 							// only exists on client
@@ -1087,41 +1098,18 @@ public class Synchronizer implements ILoggable
 								}
 								else
 								{
-									logUploading(clientFile);
-									try
-									{
-										SyncUtils.copy(clientFile, clientFileInfo, targetServerFile, EFS.NONE,
-												childMonitor);
-										Synchronizer.this._clientFileTransferedCount++;
-										_newFilesUploaded.add(targetServerFile);
-										// update permissions for the newly created file
-										if (!exists)
-										{
-											updatePermissions(clientFile, targetServerFile, true,
-													PermissionDirection.UPLOAD, childMonitor);
-										}
-										logSuccess();
-										syncDone(item, childMonitor);
-									}
-									catch (CoreException e)
-									{
-										logError(e);
-
-										if (!syncError(item, e, childMonitor))
-										{
-											result = false;
-											break FILE_LOOP;
-										}
-									}
+									scheduler.add(new FileTransfer(item, clientFile, clientFileInfo,
+											targetServerFile, PermissionDirection.UPLOAD, true, !exists, clientFile,
+											_manifest != null));
 								}
 							}
 							break;
 
 						case SyncState.ServerItemIsNewer:
 							// item exists on both ends, but the server one is newer
-							logDownloading(clientFile);
 							if (serverFileInfo.isDirectory())
 							{
+								logDownloading(clientFile);
 								// just needs to set the modification time for directory
 								EFSUtils.setModificationTime(serverFileInfo.getLastModified(), clientFile);
 
@@ -1130,24 +1118,8 @@ public class Synchronizer implements ILoggable
 							}
 							else
 							{
-								try
-								{
-									SyncUtils.copy(serverFile, serverFileInfo, clientFile, EFS.NONE, childMonitor);
-									Synchronizer.this._serverFileTransferedCount++;
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
-
-									if (!syncError(item, e, childMonitor))
-									{
-										result = false;
-										break FILE_LOOP;
-									}
-								}
-
+								scheduler.add(new FileTransfer(item, serverFile, serverFileInfo, clientFile,
+										PermissionDirection.DOWNLOAD, false, false, clientFile, _manifest != null));
 							}
 							break;
 
@@ -1195,33 +1167,9 @@ public class Synchronizer implements ILoggable
 								}
 								else
 								{
-									logDownloading(targetClientFile);
-
-									try
-									{
-										SyncUtils.copy(serverFile, serverFileInfo, targetClientFile, EFS.NONE,
-												childMonitor);
-										Synchronizer.this._serverFileTransferedCount++;
-										_newFilesDownloaded.add(targetClientFile);
-										// update permissions for the newly created file
-										if (!exists)
-										{
-											updatePermissions(serverFile, targetClientFile, true,
-													PermissionDirection.DOWNLOAD, childMonitor);
-										}
-										logSuccess();
-										syncDone(item, childMonitor);
-									}
-									catch (CoreException e)
-									{
-										logError(e);
-
-										if (!syncError(item, e, childMonitor))
-										{
-											result = false;
-											break FILE_LOOP;
-										}
-									}
+									scheduler.add(new FileTransfer(item, serverFile, serverFileInfo,
+											targetClientFile, PermissionDirection.DOWNLOAD, true, !exists,
+											targetClientFile, _manifest != null));
 								}
 							}
 							break;
@@ -1258,6 +1206,11 @@ public class Synchronizer implements ILoggable
 				}
 			}
 
+			// the files queued before a stop are copied, like the ones done on the way
+			if (!runTransfers(scheduler, subMonitor.newChild(fileList.length)))
+			{
+				result = false;
+			}
 			return result;
 		}
 		finally
@@ -1335,8 +1288,11 @@ public class Synchronizer implements ILoggable
 
 			this.reset();
 
-			SubMonitor subMonitor = SubMonitor.convert(monitor, Messages.Synchronizer_Uploading_Files, fileList.length);
+			// the items, then the file transfers
+			SubMonitor subMonitor = SubMonitor.convert(monitor, Messages.Synchronizer_Uploading_Files,
+					fileList.length * 2);
 			Policy.checkCanceled(subMonitor);
+			TransferScheduler scheduler = createTransferScheduler();
 
 			FILE_LOOP: for (int i = 0; i < fileList.length; i++)
 			{
@@ -1386,34 +1342,8 @@ public class Synchronizer implements ILoggable
 							}
 							else
 							{
-								logUploading(clientFile);
-
-								try
-								{
-									SyncUtils
-											.copy(clientFile, clientFileInfo, targetServerFile, EFS.NONE, childMonitor);
-									Synchronizer.this._clientFileTransferedCount++;
-									_newFilesUploaded.add(targetServerFile);
-									// update permissions for the newly created file
-									if (!exists)
-									{
-										updatePermissions(clientFile, targetServerFile, true,
-												PermissionDirection.UPLOAD, childMonitor);
-									}
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
-
-									if (!syncError(item, e, childMonitor))
-									{
-										result = false;
-										break FILE_LOOP;
-									}
-								}
-
+								scheduler.add(new FileTransfer(item, clientFile, clientFileInfo, targetServerFile,
+										PermissionDirection.UPLOAD, true, !exists, clientFile, _manifest != null));
 							}
 							break;
 
@@ -1440,9 +1370,9 @@ public class Synchronizer implements ILoggable
 						case SyncState.ClientItemIsNewer:
 						case SyncState.CRCMismatch:
 							// exists on both sides, but the client item is newer
-							logUploading(clientFile);
 							if (clientFileInfo.isDirectory())
 							{
+								logUploading(clientFile);
 								// just needs to set the modification time for directory
 								try
 								{
@@ -1464,24 +1394,8 @@ public class Synchronizer implements ILoggable
 							}
 							else
 							{
-								try
-								{
-									SyncUtils.copy(clientFile, clientFileInfo, serverFile, EFS.NONE, childMonitor);
-									Synchronizer.this._clientFileTransferedCount++;
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
-
-									if (!syncError(item, e, childMonitor))
-									{
-										result = false;
-										break FILE_LOOP;
-									}
-								}
-
+								scheduler.add(new FileTransfer(item, clientFile, clientFileInfo, serverFile,
+										PermissionDirection.UPLOAD, false, false, clientFile, _manifest != null));
 							}
 							break;
 
@@ -1502,6 +1416,11 @@ public class Synchronizer implements ILoggable
 				}
 			}
 
+			// the files queued before a stop are copied, like the ones done on the way
+			if (!runTransfers(scheduler, subMonitor.newChild(fileList.length)))
+			{
+				result = false;
+			}
 			return result;
 		}
 		finally
@@ -1548,6 +1467,59 @@ public class Synchronizer implements ILoggable
 		item.setSyncDirection(direction);
 	}
 
+	/**
+	 * Creates the scheduler the file copies of a sync are queued on. It runs as many at once as both ends allow.
+	 */
+	private TransferScheduler createTransferScheduler()
+	{
+		int concurrency = Math.min(getMaxConcurrentTransfers(_clientFileManager),
+				getMaxConcurrentTransfers(_serverFileManager));
+		return new TransferScheduler(Math.min(concurrency, TransferScheduler.DEFAULT_CONCURRENCY),
+				TransferScheduler.DEFAULT_RETRIES);
+	}
+
+	private static int getMaxConcurrentTransfers(IConnectionPoint connectionPoint)
+	{
+		if (connectionPoint instanceof LocalConnectionPoint || connectionPoint instanceof WorkspaceConnectionPoint)
+		{
+			// no connection to share
+			return Integer.MAX_VALUE;
+		}
+		Object fileManager = (connectionPoint == null) ? null : connectionPoint
+				.getAdapter(IConnectionFileManager.class);
+		if (fileManager instanceof BaseConnectionFileManager)
+		{
+			return ((BaseConnectionFileManager) fileManager).getMaxConcurrentTransfers();
+		}
+		return 1;
+	}
+
+	/**
+	 * Runs the file copies queued while going through the items.
+	 * 
+	 * @param scheduler
+	 * @param monitor
+	 * @return false if it was stopped on an error
+	 */
+	private boolean runTransfers(TransferScheduler scheduler, IProgressMonitor monitor)
+	{
+		if (scheduler.size() == 0)
+		{
+			return true;
+		}
+		TransferListener listener = new TransferListener(monitor);
+		scheduler.run(listener, monitor);
+		saveManifest();
+		if (scheduler.getFilesTransferred() > 0)
+		{
+			log(FileUtil.NEW_LINE
+					+ MessageFormat.format(Messages.Synchronizer_Transferred,
+							new Object[] { scheduler.getFilesTransferred(), scheduler.getBytesTransferred() / 1024,
+									scheduler.getElapsedTime(), scheduler.getThroughput() / 1024 }));
+		}
+		return !listener.stopped;
+	}
+
 	private static void updatePermissions(IFileStore sourceFileStore, IFileStore targetFileStore, boolean isFile,
 			PermissionDirection direction, IProgressMonitor monitor)
 	{
@@ -1836,4 +1808,422 @@ public class Synchronizer implements ILoggable
 		}
 	}
 
+	/**
+	 * Copies the file of a sync item. Runs on a transfer thread, what it updates in the synchronizer is done by the
+	 * {@link TransferListener} once it's done.
+	 */
+	private static final class FileTransfer implements TransferScheduler.ITransfer
+	{
+		private final VirtualFileSyncPair item;
+		private final IFileStore source;
+		private final IFileInfo sourceInfo;
+		private final IFileStore target;
+		private final PermissionDirection direction;
+
+		/**
+		 * Whether the item only existed on the source side, so is recorded as a new file.
+		 */
+		private final boolean created;
+		private final boolean updatePermissions;
+
+		/**
+		 * The file the transfer is logged as.
+		 */
+		private final IFileStore logFile;
+
+		/**
+		 * Whether to checksum the file and fetch the target's info, for the manifest.
+		 */
+		private final boolean record;
+
+		/**
+		 * What's recorded in the manifest once done.
+		 */
+		private long crc = SyncManifest.UNKNOWN_CRC;
+		private IFileInfo targetInfo;
+
+		private FileTransfer(VirtualFileSyncPair item, IFileStore source, IFileInfo sourceInfo, IFileStore target,
+				PermissionDirection direction, boolean created, boolean updatePermissions, IFileStore logFile,
+				boolean record)
+		{
+			this.item = item;
+			this.source = source;
+			this.sourceInfo = sourceInfo;
+			this.target = target;
+			this.direction = direction;
+			this.created = created;
+			this.updatePermissions = updatePermissions;
+			this.logFile = logFile;
+			this.record = record && !sourceInfo.isDirectory();
+		}
+
+		public long getSize()
+		{
+			return sourceInfo.getLength();
+		}
+
+		public void run(IProgressMonitor monitor) throws CoreException
+		{
+			// the contents are checksummed on their way, rather than read again later
+			CRC32 checksum = record ? new CRC32() : null;
+			SyncUtils.copy(source, sourceInfo, target, EFS.NONE, checksum, monitor);
+			if (updatePermissions)
+			{
+				// update permissions for the newly created file
+				updatePermissions(source, target, true, direction, monitor);
+			}
+			if (record)
+			{
+				crc = checksum.getValue();
+				targetInfo = target.fetchInfo(IExtendedFileStore.DETAILED, monitor);
+			}
+		}
+	}
+
+	/**
+	 * Records the outcome of the file transfers, on the synchronizing thread.
+	 */
+	private final class TransferListener implements TransferScheduler.IListener
+	{
+		private final IProgressMonitor monitor;
+		private boolean stopped;
+
+		private TransferListener(IProgressMonitor monitor)
+		{
+			this.monitor = monitor;
+		}
+
+		public boolean transferDone(TransferScheduler.ITransfer transfer)
+		{
+			FileTransfer fileTransfer = (FileTransfer) transfer;
+			logTransfer(fileTransfer);
+			if (fileTransfer.direction == PermissionDirection.UPLOAD)
+			{
+				_clientFileTransferedCount++;
+				if (fileTransfer.created)
+				{
+					_newFilesUploaded.add(fileTransfer.target);
+				}
+			}
+			else
+			{
+				_serverFileTransferedCount++;
+				if (fileTransfer.created)
+				{
+					_newFilesDownloaded.add(fileTransfer.target);
+				}
+			}
+			logSuccess();
+			recordTransfer(fileTransfer);
+			// the progress is the scheduler's
+			syncDone(fileTransfer.item, Policy.subMonitorFor(monitor, 0));
+			return true;
+		}
+
+		public boolean transferFailed(TransferScheduler.ITransfer transfer, CoreException e)
+		{
+			FileTransfer fileTransfer = (FileTransfer) transfer;
+			logTransfer(fileTransfer);
+			logError(e);
+			if (!syncError(fileTransfer.item, e, Policy.subMonitorFor(monitor, 0)))
+			{
+				stopped = true;
+				return false;
+			}
+			return true;
+		}
+
+		private void recordTransfer(FileTransfer fileTransfer)
+		{
+			if (_manifest == null || fileTransfer.targetInfo == null)
+			{
+				return;
+			}
+			String path = getManifestPath(fileTransfer.item.getRelativePath());
+			if (fileTransfer.direction == PermissionDirection.UPLOAD)
+			{
+				_manifest.put(path, fileTransfer.sourceInfo, fileTransfer.targetInfo, fileTransfer.crc);
+			}
+			else
+			{
+				_manifest.put(path, fileTransfer.targetInfo, fileTransfer.sourceInfo, fileTransfer.crc);
+			}
+		}
+
+		private void logTransfer(FileTransfer fileTransfer)
+		{
+			if (fileTransfer.direction == PermissionDirection.UPLOAD)
+			{
+				logUploading(fileTransfer.logFile);
+			}
+			else
+			{
+				logDownloading(fileTransfer.logFile);
+			}
+		}
+	}
+
+	/**
+	 * Pairs the client and the server files by their relative path, and compares each pair once it has both. Files may
+	 * come in any order: either side's file of a pair may be added first.
+	 */
+	private final class SyncItemsBuilder
+	{
+		private final Map<String, VirtualFileSyncPair> fileList = new HashMap<String, VirtualFileSyncPair>();
+
+		/**
+		 * Server symlinks with no client file yet: they're only compared to one, never synced on their own.
+		 */
+		private final Map<String, IFileStore> serverLinks = new HashMap<String, IFileStore>();
+
+		/**
+		 * The manifest paths of the files compared.
+		 */
+		private final Set<String> manifestPaths = new HashSet<String>();
+
+		private boolean stopped;
+
+		/**
+		 * @param clientFile
+		 * @param clientFileInfo
+		 *            the info it was listed with, or null to fetch it
+		 * @param monitor
+		 * @return false if the sync was stopped
+		 * @throws CoreException
+		 */
+		private boolean addClientFile(IFileStore clientFile, IFileInfo clientFileInfo, IProgressMonitor monitor)
+				throws CoreException
+		{
+			if (!checkContinue(monitor))
+			{
+				return false;
+			}
+
+			if (clientFileInfo == null)
+			{
+				clientFileInfo = clientFile.fetchInfo();
+			}
+			if (clientFileInfo.getAttribute(EFS.ATTRIBUTE_SYMLINK))
+			{
+				return true;
+			}
+
+			String relativePath = getCanonicalPath(_clientFileRoot, clientFile);
+			VirtualFileSyncPair item = fileList.get(relativePath);
+			IFileStore serverLink = serverLinks.remove(relativePath);
+			if (item != null && item.getSourceFile() == null)
+			{
+				// the server file came first
+				item.setSourceFile(clientFile);
+			}
+			else
+			{
+				item = new VirtualFileSyncPair(clientFile, serverLink, relativePath, SyncState.ClientItemOnly);
+				fileList.put(relativePath, item);
+				if (serverLink == null)
+				{
+					return true;
+				}
+			}
+
+			logDebug(FileUtil.NEW_LINE);
+			logDebug(MessageFormat.format(Messages.Synchronizer_Comparing_Files, new Object[] { relativePath }));
+			compare(item, item.getSourceFileInfo(monitor), item.getDestinationFileInfo(monitor));
+			return true;
+		}
+
+		/**
+		 * @param serverFile
+		 * @param serverFileInfo
+		 *            the info it was listed with, or null to fetch it
+		 * @param monitor
+		 * @return false if the sync was stopped
+		 * @throws CoreException
+		 */
+		private boolean addServerFile(IFileStore serverFile, IFileInfo serverFileInfo, IProgressMonitor monitor)
+				throws CoreException
+		{
+			if (!checkContinue(monitor))
+			{
+				return false;
+			}
+
+			if (serverFileInfo == null)
+			{
+				serverFileInfo = serverFile.fetchInfo(IExtendedFileStore.DETAILED, null);
+			}
+			String relativePath = getCanonicalPath(_serverFileRoot, serverFile);
+
+			logDebug(FileUtil.NEW_LINE);
+			logDebug(MessageFormat.format(Messages.Synchronizer_Comparing_Files, new Object[] { relativePath }));
+
+			if (!fileList.containsKey(relativePath)) // Server only
+			{
+				if (serverFileInfo.getAttribute(EFS.ATTRIBUTE_SYMLINK))
+				{
+					serverLinks.put(relativePath, serverFile);
+					return true;
+				}
+
+				VirtualFileSyncPair item = new VirtualFileSyncPair(null, serverFile, relativePath,
+						SyncState.ServerItemOnly);
+				fileList.put(relativePath, item);
+				logDebug(Messages.Synchronizer_Item_Not_On_Destination);
+				return true;
+			}
+
+			// Client and server
+			// get client sync item already in our file list
+			VirtualFileSyncPair item = fileList.get(relativePath);
+
+			// associate this server file with that sync item
+			item.setDestinationFile(serverFile);
+
+			IFileInfo clientFileInfo = item.getSourceFileInfo(monitor);
+			if (clientFileInfo == null && item.getSyncState() == SyncState.ServerItemOnly)
+			{
+				// This is an item we've seen already. Continue on.
+				return true;
+			}
+
+			compare(item, clientFileInfo, item.getDestinationFileInfo(monitor));
+			return true;
+		}
+
+		/**
+		 * @return the pairs, sorted by relative path
+		 */
+		private VirtualFileSyncPair[] toArray()
+		{
+			// sort items
+			Set<String> keySet = fileList.keySet();
+			String[] keys = keySet.toArray(new String[keySet.size()]);
+			Arrays.sort(keys);
+
+			// create modifiable list
+			VirtualFileSyncPair[] syncItems = new VirtualFileSyncPair[keys.length];
+			for (int i = 0; i < keys.length; i++)
+			{
+				syncItems[i] = fileList.get(keys[i]);
+			}
+			return syncItems;
+		}
+
+		private boolean checkContinue(IProgressMonitor monitor)
+		{
+			if (!syncContinue(monitor))
+			{
+				stopped = true;
+				return false;
+			}
+			Policy.checkCanceled(monitor);
+			monitor.worked(1);
+			return true;
+		}
+
+		/**
+		 * Sets the sync state of a pair that has both files, removing it if they're both directories.
+		 */
+		private void compare(VirtualFileSyncPair item, IFileInfo clientFileInfo, IFileInfo serverFileInfo)
+				throws CoreException
+		{
+			if (clientFileInfo.isDirectory() != serverFileInfo.isDirectory())
+			{
+				// this only occurs if one file is a directory and the other
+				// is not a directory
+				item.setSyncState(SyncState.IncompatibleFileTypes);
+				logDebug(Messages.Synchronizer_Incompatible_Types);
+				return;
+			}
+
+			if (serverFileInfo.isDirectory())
+			{
+				fileList.remove(item.getRelativePath());
+				logDebug(Messages.Synchronizer_Directory);
+				return;
+			}
+
+			// compare with what was last synced
+			String manifestPath = null;
+			SyncManifest.Entry entry = null;
+			boolean clientSame = false;
+			boolean serverSame = false;
+			if (_manifest != null)
+			{
+				manifestPath = getManifestPath(item.getRelativePath());
+				manifestPaths.add(manifestPath);
+				entry = _manifest.get(manifestPath);
+				if (entry != null)
+				{
+					clientSame = entry.matchesClient(clientFileInfo);
+					serverSame = entry.matchesServer(serverFileInfo);
+				}
+			}
+			if (clientSame && serverSame)
+			{
+				item.setSyncState(SyncState.ItemsMatch);
+				logDebug(Messages.Synchronizer_Unchanged_Since_Last_Sync);
+				return;
+			}
+
+			// calculate modification time difference, taking server
+			// offset into account
+			long serverFileTime = serverFileInfo.getLastModified();
+			long clientFileTime = clientFileInfo.getLastModified();
+			long timeDiff = serverFileTime - clientFileTime;
+
+			logDebug(MessageFormat.format(Messages.Synchronizer_Times_Modified, new long[] { clientFileTime,
+					serverFileTime }));
+
+			// check modification date
+			if (-_timeTolerance <= timeDiff && timeDiff <= _timeTolerance)
+			{
+				// only a CRC actually computed is known, the one recorded is stale for the side that changed
+				long crc = SyncManifest.UNKNOWN_CRC;
+				if (_useCRC)
+				{
+					Long matchingCRC = compareCRC(item, entry, clientSame, serverSame);
+					if (matchingCRC == null)
+					{
+						item.setSyncState(SyncState.CRCMismatch);
+						return;
+					}
+					crc = matchingCRC;
+				}
+				item.setSyncState(SyncState.ItemsMatch);
+				logDebug(Messages.Synchronizer_Items_Identical);
+				if (manifestPath != null)
+				{
+					_manifest.put(manifestPath, clientFileInfo, serverFileInfo, crc);
+				}
+			}
+			else if (clientSame)
+			{
+				// only the server file changed since the last sync, whatever the clocks say
+				item.setSyncState(SyncState.ServerItemIsNewer);
+				logDebug(Messages.Synchronizer_Destination_Changed);
+			}
+			else if (serverSame)
+			{
+				// only the client file changed since the last sync
+				item.setSyncState(SyncState.ClientItemIsNewer);
+				logDebug(Messages.Synchronizer_Source_Changed);
+			}
+			else
+			{
+				if (timeDiff < 0)
+				{
+					item.setSyncState(SyncState.ClientItemIsNewer);
+					logDebug(MessageFormat.format(Messages.Synchronizer_Source_Newer,
+							new long[] { Math.round(Math.abs(timeDiff / 1000)) }));
+				}
+				else
+				{
+					item.setSyncState(SyncState.ServerItemIsNewer);
+					logDebug(MessageFormat.format(Messages.Synchronizer_Destination_Newer,
+							new long[] { Math.round(Math.abs(timeDiff / 1000)) }));
+				}
+			}
+		}
+	}
 }
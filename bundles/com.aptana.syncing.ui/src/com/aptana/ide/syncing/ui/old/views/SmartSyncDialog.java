@@ -140,6 +140,7 @@ public class SmartSyncDialog extends TitleAreaDialog implements SelectionListene
 	private static final String CLOSE_WHEN_DONE = "com.aptana.ide.syncing.views.CLOSE_WHEN_DONE"; //$NON-NLS-1$
 	private static final String COMPARE_IN_BACKGROUND = IPreferenceConstants.COMPARE_IN_BACKGROUND;
 	private static final String USE_CRC = IPreferenceConstants.USE_CRC;
+	private static final String USE_MANIFEST = IPreferenceConstants.USE_MANIFEST;
 
 	private static final String SKIPPED_LABEL = Messages.SmartSyncDialog_NumFilesToSkip;
 	private static final String UPDATED_LABEL = Messages.SmartSyncDialog_NumFilesToUpdate;
@@ -158,6 +159,7 @@ public class SmartSyncDialog extends TitleAreaDialog implements SelectionListene
 	private Button deleteRemoteFiles;
 	private Button deleteLocalFiles;
 	private Button useCrc;
+	private Button useManifest;
 	private Button syncInBackground;
 
 	private UpdatePermissionsComposite uploadPermComposite;
@@ -235,6 +237,7 @@ public class SmartSyncDialog extends TitleAreaDialog implements SelectionListene
 		this.end2 = end2;
 		this.compareInBackground = getCoreUIPreferenceStore().getBoolean(COMPARE_IN_BACKGROUND);
 		this.syncer = new Synchronizer(getCoreUIPreferenceStore().getBoolean(USE_CRC), 1000);
+		this.syncer.setUseManifest(getCoreUIPreferenceStore().getBoolean(USE_MANIFEST));
 		if (source != null)
 		{
 			this.syncer.setClientFileManager(sourceManager);
@@ -828,6 +831,11 @@ public class SmartSyncDialog extends TitleAreaDialog implements SelectionListene
 		useCrc.setSelection(getCoreUIPreferenceStore().getBoolean(USE_CRC));
 		useCrc.addSelectionListener(this);
 
+		useManifest = new Button(advancedOptions, SWT.CHECK);
+		useManifest.setText(Messages.SmartSyncDialog_UseManifest);
+		useManifest.setSelection(getCoreUIPreferenceStore().getBoolean(USE_MANIFEST));
+		useManifest.addSelectionListener(this);
+
 		syncInBackground = new Button(advancedOptions, SWT.CHECK);
 		syncInBackground.setText(Messages.SmartSyncDialog_SyncInBackground);
 		syncInBackground.setSelection(getCoreUIPreferenceStore().getBoolean(COMPARE_IN_BACKGROUND));
@@ -1553,6 +1561,11 @@ public class SmartSyncDialog extends TitleAreaDialog implements SelectionListene
 		{
 			getCoreUIPreferenceStore().setValue(USE_CRC, useCrc.getSelection());
 		}
+		else if (source == useManifest)
+		{
+			getCoreUIPreferenceStore().setValue(USE_MANIFEST, useManifest.getSelection());
+			syncer.setUseManifest(useManifest.getSelection());
+		}
 		else if (source == syncInBackground)
 		{
 			getCoreUIPreferenceStore().setValue(COMPARE_IN_BACKGROUND, syncInBackground.getSelection());
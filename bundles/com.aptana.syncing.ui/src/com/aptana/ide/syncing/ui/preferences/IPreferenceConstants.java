@@ -103,6 +103,11 @@ public interface IPreferenceConstants
 	 */
 	static final String USE_CRC = "USE_CRC"; //$NON-NLS-1$
 
+	/**
+	 * USE_MANIFEST
+	 */
+	static final String USE_MANIFEST = "USE_MANIFEST"; //$NON-NLS-1$
+
 	/**
 	 * Pref key for uploading the editor on save
 	 */
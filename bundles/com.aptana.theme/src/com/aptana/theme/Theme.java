@@ -291,22 +291,16 @@ public class Theme
 	ThemeRule winningRule(String scope)
 	{
 		ThemeGetTextAttribute themeGetTextAttribute = obtainGetThemeTextAttribute();
-		IScopeSelector match = themeGetTextAttribute.findMatch(scope);
-		if (match == null)
-		{
-			return null;
-		}
-		return getRuleForSelector(match);
+		return themeGetTextAttribute.winningRule(scope);
 	}
 
 	public ThemeRule getRuleForSelector(IScopeSelector match)
 	{
-		// See APSTUD-2790. In Textmate the last matching rule wins, so to get that behavior we reverse the rule list
-		// before matching.
-		List<ThemeRule> reversed = new ArrayList<ThemeRule>(coloringRules);
-		Collections.reverse(reversed);
-		for (ThemeRule rule : reversed)
+		// See APSTUD-2790. In Textmate the last matching rule wins, so to get that behavior we go through the rules
+		// from the last one.
+		for (int i = coloringRules.size() - 1; i >= 0; i--)
 		{
+			ThemeRule rule = coloringRules.get(i);
 			if (rule.isSeparator())
 			{
 				continue;
@@ -677,6 +671,7 @@ public class Theme
 		}
 		ThemeRule selected = coloringRules.remove(startIndex);
 		coloringRules.add(endIndex, selected);
+		wipeCache();
 		save();
 	}
 
@@ -8,8 +8,8 @@
 package com.aptana.theme;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -21,6 +21,7 @@ import org.eclipse.swt.graphics.RGB;
 import com.aptana.core.util.ImmutableTuple;
 import com.aptana.scope.IScopeSelector;
 import com.aptana.scope.ScopeSelector;
+import com.aptana.scope.ScopeSelectorIndex;
 
 /**
  * Helper class used to get the text attribute for a given scope (given the related theme). Should not be manipulated
@@ -30,6 +31,11 @@ import com.aptana.scope.ScopeSelector;
 /* default */class ThemeGetTextAttribute
 {
 
+	/**
+	 * How many scopes the text attributes are cached for. Embedded languages make for many distinct scopes.
+	 */
+	private static final int CACHE_SIZE = 2000;
+
 	/**
 	 * Used for recursion in getDelayedTextAttribute to avoid matching same rule on scope twice
 	 */
@@ -38,7 +44,16 @@ import com.aptana.scope.ScopeSelector;
 	private final Theme theme;
 	private final RGB defaultFG;
 	private final RGB defaultBG;
-	private final Collection<IScopeSelector> selectors;
+
+	/**
+	 * The selectors of the rules, compiled to be matched all at once.
+	 */
+	private final ScopeSelectorIndex selectors;
+
+	/**
+	 * The rules by selector. When several rules have the same selector, the last one wins.
+	 */
+	private final Map<IScopeSelector, ThemeRule> rules;
 
 	/**
 	 * A cache to memoize the ultimate TextAttribute generated for a given fully qualified scope.
@@ -59,11 +74,12 @@ import com.aptana.scope.ScopeSelector;
 		this.colorManager = theme.getColorManager();
 		this.defaultFG = theme.getForeground();
 		this.defaultBG = theme.getBackground();
-		this.cacheGetTextAttribute = new HashMap<String, TextAttribute>();
-		this.cacheDelayedGetTextAttribute = new HashMap<String, DelayedTextAttribute>();
+		this.cacheGetTextAttribute = new LRUMap<TextAttribute>(CACHE_SIZE);
+		this.cacheDelayedGetTextAttribute = new LRUMap<DelayedTextAttribute>(CACHE_SIZE);
 
 		List<ThemeRule> tokens = theme.getTokens();
-		selectors = new ArrayList<IScopeSelector>(tokens.size());
+		List<IScopeSelector> ruleSelectors = new ArrayList<IScopeSelector>(tokens.size());
+		rules = new HashMap<IScopeSelector, ThemeRule>(tokens.size());
 
 		for (ThemeRule rule : tokens)
 		{
@@ -71,13 +87,28 @@ import com.aptana.scope.ScopeSelector;
 			{
 				continue;
 			}
-			selectors.add(rule.getScopeSelector());
+			ruleSelectors.add(rule.getScopeSelector());
+			rules.put(rule.getScopeSelector(), rule);
 		}
+		selectors = new ScopeSelectorIndex(ruleSelectors);
 	}
 
 	/* default */IScopeSelector findMatch(String scope)
 	{
-		return ScopeSelector.bestMatch(selectors, scope);
+		return selectors.bestMatch(scope);
+	}
+
+	/**
+	 * Returns the rule whose selector best matches the scope, or null if none does.
+	 */
+	/* default */ThemeRule winningRule(String scope)
+	{
+		IScopeSelector match = findMatch(scope);
+		if (match == null)
+		{
+			return null;
+		}
+		return rules.get(match);
 	}
 
 	/* default */synchronized TextAttribute getTextAttribute(String scope)
@@ -147,7 +178,7 @@ import com.aptana.scope.ScopeSelector;
 				return getParent(scope);
 			}
 			lastSelectorMatch = match;
-			ThemeRule rule = theme.getRuleForSelector(match);
+			ThemeRule rule = rules.get(match);
 			DelayedTextAttribute attr = rule.getTextAttribute();
 
 			// if our coloring has no background, we should use parent's. If it has some opacity (alpha != 255), we
@@ -319,4 +350,30 @@ import com.aptana.scope.ScopeSelector;
 		}
 		return new RGBa(Theme.alphaBlend(bottom.toRGB(), top.toRGB(), top.getAlpha()));
 	}
+
+	/**
+	 * A map dropping its least recently used entries beyond a size.
+	 */
+	private static final class LRUMap<V> extends LinkedHashMap<String, V>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final int maxSize;
+
+		private LRUMap(int maxSize)
+		{
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+		 */
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, V> eldest)
+		{
+			return size() > maxSize;
+		}
+	}
 }
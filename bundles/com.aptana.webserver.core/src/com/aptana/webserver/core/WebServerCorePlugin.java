@@ -13,6 +13,8 @@ package com.aptana.webserver.core;
 
 import org.eclipse.core.internal.resources.DelayedSnapshotJob;
 import org.eclipse.core.internal.resources.Workspace;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
 import org.eclipse.core.resources.ISaveContext;
 import org.eclipse.core.resources.ISaveParticipant;
 import org.eclipse.core.resources.ISavedState;
@@ -49,6 +51,25 @@ public class WebServerCorePlugin extends Plugin
 	private ServerManager serverManager;
 	private LocalWebServer defaultWebServer;
 
+	private final IResourceChangeListener resourceChangeListener = new IResourceChangeListener()
+	{
+		public void resourceChanged(IResourceChangeEvent event)
+		{
+			if (event.getDelta() != null)
+			{
+				WorkspaceResolvingURIMapper.workspaceChanged(event.getDelta());
+			}
+		}
+	};
+
+	private final IServerChangeListener serverChangeListener = new IServerChangeListener()
+	{
+		public void configurationChanged(ServerChangeEvent event)
+		{
+			WorkspaceResolvingURIMapper.serverChanged(event.getServer());
+		}
+	};
+
 	/*
 	 * (non-Javadoc)
 	 * @see org.eclipse.core.runtime.Plugin#start(org.osgi.framework.BundleContext )
@@ -57,6 +78,8 @@ public class WebServerCorePlugin extends Plugin
 	{
 		super.start(context);
 		plugin = this;
+		ResourcesPlugin.getWorkspace().addResourceChangeListener(resourceChangeListener,
+				IResourceChangeEvent.POST_CHANGE);
 
 		Job job = new Job("Restoring saved state of servers") //$NON-NLS-1$
 		{
@@ -98,6 +121,7 @@ public class WebServerCorePlugin extends Plugin
 	{
 		try
 		{
+			ResourcesPlugin.getWorkspace().removeResourceChangeListener(resourceChangeListener);
 			ResourcesPlugin.getWorkspace().removeSaveParticipant(PLUGIN_ID);
 
 			serverManager = null;
@@ -134,6 +158,7 @@ public class WebServerCorePlugin extends Plugin
 		if (serverManager == null)
 		{
 			serverManager = new ServerManager();
+			serverManager.addServerChangeListener(serverChangeListener);
 		}
 		return serverManager;
 	}
@@ -9,9 +9,14 @@ package com.aptana.webserver.core;
 
 import java.io.File;
 import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.NullProgressMonitor;
 
@@ -20,12 +25,30 @@ import com.aptana.core.io.efs.EFSUtils;
 import com.aptana.core.logging.IdeLog;
 
 /**
+ * Resolves through a base mapper, mapping the local files to their workspace resources. Resolutions are cached until
+ * resources are added or removed in the workspace, which is what decides which resource a local file maps to, or until
+ * the base mapper changes if it's a server. Mappers are created as they're needed, so the resolutions are kept by base
+ * mapper and shared by all the mappers wrapping it.
+ * 
  * @author Max Stepanov
  */
 public class WorkspaceResolvingURIMapper implements IURIMapper
 {
 
+	private static final int CACHE_SIZE = 512;
+
+	/**
+	 * Bumped whenever resources are added or removed, which invalidates the caches of all the mappers.
+	 */
+	private static volatile int workspaceGeneration;
+
+	/**
+	 * The resolutions by base mapper.
+	 */
+	private static final Map<IURIMapper, Resolutions> RESOLUTIONS = new WeakHashMap<IURIMapper, Resolutions>();
+
 	private IURIMapper baseMapper;
+	private final Resolutions resolutions;
 
 	/**
 	 * 
@@ -33,6 +56,16 @@ public class WorkspaceResolvingURIMapper implements IURIMapper
 	public WorkspaceResolvingURIMapper(IURIMapper baseMapper)
 	{
 		this.baseMapper = baseMapper;
+		synchronized (RESOLUTIONS)
+		{
+			Resolutions shared = RESOLUTIONS.get(baseMapper);
+			if (shared == null)
+			{
+				shared = new Resolutions();
+				RESOLUTIONS.put(baseMapper, shared);
+			}
+			this.resolutions = shared;
+		}
 	}
 
 	/*
@@ -40,6 +73,28 @@ public class WorkspaceResolvingURIMapper implements IURIMapper
 	 * @see com.aptana.webserver.core.IURLMapper#resolve(org.eclipse.core.filesystem.IFileStore)
 	 */
 	public URI resolve(IFileStore fileStore)
+	{
+		int generation;
+		synchronized (resolutions)
+		{
+			generation = resolutions.checkGeneration();
+			if (resolutions.uris.containsKey(fileStore))
+			{
+				return resolutions.uris.get(fileStore);
+			}
+		}
+		URI uri = resolveFileStore(fileStore);
+		synchronized (resolutions)
+		{
+			if (resolutions.generation == generation)
+			{
+				resolutions.uris.put(fileStore, uri);
+			}
+		}
+		return uri;
+	}
+
+	private URI resolveFileStore(IFileStore fileStore)
 	{
 		URI uri = baseMapper.resolve(fileStore);
 		if (uri == null)
@@ -65,6 +120,28 @@ public class WorkspaceResolvingURIMapper implements IURIMapper
 	 * @see com.aptana.webserver.core.IURLMapper#resolve(java.net.URL)
 	 */
 	public IFileStore resolve(URI uri)
+	{
+		int generation;
+		synchronized (resolutions)
+		{
+			generation = resolutions.checkGeneration();
+			if (resolutions.fileStores.containsKey(uri))
+			{
+				return resolutions.fileStores.get(uri);
+			}
+		}
+		IFileStore fileStore = resolveURI(uri);
+		synchronized (resolutions)
+		{
+			if (resolutions.generation == generation)
+			{
+				resolutions.fileStores.put(uri, fileStore);
+			}
+		}
+		return fileStore;
+	}
+
+	private IFileStore resolveURI(URI uri)
 	{
 		IFileStore fileStore = baseMapper.resolve(uri);
 		if (fileStore != null && fileStore.getFileSystem() == EFS.getLocalFileSystem()) // $codepro.audit.disable
@@ -81,4 +158,114 @@ public class WorkspaceResolvingURIMapper implements IURIMapper
 		}
 		return fileStore;
 	}
+
+	/**
+	 * Invalidates the resolutions cached by all the mappers if resources were added or removed.
+	 * 
+	 * @param delta
+	 */
+	/* package */static void workspaceChanged(IResourceDelta delta)
+	{
+		final boolean[] structural = new boolean[1];
+		try
+		{
+			delta.accept(new IResourceDeltaVisitor()
+			{
+				public boolean visit(IResourceDelta child)
+				{
+					if ((child.getKind() & (IResourceDelta.ADDED | IResourceDelta.REMOVED)) != 0
+							|| (child.getFlags() & IResourceDelta.OPEN) != 0)
+					{
+						structural[0] = true;
+					}
+					return !structural[0];
+				}
+			});
+		}
+		catch (CoreException e)
+		{
+			structural[0] = true;
+		}
+		if (structural[0])
+		{
+			++workspaceGeneration;
+		}
+	}
+
+	/**
+	 * Drops the resolutions cached for a server, since its base URL or document root may have changed.
+	 * 
+	 * @param server
+	 */
+	/* package */static void serverChanged(IServer server)
+	{
+		Resolutions shared;
+		synchronized (RESOLUTIONS)
+		{
+			shared = RESOLUTIONS.get(server);
+		}
+		if (shared != null)
+		{
+			synchronized (shared)
+			{
+				shared.clear();
+			}
+		}
+	}
+
+	/**
+	 * The resolutions cached for a base mapper, guarded by their own lock.
+	 */
+	private static final class Resolutions
+	{
+		private final Map<URI, IFileStore> fileStores = new ResolutionCache<URI, IFileStore>();
+		private final Map<IFileStore, URI> uris = new ResolutionCache<IFileStore, URI>();
+
+		/**
+		 * The workspace generation the resolutions were made in, and a count of the server changes.
+		 */
+		private int workspace = workspaceGeneration;
+		private int generation;
+
+		/**
+		 * Clears the resolutions made before resources were added or removed, and returns the generation of the
+		 * resolutions to come.
+		 */
+		private int checkGeneration()
+		{
+			int current = workspaceGeneration;
+			if (workspace != current)
+			{
+				clear();
+				workspace = current;
+			}
+			return generation;
+		}
+
+		private void clear()
+		{
+			fileStores.clear();
+			uris.clear();
+			++generation;
+		}
+	}
+
+	/**
+	 * A bounded cache, dropping the least recently used resolutions.
+	 */
+	private static final class ResolutionCache<K, V> extends LinkedHashMap<K, V>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private ResolutionCache()
+		{
+			super(16, 0.75f, true);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+		{
+			return size() > CACHE_SIZE;
+		}
+	}
 }
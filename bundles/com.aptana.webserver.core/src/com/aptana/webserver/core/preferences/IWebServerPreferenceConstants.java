@@ -28,6 +28,11 @@ public interface IWebServerPreferenceConstants {
 	 */
 	String PREF_HTTP_SERVER_PORTS = PREFIX + ".http_server_ports"; //$NON-NLS-1$
 
+	/**
+	 * Number of I/O worker threads of the built-in HTTP server
+	 */
+	String PREF_HTTP_SERVER_WORKERS = PREFIX + ".http_server_workers"; //$NON-NLS-1$
+
 	/**
 	 * Default IP address
 	 */
@@ -37,4 +42,9 @@ public interface IWebServerPreferenceConstants {
 	 * Default ports range
 	 */
 	int[] DEFAULT_HTTP_SERVER_PORTS_RANGE = new int[] { 8020, 8079 };
+
+	/**
+	 * Default number of worker threads
+	 */
+	int DEFAULT_HTTP_SERVER_WORKERS = 2;
 }
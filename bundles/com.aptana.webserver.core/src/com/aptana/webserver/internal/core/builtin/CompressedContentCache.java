@@ -0,0 +1,120 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.aptana.webserver.internal.core.builtin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import com.aptana.core.util.IOUtil;
+
+/**
+ * The gzipped contents of the files served, so that pages reloaded over and over don't compress their assets each
+ * time. Contents are keyed by the file and the entity tag of the version they were compressed from, and the least
+ * recently served ones are dropped once the cache holds too many bytes.
+ */
+/* package */class CompressedContentCache
+{
+
+	private static final int MAX_TOTAL_SIZE = 16 * 1024 * 1024; // $codepro.audit.disable
+																// multiplicationOrDivisionByPowersOf2
+
+	private final Map<String, Content> contents = new LinkedHashMap<String, Content>(16, 0.75f, true);
+	private long totalSize;
+
+	/**
+	 * Returns the gzipped contents of a file, compressing them unless they're cached for the same version.
+	 * 
+	 * @param fileStore
+	 * @param eTag
+	 *            the entity tag of the file
+	 * @return
+	 * @throws CoreException
+	 * @throws IOException
+	 */
+	public byte[] get(IFileStore fileStore, String eTag) throws CoreException, IOException
+	{
+		String key = fileStore.toURI().toString();
+		synchronized (contents)
+		{
+			Content content = contents.get(key);
+			if (content != null && content.eTag.equals(eTag))
+			{
+				return content.bytes;
+			}
+		}
+		// compress outside the lock, another worker compressing the same file at worst does it twice
+		byte[] bytes = compress(fileStore);
+		synchronized (contents)
+		{
+			Content previous = contents.put(key, new Content(eTag, bytes));
+			if (previous != null)
+			{
+				totalSize -= previous.bytes.length;
+			}
+			totalSize += bytes.length;
+			for (Iterator<Content> i = contents.values().iterator(); totalSize > MAX_TOTAL_SIZE && i.hasNext();)
+			{
+				totalSize -= i.next().bytes.length;
+				i.remove();
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Drops all the contents.
+	 */
+	public void clear()
+	{
+		synchronized (contents)
+		{
+			contents.clear();
+			totalSize = 0;
+		}
+	}
+
+	private static byte[] compress(IFileStore fileStore) throws CoreException, IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		InputStream in = fileStore.openInputStream(EFS.NONE, new NullProgressMonitor());
+		try
+		{
+			GZIPOutputStream out = new GZIPOutputStream(bytes);
+			IOUtil.pipe(in, out);
+			out.close();
+		}
+		finally
+		{
+			in.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	private static final class Content
+	{
+		private final String eTag;
+		private final byte[] bytes;
+
+		private Content(String eTag, byte[] bytes)
+		{
+			this.eTag = eTag;
+			this.bytes = bytes;
+		}
+	}
+}
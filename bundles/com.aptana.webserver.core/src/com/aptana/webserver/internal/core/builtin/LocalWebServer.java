@@ -69,7 +69,6 @@ public class LocalWebServer extends SimpleWebServer
 	private static final long SHUTDOWN_TIMEOUT = 2000;
 	private static final int SOCKET_BUFFER_SIZE = 16 * 1024; // $codepro.audit.disable
 																// multiplicationOrDivisionByPowersOf2
-	private static final int WORKER_COUNT = 2;
 
 	private Thread thread;
 	private ListeningIOReactor reactor;
@@ -77,6 +76,8 @@ public class LocalWebServer extends SimpleWebServer
 	protected int port;
 	private String hostName;
 	private InetAddress host;
+	private int workerCount;
+	private final RequestMetrics requestMetrics = new RequestMetrics();
 
 	public LocalWebServer(URI documentRoot)
 	{
@@ -90,6 +91,7 @@ public class LocalWebServer extends SimpleWebServer
 		setDocumentRoot(documentRoot);
 		setName(NAME);
 		this.host = host;
+		this.workerCount = WebServerPreferences.getWorkerCount();
 		this.port = SocketUtil.findFreePort(host, portRange[0], portRange[1]);
 		if (this.port <= 0)
 		{
@@ -147,7 +149,7 @@ public class LocalWebServer extends SimpleWebServer
 			public void run()
 			{
 				runServer(new InetSocketAddress(host, port), new BasicAsyncRequestHandler(
-						new LocalWebServerHttpRequestHandler(LocalWebServer.this)));
+						new LocalWebServerHttpRequestHandler(LocalWebServer.this, requestMetrics)));
 			}
 		};
 		thread.setDaemon(true);
@@ -197,7 +199,7 @@ public class LocalWebServer extends SimpleWebServer
 		// serviceHandler.setEventListener(new LocalWebServerLogger());
 
 		IOReactorConfig config = new IOReactorConfig();
-		config.setIoThreadCount(WORKER_COUNT);
+		config.setIoThreadCount(workerCount);
 		config.setConnectTimeout(SOCKET_TIMEOUT);
 		config.setTcpNoDelay(true);
 		config.setSoKeepalive(true);
@@ -313,4 +315,42 @@ public class LocalWebServer extends SimpleWebServer
 	{
 		return port;
 	}
+
+	/**
+	 * Sets the number of I/O worker threads, which takes effect the next time the server is started. Defaults to the
+	 * preferences-specified count.
+	 * 
+	 * @param workerCount
+	 */
+	public void setWorkerCount(int workerCount)
+	{
+		Assert.isLegal(workerCount > 0, "Worker count should be positive"); //$NON-NLS-1$
+		this.workerCount = workerCount;
+	}
+
+	public int getWorkerCount()
+	{
+		return workerCount;
+	}
+
+	/**
+	 * Returns the metrics of the requests served since the server was created, or the metrics were reset.
+	 * 
+	 * @return
+	 */
+	public RequestMetrics getRequestMetrics()
+	{
+		return requestMetrics;
+	}
+
+	/**
+	 * Returns a table of the paths served, slowest first.
+	 * 
+	 * @return
+	 * @see RequestMetrics#dump()
+	 */
+	public String dumpRequestMetrics()
+	{
+		return requestMetrics.dump();
+	}
 }
@@ -15,21 +15,31 @@ import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLDecoder;
+import java.text.DateFormat;
 import java.text.MessageFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.Locale;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.MethodNotSupportedException;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.nio.entity.NByteArrayEntity;
 import org.apache.http.nio.entity.NFileEntity;
 import org.apache.http.nio.entity.NStringEntity;
 import org.apache.http.protocol.HTTP;
 import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpDateGenerator;
 import org.apache.http.protocol.HttpRequestHandler;
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileInfo;
@@ -57,15 +67,44 @@ import com.aptana.webserver.core.WebServerCorePlugin;
 	private final static String HTML_TEXT_TYPE = "text/html"; //$NON-NLS-1$
 
 	private final static Pattern PATTERN_INDEX = Pattern.compile("(index|default)\\.x?html?"); //$NON-NLS-1$
+	private final static Pattern PATTERN_RANGE = Pattern.compile("bytes\\s*=\\s*(\\d*)\\s*-\\s*(\\d*)"); //$NON-NLS-1$
+	private final static Pattern PATTERN_ZERO_QUALITY = Pattern.compile("q\\s*=\\s*0(\\.0*)?"); //$NON-NLS-1$
+	private final static Pattern PATTERN_COMPRESSIBLE = Pattern
+			.compile("text/.*|application/(x-)?(javascript|json|xml|xhtml\\+xml)|image/svg\\+xml"); //$NON-NLS-1$
+
+	private static final String BYTES_UNIT = "bytes"; //$NON-NLS-1$
+	private static final String GZIP_ENCODING = "gzip"; //$NON-NLS-1$
+	private static final String GZIP_ETAG_SUFFIX = "-gz"; //$NON-NLS-1$
+	private static final String NO_CACHE = "no-cache"; //$NON-NLS-1$
+	private static final long[] UNSATISFIABLE_RANGE = new long[0];
+
+	/**
+	 * Smaller files aren't worth compressing, larger ones aren't kept in memory.
+	 */
+	private static final long MIN_COMPRESSED_LENGTH = 256;
+	private static final long MAX_COMPRESSED_LENGTH = 1024 * 1024; // $codepro.audit.disable
+																	// multiplicationOrDivisionByPowersOf2
+
+	private static final DateFormat HTTP_DATE_FORMAT = new SimpleDateFormat(HttpDateGenerator.PATTERN_RFC1123,
+			Locale.US);
+	static
+	{
+		HTTP_DATE_FORMAT.setTimeZone(HttpDateGenerator.GMT);
+	}
 
 	private IURIMapper uriMapper;
+	private final RequestMetrics metrics;
+	private final CompressedContentCache compressedContents = new CompressedContentCache();
 
 	/**
-	 * @param documentRoot
+	 * @param uriMapper
+	 * @param metrics
+	 *            where the requests served are recorded
 	 */
-	protected LocalWebServerHttpRequestHandler(IURIMapper uriMapper)
+	protected LocalWebServerHttpRequestHandler(IURIMapper uriMapper, RequestMetrics metrics)
 	{
 		this.uriMapper = uriMapper;
+		this.metrics = metrics;
 	}
 
 	private void handleRequest(HttpRequest request, HttpResponse response, boolean head) throws HttpException,
@@ -95,36 +134,296 @@ import com.aptana.webserver.core.WebServerCorePlugin;
 			response.setEntity(createTextEntity(Messages.LocalWebServerHttpRequestHandler_FORBIDDEN));
 		}
 		else
+		{
+			handleFile(request, response, head, fileStore, fileInfo);
+		}
+	}
+
+	private void handleFile(HttpRequest request, HttpResponse response, boolean head, IFileStore fileStore,
+			IFileInfo fileInfo) throws IOException, CoreException
+	{
+		ContentType contentType = getMimeType(fileStore.getName());
+		String eTag = getETag(fileInfo);
+		boolean compressible = isCompressible(contentType, fileInfo);
+		boolean gzip = compressible && acceptsGzip(request);
+		if (compressible)
+		{
+			// whether the file is sent compressed or not depends on the request, caches have to know
+			response.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		}
+		if (gzip)
+		{
+			// a strong tag identifies the bytes sent, so the compressed variant gets one of its own
+			eTag = eTag.substring(0, eTag.length() - 1) + GZIP_ETAG_SUFFIX + '"';
+		}
+		response.addHeader(HttpHeaders.ETAG, eTag);
+		response.addHeader(HttpHeaders.LAST_MODIFIED, formatDate(fileInfo.getLastModified()));
+		// let browsers keep the files, but have them check back on each reload so edits show up at once
+		response.addHeader(HttpHeaders.CACHE_CONTROL, NO_CACHE);
+		response.addHeader(HttpHeaders.ACCEPT_RANGES, BYTES_UNIT);
+
+		if (isNotModified(request, fileInfo))
+		{
+			response.setStatusCode(HttpStatus.SC_NOT_MODIFIED);
+			response.setEntity(null);
+			return;
+		}
+
+		if (gzip)
+		{
+			response.setStatusCode(HttpStatus.SC_OK);
+			response.addHeader(HttpHeaders.CONTENT_ENCODING, GZIP_ENCODING);
+			response.setEntity(head ? null : new NByteArrayEntity(compressedContents.get(fileStore,
+					getETag(fileInfo)), contentType));
+			return;
+		}
+
+		long length = fileInfo.getLength();
+		long[] range = head ? null : getRange(request, fileInfo);
+		if (range == UNSATISFIABLE_RANGE)
+		{
+			response.setStatusCode(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			response.addHeader(HttpHeaders.CONTENT_RANGE, BYTES_UNIT + " */" + length); //$NON-NLS-1$
+			response.setEntity(null);
+			return;
+		}
+		if (range != null)
+		{
+			response.setStatusCode(HttpStatus.SC_PARTIAL_CONTENT);
+			response.addHeader(HttpHeaders.CONTENT_RANGE,
+					MessageFormat.format("{0} {1}-{2}/{3}", BYTES_UNIT, Long.toString(range[0]), //$NON-NLS-1$
+							Long.toString(range[1]), Long.toString(length)));
+		}
+		else
 		{
 			response.setStatusCode(HttpStatus.SC_OK);
-			if (head)
+		}
+		if (head)
+		{
+			response.setEntity(null);
+		}
+		else
+		{
+			response.setEntity(createFileEntity(fileStore, fileInfo, contentType, range));
+		}
+	}
+
+	private static HttpEntity createFileEntity(IFileStore fileStore, IFileInfo fileInfo, ContentType contentType,
+			long[] range) throws CoreException
+	{
+		File file = fileStore.toLocalFile(EFS.NONE, new NullProgressMonitor());
+		if (file == null && range == null)
+		{
+			// streamed as it's read, rather than copied to a temporary file first
+			return new InputStreamEntity(fileStore.openInputStream(EFS.NONE, new NullProgressMonitor()),
+					fileInfo.getLength(), contentType);
+		}
+		// local files, and the parts of files, are transferred straight from their channel
+		final File temporaryFile = (file == null) ? fileStore.toLocalFile(EFS.CACHE, new NullProgressMonitor())
+				: null;
+		if (file == null)
+		{
+			file = temporaryFile;
+		}
+		if (range != null)
+		{
+			return new NFileRangeEntity(file, range[0], range[1] - range[0] + 1, contentType)
+			{
+				@Override
+				public void close() throws IOException
+				{
+					try
+					{
+						super.close();
+					}
+					finally
+					{
+						deleteTemporaryFile(temporaryFile);
+					}
+				}
+			};
+		}
+		return new NFileEntity(file, contentType)
+		{
+			@Override
+			public void close() throws IOException
+			{
+				try
+				{
+					super.close();
+				}
+				finally
+				{
+					deleteTemporaryFile(temporaryFile);
+				}
+			}
+		};
+	}
+
+	private static void deleteTemporaryFile(File temporaryFile)
+	{
+		if (temporaryFile != null && !temporaryFile.delete())
+		{
+			temporaryFile.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Determines if the client's copy is still current: If-None-Match takes precedence over If-Modified-Since.
+	 */
+	private static boolean isNotModified(HttpRequest request, IFileInfo fileInfo)
+	{
+		Header ifNoneMatch = request.getFirstHeader(HttpHeaders.IF_NONE_MATCH);
+		if (ifNoneMatch != null)
+		{
+			String eTag = getETag(fileInfo);
+			String gzipETag = eTag.substring(0, eTag.length() - 1) + GZIP_ETAG_SUFFIX + '"';
+			for (String tag : ifNoneMatch.getValue().split(",")) //$NON-NLS-1$
+			{
+				tag = tag.trim();
+				if ("*".equals(tag) || eTag.equals(tag) || gzipETag.equals(tag)) //$NON-NLS-1$
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+		Header ifModifiedSince = request.getFirstHeader(HttpHeaders.IF_MODIFIED_SINCE);
+		if (ifModifiedSince != null)
+		{
+			long since = parseDate(ifModifiedSince.getValue());
+			// HTTP dates are to the second
+			return since >= 0 && fileInfo.getLastModified() / 1000 <= since / 1000;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the first and last bytes requested by a single byte range, null to send the whole file, or
+	 * {@link #UNSATISFIABLE_RANGE}. Multiple ranges aren't supported, the whole file is sent for them.
+	 */
+	private static long[] getRange(HttpRequest request, IFileInfo fileInfo)
+	{
+		Header rangeHeader = request.getFirstHeader(HttpHeaders.RANGE);
+		if (rangeHeader == null)
+		{
+			return null;
+		}
+		Header ifRange = request.getFirstHeader(HttpHeaders.IF_RANGE);
+		if (ifRange != null)
+		{
+			// the range is of another version of the file, send all of this one
+			String value = ifRange.getValue().trim();
+			if (value.startsWith("\"") ? !value.equals(getETag(fileInfo)) //$NON-NLS-1$
+					: parseDate(value) / 1000 != fileInfo.getLastModified() / 1000)
+			{
+				return null;
+			}
+		}
+		Matcher matcher = PATTERN_RANGE.matcher(rangeHeader.getValue().trim());
+		if (!matcher.matches())
+		{
+			return null;
+		}
+		long length = fileInfo.getLength();
+		String first = matcher.group(1);
+		String last = matcher.group(2);
+		long start;
+		long end;
+		try
+		{
+			if (first.length() == 0)
 			{
-				response.setEntity(null);
+				if (last.length() == 0)
+				{
+					return null;
+				}
+				// the last bytes of the file
+				start = Math.max(0, length - Long.parseLong(last));
+				end = length - 1;
 			}
 			else
 			{
-				File file = fileStore.toLocalFile(EFS.NONE, new NullProgressMonitor());
-				final File temporaryFile = (file == null) ? fileStore.toLocalFile(EFS.CACHE, new NullProgressMonitor())
-						: null;
-				response.setEntity(new NFileEntity((file != null) ? file : temporaryFile, getMimeType(fileStore
-						.getName()))
+				start = Long.parseLong(first);
+				end = (last.length() == 0) ? length - 1 : Long.parseLong(last);
+				if (end < start)
 				{
-					@Override
-					public void close() throws IOException
-					{
-						try
-						{
-							super.close();
-						}
-						finally
-						{
-							if (temporaryFile != null && !temporaryFile.delete())
-							{
-								temporaryFile.deleteOnExit();
-							}
-						}
-					}
-				});
+					// invalid, ignored
+					return null;
+				}
+				end = Math.min(end, length - 1);
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+		if (start >= length || end < start)
+		{
+			return UNSATISFIABLE_RANGE;
+		}
+		return new long[] { start, end };
+	}
+
+	private static boolean acceptsGzip(HttpRequest request)
+	{
+		Header acceptEncoding = request.getFirstHeader(HttpHeaders.ACCEPT_ENCODING);
+		if (acceptEncoding == null)
+		{
+			return false;
+		}
+		for (String coding : acceptEncoding.getValue().split(",")) //$NON-NLS-1$
+		{
+			String[] parts = coding.split(";"); //$NON-NLS-1$
+			if (GZIP_ENCODING.equalsIgnoreCase(parts[0].trim()))
+			{
+				return parts.length < 2 || !PATTERN_ZERO_QUALITY.matcher(parts[1].trim()).matches();
+			}
+		}
+		return false;
+	}
+
+	private static boolean isCompressible(ContentType contentType, IFileInfo fileInfo)
+	{
+		long length = fileInfo.getLength();
+		if (length < MIN_COMPRESSED_LENGTH || length > MAX_COMPRESSED_LENGTH)
+		{
+			return false;
+		}
+		String mimeType = contentType.getMimeType();
+		return mimeType != null && PATTERN_COMPRESSIBLE.matcher(mimeType).matches();
+	}
+
+	/**
+	 * Returns a strong entity tag for the file, from its modification time and length.
+	 */
+	private static String getETag(IFileInfo fileInfo)
+	{
+		return '"' + Long.toHexString(fileInfo.getLastModified()) + '-' + Long.toHexString(fileInfo.getLength()) + '"';
+	}
+
+	private static String formatDate(long time)
+	{
+		synchronized (HTTP_DATE_FORMAT)
+		{
+			return HTTP_DATE_FORMAT.format(new Date(time));
+		}
+	}
+
+	/**
+	 * @return the time, or -1 if it's not a valid date
+	 */
+	private static long parseDate(String date)
+	{
+		synchronized (HTTP_DATE_FORMAT)
+		{
+			try
+			{
+				return HTTP_DATE_FORMAT.parse(date).getTime();
+			}
+			catch (ParseException e)
+			{
+				return -1;
 			}
 		}
 	}
@@ -137,6 +436,7 @@ import com.aptana.webserver.core.WebServerCorePlugin;
 	public void handle(HttpRequest request, HttpResponse response, HttpContext context) throws HttpException,
 			IOException
 	{
+		long start = System.nanoTime();
 		try
 		{
 			String method = request.getRequestLine().getMethod().toUpperCase(Locale.ENGLISH);
@@ -160,6 +460,19 @@ import com.aptana.webserver.core.WebServerCorePlugin;
 			response.setStatusCode(HttpStatus.SC_INTERNAL_SERVER_ERROR);
 			response.setEntity(createTextEntity(Messages.LocalWebServerHttpRequestHandler_INTERNAL_SERVER_ERROR));
 		}
+		finally
+		{
+			HttpEntity entity = response.getEntity();
+			metrics.record(getPath(request), (entity != null) ? entity.getContentLength() : 0, System.nanoTime()
+					- start);
+		}
+	}
+
+	private static String getPath(HttpRequest request)
+	{
+		String uri = request.getRequestLine().getUri();
+		int query = uri.indexOf('?');
+		return (query >= 0) ? uri.substring(0, query) : uri;
 	}
 
 	private static HttpEntity createTextEntity(String text) throws UnsupportedEncodingException
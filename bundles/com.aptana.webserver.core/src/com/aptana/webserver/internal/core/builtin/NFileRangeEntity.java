@@ -0,0 +1,235 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.aptana.webserver.internal.core.builtin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.FileContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.HttpAsyncContentProducer;
+
+/**
+ * A part of a file, for byte-range responses. Like {@link org.apache.http.nio.entity.NFileEntity}, the file is
+ * transferred straight to the socket when the encoder allows it.
+ */
+/* package */class NFileRangeEntity extends AbstractHttpEntity implements HttpAsyncContentProducer
+{
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private final File file;
+	private final long offset;
+	private final long length;
+
+	private FileChannel channel;
+	private long position;
+
+	/**
+	 * @param file
+	 * @param offset
+	 *            the first byte of the range
+	 * @param length
+	 *            the number of bytes of the range
+	 * @param contentType
+	 */
+	protected NFileRangeEntity(File file, long offset, long length, ContentType contentType)
+	{
+		this.file = file;
+		this.offset = offset;
+		this.length = length;
+		if (contentType != null)
+		{
+			setContentType(contentType.toString());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.http.HttpEntity#isRepeatable()
+	 */
+	public boolean isRepeatable()
+	{
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.http.HttpEntity#getContentLength()
+	 */
+	public long getContentLength()
+	{
+		return length;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.http.HttpEntity#isStreaming()
+	 */
+	public boolean isStreaming()
+	{
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.http.HttpEntity#getContent()
+	 */
+	public InputStream getContent() throws IOException
+	{
+		FileInputStream stream = new FileInputStream(file);
+		stream.getChannel().position(offset);
+		return new FilterInputStream(stream)
+		{
+			private long remaining = length;
+
+			@Override
+			public int read() throws IOException
+			{
+				if (remaining <= 0)
+				{
+					return -1;
+				}
+				int b = super.read();
+				if (b >= 0)
+				{
+					--remaining;
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException
+			{
+				if (remaining <= 0)
+				{
+					return -1;
+				}
+				int count = super.read(b, off, (int) Math.min(len, remaining));
+				if (count > 0)
+				{
+					remaining -= count;
+				}
+				return count;
+			}
+
+			@Override
+			public long skip(long n) throws IOException
+			{
+				long skipped = super.skip(Math.min(n, remaining));
+				remaining -= skipped;
+				return skipped;
+			}
+
+			@Override
+			public int available() throws IOException
+			{
+				return (int) Math.min(super.available(), remaining);
+			}
+		};
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.http.HttpEntity#writeTo(java.io.OutputStream)
+	 */
+	public void writeTo(OutputStream outstream) throws IOException
+	{
+		FileChannel source = new RandomAccessFile(file, "r").getChannel(); //$NON-NLS-1$
+		try
+		{
+			long written = 0;
+			while (written < length)
+			{
+				long count = source.transferTo(offset + written, length - written, Channels.newChannel(outstream));
+				if (count <= 0)
+				{
+					break;
+				}
+				written += count;
+			}
+			outstream.flush();
+		}
+		finally
+		{
+			source.close();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.http.nio.entity.HttpAsyncContentProducer#produceContent(org.apache.http.nio.ContentEncoder,
+	 * org.apache.http.nio.IOControl)
+	 */
+	public void produceContent(ContentEncoder encoder, IOControl ioctrl) throws IOException
+	{
+		if (channel == null)
+		{
+			channel = new RandomAccessFile(file, "r").getChannel(); //$NON-NLS-1$
+			position = offset;
+		}
+		long remaining = offset + length - position;
+		long transferred;
+		if (encoder instanceof FileContentEncoder)
+		{
+			transferred = ((FileContentEncoder) encoder).transfer(channel, position, remaining);
+		}
+		else
+		{
+			ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, remaining));
+			if (channel.read(buffer, position) < 0)
+			{
+				// the file was truncated since, there's nothing left to send
+				transferred = remaining;
+			}
+			else
+			{
+				buffer.flip();
+				transferred = encoder.write(buffer);
+			}
+		}
+		position += transferred;
+		if (position >= offset + length)
+		{
+			encoder.complete();
+			close();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Closeable#close()
+	 */
+	public void close() throws IOException
+	{
+		if (channel != null)
+		{
+			try
+			{
+				channel.close();
+			}
+			finally
+			{
+				channel = null;
+			}
+		}
+	}
+
+}
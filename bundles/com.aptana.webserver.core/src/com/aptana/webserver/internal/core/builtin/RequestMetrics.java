@@ -0,0 +1,168 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+
+package com.aptana.webserver.internal.core.builtin;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.aptana.core.util.FileUtil;
+
+/**
+ * Counts the requests served by path, with the bytes sent and the latencies of the most recent ones, to find the
+ * resources that are slow to serve. The latency is the time taken to produce the response: resolving, fetching and
+ * preparing the file, not sending it.
+ * <p>
+ * This is thread-safe.
+ */
+public final class RequestMetrics
+{
+
+	/**
+	 * How many latencies are kept by path for the percentiles.
+	 */
+	private static final int SAMPLES = 256;
+
+	/**
+	 * How many paths are tracked, the least requested ones are dropped beyond.
+	 */
+	private static final int MAX_PATHS = 2048;
+
+	private final Map<String, PathMetrics> paths = new HashMap<String, PathMetrics>();
+
+	/**
+	 * Records a request.
+	 * 
+	 * @param path
+	 *            the path requested
+	 * @param bytes
+	 *            the length of the response body, or a negative value if unknown
+	 * @param latency
+	 *            the time taken to produce the response, in nanoseconds
+	 */
+	public synchronized void record(String path, long bytes, long latency)
+	{
+		PathMetrics metrics = paths.get(path);
+		if (metrics == null)
+		{
+			if (paths.size() >= MAX_PATHS)
+			{
+				evictLeastRequested();
+			}
+			metrics = new PathMetrics(path);
+			paths.put(path, metrics);
+		}
+		metrics.record(bytes, latency);
+	}
+
+	/**
+	 * Forgets all the requests.
+	 */
+	public synchronized void reset()
+	{
+		paths.clear();
+	}
+
+	/**
+	 * Returns a table of the paths requested, slowest first: requests, bytes sent and the median and 99th percentile
+	 * latencies in milliseconds.
+	 * 
+	 * @return
+	 */
+	public synchronized String dump()
+	{
+		List<PathMetrics> sorted = new ArrayList<PathMetrics>(paths.values());
+		final Map<PathMetrics, Long> p99s = new HashMap<PathMetrics, Long>();
+		for (PathMetrics metrics : sorted)
+		{
+			p99s.put(metrics, metrics.percentile(99));
+		}
+		Collections.sort(sorted, new Comparator<PathMetrics>()
+		{
+			public int compare(PathMetrics m1, PathMetrics m2)
+			{
+				return p99s.get(m2).compareTo(p99s.get(m1));
+			}
+		});
+		StringBuilder builder = new StringBuilder();
+		builder.append("count\tbytes\tp50 ms\tp99 ms\tpath").append(FileUtil.NEW_LINE); //$NON-NLS-1$
+		for (PathMetrics metrics : sorted)
+		{
+			builder.append(MessageFormat.format("{0}\t{1}\t{2}\t{3}\t{4}", //$NON-NLS-1$
+					Long.toString(metrics.count), Long.toString(metrics.bytes), toMillis(metrics.percentile(50)),
+					toMillis(p99s.get(metrics)), metrics.path));
+			builder.append(FileUtil.NEW_LINE);
+		}
+		return builder.toString();
+	}
+
+	private void evictLeastRequested()
+	{
+		PathMetrics least = null;
+		for (PathMetrics metrics : paths.values())
+		{
+			if (least == null || metrics.count < least.count)
+			{
+				least = metrics;
+			}
+		}
+		paths.remove(least.path);
+	}
+
+	private static String toMillis(long nanos)
+	{
+		return String.format(Locale.ENGLISH, "%.1f", nanos / 1e6); //$NON-NLS-1$
+	}
+
+	private static final class PathMetrics
+	{
+		private final String path;
+		private long count;
+		private long bytes;
+
+		/**
+		 * The latest latencies, in a ring.
+		 */
+		private final long[] latencies = new long[SAMPLES];
+
+		private PathMetrics(String path)
+		{
+			this.path = path;
+		}
+
+		private void record(long length, long latency)
+		{
+			latencies[(int) (count % SAMPLES)] = latency;
+			++count;
+			if (length > 0)
+			{
+				bytes += length;
+			}
+		}
+
+		private long percentile(int percent)
+		{
+			int size = (int) Math.min(count, SAMPLES);
+			if (size == 0)
+			{
+				return 0;
+			}
+			long[] sorted = new long[size];
+			System.arraycopy(latencies, 0, sorted, 0, size);
+			Arrays.sort(sorted);
+			return sorted[Math.min(size - 1, (size * percent + 99) / 100 - 1)];
+		}
+	}
+}
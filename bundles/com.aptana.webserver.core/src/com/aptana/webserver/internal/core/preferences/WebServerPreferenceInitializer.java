@@ -34,6 +34,8 @@ public class WebServerPreferenceInitializer extends AbstractPreferenceInitialize
 		node.put(IWebServerPreferenceConstants.PREF_HTTP_SERVER_PORTS,
 				IWebServerPreferenceConstants.DEFAULT_HTTP_SERVER_PORTS_RANGE[0]
 						+ "-" + IWebServerPreferenceConstants.DEFAULT_HTTP_SERVER_PORTS_RANGE[1]); //$NON-NLS-1$
+		node.putInt(IWebServerPreferenceConstants.PREF_HTTP_SERVER_WORKERS,
+				IWebServerPreferenceConstants.DEFAULT_HTTP_SERVER_WORKERS);
 	}
 
 }
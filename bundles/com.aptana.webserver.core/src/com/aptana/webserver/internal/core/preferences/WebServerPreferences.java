@@ -103,4 +103,18 @@ public class WebServerPreferences
 		return new int[] { portsStart, portsEnd };
 	}
 
+	/**
+	 * Returns preferences-specified number of local webserver worker threads
+	 * 
+	 * @return
+	 */
+	public static int getWorkerCount()
+	{
+		int workers = Platform.getPreferencesService().getInt(WebServerCorePlugin.PLUGIN_ID,
+				IWebServerPreferenceConstants.PREF_HTTP_SERVER_WORKERS,
+				IWebServerPreferenceConstants.DEFAULT_HTTP_SERVER_WORKERS,
+				new IScopeContext[] { InstanceScope.INSTANCE, DefaultScope.INSTANCE });
+		return (workers > 0) ? workers : IWebServerPreferenceConstants.DEFAULT_HTTP_SERVER_WORKERS;
+	}
+
 }
@@ -1,14 +1,20 @@
 package com.aptana.core.build;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
@@ -293,6 +299,67 @@ public class UnifiedBuilderTest
 		// PROBLEM/TASK types?
 	}
 
+	@Test
+	public void testParallelBuildSerializesParticipantsThatArentThreadSafe() throws Exception
+	{
+		final int fileCount = 40;
+		final Set<String> built = Collections.synchronizedSet(new HashSet<String>());
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicBoolean overlapped = new AtomicBoolean();
+		participant = new RequiredBuildParticipant()
+		{
+			@Override
+			public boolean isThreadSafe()
+			{
+				return false;
+			}
+
+			public void deleteFile(BuildContext context, IProgressMonitor monitor)
+			{
+			}
+
+			public void buildFile(BuildContext context, IProgressMonitor monitor)
+			{
+				if (running.incrementAndGet() > 1)
+				{
+					overlapped.set(true);
+				}
+				try
+				{
+					Thread.sleep(2);
+				}
+				catch (InterruptedException e)
+				{
+					// ignore
+				}
+				built.add(context.getName());
+				Collection<IProblem> problems = new ArrayList<IProblem>();
+				problems.add(createTask(context.getURI().toString(), "Fake task", IMarker.PRIORITY_HIGH, 1, 0, 9));
+				context.putProblems(IMarkerConstants.TASK_MARKER, problems);
+				running.decrementAndGet();
+			}
+		};
+
+		for (int i = 0; i < fileCount; i++)
+		{
+			IFile file = project.getFile("file" + i + ".txt");
+			file.create(new ByteArrayInputStream("Hello world!".getBytes()), true, null);
+		}
+		builder.build(IncrementalProjectBuilder.FULL_BUILD, null, new NullProgressMonitor());
+
+		assertFalse("A participant that isn't thread-safe was called concurrently", overlapped.get());
+		// the files we created plus .project
+		assertEquals(fileCount + 1, built.size());
+		assertEquals(fileCount + 1, builder.getLastBuildTimings().getCount(participant));
+		for (int i = 0; i < fileCount; i++)
+		{
+			IFile file = project.getFile("file" + i + ".txt");
+			assertTrue(built.contains(file.getName()));
+			IMarker[] markers = file.findMarkers(IMarkerConstants.TASK_MARKER, true, IResource.DEPTH_ZERO);
+			assertEquals(1, markers.length);
+		}
+	}
+
 	@Test
 	public void testIncrementalBuildWithNoDeltaDoesFullBuild() throws Exception
 	{
@@ -0,0 +1,182 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.core.io.vfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileInfo;
+import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aptana.core.util.FileUtil;
+
+public class FileTreeCrawlerTest
+{
+
+	private File dir;
+	private IFileStore root;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		File tmp = FileUtil.createTempFile("crawler", "tmp"); //$NON-NLS-1$ //$NON-NLS-2$
+		tmp.delete();
+		dir = new File(tmp.getParentFile(), tmp.getName() + ".dir"); //$NON-NLS-1$
+		dir.mkdirs();
+		root = EFS.getLocalFileSystem().fromLocalFile(dir);
+
+		// root/{a.txt, .git/config, b/{c.txt, d/e.txt}}
+		root.getChild("a.txt").openOutputStream(EFS.NONE, null).close(); //$NON-NLS-1$
+		root.getChild(".git").mkdir(EFS.NONE, null); //$NON-NLS-1$
+		root.getChild(".git").getChild("config").openOutputStream(EFS.NONE, null).close(); //$NON-NLS-1$ //$NON-NLS-2$
+		IFileStore b = root.getChild("b"); //$NON-NLS-1$
+		b.getChild("d").mkdir(EFS.NONE, null); //$NON-NLS-1$
+		b.getChild("c.txt").openOutputStream(EFS.NONE, null).close(); //$NON-NLS-1$
+		b.getChild("d").getChild("e.txt").openOutputStream(EFS.NONE, null).close(); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		root.delete(EFS.NONE, null);
+	}
+
+	@Test
+	public void testListsBreadthFirst() throws Exception
+	{
+		IFileStore[] files = new FileTreeCrawler(true, false).getFiles(root, new NullProgressMonitor());
+
+		assertEquals("[a.txt, b, b/c.txt, b/d, b/d/e.txt]", relativePaths(files));
+		int depth = 0;
+		for (IFileStore file : files)
+		{
+			int fileDepth = relativePath(file).split("/").length; //$NON-NLS-1$
+			assertTrue(fileDepth >= depth);
+			depth = fileDepth;
+		}
+	}
+
+	@Test
+	public void testCloakedFiles() throws Exception
+	{
+		IFileStore[] files = new FileTreeCrawler(true, true).getFiles(root, new NullProgressMonitor());
+
+		assertEquals("[.git, .git/config, a.txt, b, b/c.txt, b/d, b/d/e.txt]", relativePaths(files));
+	}
+
+	@Test
+	public void testNotRecursive() throws Exception
+	{
+		IFileStore[] files = new FileTreeCrawler(false, false).getFiles(root, new NullProgressMonitor());
+
+		assertEquals("[a.txt, b]", relativePaths(files));
+	}
+
+	@Test
+	public void testNotADirectory() throws Exception
+	{
+		IFileStore[] files = new FileTreeCrawler(true, false).getFiles(root.getChild("a.txt"), //$NON-NLS-1$
+				new NullProgressMonitor());
+
+		assertEquals(0, files.length);
+	}
+
+	@Test
+	public void testCrawlsRootsConcurrently() throws Exception
+	{
+		final List<String> visited = new ArrayList<String>();
+		final List<Integer> done = new ArrayList<Integer>();
+		final List<String> threads = new ArrayList<String>();
+		new FileTreeCrawler(true, false).crawl(new IFileStore[] { root, root.getChild("b") }, //$NON-NLS-1$
+				new FileTreeCrawler.IVisitor()
+				{
+					public boolean visit(int index, IFileStore file, IFileInfo info)
+					{
+						visited.add(index + ":" + relativePath(file)); //$NON-NLS-1$
+						threads.add(Thread.currentThread().getName());
+						return true;
+					}
+
+					public void rootDone(int index)
+					{
+						done.add(index);
+					}
+				}, new NullProgressMonitor());
+
+		Collections.sort(visited);
+		assertEquals("[0:a.txt, 0:b, 0:b/c.txt, 0:b/d, 0:b/d/e.txt, 1:b/c.txt, 1:b/d, 1:b/d/e.txt]",
+				visited.toString());
+		Collections.sort(done);
+		assertEquals("[0, 1]", done.toString());
+		// the visitor is only called on the thread running the crawl
+		for (String thread : threads)
+		{
+			assertEquals(Thread.currentThread().getName(), thread);
+		}
+	}
+
+	@Test
+	public void testVisitorStops() throws Exception
+	{
+		final List<IFileStore> visited = new ArrayList<IFileStore>();
+		final List<Integer> done = new ArrayList<Integer>();
+		new FileTreeCrawler(true, false).crawl(new IFileStore[] { root, root }, new FileTreeCrawler.IVisitor()
+		{
+			public boolean visit(int index, IFileStore file, IFileInfo info)
+			{
+				visited.add(file);
+				return false;
+			}
+
+			public void rootDone(int index)
+			{
+				done.add(index);
+			}
+		}, new NullProgressMonitor());
+
+		assertEquals(1, visited.size());
+		assertEquals(0, done.size());
+	}
+
+	@Test(expected = OperationCanceledException.class)
+	public void testCancel() throws Exception
+	{
+		NullProgressMonitor monitor = new NullProgressMonitor();
+		monitor.setCanceled(true);
+		new FileTreeCrawler(true, false).getFiles(root, monitor);
+	}
+
+	private String relativePaths(IFileStore[] files)
+	{
+		List<String> paths = new ArrayList<String>();
+		for (IFileStore file : files)
+		{
+			paths.add(relativePath(file));
+		}
+		Collections.sort(paths);
+		return paths.toString();
+	}
+
+	private String relativePath(IFileStore file)
+	{
+		String path = file.toURI().getPath();
+		String rootPath = root.toURI().getPath();
+		return path.substring(rootPath.length() + (rootPath.endsWith("/") ? 0 : 1)); //$NON-NLS-1$
+	}
+}
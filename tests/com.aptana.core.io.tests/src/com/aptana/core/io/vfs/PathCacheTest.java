@@ -0,0 +1,115 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.core.io.vfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.eclipse.core.runtime.Path;
+import org.junit.Test;
+
+public class PathCacheTest
+{
+
+	@Test
+	public void testGetAndPut() throws Exception
+	{
+		PathCache<String> cache = new PathCache<String>(60000, 100);
+		cache.put(Path.ROOT, "root"); //$NON-NLS-1$
+		cache.put(new Path("/a/b"), "b"); //$NON-NLS-1$ //$NON-NLS-2$
+		cache.put(new Path("/a/b"), "b2"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		assertEquals("root", cache.get(Path.ROOT)); //$NON-NLS-1$
+		assertEquals("b2", cache.get(new Path("/a/b"))); //$NON-NLS-1$ //$NON-NLS-2$
+		assertNull(cache.get(new Path("/a"))); //$NON-NLS-1$
+		assertNull(cache.get(new Path("/a/b/c"))); //$NON-NLS-1$
+		assertEquals(2, cache.size());
+		assertEquals(2, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void testRemoveAll() throws Exception
+	{
+		PathCache<String> cache = new PathCache<String>(60000, 100);
+		cache.put(new Path("/a"), "a"); //$NON-NLS-1$ //$NON-NLS-2$
+		cache.put(new Path("/a/b"), "b"); //$NON-NLS-1$ //$NON-NLS-2$
+		cache.put(new Path("/a/b/c"), "c"); //$NON-NLS-1$ //$NON-NLS-2$
+		cache.put(new Path("/ab"), "ab"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		cache.removeAll(new Path("/a/b")); //$NON-NLS-1$
+
+		assertEquals("a", cache.get(new Path("/a"))); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("ab", cache.get(new Path("/ab"))); //$NON-NLS-1$ //$NON-NLS-2$
+		assertNull(cache.get(new Path("/a/b"))); //$NON-NLS-1$
+		assertNull(cache.get(new Path("/a/b/c"))); //$NON-NLS-1$
+		assertEquals(2, cache.size());
+
+		cache.removeAll(Path.ROOT);
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testEvictsOldestWhenFull() throws Exception
+	{
+		PathCache<String> cache = new PathCache<String>(60000, 2);
+		cache.put(new Path("/a"), "a"); //$NON-NLS-1$ //$NON-NLS-2$
+		cache.put(new Path("/b"), "b"); //$NON-NLS-1$ //$NON-NLS-2$
+		cache.put(new Path("/a"), "a2"); //$NON-NLS-1$ //$NON-NLS-2$
+		cache.put(new Path("/c"), "c"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		assertEquals(2, cache.size());
+		assertNull(cache.get(new Path("/b"))); //$NON-NLS-1$
+		assertEquals("a2", cache.get(new Path("/a"))); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("c", cache.get(new Path("/c"))); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	@Test
+	public void testExpires() throws Exception
+	{
+		TestCache cache = new TestCache(60000, 100);
+		cache.put(new Path("/a/b"), "b"); //$NON-NLS-1$ //$NON-NLS-2$
+		cache.advance(60001);
+		cache.put(new Path("/a/c"), "c"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		assertNull(cache.get(new Path("/a/b"))); //$NON-NLS-1$
+		assertEquals("c", cache.get(new Path("/a/c"))); //$NON-NLS-1$ //$NON-NLS-2$
+
+		cache.advance(60000);
+		cache.sweep();
+		assertEquals(1, cache.size());
+
+		cache.advance(1);
+		cache.sweep();
+		assertEquals(0, cache.size());
+	}
+
+	/**
+	 * A cache timed with a clock the test advances, rather than the system clock.
+	 */
+	private static class TestCache extends PathCache<String>
+	{
+		private long time;
+
+		private TestCache(long ttl, int maxSize)
+		{
+			super(ttl, maxSize);
+		}
+
+		private void advance(long delay)
+		{
+			time += delay;
+		}
+
+		@Override
+		long now()
+		{
+			return time;
+		}
+	}
+}
@@ -0,0 +1,232 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.core.io.vfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Status;
+import org.junit.Test;
+
+import com.aptana.ide.core.io.CoreIOPlugin;
+
+public class TransferSchedulerTest
+{
+
+	@Test
+	public void testRunsSmallestFirst() throws Exception
+	{
+		TransferScheduler scheduler = new TransferScheduler(1, 0);
+		List<String> ran = Collections.synchronizedList(new ArrayList<String>());
+		scheduler.add(new Transfer("c", 300, 0, ran));
+		scheduler.add(new Transfer("a", 100, 0, ran));
+		scheduler.add(new Transfer("b", 200, 0, ran));
+		scheduler.add(new Transfer("a2", 100, 0, ran));
+
+		Listener listener = new Listener(true);
+		IStatus status = scheduler.run(listener, new NullProgressMonitor());
+
+		assertTrue(status.isOK());
+		assertEquals("[a, a2, b, c]", ran.toString());
+		assertEquals(ran, listener.done);
+		assertEquals(4, scheduler.getFilesTransferred());
+		assertEquals(700, scheduler.getBytesTransferred());
+		assertEquals(0, scheduler.size());
+	}
+
+	@Test
+	public void testRunsConcurrently() throws Exception
+	{
+		TransferScheduler scheduler = new TransferScheduler(4, 0);
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+		for (int i = 0; i < 20; i++)
+		{
+			scheduler.add(new Transfer("t" + i, i, 0, null)
+			{
+				@Override
+				public void run(IProgressMonitor monitor) throws CoreException
+				{
+					int count = running.incrementAndGet();
+					synchronized (maxRunning)
+					{
+						maxRunning.set(Math.max(maxRunning.get(), count));
+					}
+					threads.add(Thread.currentThread().getName());
+					try
+					{
+						Thread.sleep(20);
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+					}
+					running.decrementAndGet();
+				}
+			});
+		}
+
+		Listener listener = new Listener(true);
+		scheduler.run(listener, new NullProgressMonitor());
+
+		assertEquals(20, listener.done.size());
+		assertEquals(20, scheduler.getFilesTransferred());
+		assertTrue("expected transfers to overlap", maxRunning.get() > 1);
+		assertTrue(maxRunning.get() <= 4);
+		// the listener is called on the calling thread only
+		assertEquals(Collections.singletonList(Thread.currentThread().getName()), listener.threads);
+		assertTrue(!threads.contains(Thread.currentThread().getName()));
+	}
+
+	@Test
+	public void testRetriesFailedTransfers() throws Exception
+	{
+		TransferScheduler scheduler = new TransferScheduler(2, 2);
+		Transfer flaky = new Transfer("flaky", 10, 2, null);
+		Transfer broken = new Transfer("broken", 20, 5, null);
+		scheduler.add(flaky);
+		scheduler.add(broken);
+
+		Listener listener = new Listener(true);
+		scheduler.run(listener, new NullProgressMonitor());
+
+		assertEquals(3, flaky.attempts.get());
+		assertEquals(3, broken.attempts.get());
+		assertEquals(Collections.singletonList("flaky"), listener.done);
+		assertEquals(Collections.singletonList("broken"), listener.failed);
+		assertEquals(1, scheduler.getFilesTransferred());
+		assertEquals(10, scheduler.getBytesTransferred());
+	}
+
+	@Test
+	public void testListenerStops() throws Exception
+	{
+		TransferScheduler scheduler = new TransferScheduler(1, 0);
+		List<String> ran = new ArrayList<String>();
+		scheduler.add(new Transfer("a", 1, 1, ran));
+		scheduler.add(new Transfer("b", 2, 0, ran));
+		scheduler.add(new Transfer("c", 3, 0, ran));
+
+		Listener listener = new Listener(false);
+		scheduler.run(listener, new NullProgressMonitor());
+
+		assertEquals(Collections.singletonList("a"), listener.failed);
+		assertTrue(listener.done.isEmpty());
+		assertTrue(ran.isEmpty());
+	}
+
+	@Test
+	public void testCancel() throws Exception
+	{
+		TransferScheduler scheduler = new TransferScheduler(2, 0);
+		final NullProgressMonitor monitor = new NullProgressMonitor();
+		for (int i = 0; i < 10; i++)
+		{
+			scheduler.add(new Transfer("t" + i, i, 0, null)
+			{
+				@Override
+				public void run(IProgressMonitor transferMonitor) throws CoreException
+				{
+					monitor.setCanceled(true);
+				}
+			});
+		}
+
+		Listener listener = new Listener(true);
+		IStatus status = scheduler.run(listener, monitor);
+
+		assertEquals(IStatus.CANCEL, status.getSeverity());
+		assertTrue(listener.done.size() < 10);
+	}
+
+	private static class Transfer implements TransferScheduler.ITransfer
+	{
+		private final String name;
+		private final long size;
+		private final int failures;
+		private final List<String> ran;
+		private final AtomicInteger attempts = new AtomicInteger();
+
+		Transfer(String name, long size, int failures, List<String> ran)
+		{
+			this.name = name;
+			this.size = size;
+			this.failures = failures;
+			this.ran = ran;
+		}
+
+		public long getSize()
+		{
+			return size;
+		}
+
+		public void run(IProgressMonitor monitor) throws CoreException
+		{
+			if (attempts.incrementAndGet() <= failures)
+			{
+				throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID, name));
+			}
+			if (ran != null)
+			{
+				ran.add(name);
+			}
+		}
+
+		@Override
+		public String toString()
+		{
+			return name;
+		}
+	}
+
+	private static class Listener implements TransferScheduler.IListener
+	{
+		private final boolean continueOnError;
+		private final List<String> done = new ArrayList<String>();
+		private final List<String> failed = new ArrayList<String>();
+		private final List<String> threads = new ArrayList<String>();
+
+		Listener(boolean continueOnError)
+		{
+			this.continueOnError = continueOnError;
+		}
+
+		public boolean transferDone(TransferScheduler.ITransfer transfer)
+		{
+			record();
+			done.add(transfer.toString());
+			return true;
+		}
+
+		public boolean transferFailed(TransferScheduler.ITransfer transfer, CoreException e)
+		{
+			record();
+			failed.add(transfer.toString());
+			return continueOnError;
+		}
+
+		private void record()
+		{
+			String name = Thread.currentThread().getName();
+			if (!threads.contains(name))
+			{
+				threads.add(name);
+			}
+		}
+	}
+}
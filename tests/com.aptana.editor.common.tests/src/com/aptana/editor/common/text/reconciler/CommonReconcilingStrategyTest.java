@@ -6,6 +6,8 @@ import org.junit.Before;
 import static org.junit.Assert.*;
 import junit.framework.TestCase;
 
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocumentListener;
 import org.eclipse.jface.text.TypedRegion;
 import org.eclipse.ui.IPropertyListener;
 import org.jmock.Expectations;
@@ -66,4 +68,54 @@ public class CommonReconcilingStrategyTest
 		context.assertIsSatisfied();
 	}
 
+	@Test
+	public void testFolderStopsListeningToDocumentWhenReplaced() throws Exception
+	{
+		final ListenerCountingDocument first = new ListenerCountingDocument();
+		final ListenerCountingDocument second = new ListenerCountingDocument();
+		int firstListeners = first.listeners;
+		int secondListeners = second.listeners;
+		context.checking(new Expectations()
+		{
+			{
+				oneOf(editor).addPropertyListener(with(any(IPropertyListener.class)));
+				oneOf(editor).removePropertyListener(with(any(IPropertyListener.class)));
+				oneOf(editor).createFoldingComputer(first);
+				will(returnValue(new RubyRegexpFolder(null, first)));
+				oneOf(editor).createFoldingComputer(second);
+				will(returnValue(new RubyRegexpFolder(null, second)));
+			}
+		});
+
+		CommonReconcilingStrategy strategy = new CommonReconcilingStrategy(editor);
+		strategy.setDocument(first);
+		assertEquals(firstListeners + 1, first.listeners);
+
+		strategy.setDocument(second);
+		assertEquals(firstListeners, first.listeners);
+		assertEquals(secondListeners + 1, second.listeners);
+
+		strategy.dispose();
+		assertEquals(secondListeners, second.listeners);
+		context.assertIsSatisfied();
+	}
+
+	private static class ListenerCountingDocument extends Document
+	{
+		private int listeners;
+
+		@Override
+		public void addDocumentListener(IDocumentListener listener)
+		{
+			super.addDocumentListener(listener);
+			listeners++;
+		}
+
+		@Override
+		public void removeDocumentListener(IDocumentListener listener)
+		{
+			super.removeDocumentListener(listener);
+			listeners--;
+		}
+	}
 }
@@ -15,7 +15,8 @@ import junit.framework.TestResult;
 import junit.framework.TestSuite;
 
 @RunWith(Suite.class)
-@SuiteClasses({CommonReconcilerTest.class, CommonReconcilingStrategyTest.class, RubyRegexpFolderTest.class, })
+@SuiteClasses({CommonReconcilerTest.class, CommonReconcilingStrategyTest.class, RubyRegexpFolderTest.class,
+		RubyRegexpTranslatorTest.class, })
 public class ReconcilerTests
 {
 
@@ -9,6 +9,7 @@ package com.aptana.editor.common.text.reconciler;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
@@ -53,9 +54,11 @@ public class RubyRegexpFolderPerformanceTest extends GlobalTimePerformanceTestCa
 			}
 
 			@Override
-			protected String getScopeAtOffset(int offset) throws BadLocationException
+			protected String[] getScopesAtOffsets(int[] offsets) throws BadLocationException
 			{
-				return "source.css";
+				String[] scopes = new String[offsets.length];
+				Arrays.fill(scopes, "source.css");
+				return scopes;
 			}
 		};
 
@@ -72,6 +75,62 @@ public class RubyRegexpFolderPerformanceTest extends GlobalTimePerformanceTestCa
 		assertPerformance();
 	}
 
+	public void testYUICSSFoldingAfterEdit() throws Exception
+	{
+		Ruby runtime = Ruby.newInstance();
+		final RubyRegexp endFolding = RubyRegexp.newRegexp(runtime, "(?<!\\*)\\*\\*\\/|^\\s*\\}",
+				RegexpOptions.NULL_OPTIONS);
+		final RubyRegexp startFolding = RubyRegexp.newRegexp(runtime,
+				"\\/\\*\\*(?!\\*)|\\{\\s*($|\\/\\*(?!.*?\\*\\/.*\\S))", RegexpOptions.NULL_OPTIONS);
+
+		String src = readFile("yui.css");
+		IDocument document = new Document(src);
+		RubyRegexpFolder folder = new RubyRegexpFolder(null, document)
+		{
+			@Override
+			protected RubyRegexp getEndFoldRegexp(String scope)
+			{
+				return endFolding;
+			}
+
+			@Override
+			protected RubyRegexp getStartFoldRegexp(String scope)
+			{
+				return startFolding;
+			}
+
+			@Override
+			protected String[] getScopesAtOffsets(int[] offsets) throws BadLocationException
+			{
+				String[] scopes = new String[offsets.length];
+				Arrays.fill(scopes, "source.css");
+				return scopes;
+			}
+		};
+		folder.emitFoldingRegions(true, new NullProgressMonitor(), null);
+
+		// Now do the work, typing and deleting a rule in the middle of the file
+		int offset = document.getLineOffset(document.getNumberOfLines() / 2);
+		String rule = "a {\n\tcolor: red;\n}\n";
+		for (int i = 0; i < 400; i++)
+		{
+			if (i % 2 == 0)
+			{
+				document.replace(offset, 0, rule);
+			}
+			else
+			{
+				document.replace(offset, rule.length(), "");
+			}
+			IProgressMonitor monitor = new NullProgressMonitor();
+			startMeasuring();
+			folder.emitFoldingRegions(false, monitor, null);
+			stopMeasuring();
+		}
+		commitMeasurements();
+		assertPerformance();
+	}
+
 	protected static String readFile(String fileName) throws IOException
 	{
 		InputStream stream = RubyRegexpFolderPerformanceTest.class.getResourceAsStream(fileName);
@@ -11,8 +11,11 @@ import org.junit.After;
 import org.junit.Test;
 import org.junit.Before;
 import static org.junit.Assert.*;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import junit.framework.TestCase;
 
@@ -70,9 +73,11 @@ public class RubyRegexpFolderTest
 			}
 
 			@Override
-			protected String getScopeAtOffset(int offset) throws BadLocationException
+			protected String[] getScopesAtOffsets(int[] offsets) throws BadLocationException
 			{
-				return "source.css";
+				String[] scopes = new String[offsets.length];
+				Arrays.fill(scopes, "source.css");
+				return scopes;
 			}
 		};
 		Map<ProjectionAnnotation, Position> annotations = folder.emitFoldingRegions(false, new NullProgressMonitor(),
@@ -106,9 +111,11 @@ public class RubyRegexpFolderTest
 			}
 
 			@Override
-			protected String getScopeAtOffset(int offset) throws BadLocationException
+			protected String[] getScopesAtOffsets(int[] offsets) throws BadLocationException
 			{
-				return "source.js";
+				String[] scopes = new String[offsets.length];
+				Arrays.fill(scopes, "source.js");
+				return scopes;
 			}
 		};
 		Map<ProjectionAnnotation, Position> annotations = folder.emitFoldingRegions(false, new NullProgressMonitor(),
@@ -140,9 +147,11 @@ public class RubyRegexpFolderTest
 			}
 
 			@Override
-			protected String getScopeAtOffset(int offset) throws BadLocationException
+			protected String[] getScopesAtOffsets(int[] offsets) throws BadLocationException
 			{
-				return "source.js";
+				String[] scopes = new String[offsets.length];
+				Arrays.fill(scopes, "source.js");
+				return scopes;
 			}
 		};
 		Map<ProjectionAnnotation, Position> annotations = folder.emitFoldingRegions(false, new NullProgressMonitor(),
@@ -177,9 +186,11 @@ public class RubyRegexpFolderTest
 			}
 
 			@Override
-			protected String getScopeAtOffset(int offset) throws BadLocationException
+			protected String[] getScopesAtOffsets(int[] offsets) throws BadLocationException
 			{
-				return "source.js";
+				String[] scopes = new String[offsets.length];
+				Arrays.fill(scopes, "source.js");
+				return scopes;
 			}
 		};
 		Map<ProjectionAnnotation, Position> annotations = folder.emitFoldingRegions(false, new NullProgressMonitor(),
@@ -188,4 +199,97 @@ public class RubyRegexpFolderTest
 		assertEquals(1, positions.size());
 		assertTrue(positions.contains(new Position(0, src.length()))); // eats whole line at end
 	}
+
+	@Test
+	public void testFoldingAfterEditsIsTheSameAsFoldingAgain() throws Exception
+	{
+		String src = "body {\n" + "	color: red;\n" + "}\n" + "\n" + "div p {\n" + "	background-color: green;\n" + "}\n"
+				+ "\n" + ".one-liner { color: orange; }\n" + "\n" + "#id { \n" + "	font-family: monospace;\n" + "}";
+		Document document = new Document(src);
+		RubyRegexpFolder folder = createCSSFolder(document);
+		assertEquals(3, fold(folder, true).size());
+
+		// a new rule in the middle
+		document.replace(src.indexOf("div"), 0, "a {\n	margin: 0;\n}\n\n");
+		Set<Position> positions = fold(folder, false);
+		assertEquals(4, positions.size());
+		assertEquals(fold(createCSSFolder(document), true), positions);
+
+		// the first rule isn't closed anymore
+		document.replace(document.get().indexOf("}"), 1, "");
+		assertEquals(fold(createCSSFolder(document), true), fold(folder, false));
+
+		// changes at both ends at once
+		document.replace(0, 0, "p {\n}\n");
+		document.replace(document.getLength(), 0, "\nem {\n	color: blue;\n}\n");
+		assertEquals(fold(createCSSFolder(document), true), fold(folder, false));
+	}
+
+	@Test
+	public void testFoldingWithMarkerJavaCantMatch() throws Exception
+	{
+		String src = "body {\n	color: red;\n}\n";
+		final RubyRegexp startRegexp = RubyRegexp.newRegexp(runtime, "(?<brace>\\{)\\s*$", RegexpOptions.NULL_OPTIONS);
+		assertNull(RubyRegexpTranslator.translate(startRegexp));
+
+		IDocument document = new Document(src);
+		RubyRegexpFolder folder = new RubyRegexpFolder(null, document)
+		{
+			@Override
+			protected RubyRegexp getEndFoldRegexp(String scope)
+			{
+				return RubyRegexp.newRegexp(runtime, "^\\s*\\}", RegexpOptions.NULL_OPTIONS);
+			}
+
+			@Override
+			protected RubyRegexp getStartFoldRegexp(String scope)
+			{
+				return startRegexp;
+			}
+
+			@Override
+			protected String[] getScopesAtOffsets(int[] offsets) throws BadLocationException
+			{
+				String[] scopes = new String[offsets.length];
+				Arrays.fill(scopes, "source.css");
+				return scopes;
+			}
+		};
+		Collection<Position> positions = fold(folder, false);
+		assertEquals(1, positions.size());
+		assertTrue(positions.contains(new Position(0, src.length())));
+	}
+
+	private RubyRegexpFolder createCSSFolder(IDocument document)
+	{
+		return new RubyRegexpFolder(null, document)
+		{
+			@Override
+			protected RubyRegexp getEndFoldRegexp(String scope)
+			{
+				return RubyRegexp.newRegexp(runtime, "(?<!\\*)\\*\\*\\/|^\\s*\\}", RegexpOptions.NULL_OPTIONS);
+			}
+
+			@Override
+			protected RubyRegexp getStartFoldRegexp(String scope)
+			{
+				return RubyRegexp.newRegexp(runtime, "\\/\\*\\*(?!\\*)|\\{\\s*($|\\/\\*(?!.*?\\*\\/.*\\S))",
+						RegexpOptions.NULL_OPTIONS);
+			}
+
+			@Override
+			protected String[] getScopesAtOffsets(int[] offsets) throws BadLocationException
+			{
+				String[] scopes = new String[offsets.length];
+				Arrays.fill(scopes, "source.css");
+				return scopes;
+			}
+		};
+	}
+
+	private Set<Position> fold(RubyRegexpFolder folder, boolean initialReconcile) throws BadLocationException
+	{
+		return new HashSet<Position>(folder.emitFoldingRegions(initialReconcile, new NullProgressMonitor(), null)
+				.values());
+	}
 }
@@ -0,0 +1,120 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.editor.common.text.reconciler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jruby.Ruby;
+import org.jruby.RubyRegexp;
+import org.jruby.util.RegexpOptions;
+import org.junit.Test;
+
+public class RubyRegexpTranslatorTest
+{
+
+	private static String translate(String source)
+	{
+		Pattern pattern = RubyRegexpTranslator.translate(source, false, false, false);
+		return (pattern == null) ? null : pattern.pattern();
+	}
+
+	private static boolean matchesLine(Pattern pattern, String line)
+	{
+		String text = "before\n" + line + "\nafter";
+		Matcher matcher = pattern.matcher(text);
+		matcher.region(7, 7 + line.length());
+		return matcher.find();
+	}
+
+	@Test
+	public void testSameSyntaxIsKept()
+	{
+		String source = "(?<!\\*)\\*\\*\\/|^\\s*\\}";
+		assertEquals(source, translate(source));
+		source = "\\/\\*\\*(?!\\*)|\\{\\s*($|\\/\\*(?!.*?\\*\\/.*\\S))";
+		assertEquals(source, translate(source));
+	}
+
+	@Test
+	public void testPosixBrackets()
+	{
+		assertEquals("[\\p{Alpha}_][\\P{Space}\\w]", translate("[[:alpha:]_][[:^space:][:word:]]"));
+		assertNull(translate("[[:foo:]]"));
+	}
+
+	@Test
+	public void testHexDigitEscapes()
+	{
+		assertEquals("\\p{XDigit}+\\P{XDigit}", translate("\\h+\\H"));
+	}
+
+	@Test
+	public void testBraceLiterals()
+	{
+		assertEquals("a{2}b{0,3}\\{\\s*$", translate("a{2}b{,3}{\\s*$"));
+	}
+
+	@Test
+	public void testExtendedMode()
+	{
+		assertEquals("^\\s*(module|class)\\b", translate("(?x) ^ \\s* (module | class) \\b # a comment"));
+		assertEquals("(?:ab)c d", translate("(?x: a b # comment\n )c d"));
+		assertEquals("[ ]x", RubyRegexpTranslator.translate("[ ] x", false, true, false).pattern());
+	}
+
+	@Test
+	public void testInlineMultilineOption()
+	{
+		assertEquals("(?s:a.b)(?i)c", translate("(?m:a.b)(?i)c"));
+	}
+
+	@Test
+	public void testUntranslatedSyntax()
+	{
+		assertNull(translate("(?<name>a)\\k<name>"));
+		assertNull(translate("a\\Kb"));
+		assertNull(translate("[]a]"));
+		assertNull(translate("[\\b]"));
+		assertNull(translate("(a"));
+	}
+
+	@Test
+	public void testMatchesLikeRuby()
+	{
+		Pattern pattern = RubyRegexpTranslator.translate("^\\s*\\}$", false, false, false);
+		assertTrue(matchesLine(pattern, "  }"));
+		assertFalse(matchesLine(pattern, "  } a"));
+		// dots match carriage returns but not newlines
+		pattern = RubyRegexpTranslator.translate("^a.b$", false, false, false);
+		assertTrue(matchesLine(pattern, "a\rb"));
+		assertFalse(pattern.matcher("a\nb").find());
+	}
+
+	@Test
+	public void testOptions()
+	{
+		Ruby runtime = Ruby.newInstance();
+		Pattern pattern = RubyRegexpTranslator.translate(RubyRegexp.newRegexp(runtime, "begin.end",
+				RegexpOptions.NULL_OPTIONS));
+		assertNotNull(pattern);
+		assertFalse(pattern.matcher("BEGIN END").find());
+		assertFalse(pattern.matcher("begin\nend").find());
+
+		pattern = RubyRegexpTranslator.translate(RubyRegexp.newRegexp(runtime, "(?i)begin.end",
+				RegexpOptions.NULL_OPTIONS));
+		assertNotNull(pattern);
+		assertTrue(pattern.matcher("BEGIN END").find());
+	}
+}
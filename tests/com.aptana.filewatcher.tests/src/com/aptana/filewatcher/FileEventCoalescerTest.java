@@ -0,0 +1,219 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.filewatcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.contentobjects.jnotify.IJNotify;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileEventCoalescerTest
+{
+
+	/**
+	 * Long enough for the dispatch thread never to get to the batches, they're flushed by the tests.
+	 */
+	private static final long WINDOW = 60000;
+	private static final String ROOT = "/root"; //$NON-NLS-1$
+
+	private List<List<String>> batches;
+	private TestCoalescer coalescer;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		batches = new ArrayList<List<String>>();
+		coalescer = new TestCoalescer(IJNotify.FILE_ANY);
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		coalescer.dispose();
+		coalescer = null;
+		batches = null;
+	}
+
+	@Test
+	public void testCreatedThenDeletedCancelOut()
+	{
+		coalescer.fileCreated(1, ROOT, "a");
+		coalescer.fileModified(1, ROOT, "a");
+		coalescer.fileCreated(1, ROOT, "b");
+		coalescer.fileDeleted(1, ROOT, "a");
+		assertFlushed(WINDOW, "created b");
+
+		// nothing left to deliver
+		coalescer.fileCreated(1, ROOT, "c");
+		coalescer.fileDeleted(1, ROOT, "c");
+		coalescer.advance(WINDOW);
+		coalescer.flush();
+		assertEquals(batches.toString(), 1, batches.size());
+	}
+
+	@Test
+	public void testModificationsCollapse()
+	{
+		coalescer.fileModified(1, ROOT, "a");
+		coalescer.fileCreated(1, ROOT, "b");
+		coalescer.fileModified(1, ROOT, "a");
+		coalescer.fileModified(1, ROOT, "b");
+		coalescer.fileModified(1, ROOT, "a");
+		assertFlushed(WINDOW, "modified a", "created b");
+	}
+
+	@Test
+	public void testDeletedThenCreatedIsModified()
+	{
+		coalescer.fileDeleted(1, ROOT, "a");
+		coalescer.fileCreated(1, ROOT, "a");
+		assertFlushed(WINDOW, "modified a");
+
+		coalescer.dispose();
+		coalescer = new TestCoalescer(IJNotify.FILE_CREATED | IJNotify.FILE_DELETED);
+		coalescer.fileDeleted(1, ROOT, "a");
+		coalescer.fileCreated(1, ROOT, "a");
+		assertFlushed(WINDOW, "deleted a", "created a");
+	}
+
+	@Test
+	public void testRenamesChain()
+	{
+		coalescer.fileCreated(1, ROOT, "a");
+		coalescer.fileRenamed(1, ROOT, "a", "b");
+		coalescer.fileModified(1, ROOT, "b");
+		coalescer.fileModified(1, ROOT, "b");
+		coalescer.fileRenamed(1, ROOT, "b", "c");
+		// the deletion of the renamed file doesn't cancel its creation under another name
+		coalescer.fileDeleted(1, ROOT, "c");
+		assertFlushed(WINDOW, "created a", "renamed a->b", "modified b", "renamed b->c", "deleted c");
+	}
+
+	@Test
+	public void testBatchIsHeldUntilQuiet()
+	{
+		coalescer.fileModified(1, ROOT, "a");
+		coalescer.advance(WINDOW / 2);
+		coalescer.fileModified(1, ROOT, "b");
+		coalescer.advance(WINDOW / 2);
+		coalescer.flush();
+		assertTrue(batches.toString(), batches.isEmpty());
+
+		assertFlushed(WINDOW / 2, "modified a", "modified b");
+	}
+
+	@Test
+	public void testSteadyChangesAreDeliveredAnyway()
+	{
+		for (int i = 0; i < 19; i++)
+		{
+			coalescer.fileModified(1, ROOT, "a");
+			coalescer.advance(WINDOW / 2);
+			coalescer.flush();
+		}
+		assertTrue(batches.toString(), batches.isEmpty());
+		coalescer.fileModified(1, ROOT, "b");
+		assertFlushed(WINDOW / 2, "modified a", "modified b");
+	}
+
+	@Test
+	public void testFlushesAreDeliveredInOrder()
+	{
+		coalescer.fileCreated(1, ROOT, "a");
+		coalescer.fileModified(2, ROOT, "b");
+		assertFlushed(WINDOW, "created a", "modified b");
+
+		// not collapsed into the changes delivered already
+		coalescer.fileDeleted(1, ROOT, "a");
+		coalescer.fileModified(2, ROOT, "b");
+		coalescer.advance(WINDOW);
+		coalescer.flush();
+		assertEquals(Arrays.asList(Arrays.asList("created a", "modified b"), Arrays.asList("deleted a", "modified b")),
+				batches);
+	}
+
+	@Test
+	public void testDisposeDropsPendingChanges()
+	{
+		coalescer.fileCreated(1, ROOT, "a");
+		coalescer.dispose();
+		coalescer.fileModified(1, ROOT, "b");
+		coalescer.advance(WINDOW);
+		coalescer.flush();
+		assertTrue(batches.toString(), batches.isEmpty());
+	}
+
+	/**
+	 * Moves the clock forward, flushes and checks the last batch delivered.
+	 */
+	private void assertFlushed(long delay, String... events)
+	{
+		coalescer.advance(delay);
+		coalescer.flush();
+		assertTrue("Nothing was delivered", !batches.isEmpty());
+		assertEquals(Arrays.asList(events), batches.get(batches.size() - 1));
+	}
+
+	private static String describe(FileWatcherEvent event)
+	{
+		switch (event.getType())
+		{
+			case IJNotify.FILE_CREATED:
+				return "created " + event.getName();
+			case IJNotify.FILE_DELETED:
+				return "deleted " + event.getName();
+			case IJNotify.FILE_MODIFIED:
+				return "modified " + event.getName();
+			case IJNotify.FILE_RENAMED:
+				return "renamed " + event.getOldName() + "->" + event.getName();
+			default:
+				return event.toString();
+		}
+	}
+
+	private class TestCoalescer extends FileEventCoalescer
+	{
+		private long time;
+
+		private TestCoalescer(int mask)
+		{
+			super(new IFileWatcherBatchListener()
+			{
+				public void filesChanged(List<FileWatcherEvent> events)
+				{
+					List<String> batch = new ArrayList<String>(events.size());
+					for (FileWatcherEvent event : events)
+					{
+						assertEquals(ROOT, event.getRootPath());
+						batch.add(describe(event));
+					}
+					batches.add(batch);
+				}
+			}, mask, WINDOW);
+		}
+
+		private void advance(long delay)
+		{
+			time += delay;
+		}
+
+		@Override
+		long now()
+		{
+			return time;
+		}
+	}
+}
@@ -3,9 +3,11 @@ package com.aptana.git.core.model;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
 import java.io.FileWriter;
 import java.text.MessageFormat;
 import java.util.ArrayList;
@@ -349,6 +351,126 @@ public class GitIndexTest extends GitTestCase
 		assertContains(files, "file6.txt", Status.NEW, false, true);
 	}
 
+	@Test
+	public void testRefreshOnlyReportsFilesWhoseContentsChanged() throws Exception
+	{
+		GitRepository repo = createRepo();
+		File dir = repo.workingDirectory().append("dir/sub").toFile();
+		assertTrue(dir.mkdirs());
+		String[] names = new String[] { "top.txt", "dir/one.txt", "dir/sub/two.txt", "dir/sub/three.txt" };
+		for (String name : names)
+		{
+			FileWriter writer = new FileWriter(repo.workingDirectory().append(name).toOSString());
+			writer.write("Hello World!");
+			writer.close();
+		}
+		assertStageFiles(repo.index(), repo.index().changedFiles());
+		assertCommit(repo.index(), "initial");
+
+		// get past the racy git window of the index we just wrote
+		Thread.sleep(1100);
+
+		// rewritten with the same contents: different timestamp, same size
+		FileWriter writer = new FileWriter(repo.workingDirectory().append("dir/one.txt").toOSString());
+		writer.write("Hello World!");
+		writer.close();
+		File touched = repo.workingDirectory().append("top.txt").toFile();
+		assertTrue(touched.setLastModified(touched.lastModified() + 5000));
+		// same size, different contents
+		writer = new FileWriter(repo.workingDirectory().append("dir/sub/two.txt").toOSString());
+		writer.write("Hello Earth!");
+		writer.close();
+		// staged change deep in the tree
+		writer = new FileWriter(repo.workingDirectory().append("dir/sub/three.txt").toOSString(), true);
+		writer.write("\nAdded line");
+		writer.close();
+
+		assertRefresh();
+		List<ChangedFile> files = repo.index().changedFiles();
+		assertContains(files, "dir/sub/two.txt", Status.MODIFIED, false, true);
+		assertContains(files, "dir/sub/three.txt", Status.MODIFIED, false, true);
+		assertEquals(files.toString(), 2, files.size());
+
+		List<ChangedFile> toStage = CollectionsUtil.filter(files, new IFilter<ChangedFile>()
+		{
+			public boolean include(ChangedFile item)
+			{
+				return "dir/sub/three.txt".equals(item.getRelativePath().toPortableString());
+			}
+		});
+		assertStageFiles(repo.index(), toStage);
+		repo.deleteFile(Path.fromPortableString("top.txt"));
+
+		assertRefresh();
+		files = repo.index().changedFiles();
+		assertContains(files, "dir/sub/two.txt", Status.MODIFIED, false, true);
+		assertContains(files, "dir/sub/three.txt", Status.MODIFIED, true, false);
+		assertContains(files, "top.txt", Status.DELETED, true, false);
+		assertEquals(files.toString(), 3, files.size());
+	}
+
+	@Test
+	public void testRefreshOfTouchedFiles() throws Exception
+	{
+		GitRepository repo = createRepo();
+		for (String name : new String[] { "file1.txt", "file2.txt" })
+		{
+			FileWriter writer = new FileWriter(repo.workingDirectory().append(name).toOSString());
+			writer.write("Hello World!");
+			writer.close();
+		}
+		assertStageFiles(repo.index(), repo.index().changedFiles());
+		assertCommit(repo.index(), "initial");
+		assertRefresh();
+
+		// the stat data of both files no longer matches the index, only the content of the second one changed
+		File touched = repo.workingDirectory().append("file1.txt").toFile();
+		assertTrue(touched.setLastModified(touched.lastModified() + 5000));
+		FileWriter writer = new FileWriter(repo.workingDirectory().append("file2.txt").toOSString());
+		writer.write("Hello Earth!");
+		writer.close();
+		File modified = repo.workingDirectory().append("file2.txt").toFile();
+		assertTrue(modified.setLastModified(touched.lastModified()));
+
+		assertRefresh();
+		List<ChangedFile> files = repo.index().changedFiles();
+		assertContains(files, "file2.txt", Status.MODIFIED, false, true);
+		assertEquals(files.toString(), 1, files.size());
+	}
+
+	@Test
+	public void testPathsChangedInIndex() throws Exception
+	{
+		GitRepository repo = createRepo();
+		for (String name : new String[] { "file1.txt", "file2.txt" })
+		{
+			FileWriter writer = new FileWriter(repo.workingDirectory().append(name).toOSString());
+			writer.write("Hello World!");
+			writer.close();
+		}
+		assertStageFiles(repo.index(), repo.index().changedFiles());
+		assertCommit(repo.index(), "initial");
+		assertRefresh();
+
+		// git refreshing its stat data rewrites the index, but doesn't change any status
+		File touched = repo.workingDirectory().append("file1.txt").toFile();
+		assertTrue(touched.setLastModified(touched.lastModified() + 5000));
+		assertTrue(repo.execute(GitRepository.ReadWrite.WRITE, "update-index", "-q", "--refresh").isOK());
+		assertEquals(0, repo.index().pathsChangedInIndex().size());
+
+		// staged from outside
+		FileWriter writer = new FileWriter(repo.workingDirectory().append("file2.txt").toOSString(), true);
+		writer.write("\nAdded line");
+		writer.close();
+		assertTrue(repo.execute(GitRepository.ReadWrite.WRITE, "add", "file2.txt").isOK());
+		assertEquals(CollectionsUtil.newList(Path.fromPortableString("file2.txt")), repo.index()
+				.pathsChangedInIndex());
+
+		// a commit moves HEAD, which takes a full refresh
+		assertTrue(repo.execute(GitRepository.ReadWrite.WRITE, "commit", "-m", "second").isOK());
+		assertNull(repo.index().pathsChangedInIndex());
+	}
+
 	private void assertContains(List<ChangedFile> files, final String path, final Status status,
 			final boolean hasStaged, final boolean hasUnstaged)
 	{
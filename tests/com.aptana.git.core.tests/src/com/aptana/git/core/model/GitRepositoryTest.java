@@ -231,6 +231,59 @@ public class GitRepositoryTest extends GitTestCase
 		}
 	}
 
+	@Test
+	public void testWalkRevisionListInPages() throws Throwable
+	{
+		GitRepository repo = createRepo();
+		GitIndex index = repo.index();
+		for (int i = 1; i <= 3; i++)
+		{
+			FileWriter writer = new FileWriter(fileToAdd());
+			writer.write("Revision " + i);
+			writer.close();
+			assertRefresh();
+			assertStageFiles(index, index.changedFiles());
+			assertCommit(index, "Commit " + i + "\n\nDetails of commit " + i + "\n");
+		}
+
+		// the second walk is replayed from the history cache, it should be indistinguishable
+		for (int walk = 0; walk < 2; walk++)
+		{
+			final List<List<GitCommit>> pages = new ArrayList<List<GitCommit>>();
+			GitRevList list = new GitRevList(repo);
+			IStatus result = list.walkRevisionList(null, 2, new GitRevList.IPageListener()
+			{
+				public void pageLoaded(List<GitCommit> commits)
+				{
+					pages.add(commits);
+				}
+			}, new NullProgressMonitor());
+			assertTrue(result.isOK());
+
+			assertEquals("pages", 2, pages.size());
+			assertEquals("first page size", 2, pages.get(0).size());
+			assertEquals("last page size", 1, pages.get(1).size());
+
+			List<GitCommit> commits = list.getCommits();
+			assertEquals("commit list size", 3, commits.size());
+			assertEquals(pages.get(0).get(0), commits.get(0));
+			assertEquals(pages.get(1).get(0), commits.get(2));
+			for (int i = 0; i < 3; i++)
+			{
+				GitCommit commit = commits.get(i);
+				assertEquals("subject", "Commit " + (3 - i), commit.getSubject());
+				// the message is read on demand
+				assertEquals("comment", "Commit " + (3 - i) + "\n\nDetails of commit " + (3 - i) + "\n",
+						commit.getComment());
+			}
+			assertEquals(CollectionsUtil.newList(commits.get(1).sha()), commits.get(0).parents());
+			assertFalse(commits.get(2).hasParent());
+			// authors are shared across commits
+			assertSame(commits.get(0).getAuthor(), commits.get(1).getAuthor());
+			assertSame(commits.get(0).getAuthorEmail(), commits.get(2).getAuthorEmail());
+		}
+	}
+
 	@Test
 	public void testDeleteFile() throws Throwable
 	{
@@ -647,6 +700,34 @@ public class GitRepositoryTest extends GitTestCase
 		assertSame(repo, pushEvents.get(0).getRepository());
 	}
 
+	@Test
+	public void testReadObject() throws Exception
+	{
+		GitRepository repo = createRepo();
+		GitIndex index = repo.index();
+
+		FileWriter writer = new FileWriter(fileToAdd());
+		writer.write("Hello World!");
+		writer.close();
+		assertRefresh();
+		assertStageFiles(index, index.changedFiles());
+		assertCommit(index, "Initial commit");
+
+		assertEquals("Hello World!", new String(repo.readObject("HEAD:file.txt"), IOUtil.UTF_8));
+		assertNull(repo.readObject("HEAD:doesnt_exist.txt"));
+
+		// new commits are seen by the running cat-file process
+		writer = new FileWriter(fileToAdd());
+		writer.write("Hello again!");
+		writer.close();
+		assertRefresh();
+		assertStageFiles(index, index.changedFiles());
+		assertCommit(index, "Second commit");
+
+		assertEquals("Hello again!", new String(repo.readObject("HEAD:file.txt"), IOUtil.UTF_8));
+		assertEquals("Hello World!", new String(repo.readObject("HEAD~1:file.txt"), IOUtil.UTF_8));
+	}
+
 	@Test
 	public void testDontBlockToAcquireLocks() throws Exception
 	{
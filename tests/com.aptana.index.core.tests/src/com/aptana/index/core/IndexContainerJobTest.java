@@ -13,6 +13,7 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.jmock.Expectations;
 import org.jmock.Mockery;
+import org.jmock.lib.concurrent.Synchroniser;
 import org.jmock.lib.legacy.ClassImposteriser;
 import org.junit.After;
 import org.junit.Before;
@@ -29,6 +30,8 @@ public class IndexContainerJobTest
 	{
 		{
 			setImposteriser(ClassImposteriser.INSTANCE);
+			// files are indexed on multiple threads
+			setThreadingPolicy(new Synchroniser());
 		}
 	};
 	private File tmpDir;
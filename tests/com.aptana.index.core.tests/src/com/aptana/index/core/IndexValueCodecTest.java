@@ -0,0 +1,155 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.index.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.aptana.core.util.CollectionsUtil;
+import com.aptana.jetty.util.epl.ajax.JSON;
+import com.aptana.jetty.util.epl.ajax.JSON.Convertible;
+import com.aptana.jetty.util.epl.ajax.JSON.Output;
+
+@SuppressWarnings({ "nls", "rawtypes" })
+public class IndexValueCodecTest
+{
+	private static class Parameter implements Convertible
+	{
+		private String name;
+		private List<String> types = new ArrayList<String>();
+
+		public void fromJSON(Map object)
+		{
+		}
+
+		public void toJSON(Output out)
+		{
+			out.add("name", name);
+			out.add("types", types);
+		}
+	}
+
+	private static class Function implements Convertible
+	{
+		private List<Parameter> parameters = new ArrayList<Parameter>();
+
+		public void fromJSON(Map object)
+		{
+		}
+
+		public void toJSON(Output out)
+		{
+			out.add("name", "push");
+			out.add("description", "Adds \0 one or more elements \u0001 to the end of an array, \u00e9");
+			out.add("isInstanceProperty", true);
+			out.add("isClassProperty", false);
+			out.add("count", 42L);
+			out.add("offset", -3L);
+			out.add("ratio", 0.5);
+			out.add("userAgents", (Object) null);
+			out.add("parameters", parameters);
+			out.add("examples", new String[] { "a.push(1)" });
+		}
+	}
+
+	@Test
+	public void testRoundTripMatchesJSON()
+	{
+		Function function = new Function();
+
+		for (int i = 0; i < 3; i++)
+		{
+			Parameter parameter = new Parameter();
+			parameter.name = "item" + i;
+			parameter.types.add("Object");
+			function.parameters.add(parameter);
+		}
+
+		String encoded = IndexValueCodec.encode(function);
+		assertTrue(IndexValueCodec.isEncoded(encoded));
+		assertFalse(IndexValueCodec.isEncoded(JSON.toString(function)));
+
+		// the index readers split words on \0, so the encoding may never contain it
+		assertEquals(-1, encoded.indexOf('\0'));
+		assertTrue(encoded.length() < JSON.toString(function).length());
+
+		Map expected = (Map) JSON.parse(JSON.toString(function));
+		Map actual = (Map) IndexValueCodec.decode(encoded);
+
+		assertEquals(expected.keySet(), actual.keySet());
+		assertEquals(expected.get("name"), actual.get("name"));
+		assertEquals(expected.get("description"), actual.get("description"));
+		assertSame(Boolean.TRUE, actual.get("isInstanceProperty"));
+		assertSame(Boolean.FALSE, actual.get("isClassProperty"));
+		assertEquals(42L, actual.get("count"));
+		assertEquals(-3L, actual.get("offset"));
+		assertEquals(0.5, actual.get("ratio"));
+		assertTrue(actual.containsKey("userAgents"));
+		assertNull(actual.get("userAgents"));
+		assertArrayEquals((Object[]) expected.get("examples"), (Object[]) actual.get("examples"));
+
+		Object[] parameters = (Object[]) actual.get("parameters");
+		assertEquals(3, parameters.length);
+		assertEquals("item2", ((Map) parameters[2]).get("name"));
+		assertArrayEquals(new Object[] { "Object" }, (Object[]) ((Map) parameters[2]).get("types"));
+	}
+
+	@Test
+	public void testEncodeMap()
+	{
+		Map<String, Object> map = CollectionsUtil.newTypedMap(String.class, Object.class, "a", "b", "c", 1L);
+		Map decoded = (Map) IndexValueCodec.decode(IndexValueCodec.encode(map));
+
+		assertEquals(map, decoded);
+	}
+
+	@Test
+	public void testUnsupportedValuesFallBackToJSON()
+	{
+		Convertible convertible = new Convertible()
+		{
+			public void toJSON(Output out)
+			{
+				out.addClass(String.class);
+			}
+
+			public void fromJSON(Map object)
+			{
+			}
+		};
+
+		assertNull(IndexValueCodec.encode(convertible));
+	}
+
+	@Test
+	public void testDecodeTruncatedValue()
+	{
+		String encoded = IndexValueCodec.encode(new Function());
+
+		try
+		{
+			IndexValueCodec.decode(encoded.substring(0, encoded.length() / 2));
+			fail("Expected an IllegalArgumentException");
+		}
+		catch (IllegalArgumentException e)
+		{
+			// expected
+		}
+	}
+}
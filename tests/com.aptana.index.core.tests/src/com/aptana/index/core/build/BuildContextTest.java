@@ -84,4 +84,95 @@ public class BuildContextTest
 		assertEquals(parseRootNode, ast);
 		assertEquals(2, reparses[0]);
 	}
+
+	@Test
+	public void testASTIsSharedUntilContentsChange() throws Exception
+	{
+		final int[] parses = new int[] { 0 };
+		final String[] content = new String[] { "var a = 1;" };
+		BuildContext buildContext = new BuildContext(null)
+		{
+			@Override
+			public String getContentType() throws CoreException
+			{
+				return "test";
+			}
+
+			@Override
+			protected ParseResult parse(String contentType, IParseState parseState, WorkingParseResult working)
+					throws Exception
+			{
+				parses[0] += 1;
+				working.setParseResult(new ParseRootNode(new Symbol[0], 0, 0)
+				{
+					public String getLanguage()
+					{
+						return "test";
+					}
+				});
+				return working.getImmutableResult();
+			}
+
+			@Override
+			public synchronized String getContents()
+			{
+				return content[0];
+			}
+		};
+
+		IParseRootNode ast = buildContext.getAST();
+		assertSame(ast, buildContext.getAST());
+		assertSame(ast, buildContext.getAST(new ParseState(content[0])));
+		assertEquals(1, parses[0]);
+
+		buildContext.resetAST();
+		assertNotSame(ast, buildContext.getAST());
+		assertEquals(2, parses[0]);
+
+		content[0] = "var b = 2;";
+		buildContext.getAST();
+		assertEquals(3, parses[0]);
+	}
+
+	@Test
+	public void testParseFailureIsShared() throws Exception
+	{
+		final int[] parses = new int[] { 0 };
+		BuildContext buildContext = new BuildContext(null)
+		{
+			@Override
+			public String getContentType() throws CoreException
+			{
+				return "test";
+			}
+
+			@Override
+			protected ParseResult parse(String contentType, IParseState parseState, WorkingParseResult working)
+					throws Exception
+			{
+				parses[0] += 1;
+				throw new IllegalStateException("Unable to parse");
+			}
+
+			@Override
+			public synchronized String getContents()
+			{
+				return "var a = ;";
+			}
+		};
+
+		for (int i = 0; i < 2; i++)
+		{
+			try
+			{
+				buildContext.getAST();
+				fail("Expected the parse to fail");
+			}
+			catch (CoreException e)
+			{
+				assertEquals("Unable to parse", e.getStatus().getMessage());
+			}
+		}
+		assertEquals(1, parses[0]);
+	}
 }
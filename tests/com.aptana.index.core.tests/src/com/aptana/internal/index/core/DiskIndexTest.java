@@ -7,30 +7,53 @@
  */
 package com.aptana.internal.index.core;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.util.HashSet;
+import java.util.Map;
 
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Platform;
 import org.junit.Test;
 
+import com.aptana.core.util.CollectionsUtil;
+import com.aptana.core.util.IOUtil;
 import com.aptana.core.util.ResourceUtil;
+import com.aptana.index.core.QueryResult;
+import com.aptana.index.core.SearchPattern;
 
 @SuppressWarnings("nls")
 public class DiskIndexTest
 {
+	private static final int EXACT = SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE;
+
+	private File getFile(String path) throws Exception
+	{
+		URL url = FileLocator.find(Platform.getBundle("com.aptana.index.core.tests"), Path.fromPortableString(path),
+				null);
+		return ResourceUtil.resourcePathToFile(url);
+	}
+
+	private File createTempIndexFile() throws IOException
+	{
+		File file = File.createTempFile("disk_index", ".index");
+		file.deleteOnExit();
+		return file;
+	}
 
 	@Test
 	public void testAPSTUD3393() throws Exception
 	{
-		URL url = FileLocator.find(Platform.getBundle("com.aptana.index.core.tests"),
-				Path.fromPortableString("files/apstud3393.index"), null);
-		File file = ResourceUtil.resourcePathToFile(url);
+		File file = getFile("files/apstud3393.index");
 
 		try
 		{
@@ -47,4 +70,100 @@ public class DiskIndexTest
 			fail("Expected an IOException, so that we'd catch it up the stack and clean up the index. Instead we got a NegativeArraySizeException!");
 		}
 	}
+
+	@Test
+	public void testMergeAndQuery() throws Exception
+	{
+		File file = createTempIndexFile();
+		DiskIndex index = new DiskIndex(file.getAbsolutePath());
+		index.initialize(false);
+
+		MemoryIndex memoryIndex = new MemoryIndex();
+		memoryIndex.addEntry("type", "Window", "window.js");
+		memoryIndex.addEntry("type", "Array", "array.js");
+		memoryIndex.addEntry("type", "Array", "window.js");
+		memoryIndex.addEntry("function", "alert", "window.js");
+		index = index.mergeWith(memoryIndex);
+
+		// re-open the written file
+		index = new DiskIndex(file.getAbsolutePath());
+		index.initialize(true);
+
+		Map<String, QueryResult> results = index.addQueryResults(new String[] { "type" }, "Array", EXACT, null);
+		assertNotNull(results);
+		assertEquals(1, results.size());
+		assertEquals(CollectionsUtil.newSet("array.js", "window.js"), results.get("Array").getDocuments());
+
+		assertNull(index.addQueryResults(new String[] { "type" }, "Arr", EXACT, null));
+		assertNull(index.addQueryResults(new String[] { "function" }, "Array", EXACT, null));
+
+		results = index.addQueryResults(new String[] { "type", "function" }, null, EXACT, null);
+		assertEquals(CollectionsUtil.newSet("Array", "Window", "alert"), results.keySet());
+	}
+
+	@Test
+	public void testPrefixAndRegexQueries() throws Exception
+	{
+		File file = createTempIndexFile();
+		DiskIndex index = new DiskIndex(file.getAbsolutePath());
+		index.initialize(false);
+
+		MemoryIndex memoryIndex = new MemoryIndex();
+		memoryIndex.addEntry("type", "Window", "window.js");
+		memoryIndex.addEntry("type", "window", "lower.js");
+		memoryIndex.addEntry("type", "WebView", "webview.js");
+		memoryIndex.addEntry("type", "Array", "array.js");
+		memoryIndex.addEntry("member", "Window\0alert", "window.js");
+		memoryIndex.addEntry("member", "Window\0close", "window.js");
+		memoryIndex.addEntry("member", "Array\0push", "array.js");
+		memoryIndex.addEntry("member", "ArrayBuffer\0slice", "array.js");
+		index = index.mergeWith(memoryIndex);
+
+		// case sensitive prefix only scans the words starting with "W"
+		Map<String, QueryResult> results = index.addQueryResults(new String[] { "type" }, "W",
+				SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE, null);
+		assertEquals(CollectionsUtil.newSet("Window", "WebView"), results.keySet());
+
+		results = index.addQueryResults(new String[] { "type" }, "wIN", SearchPattern.PREFIX_MATCH, null);
+		assertEquals(CollectionsUtil.newSet("Window", "window"), results.keySet());
+
+		results = index.addQueryResults(new String[] { "member" }, "^(\\QWindow\\E|\\QArray\\E)\0",
+				SearchPattern.REGEX_MATCH | SearchPattern.CASE_SENSITIVE, null);
+		assertEquals(CollectionsUtil.newSet("Window\0alert", "Window\0close", "Array\0push"), results.keySet());
+		assertEquals(1, results.get("Array\0push").getDocumentCount());
+
+		// unanchored patterns still have to look at every word
+		results = index.addQueryResults(new String[] { "member" }, "push|slice",
+				SearchPattern.REGEX_MATCH | SearchPattern.CASE_SENSITIVE, null);
+		assertEquals(CollectionsUtil.newSet("Array\0push", "ArrayBuffer\0slice"), results.keySet());
+
+		// and the memory index answers the same way
+		results = memoryIndex.addQueryResults(new String[] { "type" }, "wIN", SearchPattern.PREFIX_MATCH, null);
+		assertEquals(CollectionsUtil.newSet("Window", "window"), results.keySet());
+		memoryIndex.remove("lower.js");
+		results = memoryIndex.addQueryResults(new String[] { "type" }, "wIN", SearchPattern.PREFIX_MATCH, null);
+		assertEquals(CollectionsUtil.newSet("Window"), results.keySet());
+	}
+
+	@Test
+	public void testMigratesLegacyFormat() throws Exception
+	{
+		// files/legacy_0.1.index was written in the "INDEX VERSION 0.1" format
+		File file = createTempIndexFile();
+		IOUtil.copyFile(getFile("files/legacy_0.1.index"), file);
+
+		DiskIndex index = new DiskIndex(file.getAbsolutePath());
+		index.initialize(true);
+
+		assertEquals(CollectionsUtil.newSet("type", "function"), new HashSet<String>(index.getCategories()));
+		assertEquals(2, index.getDocuments().size());
+
+		Map<String, QueryResult> results = index.addQueryResults(new String[] { "function" }, "p",
+				SearchPattern.PREFIX_MATCH, null);
+		assertEquals(CollectionsUtil.newSet("pop", "push"), results.keySet());
+		assertEquals(CollectionsUtil.newSet("array.js"), results.get("push").getDocuments());
+
+		// and the file has been rewritten in the current format, so re-opening it doesn't need to migrate again
+		assertEquals("INDEX VERSION 0.2", IOUtil.read(new FileInputStream(file)).substring(2, 19));
+	}
 }
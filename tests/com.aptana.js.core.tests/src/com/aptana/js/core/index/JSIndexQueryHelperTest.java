@@ -1,8 +1,11 @@
 package com.aptana.js.core.index;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.eclipse.core.runtime.jobs.Job;
@@ -13,6 +16,7 @@ import org.junit.Test;
 import com.aptana.index.core.Index;
 import com.aptana.index.core.IndexManager;
 import com.aptana.index.core.IndexPlugin;
+import com.aptana.js.core.model.PropertyElement;
 import com.aptana.js.core.model.TypeElement;
 import com.aptana.js.internal.core.index.JSIndexWriter;
 import com.aptana.js.internal.core.index.JSMetadataLoader;
@@ -74,4 +78,54 @@ public class JSIndexQueryHelperTest
 		assertTrue("ancestors contains Object", ancestors.contains("Object"));
 	}
 
+	@Test
+	public void testTypeMembersCachedUntilIndexChanges() throws Exception
+	{
+		TypeElement type = new TypeElement();
+		type.setName("MadeUpType");
+		PropertyElement property = new PropertyElement();
+		property.setName("foo");
+		type.addProperty(property);
+
+		JSIndexWriter writer = new JSIndexWriter();
+		writer.writeType(index, type);
+
+		List<PropertyElement> first = new ArrayList<PropertyElement>(helper.getTypeMembers(type.getName(), "foo"));
+		assertEquals(1, first.size());
+
+		int hits = JSIndexQueryHelper.getElementCache().getHitCount();
+		List<PropertyElement> second = new ArrayList<PropertyElement>(helper.getTypeMembers(type.getName(), "foo"));
+		assertEquals(hits + 1, JSIndexQueryHelper.getElementCache().getHitCount());
+		assertSame(first.get(0), second.get(0));
+
+		// modifying the index invalidates the cached members
+		TypeElement other = new TypeElement();
+		other.setName("OtherMadeUpType");
+		writer.writeType(index, other);
+
+		List<PropertyElement> third = new ArrayList<PropertyElement>(helper.getTypeMembers(type.getName(), "foo"));
+		assertEquals(1, third.size());
+		assertNotSame(first.get(0), third.get(0));
+		assertEquals("foo", third.get(0).getName());
+	}
+
+	@Test
+	public void testCopyMember() throws Exception
+	{
+		PropertyElement property = new PropertyElement();
+		property.setName("foo");
+		property.setOwningType("MadeUpType");
+		property.addType("String");
+		property.addDocument("file:/tmp/foo.js");
+
+		PropertyElement copy = JSIndexQueryHelper.copyMember(property);
+		assertNotSame(property, copy);
+		assertEquals("foo", copy.getName());
+		assertEquals("MadeUpType", copy.getOwningType());
+		assertEquals(property.getTypeNames(), copy.getTypeNames());
+		assertEquals(property.getDocuments(), copy.getDocuments());
+
+		copy.setOwningType("Window");
+		assertEquals("MadeUpType", property.getOwningType());
+	}
 }
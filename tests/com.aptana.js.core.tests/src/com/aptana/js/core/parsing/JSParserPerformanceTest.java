@@ -28,6 +28,7 @@ import com.aptana.core.tests.GlobalTimePerformanceTestCase;
 import com.aptana.core.util.IOUtil;
 import com.aptana.js.core.JSCorePlugin;
 import com.aptana.js.core.tests.ITestFiles;
+import com.aptana.parsing.ParseResult;
 import com.aptana.testing.categories.PerformanceTests;
 
 @Category({ PerformanceTests.class })
@@ -91,6 +92,34 @@ public class JSParserPerformanceTest extends GlobalTimePerformanceTestCase
 		}
 	}
 
+	/**
+	 * Measures re-parsing the given resources after adding a line in the middle of them, with the result of
+	 * the parse of the unmodified source available. Compare with {@link #assertParse(int, String...)} for the same
+	 * resources to see what the incremental parse saves.
+	 * 
+	 * @param numRuns
+	 * @param resources
+	 * @throws Exception
+	 */
+	private void assertIncrementalParse(int numRuns, String... resources) throws Exception
+	{
+		for (String resourceName : resources)
+		{
+			if (fPerformanceMeter != null)
+			{
+				fPerformanceMeter.dispose();
+			}
+
+			Performance performance = Performance.getDefault();
+			fPerformanceMeter = performance.createPerformanceMeter(resourceName + " (incremental)");
+
+			timeIncrementalParse(resourceName, numRuns);
+
+			commitMeasurements();
+			assertPerformance();
+		}
+	}
+
 	/**
 	 * collectFiles
 	 * 
@@ -210,6 +239,26 @@ public class JSParserPerformanceTest extends GlobalTimePerformanceTestCase
 		assertParse(50, ITestFiles.JAXER_FILES);
 	}
 
+	/**
+	 * testIncrementalJaxerFiles
+	 * 
+	 * @throws Exception
+	 */
+	public void testIncrementalJaxerFiles() throws Exception
+	{
+		assertIncrementalParse(50, ITestFiles.JAXER_FILES);
+	}
+
+	/**
+	 * testIncrementalTiMobile
+	 * 
+	 * @throws Exception
+	 */
+	public void testIncrementalTiMobile() throws Exception
+	{
+		assertIncrementalParse(375, ITestFiles.TIMOBILE_FILES);
+	}
+
 	/**
 	 * testTiMobile
 	 * 
@@ -267,4 +316,38 @@ public class JSParserPerformanceTest extends GlobalTimePerformanceTestCase
 			stopMeasuring();
 		}
 	}
+
+	/**
+	 * timeIncrementalParse
+	 * 
+	 * @param resourceName
+	 * @param numRuns
+	 * @throws Exception
+	 */
+	private void timeIncrementalParse(String resourceName, int numRuns) throws Exception
+	{
+		String previousSource = getSource(resourceName);
+		ParseResult previous = fParser.parse(new JSParseState(previousSource));
+
+		// add a comment line in the middle of the source, which is valid wherever it ends up
+		int offset = previousSource.lastIndexOf('\n', previousSource.length() / 2) + 1;
+		String source = previousSource.substring(0, offset) + "// modified\n" + previousSource.substring(offset);
+
+		for (int i = 0; i < numRuns; i++)
+		{
+			JSParseState parseState = new JSParseState(source);
+			parseState.setPreviousParse(previousSource, previous);
+
+			startMeasuring();
+			try
+			{
+				fParser.parse(parseState);
+			}
+			catch (Exception e)
+			{
+				fail(e.getMessage());
+			}
+			stopMeasuring();
+		}
+	}
 }
@@ -24,8 +24,11 @@ import org.junit.Test;
 import com.aptana.core.util.FileUtil;
 import com.aptana.core.util.IOUtil;
 import com.aptana.js.core.JSCorePlugin;
+import com.aptana.js.core.parsing.ast.JSNode;
+import com.aptana.js.internal.core.parsing.sdoc.model.DocumentationBlock;
 import com.aptana.parsing.ParseResult;
 import com.aptana.parsing.ParseState;
+import com.aptana.parsing.WorkingParseResult;
 import com.aptana.parsing.ast.IParseError;
 import com.aptana.parsing.ast.IParseNode;
 import com.aptana.parsing.ast.IParseRootNode;
@@ -1284,6 +1287,87 @@ public class JSParserTest
 		assertTrue(fParseResult.getErrors().isEmpty());
 	}
 
+	@Test
+	public void testIncrementalParseOfModifiedStatement() throws Exception
+	{
+		assertIncrementalParse("var a = 1;" + EOL + "var b = 2;" + EOL + "var c = 3;" + EOL, "var a = 1;" + EOL
+				+ "var b = 42;" + EOL + "var c = 3;" + EOL, true);
+	}
+
+	@Test
+	public void testIncrementalParseOfInsertedStatement() throws Exception
+	{
+		assertIncrementalParse("var a = 1;" + EOL + "var c = 3;" + EOL, "var a = 1;" + EOL + "if (a) { b(); }" + EOL
+				+ "var c = 3;" + EOL, true);
+	}
+
+	@Test
+	public void testIncrementalParseOfDeletedStatement() throws Exception
+	{
+		assertIncrementalParse("var a = 1;" + EOL + "/* b */ var b = 2;" + EOL + "var c = 3;" + EOL, "var a = 1;" + EOL
+				+ "var c = 3;" + EOL, true);
+	}
+
+	@Test
+	public void testIncrementalParseInFunctionBody() throws Exception
+	{
+		String previousSource = "(function() {" + EOL + "\tvar a = 1;" + EOL + "\tvar b = 2;" + EOL + "})();" + EOL
+				+ "var c = [1, 2];" + EOL;
+		String source = "(function() {" + EOL + "\tvar a = 1;" + EOL + "\tfoo(a, 3);" + EOL + "\tvar b = 2;" + EOL
+				+ "})();" + EOL + "var c = [1, 2];" + EOL;
+
+		assertIncrementalParse(previousSource, source, true);
+	}
+
+	@Test
+	public void testIncrementalParseKeepsWarnings() throws Exception
+	{
+		String previousSource = "function f() {" + EOL + "\tvar a = 1;" + EOL + "\tvar b = 2" + EOL + "}" + EOL
+				+ "x = 1" + EOL;
+		String source = "function f() {" + EOL + "\tvar a = 100;" + EOL + "\tvar b = 2" + EOL + "}" + EOL + "x = 1"
+				+ EOL;
+
+		assertIncrementalParse(previousSource, source, true);
+	}
+
+	@Test
+	public void testIncrementalParseWithSyntaxError() throws Exception
+	{
+		assertIncrementalParse("var a = 1;" + EOL + "var b = 2;" + EOL, "var a = 1;" + EOL + "var b = ;" + EOL, false);
+	}
+
+	@Test
+	public void testIncrementalParseAfterUnterminatedStatement() throws Exception
+	{
+		// the modification could extend the previous statement
+		assertIncrementalParse("a = 1" + EOL + "b = 2;" + EOL, "a = 1" + EOL + "[b] = 2;" + EOL, false);
+	}
+
+	@Test
+	public void testIncrementalParseMovesDocumentation() throws Exception
+	{
+		String rest = "var b = 2;" + EOL + "/**" + EOL + " * Adds two numbers" + EOL + " */" + EOL
+				+ "function add(x, y) {" + EOL + "\treturn x + y;" + EOL + "}" + EOL;
+		String previousSource = "var a = 1;" + EOL + rest;
+		String source = "var a = 100;" + EOL + rest;
+
+		ParseResult previous = fParser.parse(new ParseState(previousSource));
+		ParseState parseState = new ParseState(source);
+		parseState.setPreviousParse(previousSource, previous);
+
+		WorkingParseResult working = new WorkingParseResult();
+		assertTrue(new JSIncrementalParser(fParser).reparse(parseState, working));
+
+		// the reused function has to have the documentation of a full parse, at its new offsets
+		DocumentationBlock expected = findDocumentation(fParser.parse(new ParseState(source)).getRootNode());
+		assertNotNull(expected);
+		DocumentationBlock documentation = findDocumentation(working.getImmutableResult().getRootNode());
+		assertNotNull(documentation);
+		assertEquals(expected.getText(), documentation.getText());
+		assertEquals(expected.getStart(), documentation.getStart());
+		assertEquals(expected.getEnd(), documentation.getEnd());
+	}
+
 	/**
 	 * This method is not being used for formal testing, but it's useful to determine how effective
 	 * {@link ParseNode#trimToSize()} is.
@@ -1308,6 +1392,82 @@ public class JSParserTest
 	}
 
 	// utility methods
+	protected void assertIncrementalParse(String previousSource, String source, boolean reused) throws Exception
+	{
+		ParseResult previous = fParser.parse(new ParseState(previousSource));
+		String previousTree = describe(previous);
+
+		ParseState parseState = new ParseState(source);
+		parseState.setPreviousParse(previousSource, previous);
+
+		WorkingParseResult working = new WorkingParseResult();
+		assertEquals(reused, new JSIncrementalParser(fParser).reparse(parseState, working));
+
+		// the result has to be the same as the one of a full parse, and the previous tree must not be modified
+		String expected = describe(fParser.parse(new ParseState(source)));
+
+		if (reused)
+		{
+			assertEquals(expected, describe(working.getImmutableResult()));
+		}
+		assertEquals(expected, describe(fParser.parse(parseState)));
+		assertEquals(previousTree, describe(previous));
+	}
+
+	private DocumentationBlock findDocumentation(IParseNode node)
+	{
+		if (node instanceof JSNode && ((JSNode) node).getDocumentation() != null)
+		{
+			return ((JSNode) node).getDocumentation();
+		}
+
+		for (IParseNode child : node.getChildren())
+		{
+			DocumentationBlock result = findDocumentation(child);
+
+			if (result != null)
+			{
+				return result;
+			}
+		}
+
+		return null;
+	}
+
+	private String describe(ParseResult result)
+	{
+		StringBuilder text = new StringBuilder();
+
+		describe(result.getRootNode(), text);
+
+		for (IParseNode comment : result.getRootNode().getCommentNodes())
+		{
+			text.append(EOL).append(comment.getNodeType()).append('@').append(comment.getStartingOffset()).append('-')
+					.append(comment.getEndingOffset());
+		}
+		for (IParseError error : result.getErrors())
+		{
+			text.append(EOL).append(error.getSeverity()).append('@').append(error.getOffset()).append('/')
+					.append(error.getLength()).append(' ').append(error.getMessage());
+		}
+
+		return text.toString();
+	}
+
+	private void describe(IParseNode node, StringBuilder text)
+	{
+		text.append('(').append(node.getNodeType()).append('@').append(node.getStartingOffset()).append('-')
+				.append(node.getEndingOffset());
+
+		for (IParseNode child : node.getChildren())
+		{
+			text.append(' ');
+			describe(child, text);
+		}
+
+		text.append(')');
+	}
+
 	protected void assertParseErrors(String... messages)
 	{
 		List<IParseError> errors = fParseResult.getErrors();
@@ -38,10 +38,10 @@ import com.aptana.index.core.Index;
 import com.aptana.index.core.IndexManager;
 import com.aptana.index.core.IndexPlugin;
 import com.aptana.index.core.IndexReader;
+import com.aptana.index.core.IndexValueCodec;
 import com.aptana.index.core.QueryResult;
 import com.aptana.index.core.SearchPattern;
 import com.aptana.index.core.build.BuildContext;
-import com.aptana.jetty.util.epl.ajax.JSON;
 import com.aptana.js.core.JSCorePlugin;
 import com.aptana.js.core.index.IJSIndexConstants;
 import com.aptana.js.core.index.JSFileIndexingParticipant;
@@ -488,12 +488,13 @@ public class JSIndexTest
 		String[] columns = IndexReader.DELIMITER_PATTERN.split(word);
 		assertEquals(3, columns.length);
 
-		// grab last column and parse as JSON
-		String json = columns[2];
-		Object m = JSON.parse(json);
+		// grab last column and decode it
+		String value = columns[2];
+		assertTrue("Expected a binary encoded value", IndexValueCodec.isEncoded(value));
+		Object m = IndexValueCodec.decode(value);
 
 		// make sure we have a map
-		assertTrue("Expected a Map from the JSON string", m instanceof Map);
+		assertTrue("Expected a Map from the encoded value", m instanceof Map);
 		Map<?, ?> map = (Map<?, ?>) m;
 
 		// test userAgents for "special value" which is really just a null value.
@@ -8,7 +8,9 @@
 package com.aptana.parsing.ast;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Test;
 
@@ -245,4 +247,81 @@ public class ParseNodeTests
 
 		assertEquals("MLKJIHGFEDCBA", buffer.toString());
 	}
+
+	/**
+	 * testCopy
+	 */
+	@Test
+	public void testCopy()
+	{
+		ParseNode a = new TextNode("A");
+		ParseNode b = new TextNode("B");
+		ParseNode c = new TextNode("C");
+
+		a.setLocation(0, 9);
+		b.setLocation(0, 4);
+		c.setLocation(5, 9);
+		a.addChild(b);
+		a.addChild(c);
+
+		ParseNode copy = b.copy();
+
+		assertNotSame(b, copy);
+		assertNull(copy.getParent());
+		assertEquals("B", copy.getText());
+		assertEquals(0, copy.getStartingOffset());
+		assertEquals(4, copy.getEndingOffset());
+
+		copy = a.copy();
+
+		assertEquals(2, copy.getChildCount());
+		assertNotSame(b, copy.getChild(0));
+		assertNotSame(c, copy.getChild(1));
+		assertSame(copy, copy.getChild(0).getParent());
+		assertEquals("C", copy.getChild(1).getText());
+
+		// the original is untouched
+		assertSame(a, b.getParent());
+		assertSame(b, a.getChild(0));
+	}
+
+	/**
+	 * testShiftOffsets
+	 */
+	@Test
+	public void testShiftOffsets()
+	{
+		ParseNode a = new TextNode("A");
+		ParseNode b = new TextNode("B");
+		ParseNode c = new TextNode("C");
+		ParseNode d = new TextNode("D");
+
+		a.setLocation(0, 19);
+		b.setLocation(0, 4);
+		c.setLocation(10, 14);
+		d.setLocation(15, 14);
+		a.addChild(b);
+		a.addChild(c);
+		a.addChild(d);
+
+		// insert 3 chars at offset 8
+		a.shiftOffsets(8, 3);
+
+		assertEquals(0, a.getStartingOffset());
+		assertEquals(22, a.getEndingOffset());
+		assertEquals(0, b.getStartingOffset());
+		assertEquals(4, b.getEndingOffset());
+		assertEquals(13, c.getStartingOffset());
+		assertEquals(17, c.getEndingOffset());
+		// empty nodes stay empty
+		assertEquals(18, d.getStartingOffset());
+		assertEquals(17, d.getEndingOffset());
+
+		// remove them
+		a.shiftOffsets(11, -3);
+
+		assertEquals(19, a.getEndingOffset());
+		assertEquals(10, c.getStartingOffset());
+		assertEquals(14, c.getEndingOffset());
+	}
 }
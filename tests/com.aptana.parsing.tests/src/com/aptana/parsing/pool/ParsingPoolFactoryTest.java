@@ -8,10 +8,9 @@
 package com.aptana.parsing.pool;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Queue;
@@ -22,14 +21,13 @@ import org.junit.Test;
 
 import beaver.Symbol;
 
-import com.aptana.core.epl.util.LRUCacheWithSoftPrunedValues;
 import com.aptana.parsing.AbstractParser;
 import com.aptana.parsing.IParseState;
 import com.aptana.parsing.IParseStateCacheKey;
 import com.aptana.parsing.IParser;
 import com.aptana.parsing.IParserPool;
+import com.aptana.parsing.ParseCacheStatistics;
 import com.aptana.parsing.ParseState;
-import com.aptana.parsing.ParseStateCacheKey;
 import com.aptana.parsing.ParseStateCacheKeyWithComments;
 import com.aptana.parsing.ParsingEngine;
 import com.aptana.parsing.WorkingParseResult;
@@ -393,7 +391,6 @@ public class ParsingPoolFactoryTest
 
 	}
 
-	@SuppressWarnings({ "rawtypes" })
 	@Test
 	public void testParseWithSubParses() throws Exception
 	{
@@ -409,42 +406,59 @@ public class ParsingPoolFactoryTest
 			// Empty body just to access protected constructor.
 		};
 
-		// Change the cache for a cache with an auxiliary cache that's predictable.
-		Field declaredField = ParsingEngine.class.getDeclaredField("fParseCache");
-		declaredField.setAccessible(true);
-		Map auxiliaryCache = new HashMap();
-		Constructor<LRUCacheWithSoftPrunedValues> constructor = LRUCacheWithSoftPrunedValues.class
-				.getDeclaredConstructor(int.class, Map.class);
-		constructor.setAccessible(true);
-		LRUCacheWithSoftPrunedValues cache = constructor.newInstance(4, auxiliaryCache);
-		declaredField.set(parsingEngine, cache);
-
 		mainParser.setParsingEngine(parsingEngine);
 
-		// In the end, the mainContent should be in the LRU, while the subContent should be in the auxiliary cache.
+		// In the end, the mainContent should be in the LRU, while the subContent should be in the soft references.
 		parsingEngine.parse("mainContent", new ParseState("main"));
 
-		assertEquals(1, cache.keys().size());
-		for (Object key : cache.keys())
-		{
-			ParseStateCacheKey cacheKey = (ParseStateCacheKey) key;
-			Object content = cacheKey.getAt(0);
-			if (!"mainContent".equals(content))
-			{
-				fail("Could not find mainContent in LRU main memory. Found: " + content);
-			}
-		}
-		assertEquals(3, auxiliaryCache.size());
-		for (Object key : auxiliaryCache.keySet())
-		{
-			ParseStateCacheKey cacheKey = (ParseStateCacheKey) key;
-			Object content = cacheKey.getAt(0);
-			if (!"subContent".equals(content))
-			{
-				fail("Could not find subContent in LRU main memory. Found: " + content);
-			}
-		}
+		ParseCacheStatistics statistics = parsingEngine.getCacheStatistics();
+		assertEquals(4, statistics.getMisses());
+		assertEquals(1, statistics.getStrongEntryCount());
+		assertEquals(3, statistics.getSoftEntryCount());
+		assertEquals(4, statistics.getSpace());
+		// main was pushed out by sub1, then brought back after the parse (pushing out sub3)
+		assertEquals(4, statistics.getEvictions());
+		assertEquals(1, statistics.getSoftHits());
 
+		// the main content is strongly referenced, so getting it again doesn't touch the soft references
+		parsingEngine.parse("mainContent", new ParseState("main"));
+		statistics = parsingEngine.getCacheStatistics();
+		assertEquals(1, statistics.getHits());
+		assertEquals(1, statistics.getSoftHits());
+		assertEquals(4, statistics.getEvictions());
+
+		// while the sub content has to be recovered from them
+		parsingEngine.parse("subContent", new ParseState("sub1"));
+		statistics = parsingEngine.getCacheStatistics();
+		assertEquals(2, statistics.getHits());
+		assertEquals(2, statistics.getSoftHits());
+	}
+
+	@Test
+	public void testCacheStatistics() throws Exception
+	{
+		queue.add(parseRootNode);
+		parsingEngine.parse("test", new ParseState("", 0));
+		parsingEngine.parse("test", new ParseState("", 0));
+		parsingEngine.parse("test", new ParseState("", 0));
+
+		ParseCacheStatistics statistics = parsingEngine.getCacheStatistics();
+		assertEquals(2, statistics.getHits());
+		assertEquals(1, statistics.getMisses());
+		assertEquals(0, statistics.getEvictions());
+		assertEquals(1, statistics.getStrongEntryCount());
+		assertEquals(200, statistics.getSpaceLimit());
+		assertEquals(2.0 / 3, statistics.getHitRatio(), 0.001);
+
+		// clearing the cache keeps the counters
+		parsingEngine.clearCache();
+		statistics = parsingEngine.getCacheStatistics();
+		assertEquals(0, statistics.getStrongEntryCount());
+		assertEquals(0, statistics.getSpace());
+		assertEquals(2, statistics.getHits());
+
+		parsingEngine.dispose();
+		assertNull(parsingEngine.getCacheStatistics());
 	}
 
 }
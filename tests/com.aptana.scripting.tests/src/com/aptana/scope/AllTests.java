@@ -13,7 +13,7 @@ import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
 @SuiteClasses({ ScopeSelectorTests.class, AndSelectorTests.class, NameSelectorTests.class, OrSelectorTests.class,
-		NegativeLookaheadTests.class, })
+		NegativeLookaheadTests.class, ScopeSelectorIndexTests.class, })
 public class AllTests
 {
 }
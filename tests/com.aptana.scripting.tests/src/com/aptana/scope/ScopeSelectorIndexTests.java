@@ -0,0 +1,94 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.scope;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ScopeSelectorIndexTests
+{
+	private static final String[] SELECTORS = { "string", "string.quoted", "source.php string.quoted", "source.js",
+			"meta.tag entity", "entity", "comment, string.unquoted", "text source string", "source - string",
+			"keyword & source.ruby", "(constant.numeric)", "source.js storage - storage.type.function - source.php" };
+
+	private static final String[] SCOPES = { "source.php string.quoted", "source.php string.quoted.double",
+			"source.php string.unquoted", "text.html source.js", "text.html source.js string.quoted.single",
+			"text.html.markdown meta.disable-markdown meta.tag.block.any.html entity.name.tag.block.any.html",
+			"source.ruby keyword.control", "source.js constant.numeric", "source.js storage.type",
+			"source.js storage.type.function", "text.html comment.block", "text source string", "stringy",
+			"string.quotedy", "markup.bold" };
+
+	@Test
+	public void testBestMatchIsTheSameAsScopeSelector()
+	{
+		List<IScopeSelector> selectors = new ArrayList<IScopeSelector>();
+		for (String selector : SELECTORS)
+		{
+			selectors.add(new ScopeSelector(selector));
+		}
+		ScopeSelectorIndex index = new ScopeSelectorIndex(selectors);
+
+		for (String scope : SCOPES)
+		{
+			IScopeSelector expected = ScopeSelector.bestMatch(selectors, scope);
+			assertEquals(scope, String.valueOf(expected), String.valueOf(index.bestMatch(scope)));
+			// cached
+			assertEquals(scope, String.valueOf(expected), String.valueOf(index.bestMatch(scope)));
+		}
+	}
+
+	@Test
+	public void testLaterSelectorWinsTies()
+	{
+		ScopeSelector first = new ScopeSelector("string");
+		ScopeSelector second = new ScopeSelector("string");
+		ScopeSelectorIndex index = new ScopeSelectorIndex(Arrays.asList(first, second));
+
+		assertSame(second, index.bestMatch("source.php string.quoted"));
+	}
+
+	@Test
+	public void testNoMatch()
+	{
+		ScopeSelectorIndex index = new ScopeSelectorIndex(Arrays.asList(new ScopeSelector("string"),
+				new ScopeSelector("source.php string")));
+
+		assertNull(index.bestMatch("source.php comment"));
+		assertNull(index.bestMatch("strings"));
+		assertNull(index.bestMatch(null));
+	}
+
+	@Test
+	public void testNegativeLookaheadOnly()
+	{
+		ScopeSelector notString = new ScopeSelector("- string");
+		ScopeSelectorIndex index = new ScopeSelectorIndex(Arrays.asList(notString));
+
+		assertEquals(String.valueOf(ScopeSelector.bestMatch(Arrays.<IScopeSelector> asList(notString), "source.js")),
+				String.valueOf(index.bestMatch("source.js")));
+	}
+
+	@Test
+	public void testGetMatches()
+	{
+		ScopeSelector string = new ScopeSelector("string");
+		ScopeSelector comment = new ScopeSelector("comment");
+		ScopeSelector phpString = new ScopeSelector("source.php string");
+		ScopeSelectorIndex index = new ScopeSelectorIndex(Arrays.asList(string, comment, phpString));
+
+		assertEquals(Arrays.asList(string, phpString), index.getMatches("source.php string.quoted"));
+		assertEquals(Arrays.asList(string), index.getMatches("source.js string.quoted"));
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.scripting.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BundleCacherTests extends BundleTestBase
+{
+	private static final String USE_BUNDLE_CACHE = "use.bundle.cache";
+
+	@Before
+	public void setUp() throws Exception
+	{
+		System.setProperty(USE_BUNDLE_CACHE, Boolean.TRUE.toString());
+		getBundleManagerInstance().clearBundleCache();
+	}
+
+	@After
+	@Override
+	public void tearDown() throws Exception
+	{
+		try
+		{
+			getBundleManagerInstance().clearBundleCache();
+			System.getProperties().remove(USE_BUNDLE_CACHE);
+		}
+		finally
+		{
+			super.tearDown();
+		}
+	}
+
+	/**
+	 * Loads a bundle from its scripts, then again from the cache written by the first load
+	 */
+	private BundleElement loadCachedBundle(String bundleName, BundlePrecedence precedence)
+	{
+		this.loadBundle(bundleName, precedence);
+		getBundleManagerInstance().reset();
+
+		return this.loadBundle(bundleName, precedence);
+	}
+
+	@Test
+	public void testBundleIsTheSameFromCache()
+	{
+		String[] bundleNames = { "bundleWithCommand", "bundleWithMenu", "bundleWithSnippet",
+				"bundleWithSnippetCategory" };
+
+		for (String bundleName : bundleNames)
+		{
+			String expected = this.loadBundle(bundleName, BundlePrecedence.APPLICATION).toSource(false);
+			getBundleManagerInstance().reset();
+
+			String actual = this.loadCachedBundle(bundleName, BundlePrecedence.APPLICATION).toSource(false);
+			getBundleManagerInstance().reset();
+
+			assertEquals(bundleName, expected, actual);
+		}
+	}
+
+	@Test
+	public void testInvokeBlockIsLoadedWhenExecuted()
+	{
+		BundleElement bundle = this.loadCachedBundle("requireInCommand", BundlePrecedence.PROJECT);
+		CommandElement command = bundle.getCommandByName("MyCommand");
+		assertNotNull(command);
+		assertTrue(command.hasPendingInvokeBlocks());
+		assertTrue(command.isExecutable());
+
+		CommandResult result = command.execute();
+		assertNotNull(result);
+		assertEquals("My Thing Name", result.getOutputString());
+		assertFalse(command.hasPendingInvokeBlocks());
+	}
+
+	@Test
+	public void testModifiedScriptIsNotLoadedFromCache()
+	{
+		File script = new File(this.loadBundle("requireInCommand", BundlePrecedence.PROJECT).getPath());
+		getBundleManagerInstance().reset();
+
+		long lastModified = script.lastModified();
+		assertTrue(script.setLastModified(lastModified + 2000));
+
+		try
+		{
+			BundleElement bundle = this.loadBundle("requireInCommand", BundlePrecedence.PROJECT);
+			CommandElement command = bundle.getCommandByName("MyCommand");
+			assertNotNull(command);
+			assertFalse(command.hasPendingInvokeBlocks());
+		}
+		finally
+		{
+			script.setLastModified(lastModified);
+		}
+	}
+}
@@ -40,14 +40,31 @@ public class BundleLoadingPerformanceTest extends GlobalTimePerformanceTestCase
 	}
 
 	public void testLoadingUserBundlesWithCache() throws Exception
+	{
+		System.setProperty("use.bundle.cache", Boolean.TRUE.toString());
+		// write the cache before measuring
+		manager.loadBundles();
+		for (int i = 0; i < 25; i++)
+		{
+			startMeasuring();
+			manager.loadBundles();
+			stopMeasuring();
+		}
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	public void testLoadingUserBundlesWithColdCache() throws Exception
 	{
 		System.setProperty("use.bundle.cache", Boolean.TRUE.toString());
 		for (int i = 0; i < 25; i++)
 		{
+			manager.clearBundleCache();
 			startMeasuring();
 			manager.loadBundles();
 			stopMeasuring();
 		}
+		manager.clearBundleCache();
 		commitMeasurements();
 		assertPerformance();
 	}
@@ -10,12 +10,16 @@ package com.aptana.scripting.model;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
@@ -23,11 +27,15 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import org.eclipse.core.runtime.Path;
+import org.jruby.embed.ScriptingContainer;
 import org.junit.Before;
 import org.junit.Test;
 
 import com.aptana.core.util.CollectionsUtil;
 import com.aptana.scripting.ScriptLogListener;
+import com.aptana.scripting.ScriptingEngine;
+import com.aptana.scripting.TestUtils;
 import com.aptana.scripting.model.filters.IModelFilter;
 
 public class BundleTests extends BundleTestBase
@@ -222,6 +230,42 @@ public class BundleTests extends BundleTestBase
 		assertEquals(1, commands.size());
 	}
 
+	@Test
+	public void testBundleLoadTimeIsRecorded()
+	{
+		String bundleName = "loneBundle";
+		this.loadBundle(bundleName, BundlePrecedence.APPLICATION);
+		Map<File, Long> loadTimes = getBundleManagerInstance().getBundleLoadTimes();
+
+		assertEquals(1, loadTimes.size());
+		File bundleDirectory = loadTimes.keySet().iterator().next();
+		assertEquals(bundleName, bundleDirectory.getName());
+		assertTrue(loadTimes.get(bundleDirectory) >= 0);
+	}
+
+	@Test
+	public void testLoadBundleInSeparateRuntime()
+	{
+		BundleManager manager = getBundleManagerInstance();
+		File bundleDirectory = TestUtils.getFile(new Path("project-bundles/requireInCommand"));
+		ScriptingContainer container = ScriptingEngine.getInstance().createBundleLoadContainer();
+
+		manager.loadScript(new File(bundleDirectory, "bundle.rb"), true, manager.getBundleLoadPaths(bundleDirectory),
+				container);
+
+		BundleElement bundle = manager.getBundleFromPath(bundleDirectory.getAbsoluteFile());
+		assertNotNull(bundle);
+		CommandElement command = bundle.getCommandByName("MyCommand");
+		assertNotNull(command);
+		assertSame(container.getProvider().getRuntime(), command.getRuntime());
+		assertNotSame(ScriptingEngine.getInstance().getInitializedScriptingContainer().getProvider().getRuntime(),
+				command.getRuntime());
+
+		CommandResult result = command.execute();
+		assertNotNull(result);
+		assertEquals("My Thing Name", result.getOutputString());
+	}
+
 	@Test
 	public void testLoadBundleWithMenu()
 	{
@@ -1,13 +1,18 @@
 package com.aptana.scripting.model;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Test;
 
 import com.aptana.core.util.FileUtil;
+import com.aptana.scope.ScopeSelector;
+import com.aptana.scripting.model.filters.ScopeFilter;
 
 public class CommandBlockRunnerTests extends BundleTestBase
 {
@@ -42,6 +47,59 @@ public class CommandBlockRunnerTests extends BundleTestBase
 		cbr.applyEnvironment();
 	}
 
+	@Test
+	public void testEnvironmentOrderOfRememberedScope() throws IOException
+	{
+		BundleElement bundle = this.loadBundle("invokeString", BundlePrecedence.PROJECT);
+
+		File f = FileUtil.createTempFile("snippet", "rb");
+		EnvironmentElement ruby = createEnvironment(f.getAbsolutePath(), "ruby", "source.ruby");
+		EnvironmentElement string = createEnvironment(f.getAbsolutePath(), "string", "string.quoted");
+		bundle.addChild(ruby);
+		bundle.addChild(string);
+
+		String scope = "source.ruby string.quoted";
+		List<EnvironmentElement> first = getSortedEnvs(scope, ruby, string);
+		assertEquals(2, first.size());
+		assertEquals(ruby, first.get(0));
+		assertEquals(string, first.get(1));
+
+		// the nesting is reversed here, so is the precedence
+		List<EnvironmentElement> other = getSortedEnvs("string.quoted source.ruby", ruby, string);
+		assertEquals(2, other.size());
+		assertEquals(string, other.get(0));
+		assertEquals(ruby, other.get(1));
+
+		// the matches of the first scope are remembered now, that must not change their order
+		assertEquals(first, getSortedEnvs(scope, ruby, string));
+	}
+
+	/**
+	 * Looks up the environments of a scope the way the runner does, keeping only the given ones
+	 * 
+	 * @param scope
+	 * @param envs
+	 * @return
+	 */
+	private List<EnvironmentElement> getSortedEnvs(String scope, EnvironmentElement... envs)
+	{
+		List<EnvironmentElement> all = BundleManager.getInstance().getEnvs(new ScopeFilter(scope));
+		ScopeSelector.sort(all, scope);
+
+		List<EnvironmentElement> result = new ArrayList<EnvironmentElement>();
+		for (EnvironmentElement env : all)
+		{
+			for (EnvironmentElement wanted : envs)
+			{
+				if (env == wanted)
+				{
+					result.add(env);
+				}
+			}
+		}
+		return result;
+	}
+
 	//
 	// @Test public void testApplyStreams()
 	// {
@@ -43,6 +43,24 @@ public class FilterTests extends BundleTestBase
 		assertEquals("Ruby", commands.get(0).getDisplayName());
 	}
 
+	/**
+	 * testScopeFilterWithScopes
+	 */
+	@Test
+	public void testScopeFilterWithScopes()
+	{
+		ScopeFilter filter = new ScopeFilter(new String[] { "source.css string.double.quoted.css", "source.ruby" });
+		List<CommandElement> commands = BundleTestBase.getBundleManagerInstance().getExecutableCommands(filter);
+
+		assertNotNull(commands);
+		assertEquals(2, commands.size());
+		assertEquals("Ruby", commands.get(0).getDisplayName());
+		assertEquals("CSS String", commands.get(1).getDisplayName());
+
+		// the second lookup for the same scopes is remembered, it has to give the same answer
+		assertEquals(commands, BundleTestBase.getBundleManagerInstance().getExecutableCommands(filter));
+	}
+
 	/**
 	 * testHasTriggerFilter
 	 */
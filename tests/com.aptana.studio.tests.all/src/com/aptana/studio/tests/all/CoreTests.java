@@ -24,6 +24,7 @@ import com.aptana.core.tests.StdErrLoggingSuite;
 	// com.aptana.filesystem.ftp.tests.AllTests.class, // TODO Re-enable when FTP server is set back up?
 	com.aptana.filesystem.http.tests.AllTests.class,
 	// com.aptana.filesystem.secureftp.tests.AllTests.class, // TODO Re-enable when FTP server is set back up?
+	com.aptana.filewatcher.tests.AllTests.class,
 	com.aptana.git.core.tests.AllGitCoreTests.class,
 	com.aptana.index.core.tests.AllIndexCoreTests.class,
 	com.aptana.jira.core.tests.AllJiraCoreTests.class,
@@ -0,0 +1,169 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.ide.syncing.core.old;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+
+import org.eclipse.core.filesystem.IFileInfo;
+import org.eclipse.core.filesystem.provider.FileInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class SyncManifestTest
+{
+
+	private static final String KEY = "file:/client -> file:/server/";
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		file = File.createTempFile(getClass().getSimpleName(), ".manifest");
+		assertTrue(file.delete());
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		file.delete();
+		file = null;
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		SyncManifest manifest = new SyncManifest(file, KEY);
+		manifest.put("index.html", info(10, 1000), info(12, 2000), 1234);
+		manifest.put("css/site.css", info(20, 3000), info(20, 4000), SyncManifest.UNKNOWN_CRC);
+		manifest.save();
+		assertTrue(file.isFile());
+
+		SyncManifest read = read(KEY);
+		assertEquals(2, read.size());
+		SyncManifest.Entry entry = read.get("index.html");
+		assertNotNull(entry);
+		assertTrue(entry.matchesClient(info(10, 1000)));
+		assertTrue(entry.matchesServer(info(12, 2000)));
+		assertFalse(entry.matchesClient(info(10, 1001)));
+		assertFalse(entry.matchesServer(info(13, 2000)));
+		assertEquals(1234, entry.crc);
+		entry = read.get("css/site.css");
+		assertNotNull(entry);
+		assertFalse(entry.hasCRC());
+		assertNull(read.get("missing.html"));
+	}
+
+	@Test
+	public void testRemovals() throws IOException
+	{
+		SyncManifest manifest = new SyncManifest(file, KEY);
+		manifest.put("a.html", info(1, 1), info(1, 1), 1);
+		manifest.put("dir/b.html", info(1, 1), info(1, 1), 1);
+		manifest.put("dir/c.html", info(1, 1), info(1, 1), 1);
+		manifest.put("dirt.html", info(1, 1), info(1, 1), 1);
+		manifest.remove("a.html");
+		manifest.retain("dir", Collections.singleton("dir/c.html"));
+		manifest.save();
+
+		SyncManifest read = read(KEY);
+		assertEquals(2, read.size());
+		assertNotNull(read.get("dir/c.html"));
+		assertNotNull(read.get("dirt.html"));
+	}
+
+	@Test
+	public void testUnchangedManifestIsntWritten() throws IOException
+	{
+		new SyncManifest(file, KEY).save();
+		assertFalse(file.exists());
+	}
+
+	@Test
+	public void testOtherKeyIsIgnored() throws IOException
+	{
+		SyncManifest manifest = new SyncManifest(file, KEY);
+		manifest.put("index.html", info(10, 1000), info(10, 1000), 1);
+		manifest.save();
+
+		assertEquals(0, read("file:/client -> file:/other/").size());
+		assertEquals(1, read(KEY).size());
+	}
+
+	@Test
+	public void testCorruptManifestIsDropped() throws IOException
+	{
+		SyncManifest manifest = new SyncManifest(file, KEY);
+		manifest.put("index.html", info(10, 1000), info(12, 2000), 1234);
+		manifest.save();
+
+		// a flipped bit in an entry only shows in the checksum
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			long position = raf.length() - 8 - 16;
+			raf.seek(position);
+			int b = raf.read();
+			raf.seek(position);
+			raf.write(b ^ 1);
+		}
+		finally
+		{
+			raf.close();
+		}
+		assertEquals(0, read(KEY).size());
+		assertFalse(file.exists());
+	}
+
+	@Test
+	public void testTruncatedManifestIsDropped() throws IOException
+	{
+		SyncManifest manifest = new SyncManifest(file, KEY);
+		manifest.put("index.html", info(10, 1000), info(12, 2000), 1234);
+		manifest.save();
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			raf.setLength(raf.length() - 4);
+		}
+		finally
+		{
+			raf.close();
+		}
+		assertEquals(0, read(KEY).size());
+		assertFalse(file.exists());
+	}
+
+	private SyncManifest read(String key)
+	{
+		SyncManifest manifest = new SyncManifest(file, key);
+		manifest.read();
+		return manifest;
+	}
+
+	private static IFileInfo info(long length, long lastModified)
+	{
+		FileInfo info = new FileInfo();
+		info.setExists(true);
+		info.setLength(length);
+		info.setLastModified(lastModified);
+		return info;
+	}
+}
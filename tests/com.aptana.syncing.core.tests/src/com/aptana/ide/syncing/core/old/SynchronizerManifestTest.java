@@ -0,0 +1,244 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.ide.syncing.core.old;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aptana.core.util.FileUtil;
+import com.aptana.ide.core.io.LocalConnectionPoint;
+
+/**
+ * The sync decisions with and without a manifest of the last sync. The files' clocks disagree with what happened in
+ * the scenarios where the manifest makes a difference.
+ */
+@SuppressWarnings("nls")
+public class SynchronizerManifestTest
+{
+
+	private static final String FILE_NAME = "index.html";
+
+	private LocalConnectionPoint clientPoint;
+	private LocalConnectionPoint serverPoint;
+	private File clientFile;
+	private File serverFile;
+	private long time;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		clientPoint = new LocalConnectionPoint(new Path(createDirectory("client").getAbsolutePath()));
+		serverPoint = new LocalConnectionPoint(new Path(createDirectory("server").getAbsolutePath()));
+		clientFile = new File(clientPoint.getFile(), FILE_NAME);
+		serverFile = new File(serverPoint.getFile(), FILE_NAME);
+		// file systems keep modification times to the second at best
+		time = (System.currentTimeMillis() / 1000 - 3600) * 1000;
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		SyncManifest manifest = loadManifest();
+		manifest.clear();
+		manifest.save();
+		FileUtil.deleteRecursively(clientPoint.getFile());
+		FileUtil.deleteRecursively(serverPoint.getFile());
+	}
+
+	@Test
+	public void testManifestIsOffByDefault()
+	{
+		assertFalse(new Synchronizer().getUseManifest());
+	}
+
+	@Test
+	public void testMatchIsRecorded() throws Exception
+	{
+		write(clientFile, "a", time);
+		write(serverFile, "a", time);
+		assertEquals(SyncState.ItemsMatch, sync(true));
+		assertNotNull(loadManifest().get(FILE_NAME));
+	}
+
+	@Test
+	public void testNotRecordedWithoutManifest() throws Exception
+	{
+		write(clientFile, "a", time);
+		write(serverFile, "a", time);
+		assertEquals(SyncState.ItemsMatch, sync(false));
+		assertEquals(0, loadManifest().size());
+	}
+
+	@Test
+	public void testUnchanged() throws Exception
+	{
+		// the server didn't keep the time of the upload
+		write(clientFile, "a", time);
+		write(serverFile, "a", time + 60000);
+		recordSynced();
+
+		assertEquals(SyncState.ItemsMatch, sync(true));
+		assertEquals(SyncState.ServerItemIsNewer, sync(false));
+	}
+
+	@Test
+	public void testChangedOnClient() throws Exception
+	{
+		write(clientFile, "a", time);
+		write(serverFile, "a", time + 60000);
+		recordSynced();
+		// edited, but still older than the server's time
+		write(clientFile, "ab", time + 30000);
+
+		assertEquals(SyncState.ClientItemIsNewer, sync(true));
+		assertEquals(SyncState.ServerItemIsNewer, sync(false));
+	}
+
+	@Test
+	public void testChangedOnServer() throws Exception
+	{
+		write(clientFile, "a", time + 60000);
+		write(serverFile, "a", time);
+		recordSynced();
+		write(serverFile, "ab", time + 30000);
+
+		assertEquals(SyncState.ServerItemIsNewer, sync(true));
+		assertEquals(SyncState.ClientItemIsNewer, sync(false));
+	}
+
+	@Test
+	public void testChangedOnBoth() throws Exception
+	{
+		write(clientFile, "a", time);
+		write(serverFile, "a", time);
+		recordSynced();
+		// the times decide, as without a manifest
+		write(clientFile, "ab", time + 60000);
+		write(serverFile, "abc", time + 30000);
+
+		assertEquals(SyncState.ClientItemIsNewer, sync(true));
+		assertEquals(SyncState.ClientItemIsNewer, sync(false));
+
+		write(serverFile, "abc", time + 90000);
+		assertEquals(SyncState.ServerItemIsNewer, sync(true));
+		assertEquals(SyncState.ServerItemIsNewer, sync(false));
+	}
+
+	@Test
+	public void testDeletedOnOneSide() throws Exception
+	{
+		write(clientFile, "a", time);
+		write(serverFile, "a", time);
+		recordSynced();
+		assertTrue(serverFile.delete());
+
+		assertEquals(SyncState.ClientItemOnly, sync(true));
+		assertEquals(SyncState.ClientItemOnly, sync(false));
+		// forgotten, so a file of that name showing up again is compared by its times
+		assertNull(loadManifest().get(FILE_NAME));
+
+		write(serverFile, "a", time);
+		recordSynced();
+		assertTrue(clientFile.delete());
+		assertEquals(SyncState.ServerItemOnly, sync(true));
+		assertEquals(SyncState.ServerItemOnly, sync(false));
+		assertNull(loadManifest().get(FILE_NAME));
+	}
+
+	@Test
+	public void testManifestIsKeyedByServerFolder() throws Exception
+	{
+		write(clientFile, "a", time);
+		write(serverFile, "a", time + 60000);
+		recordSynced();
+
+		File otherDirectory = new File(serverPoint.getFile(), "other");
+		assertTrue(otherDirectory.mkdir());
+		write(new File(otherDirectory, FILE_NAME), "a", time + 60000);
+		Synchronizer synchronizer = new Synchronizer();
+		synchronizer.setUseManifest(true);
+		VirtualFileSyncPair[] items = synchronizer.getSyncItems(clientPoint, serverPoint, clientPoint.getRoot(),
+				serverPoint.getRoot().getChild("other"), new NullProgressMonitor());
+		assertEquals(SyncState.ServerItemIsNewer, getState(items));
+	}
+
+	/**
+	 * Records the files as they are now as synced.
+	 */
+	private void recordSynced() throws CoreException, IOException
+	{
+		SyncManifest manifest = loadManifest();
+		manifest.put(FILE_NAME, clientPoint.getRoot().getChild(FILE_NAME).fetchInfo(), serverPoint.getRoot()
+				.getChild(FILE_NAME).fetchInfo(), SyncManifest.UNKNOWN_CRC);
+		manifest.save();
+	}
+
+	private SyncManifest loadManifest()
+	{
+		return SyncManifest.load(clientPoint, serverPoint, "");
+	}
+
+	private int sync(boolean useManifest) throws CoreException
+	{
+		Synchronizer synchronizer = new Synchronizer();
+		synchronizer.setUseManifest(useManifest);
+		return getState(synchronizer.getSyncItems(clientPoint, serverPoint, clientPoint.getRoot(),
+				serverPoint.getRoot(), new NullProgressMonitor()));
+	}
+
+	private static int getState(VirtualFileSyncPair[] items)
+	{
+		assertNotNull(items);
+		for (VirtualFileSyncPair item : items)
+		{
+			if (FILE_NAME.equals(item.getRelativePath()))
+			{
+				return item.getSyncState();
+			}
+		}
+		fail(FILE_NAME + " wasn't listed");
+		return -1;
+	}
+
+	private static File createDirectory(String prefix) throws IOException
+	{
+		File directory = File.createTempFile(prefix, "");
+		assertTrue(directory.delete());
+		assertTrue(directory.mkdir());
+		return directory;
+	}
+
+	private static void write(File file, String contents, long lastModified) throws IOException
+	{
+		FileWriter writer = new FileWriter(file);
+		try
+		{
+			writer.write(contents);
+		}
+		finally
+		{
+			writer.close();
+		}
+		assertTrue(file.setLastModified(lastModified));
+	}
+}
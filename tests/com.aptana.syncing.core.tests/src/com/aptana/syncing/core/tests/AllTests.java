@@ -11,10 +11,14 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import com.aptana.ide.syncing.core.old.SyncManifestTest;
+import com.aptana.ide.syncing.core.old.SynchronizerManifestTest;
+
 @RunWith(Suite.class)
 @SuiteClasses({ LocalSyncingTest.class, LocalSyncingWithSpacesTest.class, FTPSyncingTest.class,
 		FTPSyncingWithSpacesTest.class, SFTPSyncingTest.class, SFTPSyncingWithSpacesTest.class,
-		LocalLargeSampleSyncingTest.class, FTPLargeSampleSyncingTest.class, })
+		LocalLargeSampleSyncingTest.class, FTPLargeSampleSyncingTest.class, SyncManifestTest.class,
+		SynchronizerManifestTest.class, })
 public class AllTests
 {
 }
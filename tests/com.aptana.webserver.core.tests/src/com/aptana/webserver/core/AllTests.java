@@ -13,9 +13,10 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 import com.aptana.webserver.internal.core.builtin.LocalWebServerTest;
+import com.aptana.webserver.internal.core.builtin.RequestMetricsTest;
 
 @RunWith(Suite.class)
-@SuiteClasses({ LocalWebServerTest.class })
+@SuiteClasses({ LocalWebServerTest.class, RequestMetricsTest.class, WorkspaceResolvingURIMapperTest.class })
 public class AllTests
 {
 
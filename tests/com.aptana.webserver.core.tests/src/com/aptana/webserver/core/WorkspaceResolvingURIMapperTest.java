@@ -0,0 +1,59 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.webserver.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.URI;
+
+import org.eclipse.core.filesystem.IFileStore;
+import org.junit.Test;
+
+public class WorkspaceResolvingURIMapperTest
+{
+
+	private static final URI PAGE = URI.create("http://localhost/index.html"); //$NON-NLS-1$
+
+	@Test
+	public void testResolutionsAreSharedByTheMappersOfAServer()
+	{
+		CountingServer server = new CountingServer();
+		assertNull(new WorkspaceResolvingURIMapper(server).resolve(PAGE));
+		assertNull(new WorkspaceResolvingURIMapper(server).resolve(PAGE));
+		assertEquals(1, server.resolutions);
+
+		CountingServer other = new CountingServer();
+		assertNull(new WorkspaceResolvingURIMapper(other).resolve(PAGE));
+		assertEquals(1, other.resolutions);
+	}
+
+	@Test
+	public void testServerChangeDropsItsResolutions()
+	{
+		CountingServer server = new CountingServer();
+		WorkspaceResolvingURIMapper mapper = new WorkspaceResolvingURIMapper(server);
+		mapper.resolve(PAGE);
+		WorkspaceResolvingURIMapper.serverChanged(server);
+		mapper.resolve(PAGE);
+		new WorkspaceResolvingURIMapper(server).resolve(PAGE);
+		assertEquals(2, server.resolutions);
+	}
+
+	private static class CountingServer extends SimpleWebServer
+	{
+		private int resolutions;
+
+		@Override
+		public IFileStore resolve(URI uri)
+		{
+			resolutions++;
+			return null;
+		}
+	}
+}
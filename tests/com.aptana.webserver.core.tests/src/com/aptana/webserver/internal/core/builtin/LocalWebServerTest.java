@@ -12,6 +12,8 @@
 package com.aptana.webserver.internal.core.builtin;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -22,6 +24,7 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.zip.GZIPInputStream;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.NullProgressMonitor;
@@ -77,4 +80,166 @@ public class LocalWebServerTest
 			}
 		}
 	}
+
+	@Test
+	public void testConditionalGet() throws IOException, CoreException
+	{
+		LocalWebServer webServer = new LocalWebServer(createDocumentRoot().toURI());
+		try
+		{
+			webServer.start(ILaunchManager.RUN_MODE, new NullProgressMonitor());
+			HttpURLConnection connection = openConnection(webServer.getBaseURL());
+			assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+			String eTag = connection.getHeaderField("ETag"); //$NON-NLS-1$
+			assertNotNull(eTag);
+			assertEquals(PAGE_CONTENTS, read(connection));
+
+			connection = openConnection(webServer.getBaseURL());
+			connection.setRequestProperty("If-None-Match", eTag); //$NON-NLS-1$
+			assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, connection.getResponseCode());
+			assertEquals(eTag, connection.getHeaderField("ETag")); //$NON-NLS-1$
+		}
+		finally
+		{
+			webServer.stop(true, new NullProgressMonitor());
+		}
+	}
+
+	@Test
+	public void testRange() throws IOException, CoreException
+	{
+		LocalWebServer webServer = new LocalWebServer(createDocumentRoot().toURI());
+		try
+		{
+			webServer.start(ILaunchManager.RUN_MODE, new NullProgressMonitor());
+			HttpURLConnection connection = openConnection(webServer.getBaseURL());
+			connection.setRequestProperty("Range", "bytes=6-11"); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals(HttpURLConnection.HTTP_PARTIAL, connection.getResponseCode());
+			String contentRange = connection.getHeaderField("Content-Range"); //$NON-NLS-1$
+			assertEquals("bytes 6-11/" + PAGE_CONTENTS.length(), contentRange); //$NON-NLS-1$
+			assertEquals(PAGE_CONTENTS.substring(6, 12), read(connection));
+
+			connection = openConnection(webServer.getBaseURL());
+			connection.setRequestProperty("Range", "bytes=1000-"); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals(416, connection.getResponseCode());
+		}
+		finally
+		{
+			webServer.stop(true, new NullProgressMonitor());
+		}
+	}
+
+	@Test
+	public void testIfModifiedSince() throws IOException, CoreException
+	{
+		LocalWebServer webServer = new LocalWebServer(createDocumentRoot().toURI());
+		try
+		{
+			webServer.start(ILaunchManager.RUN_MODE, new NullProgressMonitor());
+			HttpURLConnection connection = openConnection(webServer.getBaseURL());
+			assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+			String lastModified = connection.getHeaderField("Last-Modified"); //$NON-NLS-1$
+			assertNotNull(lastModified);
+			read(connection);
+
+			connection = openConnection(webServer.getBaseURL());
+			connection.setRequestProperty("If-Modified-Since", lastModified); //$NON-NLS-1$
+			assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, connection.getResponseCode());
+
+			connection = openConnection(webServer.getBaseURL());
+			connection.setRequestProperty("If-Modified-Since", //$NON-NLS-1$
+					"Thu, 01 Jan 1970 00:00:00 GMT"); //$NON-NLS-1$
+			assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+			assertEquals(PAGE_CONTENTS, read(connection));
+		}
+		finally
+		{
+			webServer.stop(true, new NullProgressMonitor());
+		}
+	}
+
+	@Test
+	public void testCompressedGet() throws IOException, CoreException
+	{
+		StringBuilder contents = new StringBuilder();
+		for (int i = 0; i < 20; i++)
+		{
+			contents.append(PAGE_CONTENTS).append('\n');
+		}
+		LocalWebServer webServer = new LocalWebServer(createDocumentRoot(contents.toString()).toURI());
+		try
+		{
+			webServer.start(ILaunchManager.RUN_MODE, new NullProgressMonitor());
+			HttpURLConnection connection = openConnection(webServer.getBaseURL());
+			connection.setRequestProperty("Accept-Encoding", "gzip, deflate"); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+			assertEquals("gzip", connection.getHeaderField("Content-Encoding")); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals("Accept-Encoding", connection.getHeaderField("Vary")); //$NON-NLS-1$ //$NON-NLS-2$
+			String eTag = connection.getHeaderField("ETag"); //$NON-NLS-1$
+			assertTrue(eTag, eTag.endsWith("-gz\"")); //$NON-NLS-1$
+			assertEquals(contents.toString(), read(new GZIPInputStream(connection.getInputStream())));
+
+			// the compressed variant is current too
+			connection = openConnection(webServer.getBaseURL());
+			connection.setRequestProperty("Accept-Encoding", "gzip"); //$NON-NLS-1$ //$NON-NLS-2$
+			connection.setRequestProperty("If-None-Match", eTag); //$NON-NLS-1$
+			assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, connection.getResponseCode());
+
+			// sent as is to clients not accepting it, but caches still have to tell the variants apart
+			connection = openConnection(webServer.getBaseURL());
+			connection.setRequestProperty("Accept-Encoding", "gzip;q=0"); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+			assertNull(connection.getHeaderField("Content-Encoding")); //$NON-NLS-1$
+			assertEquals("Accept-Encoding", connection.getHeaderField("Vary")); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals(contents.toString(), read(connection));
+		}
+		finally
+		{
+			webServer.stop(true, new NullProgressMonitor());
+		}
+	}
+
+	private File createDocumentRoot() throws IOException
+	{
+		return createDocumentRoot(PAGE_CONTENTS);
+	}
+
+	private File createDocumentRoot(String contents) throws IOException
+	{
+		File dir = File.createTempFile(getClass().getSimpleName(), "temp"); //$NON-NLS-1$
+		assertTrue(dir.delete());
+		assertTrue(dir.mkdir());
+		File file = new File(dir, "index.html"); //$NON-NLS-1$
+		OutputStreamWriter w = new OutputStreamWriter(new FileOutputStream(file));
+		w.write(contents);
+		w.close();
+		return dir;
+	}
+
+	private static HttpURLConnection openConnection(URL url) throws IOException
+	{
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setAllowUserInteraction(false);
+		connection.setUseCaches(false);
+		return connection;
+	}
+
+	private static String read(HttpURLConnection connection) throws IOException
+	{
+		return read(connection.getInputStream());
+	}
+
+	private static String read(InputStream stream) throws IOException
+	{
+		InputStreamReader in = new InputStreamReader(stream);
+		StringBuffer sb = new StringBuffer();
+		int n;
+		char[] cbuf = new char[1024];
+		while ((n = in.read(cbuf)) > 0)
+		{
+			sb.append(new String(cbuf, 0, n));
+		}
+		in.close();
+		return sb.toString();
+	}
 }
@@ -0,0 +1,38 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.webserver.internal.core.builtin;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.aptana.core.util.FileUtil;
+
+public class RequestMetricsTest
+{
+
+	@Test
+	public void testDumpSortsSlowestFirst() throws Exception
+	{
+		RequestMetrics metrics = new RequestMetrics();
+		for (int i = 1; i <= 100; i++)
+		{
+			metrics.record("/fast.css", 10, i * 1000000L); //$NON-NLS-1$
+		}
+		metrics.record("/slow.js", 20, 500000000L); //$NON-NLS-1$
+		metrics.record("/slow.js", -1, 300000000L); //$NON-NLS-1$
+
+		String[] lines = metrics.dump().split(FileUtil.NEW_LINE);
+		assertEquals(3, lines.length);
+		assertEquals("2\t20\t300.0\t500.0\t/slow.js", lines[1]); //$NON-NLS-1$
+		assertEquals("100\t1000\t50.0\t99.0\t/fast.css", lines[2]); //$NON-NLS-1$
+
+		metrics.reset();
+		assertEquals(1, metrics.dump().split(FileUtil.NEW_LINE).length);
+	}
+}